@@ -0,0 +1,53 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.calc;
+
+import mondrian.olap.Evaluator;
+
+/**
+ * Compiled expression whose result is a <code>double</code>, and which can
+ * be evaluated for every tuple of a list in one call.
+ *
+ * <p>Aggregate functions such as <code>Sum</code> and <code>Avg</code> call
+ * {@link #evaluateDoubles} rather than calling
+ * {@link #evaluateDouble(mondrian.olap.Evaluator)} once per tuple, if their
+ * expression implements this interface. An implementation can then hoist
+ * work that is the same for every tuple out of the loop, and avoid boxing
+ * each value.</p>
+ *
+ * <p>Use {@link mondrian.olap.fun.FunUtil#evaluateDoubles} to evaluate a
+ * {@link DoubleCalc} that may or may not implement this interface.</p>
+ *
+ * @see mondrian.calc.impl.AbstractBatchDoubleCalc
+ *
+ * @author agent
+ */
+public interface BatchDoubleCalc extends DoubleCalc {
+    /**
+     * Evaluates this expression in the context of each tuple of a list.
+     *
+     * <p>Element <code>i</code> of {@code values} receives the value for
+     * tuple <code>i</code>; the special
+     * {@link mondrian.olap.fun.FunUtil#DoubleNull} value if the result is
+     * null, or {@link Double#NaN} if the result depends on a cell whose value
+     * is not available yet.</p>
+     *
+     * <p>On return, the context of the evaluator is as it was on entry.</p>
+     *
+     * @param evaluator Evaluation context
+     * @param list List of tuples
+     * @param values Array to receive results; at least as long as the list
+     * @return Number of results that depend on a cell whose value is not
+     *   available yet
+     */
+    int evaluateDoubles(Evaluator evaluator, TupleList list, double[] values);
+}
+
+// End BatchDoubleCalc.java
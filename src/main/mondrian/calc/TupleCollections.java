@@ -84,6 +84,33 @@ public final class TupleCollections {
         }
     }
 
+    /**
+     * Creates an empty list into which tuples of a given list will be
+     * copied; for example, the result of filtering the list.
+     *
+     * <p>If arity &gt; 1, creates an {@link OrdinalTupleList}. If the given
+     * list is an {@link OrdinalTupleList}, the new list shares its
+     * dictionaries, so that copying a tuple from the given list's cursor
+     * using {@link TupleList#addCurrent(TupleCursor)} does not need to look
+     * up its members. Otherwise behaves like {@link #createList(int, int)}.
+     *
+     * @param list List whose tuples will be copied
+     * @param initialCapacity Initial capacity
+     * @return Tuple list
+     */
+    public static TupleList createCompactList(
+        TupleList list,
+        int initialCapacity)
+    {
+        if (list instanceof OrdinalTupleList) {
+            return list.cloneList(initialCapacity);
+        }
+        if (list.getArity() > 1) {
+            return new OrdinalTupleList(list.getArity(), initialCapacity);
+        }
+        return createList(list.getArity(), initialCapacity);
+    }
+
     /**
      * Returns an empty TupleList of given arity.
      *
@@ -0,0 +1,41 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.calc.impl;
+
+import mondrian.calc.BatchDoubleCalc;
+import mondrian.calc.Calc;
+import mondrian.olap.Exp;
+
+/**
+ * Abstract implementation of the {@link mondrian.calc.BatchDoubleCalc}
+ * interface.
+ *
+ * <p>The derived class must implement both
+ * {@link #evaluateDouble(mondrian.olap.Evaluator)} and
+ * {@link #evaluateDoubles}.
+ *
+ * @author agent
+ */
+public abstract class AbstractBatchDoubleCalc
+    extends AbstractDoubleCalc
+    implements BatchDoubleCalc
+{
+    /**
+     * Creates an AbstractBatchDoubleCalc.
+     *
+     * @param exp Source expression
+     * @param calcs Child compiled expressions
+     */
+    protected AbstractBatchDoubleCalc(Exp exp, Calc[] calcs) {
+        super(exp, calcs);
+    }
+}
+
+// End AbstractBatchDoubleCalc.java
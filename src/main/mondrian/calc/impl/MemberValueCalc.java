@@ -9,12 +9,14 @@
 
 package mondrian.calc.impl;
 
-import mondrian.calc.Calc;
-import mondrian.calc.MemberCalc;
+import mondrian.calc.*;
 import mondrian.olap.*;
+import mondrian.olap.fun.FunUtil;
 import mondrian.olap.type.ScalarType;
 import mondrian.olap.type.Type;
 
+import java.util.Arrays;
+
 /**
  * Expression which evaluates a few member expressions,
  * sets the dimensional context to the result of those expressions,
@@ -29,7 +31,10 @@ import mondrian.olap.type.Type;
  * @author jhyde
  * @since Sep 27, 2005
  */
-public class MemberValueCalc extends GenericCalc {
+public class MemberValueCalc
+    extends GenericCalc
+    implements BatchDoubleCalc
+{
     private final MemberCalc memberCalc;
     private final boolean nullCheck;
 
@@ -104,6 +109,61 @@ public class MemberValueCalc extends GenericCalc {
         }
     }
 
+    public int evaluateDoubles(
+        Evaluator evaluator,
+        TupleList list,
+        double[] values)
+    {
+        if (!(memberCalc instanceof ConstantCalc)) {
+            // The member may depend on the tuple, so evaluate it per tuple.
+            final int savepoint = evaluator.savepoint();
+            try {
+                int errorCount = 0;
+                final TupleCursor cursor = list.tupleCursor();
+                for (int i = 0; cursor.forward(); i++) {
+                    cursor.setContext(evaluator);
+                    errorCount +=
+                        ValueCalc.storeDouble(evaluate(evaluator), values, i);
+                }
+                return errorCount;
+            } finally {
+                evaluator.restore(savepoint);
+            }
+        }
+
+        // The member is the same for every tuple, typically a measure in an
+        // expression such as 'Sum(<set>, [Measures].[Unit Sales])'. Evaluate
+        // it once, and set it after each tuple, rather than pushing and
+        // restoring the context for each tuple.
+        final int savepoint = evaluator.savepoint();
+        try {
+            final Member member = memberCalc.evaluateMember(evaluator);
+            if (member == null || member.isNull()) {
+                Arrays.fill(values, 0, list.size(), FunUtil.DoubleNull);
+                return 0;
+            }
+            final Member[] members = {member};
+            int errorCount = 0;
+            final TupleCursor cursor = list.tupleCursor();
+            for (int i = 0; cursor.forward(); i++) {
+                cursor.setContext(evaluator);
+                evaluator.setContext(member);
+                if (nullCheck
+                    && evaluator.needToReturnNullForUnrelatedDimension(members))
+                {
+                    values[i] = FunUtil.DoubleNull;
+                } else {
+                    errorCount +=
+                        ValueCalc.storeDouble(
+                            evaluator.evaluateCurrent(), values, i);
+                }
+            }
+            return errorCount;
+        } finally {
+            evaluator.restore(savepoint);
+        }
+    }
+
     public Calc[] getCalcs() {
         return new MemberCalc[] {memberCalc};
     }
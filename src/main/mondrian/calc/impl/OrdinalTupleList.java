@@ -0,0 +1,470 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.calc.impl;
+
+import mondrian.calc.*;
+import mondrian.olap.*;
+
+import java.util.*;
+
+/**
+ * Implementation of {@link TupleList} that stores, for each member of each
+ * tuple, its ordinal in a dictionary of the members of its column.
+ *
+ * <p>Tuples are stored end-to-end in an array of {@code int}, where
+ * {@link ArrayTupleList} stores them in an array of member references. A
+ * column of a large list, such as the result of a crossjoin, typically
+ * contains few distinct members, so the dictionaries are small. But an
+ * {@code int} is no smaller than a reference under compressed oops (the
+ * default on 64-bit JVMs with heaps below 32GB), so the array itself is
+ * about the same size; the saving comes from the cursor, described below,
+ * which does not allocate a view of each tuple.
+ *
+ * <p>Reading a member through a {@link TupleCursor}, with
+ * {@link TupleCursor#member(int)}, {@link TupleCursor#setContext} or
+ * {@link TupleCursor#currentToArray}, allocates no memory. Adding a tuple
+ * from the cursor of a list whose dictionaries this list shares, as
+ * {@link #cloneList(int)} does, copies ordinals without looking up members;
+ * so does {@link #addProduct(java.util.List)}.
+ *
+ * <p>Members are identified by identity, not {@link Object#equals}, so a
+ * list returns precisely the members that were added to it.
+ *
+ * @author agent
+ */
+public class OrdinalTupleList extends AbstractEndToEndTupleList {
+    private Dictionary[] dictionaries;
+    private int[] data;
+    private int size;
+
+    /** Most recently looked-up member of each column. */
+    private final Member[] lastMembers;
+
+    /** Ordinal of the most recently looked-up member of each column. */
+    private final int[] lastOrdinals;
+
+    /**
+     * Creates an empty OrdinalTupleList with an initial capacity of 10
+     * tuples.
+     *
+     * @param arity Arity
+     */
+    public OrdinalTupleList(int arity) {
+        this(arity, 10);
+    }
+
+    /**
+     * Creates an empty OrdinalTupleList.
+     *
+     * @param arity Arity
+     * @param initialCapacity Initial capacity
+     */
+    public OrdinalTupleList(int arity, int initialCapacity) {
+        this(
+            arity,
+            newDictionaries(arity),
+            new int[initialCapacity * arity],
+            0);
+        assert arity > 1 : "Probably better to use a UnaryTupleList";
+    }
+
+    private OrdinalTupleList(
+        int arity,
+        Dictionary[] dictionaries,
+        int[] data,
+        int size)
+    {
+        super(arity);
+        this.dictionaries = dictionaries;
+        this.data = data;
+        this.size = size;
+        this.lastMembers = new Member[arity];
+        this.lastOrdinals = new int[arity];
+    }
+
+    private static Dictionary[] newDictionaries(int arity) {
+        final Dictionary[] dictionaries = new Dictionary[arity];
+        for (int i = 0; i < arity; i++) {
+            dictionaries[i] = new Dictionary();
+        }
+        return dictionaries;
+    }
+
+    /**
+     * Returns the dictionaries of this list, marking them shared so that
+     * neither this list nor the list that receives them will modify them.
+     */
+    private Dictionary[] shareDictionaries() {
+        for (Dictionary dictionary : dictionaries) {
+            dictionary.shared = true;
+        }
+        return dictionaries.clone();
+    }
+
+    /**
+     * Returns the ordinal of a member in the dictionary of a column, adding
+     * it if necessary.
+     */
+    private int ordinal(int column, Member member) {
+        if (member == lastMembers[column]) {
+            return lastOrdinals[column];
+        }
+        Dictionary dictionary = dictionaries[column];
+        final Integer ordinal = dictionary.ordinals.get(member);
+        final int i;
+        if (ordinal != null) {
+            i = ordinal;
+        } else {
+            if (dictionary.shared) {
+                // Copy on write.
+                dictionary = new Dictionary(dictionary);
+                dictionaries[column] = dictionary;
+            }
+            i = dictionary.add(member);
+        }
+        lastMembers[column] = member;
+        lastOrdinals[column] = i;
+        return i;
+    }
+
+    @Override
+    protected List<Member> backingList() {
+        return new AbstractList<Member>() {
+            @Override
+            public Member get(int index) {
+                return dictionaries[index % arity].members.get(data[index]);
+            }
+
+            @Override
+            public int size() {
+                return size * arity;
+            }
+        };
+    }
+
+    @Override
+    public Member get(int slice, int index) {
+        return dictionaries[slice].members.get(data[index * arity + slice]);
+    }
+
+    @Override
+    public List<Member> get(int index) {
+        final int startIndex = index * arity;
+        final List<Member> list =
+            new AbstractList<Member>() {
+                public Member get(int index) {
+                    return dictionaries[index].members.get(
+                        data[startIndex + index]);
+                }
+
+                public int size() {
+                    return arity;
+                }
+            };
+        if (mutable) {
+            return Util.flatList(list);
+        }
+        return list;
+    }
+
+    @Override
+    public List<Member> set(int index, List<Member> element) {
+        assert mutable;
+        for (int i = 0, startIndex = index * arity; i < arity; i++) {
+            data[startIndex + i] = ordinal(i, element.get(i));
+        }
+        return null; // not compliant with List contract
+    }
+
+    @Override
+    public void addCurrent(TupleCursor tupleIter) {
+        assert mutable;
+        int n = size * arity;
+        ensureCapacity(n + arity);
+        if (tupleIter instanceof OrdinalTupleIterator) {
+            final OrdinalTupleIterator iterator =
+                (OrdinalTupleIterator) tupleIter;
+            final OrdinalTupleList list = iterator.list();
+            if (list.arity == arity) {
+                for (int i = 0, x = iterator.lastRet * arity; i < arity; i++) {
+                    if (list.dictionaries[i] == dictionaries[i]) {
+                        data[n++] = list.data[x + i];
+                    } else {
+                        data[n++] = ordinal(
+                            i,
+                            list.dictionaries[i].members.get(
+                                list.data[x + i]));
+                    }
+                }
+                ++size;
+                return;
+            }
+        }
+        for (int i = 0; i < arity; i++) {
+            data[n++] = ordinal(i, tupleIter.member(i));
+        }
+        ++size;
+    }
+
+    public int size() {
+        return size;
+    }
+
+    @Override
+    public boolean add(List<Member> members) {
+        assert mutable;
+        if (members.size() != arity) {
+            throw new IllegalArgumentException(
+                "Tuple length does not match arity");
+        }
+        int n = size * arity;
+        ensureCapacity(n + arity);
+        for (int i = 0; i < arity; i++) {
+            data[n++] = ordinal(i, members.get(i));
+        }
+        ++size;
+        return true;
+    }
+
+    @Override
+    public void add(int index, List<Member> members) {
+        assert mutable;
+        if (members.size() != arity) {
+            throw new IllegalArgumentException(
+                "Tuple length does not match arity");
+        }
+        int n = index * arity;
+        ensureCapacity((size + 1) * arity);
+        System.arraycopy(data, n, data, n + arity, size * arity - n);
+        for (int i = 0; i < arity; i++) {
+            data[n++] = ordinal(i, members.get(i));
+        }
+        ++size;
+    }
+
+    @Override
+    public boolean addAll(int index, Collection<? extends List<Member>> c) {
+        assert mutable;
+        final int size1 = c.size();
+        ensureCapacity(size * arity + size1 * arity);
+        int n = index * arity;
+        System.arraycopy(
+            data, n, data, n + size1 * arity, size * arity - n);
+        for (List<Member> members : c) {
+            for (int i = 0; i < arity; i++) {
+                data[n++] = ordinal(i, members.get(i));
+            }
+        }
+        size += size1;
+        return size1 > 0;
+    }
+
+    public void addTuple(Member... members) {
+        assert mutable;
+        if (members.length != arity) {
+            throw new IllegalArgumentException(
+                "Tuple length does not match arity");
+        }
+        int n = size * arity;
+        ensureCapacity(n + arity);
+        for (int i = 0; i < arity; i++) {
+            data[n++] = ordinal(i, members[i]);
+        }
+        ++size;
+    }
+
+    /**
+     * Appends the cartesian product of a list of lists.
+     *
+     * <p>The sum of the arities of the lists must equal the arity of this
+     * list. Each member is looked up in a dictionary once, however many
+     * tuples it occurs in.
+     *
+     * @param lists Lists
+     */
+    public void addProduct(List<TupleList> lists) {
+        assert mutable;
+        final int[][] ordinals = new int[lists.size()][];
+        final int[] arities = new int[lists.size()];
+        long productSize = 1;
+        int column = 0;
+        for (int i = 0; i < lists.size(); i++) {
+            final TupleList list = lists.get(i);
+            final int listArity = list.getArity();
+            final int[] listOrdinals = new int[list.size() * listArity];
+            int n = 0;
+            final TupleCursor cursor = list.tupleCursor();
+            while (cursor.forward()) {
+                for (int j = 0; j < listArity; j++) {
+                    listOrdinals[n++] = ordinal(column + j, cursor.member(j));
+                }
+            }
+            ordinals[i] = listOrdinals;
+            arities[i] = listArity;
+            productSize *= list.size();
+            column += listArity;
+        }
+        if (column != arity) {
+            throw new IllegalArgumentException(
+                "Sum of arities does not match arity");
+        }
+        if (productSize == 0) {
+            return;
+        }
+        ensureCapacity((int) ((size + productSize) * arity));
+        addProduct(0, ordinals, arities, new int[arity], 0);
+    }
+
+    private void addProduct(
+        int i,
+        int[][] ordinals,
+        int[] arities,
+        int[] tuple,
+        int offset)
+    {
+        final int[] listOrdinals = ordinals[i];
+        final int listArity = arities[i];
+        final boolean last = i == ordinals.length - 1;
+        for (int n = 0; n < listOrdinals.length; n += listArity) {
+            System.arraycopy(listOrdinals, n, tuple, offset, listArity);
+            if (last) {
+                System.arraycopy(tuple, 0, data, size * arity, arity);
+                ++size;
+            } else {
+                addProduct(i + 1, ordinals, arities, tuple, offset + listArity);
+            }
+        }
+    }
+
+    @Override
+    public List<Member> remove(int index) {
+        assert mutable;
+        final int n = index * arity;
+        System.arraycopy(data, n + arity, data, n, size * arity - n - arity);
+        --size;
+        return null; // not compliant with List contract
+    }
+
+    @Override
+    public void clear() {
+        assert mutable;
+        size = 0;
+    }
+
+    public List<Member> slice(final int column) {
+        if (column < 0 || column >= arity) {
+            throw new IllegalArgumentException();
+        }
+        return new AbstractList<Member>() {
+            @Override
+            public Member get(int index) {
+                return dictionaries[column].members.get(
+                    data[index * arity + column]);
+            }
+
+            @Override
+            public int size() {
+                return size;
+            }
+        };
+    }
+
+    public TupleList cloneList(int capacity) {
+        if (capacity < 0) {
+            // copy of this list with the same contents
+            return new OrdinalTupleList(
+                arity, shareDictionaries(), data.clone(), size);
+        } else {
+            // empty copy of this list with given capacity
+            return new OrdinalTupleList(
+                arity, shareDictionaries(), new int[capacity * arity], 0);
+        }
+    }
+
+    public TupleIterator tupleIteratorInternal() {
+        return new OrdinalTupleIterator();
+    }
+
+    private void ensureCapacity(int minCapacity) {
+        int oldCapacity = data.length;
+        if (minCapacity > oldCapacity) {
+            int newCapacity = (oldCapacity * 3) / 2 + 1;
+            if (newCapacity < minCapacity) {
+                newCapacity = minCapacity;
+            }
+            // Up to next multiple of arity.
+            final int rem = newCapacity % arity;
+            newCapacity += (arity - rem);
+            data = Util.copyOf(data, newCapacity);
+        }
+    }
+
+    /**
+     * Iterator over an {@link OrdinalTupleList}. Reads members directly from
+     * the dictionaries, so that it is cheaper to call
+     * {@link #setContext(mondrian.olap.Evaluator)} than to create a
+     * temporary list.
+     */
+    private class OrdinalTupleIterator extends AbstractTupleListIterator {
+        OrdinalTupleList list() {
+            return OrdinalTupleList.this;
+        }
+
+        public void setContext(Evaluator evaluator) {
+            for (int i = 0, x = lastRet * arity; i < arity; i++) {
+                evaluator.setContext(
+                    dictionaries[i].members.get(data[x + i]));
+            }
+        }
+
+        public Member member(int column) {
+            return dictionaries[column].members.get(
+                data[lastRet * arity + column]);
+        }
+
+        public void currentToArray(Member[] members, int offset) {
+            for (int i = 0, x = lastRet * arity; i < arity; i++) {
+                members[offset + i] = dictionaries[i].members.get(data[x + i]);
+            }
+        }
+    }
+
+    /**
+     * Distinct members of a column, each with its ordinal.
+     *
+     * <p>A dictionary that is shared between lists is never modified; a list
+     * that needs to add a member to a shared dictionary first copies it.
+     */
+    private static class Dictionary {
+        final List<Member> members;
+        final Map<Member, Integer> ordinals;
+        boolean shared;
+
+        Dictionary() {
+            this.members = new ArrayList<Member>();
+            this.ordinals = new IdentityHashMap<Member, Integer>();
+        }
+
+        Dictionary(Dictionary dictionary) {
+            this.members = new ArrayList<Member>(dictionary.members);
+            this.ordinals =
+                new IdentityHashMap<Member, Integer>(dictionary.ordinals);
+        }
+
+        int add(Member member) {
+            final int ordinal = members.size();
+            members.add(member);
+            ordinals.put(member, ordinal);
+            return ordinal;
+        }
+    }
+}
+
+// End OrdinalTupleList.java
@@ -9,8 +9,10 @@
 
 package mondrian.calc.impl;
 
-import mondrian.calc.Calc;
+import mondrian.calc.*;
 import mondrian.olap.*;
+import mondrian.olap.fun.FunUtil;
+import mondrian.rolap.RolapUtil;
 
 /**
  * Expression which yields the value of the current member in the current
@@ -21,7 +23,7 @@ import mondrian.olap.*;
  * @author jhyde
  * @since Sep 27, 2005
  */
-public class ValueCalc extends GenericCalc {
+public class ValueCalc extends GenericCalc implements BatchDoubleCalc {
     /**
      * Creates a ValueCalc.
      *
@@ -35,6 +37,47 @@ public class ValueCalc extends GenericCalc {
         return evaluator.evaluateCurrent();
     }
 
+    public int evaluateDoubles(
+        Evaluator evaluator,
+        TupleList list,
+        double[] values)
+    {
+        final int savepoint = evaluator.savepoint();
+        try {
+            int errorCount = 0;
+            final TupleCursor cursor = list.tupleCursor();
+            for (int i = 0; cursor.forward(); i++) {
+                cursor.setContext(evaluator);
+                errorCount +=
+                    storeDouble(evaluator.evaluateCurrent(), values, i);
+            }
+            return errorCount;
+        } finally {
+            evaluator.restore(savepoint);
+        }
+    }
+
+    /**
+     * Converts the value of a cell to a <code>double</code> and stores it in
+     * an array, as required by {@link BatchDoubleCalc#evaluateDoubles}.
+     *
+     * @param o Cell value
+     * @param values Array of results
+     * @param i Index in array
+     * @return 1 if the value is not available yet, otherwise 0
+     */
+    static int storeDouble(Object o, double[] values, int i) {
+        if (o == null || o == Util.nullValue) {
+            values[i] = FunUtil.DoubleNull;
+        } else if (o == RolapUtil.valueNotReadyException) {
+            values[i] = Double.NaN;
+            return 1;
+        } else {
+            values[i] = ((Number) o).doubleValue();
+        }
+        return 0;
+    }
+
     public boolean dependsOn(Hierarchy hierarchy) {
         return true;
     }
@@ -96,6 +96,101 @@ public class Formula extends QueryPart {
         return x2;
     }
 
+    /**
+     * Copies formulas so that each copy defines a new member or set.
+     *
+     * <p>A copy made by {@link #clone()} shares the member or set of its
+     * original, and validating the copy sets properties of that member. The
+     * copies made by this method have members and sets of their own, and
+     * their expressions refer to the new members and sets wherever the
+     * originals' expressions referred to the old ones. Each old member and set
+     * is mapped to its replacement in {@code elementMap}, so that the caller
+     * can redirect the other expressions of the query using
+     * {@link #replaceElements(Exp, Map)}.</p>
+     *
+     * @param formulas Formulas whose members and sets have been created
+     * @param elementMap Identity map to which to add each old member and set
+     *   and its replacement
+     * @return Copies of the formulas
+     */
+    public static Formula[] cloneWithNewElements(
+        Formula[] formulas,
+        Map<OlapElement, OlapElement> elementMap)
+    {
+        final Formula[] formulas2 = new Formula[formulas.length];
+        final Map<NamedSet, Formula> setFormulas =
+            new IdentityHashMap<NamedSet, Formula>();
+        for (int i = 0; i < formulas.length; i++) {
+            final Formula formula = formulas[i];
+            final Formula formula2 =
+                new Formula(
+                    formula.isMember,
+                    formula.id,
+                    formula.exp.clone(),
+                    MemberProperty.cloneArray(formula.memberProperties),
+                    null,
+                    null);
+            if (formula.isMember) {
+                final Member member = formula.mdxMember;
+                formula2.mdxMember =
+                    member.getHierarchy().createMember(
+                        member.getParentMember(),
+                        member.getLevel(),
+                        member.getName(),
+                        formula2);
+                elementMap.put(member, formula2.mdxMember);
+            } else {
+                setFormulas.put(formula.mdxSet, formula2);
+            }
+            formulas2[i] = formula2;
+        }
+        // A set is created from its expression, so the expression must refer
+        // to the new elements first; the replacer creates each set when it
+        // is first referenced.
+        final ElementReplacer replacer =
+            new ElementReplacer(elementMap, setFormulas);
+        for (int i = 0; i < formulas.length; i++) {
+            final Formula formula2 = formulas2[i];
+            if (formula2.isMember) {
+                formula2.exp = replacer.replace(formula2.exp);
+                for (int j = 0; j < formula2.memberProperties.length; j++) {
+                    final MemberProperty memberProperty =
+                        formula2.memberProperties[j];
+                    final Exp exp = replacer.replace(memberProperty.getExp());
+                    if (exp != memberProperty.getExp()) {
+                        formula2.memberProperties[j] =
+                            new MemberProperty(memberProperty.getName(), exp);
+                    }
+                }
+            } else {
+                replacer.replace(formulas[i].mdxSet);
+            }
+        }
+        return formulas2;
+    }
+
+    /**
+     * Redirects the references that an expression makes to members and sets
+     * to their replacements.
+     *
+     * <p>Calls are modified in place, so the expression should be a copy.</p>
+     *
+     * @param exp Validated expression
+     * @param elementMap Identity map from members and sets to their
+     *   replacements, as populated by
+     *   {@link #cloneWithNewElements(Formula[], Map)}
+     * @return Expression, or a replacement if the expression is itself a
+     *   reference to a member or set in the map
+     */
+    public static Exp replaceElements(
+        Exp exp,
+        Map<OlapElement, OlapElement> elementMap)
+    {
+        return new ElementReplacer(
+            elementMap, Collections.<NamedSet, Formula>emptyMap())
+            .replace(exp);
+    }
+
     /**
      * Resolves identifiers into objects.
      *
@@ -625,6 +720,61 @@ public class Formula extends QueryPart {
                 member.getPropertyValue(Property.FORMAT_EXP_PARSED.name);
         }
     }
+
+    /**
+     * Redirects references to members and sets to their replacements.
+     *
+     * @see Formula#cloneWithNewElements(Formula[], Map)
+     */
+    private static class ElementReplacer {
+        private final Map<OlapElement, OlapElement> elementMap;
+        private final Map<NamedSet, Formula> setFormulas;
+
+        ElementReplacer(
+            Map<OlapElement, OlapElement> elementMap,
+            Map<NamedSet, Formula> setFormulas)
+        {
+            this.elementMap = elementMap;
+            this.setFormulas = setFormulas;
+        }
+
+        Exp replace(Exp exp) {
+            if (exp instanceof MemberExpr) {
+                final Member member = ((MemberExpr) exp).getMember();
+                final Member member2 = (Member) elementMap.get(member);
+                return member2 == null ? exp : new MemberExpr(member2);
+            }
+            if (exp instanceof NamedSetExpr) {
+                final NamedSet namedSet = ((NamedSetExpr) exp).getNamedSet();
+                final NamedSet namedSet2 = replace(namedSet);
+                return namedSet2 == namedSet
+                    ? exp
+                    : new NamedSetExpr(namedSet2);
+            }
+            if (exp instanceof ResolvedFunCall) {
+                final Exp[] args = ((ResolvedFunCall) exp).getArgs();
+                for (int i = 0; i < args.length; i++) {
+                    args[i] = replace(args[i]);
+                }
+            }
+            return exp;
+        }
+
+        NamedSet replace(NamedSet namedSet) {
+            final NamedSet namedSet2 = (NamedSet) elementMap.get(namedSet);
+            if (namedSet2 != null) {
+                return namedSet2;
+            }
+            final Formula formula2 = setFormulas.get(namedSet);
+            if (formula2 == null) {
+                return namedSet;
+            }
+            formula2.exp = replace(formula2.exp);
+            formula2.createElement(null);
+            elementMap.put(namedSet, formula2.mdxSet);
+            return formula2.mdxSet;
+        }
+    }
 }
 
 // End Formula.java
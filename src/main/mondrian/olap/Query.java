@@ -248,6 +248,13 @@ public class Query extends QueryPart {
         return cellProps.length == 0;
     }
 
+    /**
+     * Returns the cell properties requested by this query.
+     */
+    public QueryPart[] getCellProperties() {
+        return cellProps;
+    }
+
     /**
      * Adds a new formula specifying a set
      * to an existing query.
@@ -24,7 +24,9 @@ import java.util.*;
  * {@link QueryTiming#markStart(String)}
  * before executing, and {@link QueryTiming#markEnd(String)} afterwards, or can
  * track execution times manually and call
- * {@link QueryTiming#markFull(String, long)}.
+ * {@link QueryTiming#markFull(String, long)}. Code can also count events,
+ * such as work that was avoided, by calling
+ * {@link QueryTiming#markCount(String, long)}.
  *
  * <p>To read timing information, add a handler to the statement using
  * {@link mondrian.server.Statement#enableProfiling} and implement the
@@ -40,6 +42,7 @@ public class QueryTiming {
         new HashMap<String, List<StartEnd>>();
     private final Map<String, DurationCount> fullTimings =
         new HashMap<String, DurationCount>();
+    private final Map<String, Long> counts = new HashMap<String, Long>();
 
     /**
      * Initializes (or re-initializes) a query timing, also setting whether
@@ -52,6 +55,7 @@ public class QueryTiming {
         currentTimings.clear();
         timings.clear();
         fullTimings.clear();
+        counts.clear();
     }
 
     public void done() {
@@ -92,6 +96,19 @@ public class QueryTiming {
         }
     }
 
+    /**
+     * Adds to a counter of a Query component's activity.
+     *
+     * @param name Name of the counter
+     * @param count Amount to add
+     */
+    public synchronized final void markCount(String name, long count) {
+        if (enabled) {
+            final Long previous = counts.get(name);
+            counts.put(name, previous == null ? count : previous + count);
+        }
+    }
+
     private void markStartInternal(String name) {
         currentTimings.push(new TimingInfo(name));
     }
@@ -161,6 +178,14 @@ public class QueryTiming {
                 .append(entry.getValue().duration / entry.getValue().count)
                 .append("ms/invocation)");
         }
+        for (Map.Entry<String, Long> entry : counts.entrySet()) {
+            if (sb.length() > 0) {
+                sb.append(Util.nl);
+            }
+            sb.append(entry.getKey())
+                .append(" counted ")
+                .append(entry.getValue());
+        }
         return sb.toString();
     }
 
@@ -196,6 +221,22 @@ public class QueryTiming {
         return timingList;
     }
 
+    /**
+     * @return a collection of the names of all counters
+     */
+    public synchronized Collection<String> getCountKeys() {
+        return new HashSet<String>(counts.keySet());
+    }
+
+    /**
+     * @param key Name of the counter
+     * @return Value of the counter, or 0 if nothing has been counted
+     */
+    public synchronized long getCount(String key) {
+        final Long count = counts.get(key);
+        return count == null ? 0L : count;
+    }
+
     private static class TimingInfo {
         private final String name;
         private final long startTime;
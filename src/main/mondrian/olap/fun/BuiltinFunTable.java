@@ -1402,10 +1402,8 @@ public class BuiltinFunTable extends FunTableImpl {
             {
                 final DoubleCalc calc0 = compiler.compileDouble(call.getArg(0));
                 final DoubleCalc calc1 = compiler.compileDouble(call.getArg(1));
-                return new AbstractDoubleCalc(call, new Calc[] {calc0, calc1}) {
-                    public double evaluateDouble(Evaluator evaluator) {
-                        final double v0 = calc0.evaluateDouble(evaluator);
-                        final double v1 = calc1.evaluateDouble(evaluator);
+                return new ArithmeticCalc(call, calc0, calc1) {
+                    protected double combine(double v0, double v1) {
                         if (v0 == DoubleNull) {
                             if (v1 == DoubleNull) {
                                 return DoubleNull;
@@ -1435,10 +1433,8 @@ public class BuiltinFunTable extends FunTableImpl {
             {
                 final DoubleCalc calc0 = compiler.compileDouble(call.getArg(0));
                 final DoubleCalc calc1 = compiler.compileDouble(call.getArg(1));
-                return new AbstractDoubleCalc(call, new Calc[] {calc0, calc1}) {
-                    public double evaluateDouble(Evaluator evaluator) {
-                        final double v0 = calc0.evaluateDouble(evaluator);
-                        final double v1 = calc1.evaluateDouble(evaluator);
+                return new ArithmeticCalc(call, calc0, calc1) {
+                    protected double combine(double v0, double v1) {
                         if (v0 == DoubleNull) {
                             if (v1 == DoubleNull) {
                                 return DoubleNull;
@@ -1468,10 +1464,8 @@ public class BuiltinFunTable extends FunTableImpl {
             {
                 final DoubleCalc calc0 = compiler.compileDouble(call.getArg(0));
                 final DoubleCalc calc1 = compiler.compileDouble(call.getArg(1));
-                return new AbstractDoubleCalc(call, new Calc[] {calc0, calc1}) {
-                    public double evaluateDouble(Evaluator evaluator) {
-                        final double v0 = calc0.evaluateDouble(evaluator);
-                        final double v1 = calc1.evaluateDouble(evaluator);
+                return new ArithmeticCalc(call, calc0, calc1) {
+                    protected double combine(double v0, double v1) {
                         // Multiply and divide return null if EITHER arg is
                         // null.
                         if (v0 == DoubleNull || v1 == DoubleNull) {
@@ -1508,12 +1502,8 @@ public class BuiltinFunTable extends FunTableImpl {
                 // Null. This is only used by certain applications and does not
                 // conform to MSAS behavior.
                 if (!isNullDenominatorProducesNull) {
-                    return new AbstractDoubleCalc(
-                        call, new Calc[] {calc0, calc1})
-                    {
-                        public double evaluateDouble(Evaluator evaluator) {
-                            final double v0 = calc0.evaluateDouble(evaluator);
-                            final double v1 = calc1.evaluateDouble(evaluator);
+                    return new ArithmeticCalc(call, calc0, calc1) {
+                        protected double combine(double v0, double v1) {
                             // Null in numerator always returns DoubleNull.
                             //
                             if (v0 == DoubleNull) {
@@ -1527,12 +1517,8 @@ public class BuiltinFunTable extends FunTableImpl {
                         }
                     };
                 } else {
-                    return new AbstractDoubleCalc(
-                        call, new Calc[] {calc0, calc1})
-                    {
-                        public double evaluateDouble(Evaluator evaluator) {
-                            final double v0 = calc0.evaluateDouble(evaluator);
-                            final double v1 = calc1.evaluateDouble(evaluator);
+                    return new ArithmeticCalc(call, calc0, calc1) {
+                        protected double combine(double v0, double v1) {
                             // Null in numerator or denominator returns
                             // DoubleNull.
                             if (v0 == DoubleNull || v1 == DoubleNull) {
@@ -1556,9 +1542,26 @@ public class BuiltinFunTable extends FunTableImpl {
             public Calc compileCall(ResolvedFunCall call, ExpCompiler compiler)
             {
                 final DoubleCalc calc = compiler.compileDouble(call.getArg(0));
-                return new AbstractDoubleCalc(call, new Calc[] {calc}) {
+                return new AbstractBatchDoubleCalc(call, new Calc[] {calc}) {
                     public double evaluateDouble(Evaluator evaluator) {
-                        final double v = calc.evaluateDouble(evaluator);
+                        return negate(calc.evaluateDouble(evaluator));
+                    }
+
+                    public int evaluateDoubles(
+                        Evaluator evaluator,
+                        TupleList list,
+                        double[] values)
+                    {
+                        final int errorCount =
+                            FunUtil.evaluateDoubles(
+                                evaluator, list, calc, values);
+                        for (int i = 0, n = list.size(); i < n; i++) {
+                            values[i] = negate(values[i]);
+                        }
+                        return errorCount;
+                    }
+
+                    private double negate(double v) {
                         if (v == DoubleNull) {
                             return DoubleNull;
                         } else {
@@ -2096,6 +2099,59 @@ public class BuiltinFunTable extends FunTableImpl {
         return instance;
     }
 
+    /**
+     * Compiled expression for a binary arithmetic operator.
+     *
+     * <p>Evaluated over a list of tuples, it evaluates each operand over the
+     * whole list, then combines the two arrays of values.
+     */
+    private static abstract class ArithmeticCalc
+        extends AbstractBatchDoubleCalc
+    {
+        private final DoubleCalc calc0;
+        private final DoubleCalc calc1;
+
+        ArithmeticCalc(
+            ResolvedFunCall call,
+            DoubleCalc calc0,
+            DoubleCalc calc1)
+        {
+            super(call, new Calc[] {calc0, calc1});
+            this.calc0 = calc0;
+            this.calc1 = calc1;
+        }
+
+        public double evaluateDouble(Evaluator evaluator) {
+            final double v0 = calc0.evaluateDouble(evaluator);
+            final double v1 = calc1.evaluateDouble(evaluator);
+            return combine(v0, v1);
+        }
+
+        public int evaluateDoubles(
+            Evaluator evaluator,
+            TupleList list,
+            double[] values)
+        {
+            final int n = list.size();
+            final double[] values1 = new double[n];
+            final int errorCount =
+                FunUtil.evaluateDoubles(evaluator, list, calc0, values)
+                + FunUtil.evaluateDoubles(evaluator, list, calc1, values1);
+            for (int i = 0; i < n; i++) {
+                values[i] = combine(values[i], values1[i]);
+            }
+            return errorCount;
+        }
+
+        /**
+         * Applies the operator to the values of its operands.
+         *
+         * @param v0 Value of left operand, or DoubleNull
+         * @param v1 Value of right operand, or DoubleNull
+         * @return Result, or DoubleNull
+         */
+        protected abstract double combine(double v0, double v1);
+    }
 }
 
 // End BuiltinFunTable.java
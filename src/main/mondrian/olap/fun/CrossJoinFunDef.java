@@ -17,7 +17,9 @@ import mondrian.mdx.*;
 import mondrian.olap.*;
 import mondrian.olap.type.*;
 import mondrian.rolap.RolapEvaluator;
+import mondrian.resource.MondrianResource;
 import mondrian.rolap.RolapUtil;
+import mondrian.server.Locus;
 import mondrian.util.CartesianProductList;
 
 import java.util.*;
@@ -40,6 +42,12 @@ public class CrossJoinFunDef extends FunDefBase {
     static final StarCrossJoinResolver StarResolver =
         new StarCrossJoinResolver();
 
+    /**
+     * Number of tuples that {@link #nonEmptyProduct} visits between checks
+     * for cancellation or timeout, which take a lock.
+     */
+    private static final int CHECK_CANCEL_INTERVAL = 1000;
+
     private static int counterTag = 0;
 
     // used to tell the difference between crossjoin expressions.
@@ -184,6 +192,12 @@ public class CrossJoinFunDef extends FunDefBase {
             IterCalc calc2 = (IterCalc) calcs[1];
 
             TupleIterable o1 = calc1.evaluateIterable(evaluator);
+            if (!(o1 instanceof TupleList) && isPruning(evaluator)) {
+                // A list can be optimized and pruned; and if the argument is
+                // itself a pruned crossjoin, it contains only tuples that
+                // have data.
+                o1 = TupleCollections.materialize(o1, true);
+            }
             if (o1 instanceof TupleList) {
                 TupleList l1 = (TupleList) o1;
                 l1 = nonEmptyOptimizeList(evaluator, l1, call);
@@ -194,6 +208,9 @@ public class CrossJoinFunDef extends FunDefBase {
             }
 
             TupleIterable o2 = calc2.evaluateIterable(evaluator);
+            if (!(o2 instanceof TupleList) && isPruning(evaluator)) {
+                o2 = TupleCollections.materialize(o2, true);
+            }
             if (o2 instanceof TupleList) {
                 TupleList l2 = (TupleList) o2;
                 l2 = nonEmptyOptimizeList(evaluator, l2, call);
@@ -203,6 +220,13 @@ public class CrossJoinFunDef extends FunDefBase {
                 o2 = l2;
             }
 
+            if (o1 instanceof TupleList && o2 instanceof TupleList) {
+                final List<TupleList> lists =
+                    Arrays.asList((TupleList) o1, (TupleList) o2);
+                if (canPruneProduct(evaluator, lists)) {
+                    return nonEmptyProduct(evaluator, lists, call);
+                }
+            }
             return makeIterable(o1, o2);
         }
 
@@ -365,6 +389,10 @@ public class CrossJoinFunDef extends FunDefBase {
                     l1.getArity() + l2.getArity());
             }
 
+            final List<TupleList> lists = Arrays.asList(l1, l2);
+            if (canPruneProduct(evaluator, lists)) {
+                return toOrdinalList(nonEmptyProduct(evaluator, lists, call));
+            }
             return makeList(l1, l2);
         }
 
@@ -438,18 +466,12 @@ public class CrossJoinFunDef extends FunDefBase {
             super(call, calcs, true);
         }
 
-        @SuppressWarnings({"unchecked"})
         protected TupleList makeList(final TupleList l1, final TupleList l2) {
             final int arity = l1.getArity() + l2.getArity();
-            final List<Member> members =
-                new ArrayList<Member>(arity * l1.size() * l2.size());
-            for (List<Member> ma1 : l1) {
-                for (List<Member> ma2 : l2) {
-                    members.addAll(ma1);
-                    members.addAll(ma2);
-                }
-            }
-            return new ListTupleList(arity, members);
+            final OrdinalTupleList result =
+                new OrdinalTupleList(arity, l1.size() * l2.size());
+            result.addProduct(Arrays.asList(l1, l2));
+            return result;
         }
     }
 
@@ -503,6 +525,253 @@ public class CrossJoinFunDef extends FunDefBase {
         return list;
     }
 
+    private static boolean isPruning(Evaluator evaluator) {
+        return MondrianProperties.instance().EnableCrossJoinPruning.get()
+            && evaluator.isNonEmpty();
+    }
+
+    /**
+     * Returns whether the non-empty tuples of a cross join should be found
+     * by {@link #nonEmptyProduct}, rather than by building the cartesian
+     * product and leaving the empty tuples to be removed later.
+     *
+     * @param evaluator Evaluator
+     * @param lists Lists to be joined
+     * @return Whether to prune the cross join
+     */
+    protected boolean canPruneProduct(
+        Evaluator evaluator,
+        List<TupleList> lists)
+    {
+        if (!isPruning(evaluator)) {
+            return false;
+        }
+        long size = 1;
+        for (TupleList list : lists) {
+            if (list.isEmpty()) {
+                return false;
+            }
+            for (Member member : list.get(0)) {
+                if (member.isMeasure()
+                    || member.getDimension().isHighCardinality())
+                {
+                    return false;
+                }
+            }
+            size *= (long) list.size();
+        }
+        return size
+            > MondrianProperties.instance().CrossJoinOptimizerSize.get();
+    }
+
+    /**
+     * Returns the tuples of the cartesian product of some lists that contain
+     * data, without building the product.
+     *
+     * <p>The cursor walks the product depth-first. Each time it has chosen a
+     * tuple from one of the lists, it probes the prefix, with the hierarchies
+     * of the remaining lists at their All member, in the same way as
+     * {@link #nonEmptyList}. If the prefix has no data, then no tuple that
+     * starts with it has data, and the whole branch is skipped. The full
+     * tuple is probed before it is returned.
+     *
+     * <p>A prefix is probed only if the hierarchies of the remaining lists
+     * all have an All member, and the remaining lists contain no calculated
+     * members.
+     *
+     * <p>Probes are answered from the cell cache. If a prefix's cells are
+     * not in the cache, the branch is skipped; the cells are requested, and
+     * the caller will evaluate the expression again after they have been
+     * loaded, at which point the prefix can be probed. A full tuple whose
+     * cells are not in the cache is returned.
+     *
+     * <p>The number of tuples visited is checked against
+     * {@link MondrianProperties#IterationLimit}, and the number of tuples
+     * returned against {@link MondrianProperties#ResultLimit}. Every
+     * {@link #CHECK_CANCEL_INTERVAL} tuples, the cursor checks whether the
+     * statement has been canceled or has timed out.
+     *
+     * @param evaluator Evaluator
+     * @param lists Lists to be joined; none is empty
+     * @param call Calling ResolvedFunCall used to determine what Measures
+     *     to use
+     * @return Iterable over the tuples that contain data
+     */
+    protected TupleIterable nonEmptyProduct(
+        Evaluator evaluator,
+        final List<TupleList> lists,
+        ResolvedFunCall call)
+    {
+        final int n = lists.size();
+        final int[] offsets = new int[n + 1];
+        final List<Member> firstMembers = new ArrayList<Member>();
+        for (int i = 0; i < n; i++) {
+            final TupleList list = lists.get(i);
+            offsets[i + 1] = offsets[i] + list.getArity();
+            firstMembers.addAll(list.get(0));
+        }
+
+        // For each list but the last, the All members of the hierarchies of
+        // the lists after it; or null if a prefix that ends with a tuple of
+        // that list cannot be probed.
+        final List<List<Member>> laterAllMembers =
+            new ArrayList<List<Member>>(
+                Collections.<List<Member>>nCopies(n - 1, null));
+        final List<Member> allMembers = new ArrayList<Member>();
+        for (int i = n - 1; i > 0; i--) {
+            if (!canProbeBefore(lists.get(i), allMembers)) {
+                break;
+            }
+            laterAllMembers.set(i - 1, new ArrayList<Member>(allMembers));
+        }
+
+        final EmptinessProbe probe = createProbe(evaluator, firstMembers, call);
+        final Evaluator evaluator1 = evaluator.push();
+        evaluator1.setContext(probe.allMemberList);
+        final int iterationLimit =
+            MondrianProperties.instance().IterationLimit.get();
+
+        return new AbstractTupleIterable(offsets[n]) {
+            public TupleCursor tupleCursor() {
+                return new AbstractTupleCursor(getArity()) {
+                    final Evaluator evaluator2 = evaluator1.push();
+                    final TupleCursor[] cursors = new TupleCursor[n];
+                    final Member[] members = new Member[arity];
+                    int depth = 0;
+                    int iterationCount;
+                    long resultCount;
+
+                    {
+                        cursors[0] = lists.get(0).tupleCursor();
+                    }
+
+                    public boolean forward() {
+                        while (depth >= 0) {
+                            final TupleCursor cursor = cursors[depth];
+                            if (!cursor.forward()) {
+                                --depth;
+                                continue;
+                            }
+                            ++iterationCount;
+                            if (iterationCount % CHECK_CANCEL_INTERVAL == 0) {
+                                Locus.peek().execution.checkCancelOrTimeout();
+                            }
+                            if (iterationLimit > 0
+                                && iterationCount > iterationLimit)
+                            {
+                                throw MondrianResource.instance()
+                                    .IterationLimitExceeded.ex(iterationLimit);
+                            }
+                            cursor.setContext(evaluator2);
+                            if (depth == n - 1) {
+                                if (probe.isNonEmpty(evaluator2)) {
+                                    Util.checkCJResultLimit(++resultCount);
+                                    return true;
+                                }
+                                continue;
+                            }
+                            final List<Member> allMembers =
+                                laterAllMembers.get(depth);
+                            if (allMembers != null) {
+                                evaluator2.setContext(allMembers);
+                                final int missCount =
+                                    evaluator2.getMissCount();
+                                if (!probe.isNonEmpty(evaluator2)
+                                    || evaluator2.getMissCount() > missCount)
+                                {
+                                    // Prefix is empty, or we will not know
+                                    // until its cells have been loaded.
+                                    continue;
+                                }
+                            }
+                            ++depth;
+                            cursors[depth] = lists.get(depth).tupleCursor();
+                        }
+                        return false;
+                    }
+
+                    public List<Member> current() {
+                        currentToArray(members, 0);
+                        return Util.flatListCopy(members);
+                    }
+
+                    @Override
+                    public Member member(int column) {
+                        int i = 0;
+                        while (column >= offsets[i + 1]) {
+                            ++i;
+                        }
+                        return cursors[i].member(column - offsets[i]);
+                    }
+
+                    @Override
+                    public void setContext(Evaluator evaluator) {
+                        for (TupleCursor cursor : cursors) {
+                            cursor.setContext(evaluator);
+                        }
+                    }
+
+                    @Override
+                    public void currentToArray(
+                        Member[] members,
+                        int offset)
+                    {
+                        for (int i = 0; i < n; i++) {
+                            cursors[i].currentToArray(
+                                members, offset + offsets[i]);
+                        }
+                    }
+                };
+            }
+        };
+    }
+
+    /**
+     * Returns whether a prefix can be probed with the hierarchies of a given
+     * list at their All member; if so, adds those All members to a list.
+     *
+     * @param list List that follows the prefix
+     * @param allMembers List to which to add All members
+     * @return Whether a prefix before this list can be probed
+     */
+    private static boolean canProbeBefore(
+        TupleList list,
+        List<Member> allMembers)
+    {
+        for (Member member : list.get(0)) {
+            if (!member.getHierarchy().hasAll()) {
+                return false;
+            }
+        }
+        final TupleCursor cursor = list.tupleCursor();
+        while (cursor.forward()) {
+            for (int i = 0; i < list.getArity(); i++) {
+                if (cursor.member(i).isCalculated()) {
+                    return false;
+                }
+            }
+        }
+        for (Member member : list.get(0)) {
+            allMembers.add(member.getHierarchy().getAllMember());
+        }
+        return true;
+    }
+
+    /**
+     * Copies the tuples of an iterable into a list.
+     *
+     * @param iterable Iterable of arity 2 or more
+     * @return List
+     */
+    static TupleList toOrdinalList(TupleIterable iterable) {
+        final OrdinalTupleList list = new OrdinalTupleList(iterable.getArity());
+        final TupleCursor cursor = iterable.tupleCursor();
+        while (cursor.forward()) {
+            list.addCurrent(cursor);
+        }
+        return list;
+    }
+
     public static TupleList mutableCrossJoin(
         TupleList list1,
         TupleList list2)
@@ -531,40 +800,20 @@ public class CrossJoinFunDef extends FunDefBase {
 
         Util.checkCJResultLimit(size);
 
+        if (arity == 1) {
+            // A single list of members.
+            return new UnaryTupleList(
+                new ArrayList<Member>(lists.get(0).slice(0)));
+        }
+
         // Now we can safely cast size to an integer. It still might be very
         // large - which means we're allocating a huge array which we might
         // pare down later by applying NON EMPTY constraints - which is a
-        // concern.
-        List<Member> result = new ArrayList<Member>((int) size * arity);
-
-        final Member[] partialArray = new Member[arity];
-        final List<Member> partial = Arrays.asList(partialArray);
-        cartesianProductRecurse(0, lists, partial, partialArray, 0, result);
-        return new ListTupleList(arity, result);
-    }
-
-    private static void cartesianProductRecurse(
-        int i,
-        List<TupleList> lists,
-        List<Member> partial,
-        Member[] partialArray,
-        int partialSize,
-        List<Member> result)
-    {
-        final TupleList tupleList = lists.get(i);
-        final int partialSizeNext = partialSize + tupleList.getArity();
-        final int iNext = i + 1;
-        final TupleCursor cursor = tupleList.tupleCursor();
-        while (cursor.forward()) {
-            cursor.currentToArray(partialArray, partialSize);
-            if (i == lists.size() - 1) {
-                result.addAll(partial);
-            } else {
-                cartesianProductRecurse(
-                    iNext, lists, partial, partialArray, partialSizeNext,
-                    result);
-            }
-        }
+        // concern. But it is an array of ordinals, not of members.
+        final OrdinalTupleList result =
+            new OrdinalTupleList(arity, (int) size);
+        result.addProduct(lists);
+        return result;
     }
 
     /**
@@ -754,9 +1003,52 @@ public class CrossJoinFunDef extends FunDefBase {
         }
 
         TupleList result =
-            TupleCollections.createList(
-                list.getArity(), (list.size() + 2) >> 1);
+            TupleCollections.createCompactList(
+                list, (list.size() + 2) >> 1);
+
+        final EmptinessProbe probe = createProbe(evaluator, list.get(0), call);
+
+        //
+        // Determine if there is any data.
+        //
+        // Put all of the All Members into Evaluator
+        final int savepoint = evaluator.savepoint();
+        try {
+            evaluator.setContext(probe.allMemberList);
+            // Iterate over elements of the input list. If for any
+            // combination of
+            // Measure and non-All Members evaluation is non-null, then
+            // add it to the result List.
+            final TupleCursor cursor = list.tupleCursor();
+            while (cursor.forward()) {
+                cursor.setContext(evaluator);
+                if (probe.isNonEmpty(evaluator)) {
+                    result.addCurrent(cursor);
+                }
+            }
+            return result;
+        } finally {
+            evaluator.restore(savepoint);
+        }
+    }
 
+    /**
+     * Creates a probe that determines whether tuples of given hierarchies
+     * contain data, using the measures of the query and the All members of
+     * the other hierarchies. See {@link #nonEmptyList}.
+     *
+     * @param evaluator Evaluator
+     * @param listMembers Members of a tuple; the hierarchies of these members
+     *     are the ones whose members will be probed
+     * @param call Calling ResolvedFunCall used to determine what Measures
+     *     to use
+     * @return Probe
+     */
+    private EmptinessProbe createProbe(
+        Evaluator evaluator,
+        List<Member> listMembers,
+        ResolvedFunCall call)
+    {
         // Get all of the Measures
         final Query query = evaluator.getQuery();
 
@@ -803,8 +1095,6 @@ public class CrossJoinFunDef extends FunDefBase {
             //
             Member[] evalMembers = evaluator.getMembers().clone();
 
-            List<Member> listMembers = list.get(0);
-
             // Remove listMembers from evalMembers and independentSlicerMembers
             for (Member lm : listMembers) {
                 Hierarchy h = lm.getHierarchy();
@@ -933,33 +1223,7 @@ public class CrossJoinFunDef extends FunDefBase {
             query.putEvalCache(nonAllMembersKey, nonAllMembers);
         }
 
-        //
-        // Determine if there is any data.
-        //
-        // Put all of the All Members into Evaluator
-        final int savepoint = evaluator.savepoint();
-        try {
-            evaluator.setContext(allMemberList);
-            // Iterate over elements of the input list. If for any
-            // combination of
-            // Measure and non-All Members evaluation is non-null, then
-            // add it to the result List.
-            final TupleCursor cursor = list.tupleCursor();
-            while (cursor.forward()) {
-                cursor.setContext(evaluator);
-                if (checkData(
-                        nonAllMembers,
-                        nonAllMembers.length - 1,
-                        measureSet,
-                        evaluator))
-                {
-                    result.addCurrent(cursor);
-                }
-            }
-            return result;
-        } finally {
-            evaluator.restore(savepoint);
-        }
+        return new EmptinessProbe(measureSet, allMemberList, nonAllMembers);
     }
 
     /**
@@ -1019,6 +1283,35 @@ public class CrossJoinFunDef extends FunDefBase {
         return false;
     }
 
+    /**
+     * Determines whether tuples contain data. Before calling
+     * {@link #isNonEmpty}, put the All members into the evaluator, then the
+     * members of the tuple.
+     */
+    private static class EmptinessProbe {
+        final Set<Member> measureSet;
+        final List<Member> allMemberList;
+        final Member[][] nonAllMembers;
+
+        EmptinessProbe(
+            Set<Member> measureSet,
+            List<Member> allMemberList,
+            Member[][] nonAllMembers)
+        {
+            this.measureSet = measureSet;
+            this.allMemberList = allMemberList;
+            this.nonAllMembers = nonAllMembers;
+        }
+
+        boolean isNonEmpty(Evaluator evaluator) {
+            return checkData(
+                nonAllMembers,
+                nonAllMembers.length - 1,
+                measureSet,
+                evaluator);
+        }
+    }
+
     private static class StarCrossJoinResolver extends MultiResolver {
         public StarCrossJoinResolver() {
             super(
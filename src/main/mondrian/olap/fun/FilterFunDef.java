@@ -151,8 +151,8 @@ class FilterFunDef extends FunDefBase {
 
                 // make list mutable; guess selectivity .5
                 TupleList result =
-                    TupleCollections.createList(
-                        list.getArity(), list.size() / 2);
+                    TupleCollections.createCompactList(
+                        list, list.size() / 2);
                 evaluator.setNonEmpty(false);
                 TupleCursor cursor = list.tupleCursor();
                 while (cursor.forward()) {
@@ -183,7 +183,9 @@ class FilterFunDef extends FunDefBase {
             TupleList members = lcalc.evaluateList(evaluator);
 
             // Not mutable, must create new list
-            TupleList result = members.cloneList(members.size() / 2);
+            TupleList result =
+                TupleCollections.createCompactList(
+                    members, members.size() / 2);
             final int savepoint = evaluator.savepoint();
             try {
                 evaluator.setNonEmpty(false);
@@ -316,7 +318,9 @@ class FilterFunDef extends FunDefBase {
 
             // make list mutable;
             // for capacity planning, guess selectivity = .5
-            TupleList result = members0.cloneList(members0.size() / 2);
+            TupleList result =
+                TupleCollections.createCompactList(
+                    members0, members0.size() / 2);
             final int savepoint = evaluator.savepoint();
             try {
                 evaluator.setNonEmpty(false);
@@ -352,7 +356,9 @@ class FilterFunDef extends FunDefBase {
 
                 // Not mutable, must create new list;
                 // for capacity planning, guess selectivity = .5
-                TupleList result = members0.cloneList(members0.size() / 2);
+                TupleList result =
+                    TupleCollections.createCompactList(
+                        members0, members0.size() / 2);
                 evaluator.setNonEmpty(false);
                 final TupleCursor cursor = members0.tupleCursor();
                 while (cursor.forward()) {
@@ -1294,6 +1294,22 @@ public class FunUtil extends Util {
         TupleList members,
         Calc calc)
     {
+        if (calc instanceof BatchDoubleCalc) {
+            final double[] values =
+                evaluateBatch(evaluator, members, (BatchDoubleCalc) calc);
+            if (values == null) {
+                return Double.NaN;
+            }
+            boolean found = false;
+            double min = 0;
+            for (double value : values) {
+                if (value != DoubleNull && (!found || value < min)) {
+                    min = value;
+                    found = true;
+                }
+            }
+            return found ? (Object) min : Util.nullValue;
+        }
         SetWrapper sw = evaluateSet(evaluator, members, calc);
         if (sw.errorCount > 0) {
             return Double.NaN;
@@ -1319,6 +1335,22 @@ public class FunUtil extends Util {
         TupleList members,
         Calc exp)
     {
+        if (exp instanceof BatchDoubleCalc) {
+            final double[] values =
+                evaluateBatch(evaluator, members, (BatchDoubleCalc) exp);
+            if (values == null) {
+                return Double.NaN;
+            }
+            boolean found = false;
+            double max = 0;
+            for (double value : values) {
+                if (value != DoubleNull && (!found || value > max)) {
+                    max = value;
+                    found = true;
+                }
+            }
+            return found ? (Object) max : Util.nullValue;
+        }
         SetWrapper sw = evaluateSet(evaluator, members, exp);
         if (sw.errorCount > 0) {
             return Double.NaN;
@@ -1455,6 +1487,24 @@ public class FunUtil extends Util {
         TupleList members,
         Calc calc)
     {
+        if (calc instanceof BatchDoubleCalc) {
+            final double[] values =
+                evaluateBatch(evaluator, members, (BatchDoubleCalc) calc);
+            if (values == null) {
+                return new Double(Double.NaN);
+            }
+            double sum = 0.0;
+            int count = 0;
+            for (double value : values) {
+                if (value != DoubleNull) {
+                    sum += value;
+                    ++count;
+                }
+            }
+            return count == 0
+                ? Util.nullValue
+                : new Double(sum / (double) count);
+        }
         SetWrapper sw = evaluateSet(evaluator, members, calc);
         return (sw.errorCount > 0)
             ? new Double(Double.NaN)
@@ -1488,6 +1538,22 @@ public class FunUtil extends Util {
         TupleList members,
         Calc exp)
     {
+        if (exp instanceof BatchDoubleCalc) {
+            final double[] values =
+                evaluateBatch(evaluator, members, (BatchDoubleCalc) exp);
+            if (values == null) {
+                return Double.NaN;
+            }
+            double sum = 0.0;
+            boolean found = false;
+            for (double value : values) {
+                if (value != DoubleNull) {
+                    sum += value;
+                    found = true;
+                }
+            }
+            return found ? sum : DoubleNull;
+        }
         SetWrapper sw = evaluateSet(evaluator, members, exp);
         if (sw.errorCount > 0) {
             return Double.NaN;
@@ -1507,6 +1573,9 @@ public class FunUtil extends Util {
         TupleIterable iterable,
         Calc exp)
     {
+        if (iterable instanceof TupleList) {
+            return sumDouble(evaluator, (TupleList) iterable, exp);
+        }
         SetWrapper sw = evaluateSet(evaluator, iterable, exp);
         if (sw.errorCount > 0) {
             return Double.NaN;
@@ -1553,6 +1622,63 @@ public class FunUtil extends Util {
         }
     }
 
+    /**
+     * Evaluates a numeric expression in the context of each tuple of a list.
+     *
+     * <p>If the expression is a {@link BatchDoubleCalc}, evaluates the whole
+     * list in one call; otherwise calls
+     * {@link DoubleCalc#evaluateDouble(Evaluator)} once per tuple. On return,
+     * the context of the evaluator is as it was on entry.
+     *
+     * @param evaluator Evaluator
+     * @param list List of tuples
+     * @param calc Expression
+     * @param values Array to receive results, as described in
+     *   {@link BatchDoubleCalc#evaluateDoubles}
+     * @return Number of results that depend on a cell whose value is not
+     *   available yet
+     */
+    public static int evaluateDoubles(
+        Evaluator evaluator,
+        TupleList list,
+        DoubleCalc calc,
+        double[] values)
+    {
+        if (calc instanceof BatchDoubleCalc) {
+            return ((BatchDoubleCalc) calc).evaluateDoubles(
+                evaluator, list, values);
+        }
+        final int savepoint = evaluator.savepoint();
+        try {
+            final TupleCursor cursor = list.tupleCursor();
+            for (int i = 0; cursor.forward(); i++) {
+                cursor.setContext(evaluator);
+                values[i] = calc.evaluateDouble(evaluator);
+            }
+            return 0;
+        } finally {
+            evaluator.restore(savepoint);
+        }
+    }
+
+    /**
+     * Evaluates a batch expression over a list on behalf of an aggregate
+     * function. Returns null if any value is not available yet, in which
+     * case the aggregate function returns {@link Double#NaN}, as if
+     * {@link #evaluateSet} had counted an error.
+     */
+    private static double[] evaluateBatch(
+        Evaluator evaluator,
+        TupleList list,
+        BatchDoubleCalc calc)
+    {
+        final double[] values = new double[list.size()];
+        if (calc.evaluateDoubles(evaluator, list, values) > 0) {
+            return null;
+        }
+        return values;
+    }
+
     /**
      * Evaluates {@code exp} (if defined) over {@code members} to
      * generate a {@link List} of {@link SetWrapper} objects, which contains
@@ -18,6 +18,8 @@ import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.*;
 import mondrian.rolap.RolapEvaluator;
 
+import java.util.Arrays;
+import java.util.List;
 
 /**
  * Definition of the <code>NonEmptyCrossJoin</code> MDX function.
@@ -89,6 +91,11 @@ public class NonEmptyCrossJoinFunDef extends CrossJoinFunDef {
                         return list1;
                     }
                     final TupleList list2 = listCalc2.evaluateList(evaluator);
+                    final List<TupleList> lists = Arrays.asList(list1, list2);
+                    if (canPruneProduct(evaluator, lists)) {
+                        return toOrdinalList(
+                            nonEmptyProduct(evaluator, lists, call));
+                    }
                     TupleList result = mutableCrossJoin(list1, list2);
 
                     // remove any remaining empty crossings from the result
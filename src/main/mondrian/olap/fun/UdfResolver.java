@@ -109,6 +109,19 @@ public class UdfResolver implements Resolver {
         return false;
     }
 
+    /**
+     * Returns whether a function is a user-defined function that does not
+     * declare that it is deterministic. See
+     * {@link UserDefinedFunction.Deterministic}.
+     *
+     * @param funDef Function definition
+     * @return Whether function is a non-deterministic user-defined function
+     */
+    public static boolean isNonDeterministicUdf(FunDef funDef) {
+        return funDef instanceof UdfFunDef
+            && !((UdfFunDef) funDef).isDeterministic();
+    }
+
     public String[] getReservedWords() {
         final String[] reservedWords = udf.getReservedWords();
         return reservedWords == null ? emptyStringArray : reservedWords;
@@ -133,6 +146,10 @@ public class UdfResolver implements Resolver {
             return returnType;
         }
 
+        boolean isDeterministic() {
+            return udf instanceof UserDefinedFunction.Deterministic;
+        }
+
         public Calc compileCall(ResolvedFunCall call, ExpCompiler compiler) {
             final Exp[] args = call.getArgs();
             Calc[] calcs = new Calc[args.length];
@@ -187,22 +187,32 @@ public class CacheControlImpl implements CacheControl {
         if (region instanceof EmptyCellRegion) {
             return;
         }
-        final List<Dimension> dimensionality = region.getDimensionality();
-        boolean found = false;
-        for (Dimension dimension : dimensionality) {
-            if (dimension.isMeasures()) {
-                found = true;
-                break;
+        // Invalidate cached results before the flush, so that no query is
+        // served stale cells while it runs, and again after it, so that a
+        // query that started evaluating during the flush (and may have read
+        // cells that were about to be flushed) is not cached.
+        RolapResultCache.instance().invalidate();
+        try {
+            flushSharedExpResults();
+            final List<Dimension> dimensionality = region.getDimensionality();
+            boolean found = false;
+            for (Dimension dimension : dimensionality) {
+                if (dimension.isMeasures()) {
+                    found = true;
+                    break;
+                }
             }
-        }
-        if (!found) {
-            throw MondrianResource.instance().CacheFlushRegionMustContainMembers
-                .ex();
-        }
-        final UnionCellRegion union = normalize((CellRegionImpl) region);
-        for (CellRegionImpl cellRegion : union.regions) {
-            // Figure out the bits.
-            flushNonUnion(cellRegion);
+            if (!found) {
+                throw MondrianResource.instance()
+                    .CacheFlushRegionMustContainMembers.ex();
+            }
+            final UnionCellRegion union = normalize((CellRegionImpl) region);
+            for (CellRegionImpl cellRegion : union.regions) {
+                // Figure out the bits.
+                flushNonUnion(cellRegion);
+            }
+        } finally {
+            RolapResultCache.instance().invalidate();
         }
     }
 
@@ -255,6 +265,35 @@ public class CacheControlImpl implements CacheControl {
         return false;
     }
 
+    /**
+     * Removes the validated queries of all schemas, because they may refer to
+     * members that have been flushed or edited.
+     */
+    private void flushQueryPlans() {
+        for (RolapSchema schema : getCachingSchemas()) {
+            schema.queryPlanCache.clear();
+        }
+    }
+
+    /**
+     * Removes the shared expression results of all schemas, because they may
+     * have been computed from cells or members that have been flushed.
+     */
+    private void flushSharedExpResults() {
+        for (RolapSchema schema : getCachingSchemas()) {
+            schema.sharedExpResultCache.clear(true);
+        }
+    }
+
+    private List<RolapSchema> getCachingSchemas() {
+        final List<RolapSchema> schemas =
+            RolapSchemaPool.instance().getRolapSchemas();
+        if (connection != null && connection.getSchema() != null) {
+            schemas.add(connection.getSchema());
+        }
+        return schemas;
+    }
+
     public void flushSchemaCache() {
         RolapSchemaPool.instance().clear();
         // In some cases, the request might originate from a reference
@@ -623,18 +662,28 @@ public class CacheControlImpl implements CacheControl {
     public void flush(MemberSet memberSet) {
         // REVIEW How is flush(s) different to executing createDeleteCommand(s)?
         synchronized (MEMBER_CACHE_LOCK) {
-            final List<CellRegion> cellRegionList = new ArrayList<CellRegion>();
-            ((MemberSetPlus) memberSet).accept(
-                new MemberSetVisitorImpl() {
-                    public void visit(RolapMember member) {
-                        flushMember(member, cellRegionList);
+            // As in flushInternal, invalidate cached results both before and
+            // after the flush.
+            RolapResultCache.instance().invalidate();
+            try {
+                flushQueryPlans();
+                flushSharedExpResults();
+                final List<CellRegion> cellRegionList =
+                    new ArrayList<CellRegion>();
+                ((MemberSetPlus) memberSet).accept(
+                    new MemberSetVisitorImpl() {
+                        public void visit(RolapMember member) {
+                            flushMember(member, cellRegionList);
+                        }
                     }
-                }
-           );
-            // STUB: flush the set: another visitor
+               );
+                // STUB: flush the set: another visitor
 
-            // finally, flush cells now invalid
-            flushRegionList(cellRegionList);
+                // finally, flush cells now invalid
+                flushRegionList(cellRegionList);
+            } finally {
+                RolapResultCache.instance().invalidate();
+            }
         }
     }
 
@@ -822,11 +871,16 @@ public class CacheControlImpl implements CacheControl {
                 "CacheControlImpl.execute",
                 "when modifying the member cache.");
             Locus.push(locus);
+            // As in flushInternal, invalidate cached results both before and
+            // after the edit.
+            RolapResultCache.instance().invalidate();
             try {
                 // Execute the command
                 final List<CellRegion> cellRegionList =
                     new ArrayList<CellRegion>();
                 ((MemberEditCommandPlus) cmd).execute(cellRegionList);
+                flushQueryPlans();
+                flushSharedExpResults();
 
                 // Flush the cells touched by the regions
                 for (CellRegion memberRegion : cellRegionList) {
@@ -889,6 +943,7 @@ public class CacheControlImpl implements CacheControl {
                 // Apply it all.
                 ((MemberEditCommandPlus) cmd).commit();
             } finally {
+                RolapResultCache.instance().invalidate();
                 Locus.pop(locus);
             }
         }
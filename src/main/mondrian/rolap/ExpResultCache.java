@@ -0,0 +1,198 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.calc.TupleList;
+import mondrian.olap.MondrianProperties;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache of the results of expressions, used by
+ * {@link mondrian.olap.Evaluator#getCachedResult}.
+ *
+ * <p>Holds two kinds of result. A valid result was computed when all of the
+ * cells it needed were loaded; a temporary result was computed while cells
+ * were still missing, and is discarded at the end of each phase of
+ * evaluation.</p>
+ *
+ * <p>The size of a result is estimated as the number of objects it holds:
+ * one for a scalar, one per member for a list of members or tuples. When
+ * the total size exceeds
+ * {@link mondrian.olap.MondrianProperties#ExpCacheLimit}, results are
+ * removed, temporary results first, until it is within the limit again.
+ * Removing a result only means that it may be computed again.</p>
+ *
+ * <p>This class is thread-safe. Sizes and counters are updated without
+ * locking, so the limit is approximate.</p>
+ *
+ * @author agent
+ */
+class ExpResultCache {
+    /** Name of the {@link mondrian.olap.QueryTiming} count of hits. */
+    static final String HIT_COUNT = "ExpResultCache.hits";
+
+    /** Name of the {@link mondrian.olap.QueryTiming} count of misses. */
+    static final String MISS_COUNT = "ExpResultCache.misses";
+
+    /**
+     * Name of the {@link mondrian.olap.QueryTiming} count of misses that were
+     * satisfied by the cache shared between statements.
+     */
+    static final String SHARED_HIT_COUNT = "ExpResultCache.sharedHits";
+
+    private final Map<Object, Entry> validMap =
+        new ConcurrentHashMap<Object, Entry>();
+    private final Map<Object, Entry> tmpMap =
+        new ConcurrentHashMap<Object, Entry>();
+    private final AtomicLong size = new AtomicLong();
+    private final AtomicLong hitCount = new AtomicLong();
+    private final AtomicLong missCount = new AtomicLong();
+
+    /**
+     * Number of times that {@link #get(Object)} has returned a temporary
+     * result.
+     */
+    final AtomicLong tmpHitCount = new AtomicLong();
+
+    /**
+     * Number of misses that were satisfied by the shared cache; see
+     * {@link RolapEvaluatorRoot#sharedExpResultCache}.
+     */
+    final AtomicLong sharedHitCount = new AtomicLong();
+
+    /**
+     * Returns a cached result.
+     *
+     * @param key Key
+     * @return Result, or null
+     */
+    Object get(Object key) {
+        Entry entry = validMap.get(key);
+        if (entry == null) {
+            entry = tmpMap.get(key);
+            if (entry == null) {
+                missCount.incrementAndGet();
+                return null;
+            }
+            tmpHitCount.incrementAndGet();
+        }
+        hitCount.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * Caches a result.
+     *
+     * @param key Key
+     * @param value Result; not null
+     * @param valid Whether the result was computed from complete data
+     */
+    void put(Object key, Object value, boolean valid) {
+        final long limit = MondrianProperties.instance().ExpCacheLimit.get();
+        final Entry entry = new Entry(value, sizeOf(value));
+        if (limit > 0 && entry.size > limit) {
+            return;
+        }
+        final Entry previous = (valid ? validMap : tmpMap).put(key, entry);
+        size.addAndGet(
+            previous == null ? entry.size : entry.size - previous.size);
+        if (limit > 0 && size.get() > limit) {
+            evict(tmpMap, limit, key);
+            evict(validMap, limit, key);
+        }
+    }
+
+    /**
+     * Removes results.
+     *
+     * @param clearValid Whether to remove valid results as well as
+     *   temporary results
+     */
+    void clear(boolean clearValid) {
+        if (clearValid) {
+            clear(validMap);
+        }
+        clear(tmpMap);
+    }
+
+    long getHitCount() {
+        return hitCount.get();
+    }
+
+    long getMissCount() {
+        return missCount.get();
+    }
+
+    /**
+     * Returns the estimated total size of the cached results.
+     *
+     * @return Number of objects
+     */
+    long getSize() {
+        return size.get();
+    }
+
+    private void clear(Map<Object, Entry> map) {
+        for (Iterator<Entry> iterator = map.values().iterator();
+            iterator.hasNext();)
+        {
+            size.addAndGet(-iterator.next().size);
+            iterator.remove();
+        }
+    }
+
+    private void evict(Map<Object, Entry> map, long limit, Object keep) {
+        for (Iterator<Map.Entry<Object, Entry>> iterator =
+                map.entrySet().iterator();
+            size.get() > limit && iterator.hasNext();)
+        {
+            final Map.Entry<Object, Entry> entry = iterator.next();
+            if (!entry.getKey().equals(keep)) {
+                size.addAndGet(-entry.getValue().size);
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Estimates the size of a result.
+     *
+     * @param value Result
+     * @return Number of objects
+     */
+    static long sizeOf(Object value) {
+        if (value instanceof TupleList) {
+            final TupleList tupleList = (TupleList) value;
+            return 1 + (long) tupleList.size() * tupleList.getArity();
+        }
+        if (value instanceof Collection) {
+            return 1 + ((Collection) value).size();
+        }
+        return 1;
+    }
+
+    /**
+     * Cached result and its estimated size.
+     */
+    private static class Entry {
+        final Object value;
+        final long size;
+
+        Entry(Object value, long size) {
+            this.value = value;
+            this.size = size;
+        }
+    }
+}
+
+// End ExpResultCache.java
@@ -46,6 +46,8 @@ public class FastBatchingCellReader implements CellReader {
 
     private final int cellRequestLimit;
 
+    private final int pipelineDepth;
+
     private final RolapCube cube;
 
     /**
@@ -82,6 +84,16 @@ public class FastBatchingCellReader implements CellReader {
 
     private final List<CellRequest> cellRequests = new ArrayList<CellRequest>();
 
+    /**
+     * Batches of cell requests that have been sent to the cache manager but
+     * not yet loaded, with the cache manager's response to each. SQL
+     * statements for these batches are executing in the background.
+     */
+    private final List<Pair<List<CellRequest>, BatchLoader.LoadBatchResponse>>
+        dispatchedBatches =
+            new ArrayList<Pair<List<CellRequest>,
+                BatchLoader.LoadBatchResponse>>();
+
     private final Execution execution;
 
     /**
@@ -110,6 +122,8 @@ public class FastBatchingCellReader implements CellReader {
             MondrianProperties.instance().CellBatchSize.get() <= 0
                 ? 100000 // TODO Make this logic into a pluggable algorithm.
                 : MondrianProperties.instance().CellBatchSize.get();
+        pipelineDepth =
+            MondrianProperties.instance().CellBatchPipelineDepth.get();
     }
 
     public Object get(RolapEvaluator evaluator) {
@@ -139,6 +153,7 @@ public class FastBatchingCellReader implements CellReader {
         {
             SegmentWithData segmentWithData = cacheMgr.peek(request);
             if (segmentWithData != null) {
+                SegmentCacheMetrics.instance().recordHit(request.getMeasure());
                 segmentWithData.getStar().register(segmentWithData);
                 final Object o2 =
                     aggMgr.getCellFromCache(request, pinnedSegments);
@@ -172,19 +187,40 @@ public class FastBatchingCellReader implements CellReader {
         ++missCount;
         cellRequests.add(request);
         if (cellRequests.size() % cellRequestLimit == 0) {
+            if (dispatchedBatches.size() < pipelineDepth) {
+                // Send the batch to the cache manager, which starts any SQL
+                // statements it needs, and carry on collecting requests.
+                dispatchBatch();
+                return;
+            }
             // Signal that it's time to ask the cache manager if it has cells
             // we need in the cache. Not really an exception.
             throw CellRequestQuantumExceededException.INSTANCE;
         }
     }
 
+    /**
+     * Sends the current batch of cell requests to the cache manager without
+     * waiting for the segments to load. {@link #loadAggregations()} will
+     * wait for them.
+     */
+    private void dispatchBatch() {
+        final List<CellRequest> batch =
+            new ArrayList<CellRequest>(cellRequests);
+        cellRequests.clear();
+        preloadColumnCardinality(batch);
+        dispatchedBatches.add(Pair.of(batch, executeLoadBatch(batch)));
+    }
+
     /**
      * Returns whether this reader has told a lie. This is the case if there
      * are pending batches to load or if {@link #setDirty(boolean)} has been
      * called.
      */
     public boolean isDirty() {
-        return dirty || !cellRequests.isEmpty();
+        return dirty
+            || !cellRequests.isEmpty()
+            || !dispatchedBatches.isEmpty();
     }
 
     /**
@@ -221,6 +257,12 @@ public class FastBatchingCellReader implements CellReader {
      * should be able to fall back. Even if there are fall backs, only one call
      * needs to be made to the cache manager.</p>
      *
+     * <p>Batches that were sent to the cache manager earlier in the phase,
+     * when the number of requests reached
+     * {@link MondrianProperties#CellBatchSize}, are loaded first; their SQL
+     * statements have been running while the query carried on evaluating
+     * cells.</p>
+     *
      * @return Whether any aggregations were loaded.
      */
     boolean loadAggregations() {
@@ -228,26 +270,46 @@ public class FastBatchingCellReader implements CellReader {
             return false;
         }
 
+        for (Pair<List<CellRequest>, BatchLoader.LoadBatchResponse> batch
+            : dispatchedBatches)
+        {
+            loadBatch(batch.left, batch.right);
+        }
+        dispatchedBatches.clear();
+
+        final List<CellRequest> cellRequests1 =
+            new ArrayList<CellRequest>(cellRequests);
+        preloadColumnCardinality(cellRequests1);
+        loadBatch(cellRequests1, null);
+
+        dirty = false;
+        cellRequests.clear();
+        return true;
+    }
+
+    /**
+     * Loads the segments needed by a batch of cell requests into this
+     * statement's local cache.
+     *
+     * @param cellRequests1 Cell requests; modified by this method
+     * @param firstResponse Response of the cache manager to the requests, if
+     *   they have already been sent, otherwise null
+     */
+    private void loadBatch(
+        List<CellRequest> cellRequests1,
+        BatchLoader.LoadBatchResponse firstResponse)
+    {
         // List of futures yielding segments populated by SQL statements. If
         // loading requires several iterations, we just append to the list. We
         // don't mind if it takes a while for SQL statements to return.
         final List<Future<Map<Segment, SegmentWithData>>> sqlSegmentMapFutures =
             new ArrayList<Future<Map<Segment, SegmentWithData>>>();
 
-        final List<CellRequest> cellRequests1 =
-            new ArrayList<CellRequest>(cellRequests);
-
-        preloadColumnCardinality(cellRequests1);
-
         for (int iteration = 0;; ++iteration) {
             final BatchLoader.LoadBatchResponse response =
-                cacheMgr.execute(
-                    new BatchLoader.LoadBatchCommand(
-                        Locus.peek(),
-                        cacheMgr,
-                        getDialect(),
-                        cube,
-                        Collections.unmodifiableList(cellRequests1)));
+                iteration == 0 && firstResponse != null
+                    ? firstResponse
+                    : executeLoadBatch(cellRequests1);
 
             int failureCount = 0;
 
@@ -262,6 +324,7 @@ public class FastBatchingCellReader implements CellReader {
             for (SegmentHeader header : response.cacheSegments) {
                 final SegmentBody body = cacheMgr.compositeCache.get(header);
                 if (body == null) {
+                    SegmentCacheMetrics.instance().recordEviction(header);
                     // REVIEW: This is an async call. It will return before the
                     // index is informed that this header is there,
                     // so a LoadBatchCommand might still return
@@ -336,6 +399,7 @@ public class FastBatchingCellReader implements CellReader {
                 if (!MondrianProperties.instance().DisableCaching.get()) {
                     final Locus locus = Locus.peek();
                     cacheMgr.execute(
+                        segmentWithData.getStar(),
                         new SegmentCacheManager.Command<Void>() {
                             public Void call() throws Exception {
                                 SegmentCacheIndex index =
@@ -439,10 +503,54 @@ public class FastBatchingCellReader implements CellReader {
             // Continue loop; form and execute a new request with the smaller
             // set of cell requests.
         }
+    }
 
-        dirty = false;
-        cellRequests.clear();
-        return true;
+    /**
+     * Sends a list of cell requests to the cache manager.
+     *
+     * <p>The segment index is partitioned by star, so the requests are grouped
+     * by star, each group is sent to the partition that owns the star's
+     * index, and the responses are merged.</p>
+     *
+     * @param cellRequests Cell requests
+     * @return Merged response
+     */
+    private BatchLoader.LoadBatchResponse executeLoadBatch(
+        List<CellRequest> cellRequests)
+    {
+        final Map<RolapStar, List<CellRequest>> starRequests =
+            new LinkedHashMap<RolapStar, List<CellRequest>>();
+        for (CellRequest request : cellRequests) {
+            final RolapStar star = request.getMeasure().getStar();
+            List<CellRequest> list = starRequests.get(star);
+            if (list == null) {
+                list = new ArrayList<CellRequest>();
+                starRequests.put(star, list);
+            }
+            list.add(request);
+        }
+        final BatchLoader.LoadBatchResponse response =
+            new BatchLoader.LoadBatchResponse(
+                new ArrayList<CellRequest>(),
+                new ArrayList<SegmentHeader>(),
+                new ArrayList<BatchLoader.RollupInfo>(),
+                new HashMap<List, SegmentBuilder.SegmentConverter>(),
+                new ArrayList<Future<Map<Segment, SegmentWithData>>>(),
+                new HashMap<SegmentHeader, Future<SegmentBody>>());
+        for (Map.Entry<RolapStar, List<CellRequest>> entry
+            : starRequests.entrySet())
+        {
+            response.addAll(
+                cacheMgr.execute(
+                    entry.getKey(),
+                    new BatchLoader.LoadBatchCommand(
+                        Locus.peek(),
+                        cacheMgr,
+                        getDialect(),
+                        cube,
+                        Collections.unmodifiableList(entry.getValue()))));
+        }
+        return response;
     }
 
     /**
@@ -511,6 +619,7 @@ public class FastBatchingCellReader implements CellReader {
         }
         body = cacheMgr.compositeCache.get(header);
         if (body == null) {
+            SegmentCacheMetrics.instance().recordEviction(header);
             if (cube.getStar() != null) {
                 cacheMgr.remove(cube.getStar(), header);
             }
@@ -573,6 +682,9 @@ class BatchLoader {
     private final Map<List, SegmentBuilder.SegmentConverter> converterMap =
         new HashMap<List, SegmentBuilder.SegmentConverter>();
 
+    private final SegmentCacheMetrics metrics =
+        SegmentCacheMetrics.instance();
+
     public BatchLoader(
         Locus locus,
         SegmentCacheManager cacheMgr,
@@ -602,11 +714,15 @@ class BatchLoader {
             loadFromCaches(request, key, converter);
         // Skip the batch if we already have a rollup for it.
         if (rollupBitmaps.contains(request.getConstrainedColumnsBitKey())) {
+            if (!success) {
+                metrics.recordRollup(request.getMeasure());
+            }
             return;
         }
 
         // As a last resort, we load from SQL.
         if (!success) {
+            metrics.recordSql(request.getMeasure());
             loadFromSql(request, key, converter);
         }
     }
@@ -642,6 +758,7 @@ class BatchLoader {
                 // It's likely that the header will be in the cache, so this
                 // request will be satisfied. If not, the header will be removed
                 // from the segment index, and we'll be back.
+                metrics.recordHit(request.getMeasure());
                 return true;
             }
         }
@@ -666,6 +783,7 @@ class BatchLoader {
         // segment.)
 
         if (!headersInCache.isEmpty()) {
+            boolean pending = true;
             for (SegmentHeader headerInCache : headersInCache) {
                 final Future<SegmentBody> future =
                     index.getFuture(locus.execution, headerInCache);
@@ -677,6 +795,7 @@ class BatchLoader {
                 } else {
                     // Segment is in cache.
                     cacheHeaders.add(headerInCache);
+                    pending = false;
                 }
 
                 index.setConverter(
@@ -692,6 +811,11 @@ class BatchLoader {
                     SegmentCacheIndexImpl.makeConverterKey(request, key),
                     converter);
             }
+            if (pending) {
+                metrics.recordPending(measure);
+            } else {
+                metrics.recordHit(measure);
+            }
             return true;
         }
 
@@ -741,6 +865,7 @@ class BatchLoader {
                     new SegmentBuilder.StarSegmentConverter(
                         measure,
                         key.getCompoundPredicateList()));
+                metrics.recordRollup(measure);
                 return true;
             }
         }
@@ -1157,6 +1282,20 @@ class BatchLoader {
             this.futures = futures;
         }
 
+        /**
+         * Appends the contents of another response to this one.
+         *
+         * @param response Response for cell requests of another star
+         */
+        void addAll(LoadBatchResponse response) {
+            cellRequests.addAll(response.cellRequests);
+            cacheSegments.addAll(response.cacheSegments);
+            rollups.addAll(response.rollups);
+            converterMap.putAll(response.converterMap);
+            sqlSegmentMapFutures.addAll(response.sqlSegmentMapFutures);
+            futures.putAll(response.futures);
+        }
+
         public SegmentWithData convert(
             SegmentHeader header,
             SegmentBody body)
@@ -663,6 +663,21 @@ public class RolapConnection extends ConnectionBase {
                 RolapUtil.MDX_LOGGER.debug(currId + ": " + Util.unparse(query));
             }
 
+            final RolapResultCache resultCache = RolapResultCache.instance();
+            final List<Object> cacheKey =
+                statement.getProfileHandler() == null
+                    ? resultCache.key(this, query)
+                    : null;
+            if (cacheKey != null) {
+                final Result cachedResult = resultCache.get(cacheKey, query);
+                if (cachedResult != null) {
+                    statement.start(execution);
+                    statement.end(execution);
+                    return cachedResult;
+                }
+            }
+            final long cacheEpoch = resultCache.getEpoch();
+
             final Locus locus = new Locus(execution, null, "Loading cells");
             Locus.push(locus);
             Result result;
@@ -682,6 +697,11 @@ public class RolapConnection extends ConnectionBase {
                 ((RolapCube) query.getCube()).clearCachedAggregations(true);
             }
             statement.end(execution);
+            if (cacheKey != null
+                && resultCache.put(cacheKey, cacheEpoch, result))
+            {
+                result = new RolapResultCache.CachedResult(result, query);
+            }
             return result;
         } catch (ResultLimitExceededException e) {
             // query has been punted
@@ -772,6 +792,43 @@ public class RolapConnection extends ConnectionBase {
         }
     }
 
+    /**
+     * {@inheritDoc}
+     *
+     * <p>If the schema's query plan cache is enabled and holds a plan for
+     * this text, creates the query from the plan rather than parsing the
+     * text.</p>
+     */
+    @Override
+    public QueryPart parseStatement(
+        Statement statement,
+        String query,
+        FunTable funTable,
+        boolean strictValidation)
+    {
+        final RolapQueryPlanCache planCache = schema.queryPlanCache;
+        final List<Object> key =
+            planCache.key(this, query, funTable, strictValidation);
+        if (key != null) {
+            final Query cachedQuery;
+            try {
+                cachedQuery = planCache.get(key, statement);
+            } catch (Exception e) {
+                throw MondrianResource.instance().FailedToParseQuery.ex(
+                    query, e);
+            }
+            if (cachedQuery != null) {
+                return cachedQuery;
+            }
+        }
+        final QueryPart queryPart =
+            super.parseStatement(statement, query, funTable, strictValidation);
+        if (key != null && queryPart instanceof Query) {
+            planCache.put(key, (Query) queryPart, strictValidation);
+        }
+        return queryPart;
+    }
+
     public Exp parseExpression(String expr) {
         boolean debug = false;
         if (getLogger().isDebugEnabled()) {
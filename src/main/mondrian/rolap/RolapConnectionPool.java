@@ -12,10 +12,12 @@
 
 package mondrian.rolap;
 
+import mondrian.olap.MondrianProperties;
 import mondrian.olap.Util;
 
 import org.apache.commons.dbcp.*;
-import org.apache.commons.pool.ObjectPool;
+import org.apache.commons.pool.*;
+import org.apache.commons.pool.impl.GenericKeyedObjectPool;
 import org.apache.commons.pool.impl.GenericObjectPool;
 
 import java.util.*;
@@ -205,6 +207,8 @@ class RolapConnectionPool {
             // Flag to log stack traces for application code which abandoned a
             // Statement or Connection
             abandonedConfig.setLogAbandoned(true);
+            final int statementCacheSize =
+                MondrianProperties.instance().PreparedStatementCacheSize.get();
             PoolableConnectionFactory poolableConnectionFactory =
                 new PoolableConnectionFactory(
                     // the connection factory
@@ -213,7 +217,9 @@ class RolapConnectionPool {
                     connectionPool,
                     // statement pool factory for pooling prepared statements,
                     // or null for no pooling
-                    null,
+                    statementCacheSize > 0
+                        ? new StatementPoolFactory(statementCacheSize)
+                        : null,
                     // validation query (must return at least 1 row e.g. Oracle:
                     // select count(*) from dual) to test connection, can be
                     // null
@@ -234,6 +240,73 @@ class RolapConnectionPool {
         return connectionPool;
     }
 
+    /**
+     * Creates a pool of prepared statements for each connection. See
+     * {@link MondrianProperties#PreparedStatementCacheSize}.
+     */
+    private static class StatementPoolFactory
+        implements KeyedObjectPoolFactory
+    {
+        private final int size;
+
+        StatementPoolFactory(int size) {
+            this.size = size;
+        }
+
+        public KeyedObjectPool createPool() {
+            return new LruStatementPool(size);
+        }
+    }
+
+    /**
+     * Pool of the prepared statements of one connection. DBCP borrows a
+     * statement when mondrian prepares a SQL string, and returns it when
+     * mondrian closes the statement.
+     *
+     * <p>The pool holds statements for at most {@code size} distinct SQL
+     * strings. When a new string would exceed the limit, the statements of
+     * the string that was least recently used are closed.
+     */
+    private static class LruStatementPool extends GenericKeyedObjectPool {
+        private final int size;
+
+        /** Keys of statements, least recently used first. Guarded by this. */
+        private final Map<Object, Boolean> keys =
+            new LinkedHashMap<Object, Boolean>(16, 0.75f, true);
+
+        LruStatementPool(int size) {
+            super(
+                null, // KeyedPoolableObjectFactory, set by PoolingConnection
+                -1, // max active per key; no limit
+                GenericKeyedObjectPool.WHEN_EXHAUSTED_GROW,
+                0, // max wait (milli seconds)
+                1); // max idle per key
+            this.size = size;
+        }
+
+        public synchronized Object borrowObject(Object key) throws Exception {
+            keys.put(key, Boolean.TRUE);
+            if (keys.size() > size) {
+                final Iterator<Object> iterator = keys.keySet().iterator();
+                final Object eldest = iterator.next();
+                iterator.remove();
+                // Closes idle statements. Statements in use are closed when
+                // they are returned.
+                clear(eldest);
+            }
+            return super.borrowObject(key);
+        }
+
+        public synchronized void returnObject(Object key, Object obj)
+            throws Exception
+        {
+            if (keys.containsKey(key)) {
+                super.returnObject(key, obj);
+            } else {
+                super.invalidateObject(key, obj);
+            }
+        }
+    }
 }
 
 // End RolapConnectionPool.java
@@ -203,7 +203,19 @@ public enum RolapConnectionProperties {
      *
      * <p>Defaults to "-1s".
      */
-    PinSchemaTimeout;
+    PinSchemaTimeout,
+
+    /**
+     * The "WarmupQueries" property is the URL of a file of MDX queries to run
+     * in the background after the schema is loaded into the schema pool, so
+     * that the cache is populated before users need it. Queries are separated
+     * by a semicolon at the end of a line; lines that start with "--" are
+     * comments. The queries run with the schema's default role, whatever the
+     * role of the connection that loaded the schema.
+     *
+     * <p>See {@link RolapSchemaWarmer}.
+     */
+    WarmupQueries;
 
     /**
      * Any property beginning with this value will be added to the
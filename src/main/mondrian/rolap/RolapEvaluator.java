@@ -950,6 +950,18 @@ public class RolapEvaluator implements Evaluator {
         final Object key = getExpResultCacheKey(cacheDescriptor);
         Object result = root.getCacheResult(key);
         if (result == null) {
+            // If the expression is context-independent, another statement
+            // may have computed it.
+            final Object sharedKey =
+                nonEmpty ? null : root.getSharedCacheKey(cacheDescriptor);
+            if (sharedKey != null) {
+                result = root.sharedExpResultCache.get(sharedKey);
+                if (result != null) {
+                    root.expResultCache.sharedHitCount.incrementAndGet();
+                    root.putCacheResult(key, result, true);
+                    return result == nullResult ? null : result;
+                }
+            }
             boolean aggCacheDirty = cellReader.isDirty();
             int aggregateCacheMissCountBefore = cellReader.getMissCount();
             result = cacheDescriptor.evaluate(this);
@@ -975,6 +987,10 @@ public class RolapEvaluator implements Evaluator {
                 key,
                 result == null ? nullResult : result,
                 isValidResult);
+            if (sharedKey != null && isValidResult) {
+                root.sharedExpResultCache.put(
+                    sharedKey, result == null ? nullResult : result, true);
+            }
         } else if (result == nullResult) {
             result = null;
         }
@@ -10,13 +10,16 @@
 package mondrian.rolap;
 
 import mondrian.calc.*;
+import mondrian.mdx.*;
 import mondrian.olap.*;
+import mondrian.olap.fun.UdfResolver;
 import mondrian.server.Execution;
 import mondrian.server.Statement;
 import mondrian.spi.Dialect;
 import mondrian.spi.DialectManager;
 
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * Context at the root of a tree of evaluators.
@@ -24,18 +27,41 @@ import java.util.*;
  * <p>Contains the context that does not change as evaluation context is
  * pushed/popped.
  *
+ * <p>The caches are thread-safe, because the cells of a result may be
+ * evaluated by several evaluators at once; see
+ * {@link MondrianProperties#CellEvaluationParallelism}.
+ *
  * @author jhyde
  * @since Nov 11, 2008
  */
 class RolapEvaluatorRoot {
-    final Map<Object, Object> expResultCache = new HashMap<Object, Object>();
-    final Map<Object, Object> tmpExpResultCache =
-        new HashMap<Object, Object>();
+    /**
+     * Built-in functions whose value changes from one statement to the next,
+     * so expressions that call them are not shared between statements.
+     * User-defined functions are not shared unless they are
+     * {@link mondrian.spi.UserDefinedFunction.Deterministic}.
+     */
+    private static final Set<String> VOLATILE_FUN_NAMES =
+        new HashSet<String>(
+            Arrays.asList("NOW", "DATE", "TIME", "TIMER", "RND"));
+
+    /** Value in {@link #sharedKeys} of an expression that is not shared. */
+    private static final Object NOT_SHARED = new Object();
+
+    final ExpResultCache expResultCache = new ExpResultCache();
+
+    /**
+     * Cache of the results of context-independent expressions, shared by the
+     * statements on this schema; null if sharing is disabled.
+     */
+    final ExpResultCache sharedExpResultCache;
+    private final Map<ExpCacheDescriptor, Object> sharedKeys =
+        new ConcurrentHashMap<ExpCacheDescriptor, Object>();
     final RolapCube cube;
     final RolapConnection connection;
     final SchemaReader schemaReader;
     final Map<CompiledExpKey, Calc> compiledExps =
-        new HashMap<CompiledExpKey, Calc>();
+        new ConcurrentHashMap<CompiledExpKey, Calc>();
     final Statement statement;
     final Query query;
     private final Date queryStartTime;
@@ -56,7 +82,8 @@ class RolapEvaluatorRoot {
             MondrianProperties.instance().SolveOrderMode.get().toUpperCase(),
             SolveOrderMode.ABSOLUTE);
 
-    final Set<Exp> activeNativeExpansions = new HashSet<Exp>();
+    final Set<Exp> activeNativeExpansions =
+        Collections.synchronizedSet(new HashSet<Exp>());
 
     /**
      * The size of the command stack at which we will next check for recursion.
@@ -123,6 +150,11 @@ class RolapEvaluatorRoot {
             DialectManager.createDialect(schemaReader.getDataSource(), null);
 
         this.recursionCheckCommandCount = (defaultMembers.length << 4);
+        this.sharedExpResultCache =
+            MondrianProperties.instance().EnableSharedExpCache.get()
+            && connection.getScenario() == null
+                ? cube.getSchema().sharedExpResultCache
+                : null;
     }
 
     /**
@@ -259,11 +291,7 @@ class RolapEvaluatorRoot {
         Object result,
         boolean isValidResult)
     {
-        if (isValidResult) {
-            expResultCache.put(key, result);
-        } else {
-            tmpExpResultCache.put(key, result);
-        }
+        expResultCache.put(key, result, isValidResult);
     }
 
     /**
@@ -273,11 +301,7 @@ class RolapEvaluatorRoot {
      * @return cached expression
      */
     public final Object getCacheResult(Object key) {
-        Object result = expResultCache.get(key);
-        if (result == null) {
-            result = tmpExpResultCache.get(key);
-        }
-        return result;
+        return expResultCache.get(key);
     }
 
     /**
@@ -286,10 +310,66 @@ class RolapEvaluatorRoot {
      * @param clearValidResult whether to clear valid expression results
      */
     public final void clearResultCache(boolean clearValidResult) {
-        if (clearValidResult) {
-            expResultCache.clear();
+        expResultCache.clear(clearValidResult);
+    }
+
+    /**
+     * Returns the key under which the result of an expression is shared with
+     * other statements on the same schema, or null if it is not shared.
+     *
+     * <p>A result is shared only if the expression depends on no hierarchy,
+     * and refers only to members, levels, hierarchies and dimensions of the
+     * schema; expressions that refer to calculated members, named sets or
+     * parameters, which may be defined differently by another query, are not
+     * shared. The key contains the cube and the role, and the text of the
+     * expression.
+     *
+     * @param descriptor Descriptor of cached expression
+     * @return Key, or null
+     */
+    final Object getSharedCacheKey(ExpCacheDescriptor descriptor) {
+        if (sharedExpResultCache == null) {
+            return null;
+        }
+        Object key = sharedKeys.get(descriptor);
+        if (key == null) {
+            if (descriptor.getDependentHierarchyOrdinals().length == 0
+                && isShareable(descriptor.getExp()))
+            {
+                key = Arrays.asList(
+                    cube,
+                    schemaReader.getRole(),
+                    Util.unparse(descriptor.getExp()));
+            } else {
+                key = NOT_SHARED;
+            }
+            sharedKeys.put(descriptor, key);
+        }
+        return key == NOT_SHARED ? null : key;
+    }
+
+    private static boolean isShareable(Exp exp) {
+        if (exp instanceof MemberExpr) {
+            return !((MemberExpr) exp).getMember().isCalculated();
+        }
+        if (exp instanceof ResolvedFunCall) {
+            final ResolvedFunCall call = (ResolvedFunCall) exp;
+            if (VOLATILE_FUN_NAMES.contains(call.getFunName().toUpperCase())
+                || UdfResolver.isNonDeterministicUdf(call.getFunDef()))
+            {
+                return false;
+            }
+            for (Exp arg : call.getArgs()) {
+                if (!isShareable(arg)) {
+                    return false;
+                }
+            }
+            return true;
         }
-        tmpExpResultCache.clear();
+        return exp instanceof Literal
+            || exp instanceof LevelExpr
+            || exp instanceof HierarchyExpr
+            || exp instanceof DimensionExpr;
     }
 
     /**
@@ -0,0 +1,218 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.olap.*;
+import mondrian.server.Statement;
+
+import java.util.*;
+
+/**
+ * Cache of validated queries of a schema, keyed by MDX text.
+ *
+ * <p>Parsing and validating a large generated query can take longer than
+ * executing it, particularly when its members are already cached. The
+ * cache holds, for each query text, a copy of the query's expressions after
+ * they have been validated. A cache hit creates a new {@link Query} for the
+ * caller's statement from a further copy of those expressions; because their
+ * identifiers are already resolved, the new query does not need to parse the
+ * text or to look up members.</p>
+ *
+ * <p>The cache saves parsing and name lookup only. Each hit validates and
+ * compiles the copied expressions again, because neither result can be
+ * shared: a {@link Query} belongs to one statement, and validation sets
+ * properties of the calculated members that the query's formulas define. So
+ * each hit defines new calculated members and named sets, and redirects the
+ * copied expressions to them. Validating expressions whose identifiers are
+ * already resolved is cheap compared to the member lookups that the cache
+ * avoids; {@code PerformanceTest.testQueryPlanCache} measures the
+ * difference.</p>
+ *
+ * <p>Besides the text, the key includes the properties that affect
+ * validation, and the role of the connection, because the role determines
+ * which members a query can see.</p>
+ *
+ * <p>Queries with parameters are not cached: a compiled parameter stores its
+ * value in the parameter object, and copies of a query would share it.</p>
+ *
+ * <p>Enabled by setting
+ * {@link mondrian.olap.MondrianProperties#QueryPlanCacheSize} to the
+ * maximum number of queries held by each schema.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ *
+ * @author agent
+ */
+class RolapQueryPlanCache {
+    /** Plans in access order. Guarded by this. */
+    private final LinkedHashMap<List<Object>, Plan> map =
+        new LinkedHashMap<List<Object>, Plan>(16, 0.75f, true);
+
+    /**
+     * Returns the key of a query, or null if the cache is disabled.
+     *
+     * @param connection Connection
+     * @param mdx MDX text
+     * @param funTable Function table, or null to use the schema's
+     * @param strictValidation Whether invalid members are errors
+     * @return Key, or null
+     */
+    List<Object> key(
+        RolapConnection connection,
+        String mdx,
+        FunTable funTable,
+        boolean strictValidation)
+    {
+        final MondrianProperties properties = MondrianProperties.instance();
+        if (properties.QueryPlanCacheSize.get() <= 0) {
+            return null;
+        }
+        return Arrays.<Object>asList(
+            mdx,
+            connection.getRole(),
+            funTable,
+            strictValidation,
+            properties.IgnoreInvalidMembersDuringQuery.get());
+    }
+
+    /**
+     * Creates a query from a cached plan.
+     *
+     * @param key Key
+     * @param statement Statement that the query will belong to
+     * @return Query, or null if there is no plan for this key
+     */
+    Query get(List<Object> key, Statement statement) {
+        final Plan plan;
+        synchronized (this) {
+            plan = map.get(key);
+        }
+        return plan == null ? null : plan.toQuery(statement);
+    }
+
+    /**
+     * Caches the plan of a query that has just been parsed and validated.
+     *
+     * @param key Key
+     * @param query Query
+     * @param strictValidation Whether invalid members are errors
+     */
+    void put(List<Object> key, Query query, boolean strictValidation) {
+        if (query.getParameters().length > 0) {
+            return;
+        }
+        final Plan plan = new Plan(query, strictValidation);
+        final int limit =
+            MondrianProperties.instance().QueryPlanCacheSize.get();
+        synchronized (this) {
+            map.put(key, plan);
+            final Iterator<Plan> iterator = map.values().iterator();
+            while (map.size() > limit && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Removes all plans.
+     */
+    synchronized void clear() {
+        map.clear();
+    }
+
+    /**
+     * Validated expressions of a query.
+     *
+     * <p>The expressions are copies, so later changes to the query that they
+     * came from (for instance {@link Query#swapAxes()}) do not affect the
+     * plan. The plan's formulas define calculated members and named sets of
+     * their own, which are never validated; each query created from the plan
+     * gets new ones again.</p>
+     */
+    private static class Plan {
+        private final Cube cube;
+        private final Formula[] formulas;
+        private final QueryAxis[] axes;
+        private final QueryAxis slicerAxis;
+        private final QueryPart[] cellProps;
+        private final boolean strictValidation;
+
+        Plan(Query query, boolean strictValidation) {
+            final Map<OlapElement, OlapElement> elementMap =
+                new IdentityHashMap<OlapElement, OlapElement>();
+            this.cube = query.getCube();
+            this.formulas = cloneFormulas(query.getFormulas(), elementMap);
+            this.axes = cloneAxes(query.getAxes(), elementMap);
+            this.slicerAxis = cloneAxis(query.getSlicerAxis(), elementMap);
+            this.cellProps = query.getCellProperties();
+            this.strictValidation = strictValidation;
+        }
+
+        /**
+         * Creates a query for a statement.
+         *
+         * <p>The query's formulas define new calculated members and named
+         * sets, and its expressions refer to them, so that validating the
+         * query does not change the members of any other query.</p>
+         */
+        Query toQuery(Statement statement) {
+            final Map<OlapElement, OlapElement> elementMap =
+                new IdentityHashMap<OlapElement, OlapElement>();
+            return new Query(
+                statement,
+                cube,
+                cloneFormulas(formulas, elementMap),
+                cloneAxes(axes, elementMap),
+                cloneAxis(slicerAxis, elementMap),
+                cellProps,
+                new Parameter[0],
+                strictValidation);
+        }
+
+        private static Formula[] cloneFormulas(
+            Formula[] formulas,
+            Map<OlapElement, OlapElement> elementMap)
+        {
+            if (formulas == null) {
+                return null;
+            }
+            return Formula.cloneWithNewElements(formulas, elementMap);
+        }
+
+        private static QueryAxis[] cloneAxes(
+            QueryAxis[] axes,
+            Map<OlapElement, OlapElement> elementMap)
+        {
+            if (axes == null) {
+                return null;
+            }
+            final QueryAxis[] axes2 = new QueryAxis[axes.length];
+            for (int i = 0; i < axes.length; i++) {
+                axes2[i] = cloneAxis(axes[i], elementMap);
+            }
+            return axes2;
+        }
+
+        private static QueryAxis cloneAxis(
+            QueryAxis axis,
+            Map<OlapElement, OlapElement> elementMap)
+        {
+            if (axis == null) {
+                return null;
+            }
+            final QueryAxis axis2 = (QueryAxis) axis.clone();
+            axis2.setSet(Formula.replaceElements(axis2.getSet(), elementMap));
+            return axis2;
+        }
+    }
+}
+
+// End RolapQueryPlanCache.java
@@ -21,6 +21,7 @@ import mondrian.olap.type.SetType;
 import mondrian.resource.MondrianResource;
 import mondrian.rolap.agg.AggregationManager;
 import mondrian.rolap.agg.CellRequestQuantumExceededException;
+import mondrian.rolap.agg.SegmentWithData;
 import mondrian.server.Execution;
 import mondrian.server.Locus;
 import mondrian.spi.CellFormatter;
@@ -29,6 +30,7 @@ import mondrian.util.*;
 import org.apache.log4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.*;
 
 
 /**
@@ -61,6 +63,28 @@ public class RolapResult extends ResultBase {
     private final Map<Integer, List<List<Member>>> positionsCurrent =
         new HashMap<Integer, List<List<Member>>>();
 
+    /**
+     * Name of the {@link QueryTiming} counter of cells that did not need to
+     * be evaluated again after a phase because their value was already
+     * known.
+     */
+    public static final String CELL_EVALUATIONS_SAVED =
+        "RolapResult.cellEvaluationsSaved";
+
+    /**
+     * Ordinals of the cells whose value was computed from loaded cells in a
+     * previous pass of {@link #executeBody}, and need not be evaluated again;
+     * null if every pass evaluates every cell.
+     */
+    private BitSet validCells;
+    private long savedEvaluationCount;
+
+    /**
+     * Executor for parallel evaluation of cells. Created on demand; see
+     * {@link #getCellExecutor()}.
+     */
+    private static ExecutorService cellExecutor;
+
     /**
      * Creates a RolapResult.
      *
@@ -98,7 +122,7 @@ public class RolapResult extends ResultBase {
 
         this.cellInfos =
             (query.axes.length > 4)
-                ? new CellInfoMap(point)
+                ? new CellInfoMap()
                 : new CellInfoPool(query.axes.length);
 
         if (!execute) {
@@ -509,6 +533,16 @@ public class RolapResult extends ResultBase {
             throw ex;
         } finally {
             if (normalExecution) {
+                final ExpResultCache expResultCache =
+                    evaluator.root.expResultCache;
+                execution.getQueryTiming().markCount(
+                    ExpResultCache.HIT_COUNT, expResultCache.getHitCount());
+                execution.getQueryTiming().markCount(
+                    ExpResultCache.MISS_COUNT, expResultCache.getMissCount());
+                execution.getQueryTiming().markCount(
+                    ExpResultCache.SHARED_HIT_COUNT,
+                    expResultCache.sharedHitCount.get());
+
                 // Expression cache duration is for each query. It is time to
                 // clear out the whole expression cache at the end of a query.
                 evaluator.clearExpResultCache(true);
@@ -906,53 +940,423 @@ public class RolapResult extends ResultBase {
         Query query,
         final int[] pos)
     {
+        final int parallelism = getCellEvaluationParallelism(query);
+        if (parallelism > 1) {
+            executeBodyParallel(evaluator, pos, parallelism);
+            return;
+        }
+
         // Compute the cells several times. The first time, use a dummy
-        // evaluator which collects requests.
+        // evaluator which collects requests. Later passes only evaluate the
+        // cells that needed cells that were not loaded.
         int count = 0;
         final int savepoint = evaluator.savepoint();
-        while (true) {
-            evaluator.setCellReader(batchingReader);
-            try {
-                executeStripe(query.axes.length - 1, evaluator, pos);
-            } catch (CellRequestQuantumExceededException e) {
-                // Safe to ignore. Need to call 'phase' and loop again.
-                // Decrement count because it wasn't a recursive formula that
-                // caused the iteration.
-                --count;
-            }
-            evaluator.restore(savepoint);
+        validCells = isIncremental() ? new BitSet() : null;
+        savedEvaluationCount = 0;
+        try {
+            while (true) {
+                evaluator.setCellReader(batchingReader);
+                try {
+                    executeStripe(
+                        query.axes.length - 1, evaluator, pos, point);
+                } catch (CellRequestQuantumExceededException e) {
+                    // Safe to ignore. Need to call 'phase' and loop again.
+                    // Decrement count because it wasn't a recursive formula
+                    // that caused the iteration.
+                    --count;
+                }
+                evaluator.restore(savepoint);
 
-            // Retrieve the aggregations collected.
-            //
-            if (!phase()) {
-                // We got all of the cells we needed, so the result must be
-                // correct.
-                return;
-            } else {
-                // Clear invalid expression result so that the next evaluation
-                // will pick up the newly loaded aggregates.
-                evaluator.clearExpResultCache(false);
-            }
+                // Retrieve the aggregations collected.
+                //
+                if (!phase()) {
+                    // We got all of the cells we needed, so the result must
+                    // be correct.
+                    return;
+                } else {
+                    // Clear invalid expression result so that the next
+                    // evaluation will pick up the newly loaded aggregates.
+                    evaluator.clearExpResultCache(false);
+                }
 
-            if (count++ > maxEvalDepth) {
-                if (evaluator instanceof RolapDependencyTestingEvaluator) {
-                    // The dependency testing evaluator can trigger new
-                    // requests every cycle. So let is run as normal for
-                    // the first N times, then run it disabled.
-                    ((RolapDependencyTestingEvaluator.DteRoot)
-                        evaluator.root).disabled = true;
-                    if (count > maxEvalDepth * 2) {
+                if (count++ > maxEvalDepth) {
+                    if (evaluator instanceof RolapDependencyTestingEvaluator) {
+                        // The dependency testing evaluator can trigger new
+                        // requests every cycle. So let is run as normal for
+                        // the first N times, then run it disabled.
+                        ((RolapDependencyTestingEvaluator.DteRoot)
+                            evaluator.root).disabled = true;
+                        if (count > maxEvalDepth * 2) {
+                            throw Util.newInternal(
+                                "Query required more than " + count
+                                + " iterations");
+                        }
+                    } else {
                         throw Util.newInternal(
                             "Query required more than " + count
                             + " iterations");
                     }
-                } else {
+                }
+
+                if (validCells == null) {
+                    cellInfos.clear();
+                }
+            }
+        } finally {
+            if (validCells != null) {
+                execution.getQueryTiming().markCount(
+                    CELL_EVALUATIONS_SAVED, savedEvaluationCount);
+                validCells = null;
+            }
+        }
+    }
+
+    /**
+     * Returns whether later passes of {@link #executeBody} can skip the cells
+     * whose value was computed in an earlier pass.
+     *
+     * <p>Not possible if an axis is high-cardinality, because the cells of
+     * such an axis are evaluated in chunks, or if there are too many cells
+     * to number them with an {@code int}; and not desirable for the
+     * dependency-testing evaluator, which is designed to evaluate every cell
+     * in every pass.
+     *
+     * @return Whether to evaluate incrementally
+     */
+    private boolean isIncremental() {
+        if (evaluator instanceof RolapDependencyTestingEvaluator) {
+            return false;
+        }
+        long cellCount = 1;
+        for (int i = 0; i < axes.length; i++) {
+            final TupleList tupleList = ((RolapAxis) axes[i]).getTupleList();
+            if (isAxisHighCardinality(i, tupleList)) {
+                return false;
+            }
+            cellCount *= tupleList.size();
+            if (cellCount > Integer.MAX_VALUE) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Returns the number of threads that should evaluate the cells of this
+     * result, or 1 if the cells must be evaluated by the current thread.
+     *
+     * <p>Evaluation is serial unless
+     * {@link MondrianProperties#CellEvaluationParallelism} is greater than 1.
+     * It is also serial if evaluating a cell might modify state that is
+     * shared by all evaluators: named sets, which are evaluated lazily;
+     * distinct-count measures, whose visual totals are rewritten during
+     * evaluation; high-cardinality axes, which are read in chunks; and
+     * profiling and dependency-testing evaluators.
+     *
+     * @param query Query
+     * @return Number of threads
+     */
+    private int getCellEvaluationParallelism(Query query) {
+        final int parallelism =
+            MondrianProperties.instance().CellEvaluationParallelism.get();
+        if (parallelism <= 1 || query.axes.length == 0) {
+            return 1;
+        }
+        if (evaluator instanceof RolapDependencyTestingEvaluator
+            || statement.getProfileHandler() != null)
+        {
+            return 1;
+        }
+        for (Formula formula : query.getFormulas()) {
+            if (!formula.isMember()) {
+                return 1;
+            }
+        }
+        final RolapCube cube = getCube();
+        if (cube.getNamedSets().length > 0
+            || cube.getSchema().hasNamedSets())
+        {
+            return 1;
+        }
+        for (Member measure : query.getMeasuresMembers()) {
+            if (measure instanceof RolapBaseCubeMeasure
+                && ((RolapBaseCubeMeasure) measure).getAggregator()
+                == RolapAggregator.DistinctCount)
+            {
+                return 1;
+            }
+        }
+        for (int i = 0; i < axes.length; i++) {
+            if (isAxisHighCardinality(
+                    i, ((RolapAxis) axes[i]).getTupleList()))
+            {
+                return 1;
+            }
+        }
+        final TupleList tupleList =
+            ((RolapAxis) axes[axes.length - 1]).getTupleList();
+        return Math.min(parallelism, tupleList.size());
+    }
+
+    /**
+     * Evaluates the cells of this result using several threads.
+     *
+     * <p>Like {@link #executeBody}, makes several passes over the cells until
+     * all of the cells they need have been loaded. In each pass, the
+     * positions of the last axis are divided into ranges, and the cells of
+     * each range are evaluated by a {@link StripeTask} with its own
+     * evaluator and cell reader. The current thread evaluates the first
+     * range, and threads from a pool evaluate the others. Between passes,
+     * the current thread loads the cells requested by all of the readers.
+     *
+     * @param evaluator Evaluator
+     * @param pos Cell position
+     * @param parallelism Number of ranges
+     */
+    private void executeBodyParallel(
+        RolapEvaluator evaluator,
+        final int[] pos,
+        int parallelism)
+    {
+        final int axisOrdinal = axes.length - 1;
+        final int positionCount =
+            ((RolapAxis) axes[axisOrdinal]).getTupleList().size();
+        final RolapCube cube = getCube();
+        final AggregationManager aggMgr =
+            statement.getMondrianConnection().getServer()
+                .getAggregationManager();
+        final CellInfoContainer savedCellInfos = cellInfos;
+        cellInfos = new SynchronizedCellInfoContainer(savedCellInfos);
+        try {
+            int count = 0;
+            while (true) {
+                // Worker threads need the segments that this thread has
+                // loaded in previous passes.
+                final Map<RolapStar, List<SegmentWithData>> segmentMap =
+                    new HashMap<RolapStar, List<SegmentWithData>>();
+                for (RolapStar star : cube.getSchema().getStars()) {
+                    segmentMap.put(star, star.getLocalSegments());
+                }
+                final List<StripeTask> tasks = new ArrayList<StripeTask>();
+                for (int i = 0; i < parallelism; i++) {
+                    tasks.add(
+                        new StripeTask(
+                            evaluator.push(),
+                            new FastBatchingCellReader(execution, cube, aggMgr),
+                            segmentMap,
+                            pos,
+                            i * positionCount / parallelism,
+                            (i + 1) * positionCount / parallelism));
+                }
+                runStripeTasks(tasks);
+
+                // Retrieve the aggregations collected by all readers.
+                boolean dirty = false;
+                int hitCount = 0;
+                int missCount = 0;
+                int pendingCount = 0;
+                for (StripeTask task : tasks) {
+                    dirty |= task.reader.isDirty();
+                    hitCount += task.reader.getHitCount();
+                    missCount += task.reader.getMissCount();
+                    pendingCount += task.reader.getPendingCount();
+                }
+                boolean loaded = false;
+                if (dirty) {
+                    execution.tracePhase(hitCount, missCount, pendingCount);
+                    for (StripeTask task : tasks) {
+                        if (task.reader.isDirty()
+                            && task.reader.loadAggregations())
+                        {
+                            loaded = true;
+                        }
+                    }
+                }
+                for (StripeTask task : tasks) {
+                    if (task.quantumExceeded) {
+                        // Not caused by a recursive formula; see executeBody.
+                        --count;
+                        break;
+                    }
+                }
+                // The shared reader becomes dirty if a task evaluated a
+                // parameter's default value.
+                if (phase()) {
+                    loaded = true;
+                }
+                if (!loaded) {
+                    return;
+                }
+                evaluator.clearExpResultCache(false);
+                if (count++ > maxEvalDepth) {
                     throw Util.newInternal(
                         "Query required more than " + count + " iterations");
                 }
+                cellInfos.clear();
             }
+        } finally {
+            cellInfos = savedCellInfos;
+        }
+    }
 
-            cellInfos.clear();
+    /**
+     * Runs the first of a list of tasks in the current thread, and the others
+     * in the cell executor, and waits for them all to complete.
+     *
+     * <p>If a task fails, cancels the other tasks and throws the error.
+     *
+     * @param tasks Tasks
+     */
+    private void runStripeTasks(List<StripeTask> tasks) {
+        final List<Future<Void>> futures = new ArrayList<Future<Void>>();
+        boolean success = false;
+        try {
+            final ExecutorService executor = getCellExecutor();
+            for (StripeTask task : tasks.subList(1, tasks.size())) {
+                futures.add(executor.submit(task));
+            }
+            tasks.get(0).call();
+            for (Future<Void> future : futures) {
+                Util.safeGet(future, "Error while evaluating cells");
+            }
+            success = true;
+        } finally {
+            if (!success) {
+                for (Future<Void> future : futures) {
+                    future.cancel(true);
+                }
+            }
+        }
+    }
+
+    /**
+     * Returns the executor that evaluates ranges of cells in parallel.
+     *
+     * <p>The executor is shared by all queries, and has one thread fewer
+     * than the number of processors (but at least one), because the thread
+     * that submits the ranges evaluates one of them itself. If all threads
+     * are busy, a range is evaluated in the thread that submits it.
+     */
+    private static synchronized ExecutorService getCellExecutor() {
+        if (cellExecutor == null) {
+            cellExecutor =
+                Util.getExecutorService(
+                    getCellExecutorMaxThreads(), 0, 1,
+                    "mondrian.rolap.RolapResult$cellExecutor",
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return cellExecutor;
+    }
+
+    /**
+     * Returns the maximum number of threads in the executor that evaluates
+     * ranges of cells in parallel.
+     *
+     * @return Maximum number of threads
+     */
+    static int getCellExecutorMaxThreads() {
+        return Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+    }
+
+    /**
+     * Returns the largest number of threads that have ever simultaneously
+     * been in the executor that evaluates ranges of cells in parallel, or 0
+     * if it has not been created. For testing.
+     *
+     * @return Largest number of threads
+     */
+    static synchronized int getCellExecutorLargestPoolSize() {
+        return cellExecutor == null
+            ? 0
+            : ((ThreadPoolExecutor) cellExecutor).getLargestPoolSize();
+    }
+
+    /**
+     * Task that evaluates the cells of a range of positions of the last axis,
+     * as part of a pass of {@link RolapResult#executeBodyParallel}.
+     */
+    private class StripeTask implements Callable<Void> {
+        private final RolapEvaluator evaluator;
+        private final FastBatchingCellReader reader;
+        private final Map<RolapStar, List<SegmentWithData>> segmentMap;
+        private final int[] pos;
+        private final int start;
+        private final int end;
+        private final CellKey point = CellKey.Generator.newCellKey(axes.length);
+        private final Thread thread = Thread.currentThread();
+        boolean quantumExceeded;
+
+        /**
+         * Creates a StripeTask.
+         *
+         * @param evaluator Evaluator, not shared with any other task
+         * @param reader Cell reader, not shared with any other task
+         * @param segmentMap Segments loaded by the query thread, by star
+         * @param pos Cell position
+         * @param start Ordinal of first position of last axis
+         * @param end Ordinal after last position of last axis
+         */
+        StripeTask(
+            RolapEvaluator evaluator,
+            FastBatchingCellReader reader,
+            Map<RolapStar, List<SegmentWithData>> segmentMap,
+            int[] pos,
+            int start,
+            int end)
+        {
+            this.evaluator = evaluator;
+            this.reader = reader;
+            this.segmentMap = segmentMap;
+            this.pos = pos;
+            this.start = start;
+            this.end = end;
+        }
+
+        public Void call() {
+            // Segments are registered with a star per thread. If this task
+            // is not running in the query thread, register the query
+            // thread's segments, and forget them when done.
+            final boolean forked = Thread.currentThread() != thread;
+            final Locus locus = new Locus(execution, null, "Loading cells");
+            Locus.push(locus);
+            try {
+                if (forked) {
+                    for (Map.Entry<RolapStar, List<SegmentWithData>> entry
+                        : segmentMap.entrySet())
+                    {
+                        for (SegmentWithData segment : entry.getValue()) {
+                            entry.getKey().register(segment);
+                        }
+                    }
+                }
+                evaluator.setCellReader(reader);
+                final int axisOrdinal = axes.length - 1;
+                final TupleList tupleList =
+                    ((RolapAxis) axes[axisOrdinal]).getTupleList();
+                for (int i = start; i < end; i++) {
+                    point.setAxis(axisOrdinal, i);
+                    final int savepoint = evaluator.savepoint();
+                    try {
+                        evaluator.setContext(tupleList.get(i));
+                        execution.checkCancelOrTimeout();
+                        executeStripe(axisOrdinal - 1, evaluator, pos, point);
+                    } finally {
+                        evaluator.restore(savepoint);
+                    }
+                }
+            } catch (CellRequestQuantumExceededException e) {
+                // Safe to ignore. The next pass will load the requested
+                // cells and evaluate the range again.
+                quantumExceeded = true;
+            } finally {
+                if (forked) {
+                    for (RolapStar star : segmentMap.keySet()) {
+                        star.clearCachedAggregations(true);
+                    }
+                }
+                Locus.pop(locus);
+            }
+            return null;
         }
     }
 
@@ -1038,7 +1442,8 @@ public class RolapResult extends ResultBase {
     private void executeStripe(
         int axisOrdinal,
         RolapEvaluator revaluator,
-        final int[] pos)
+        final int[] pos,
+        final CellKey point)
     {
         if (axisOrdinal < 0) {
             RolapAxis axis = (RolapAxis) slicerAxis;
@@ -1047,6 +1452,24 @@ public class RolapResult extends ResultBase {
             if (tupleIterator.hasNext()) {
                 final List<Member> members = tupleIterator.next();
                 execution.checkCancelOrTimeout();
+
+                // If this cell was computed in a previous pass, keep its
+                // value. Otherwise, note the number of cache misses, to tell
+                // whether its value depends on cells not yet loaded.
+                int cellOrdinal = -1;
+                int missCount = 0;
+                long tmpCacheHitCount = 0;
+                if (validCells != null) {
+                    cellOrdinal = getCellOrdinal(point.getOrdinals());
+                    if (validCells.get(cellOrdinal)) {
+                        ++savedEvaluationCount;
+                        return;
+                    }
+                    missCount = batchingReader.getMissCount();
+                    tmpCacheHitCount =
+                        revaluator.root.expResultCache.tmpHitCount.get();
+                }
+
                 final int savepoint = revaluator.savepoint();
                 revaluator.setContext(members);
                 Object o;
@@ -1118,6 +1541,16 @@ public class RolapResult extends ResultBase {
 
                 if (o != RolapUtil.valueNotReadyException) {
                     ci.value = o;
+                    if (validCells != null
+                        && batchingReader.getMissCount() == missCount
+                        && revaluator.root.expResultCache.tmpHitCount.get()
+                        == tmpCacheHitCount)
+                    {
+                        validCells.set(cellOrdinal);
+                    }
+                } else if (validCells != null) {
+                    // Forget the value from the previous pass.
+                    ci.value = null;
                 }
             }
         } else {
@@ -1169,7 +1602,7 @@ public class RolapResult extends ResultBase {
                     try {
                         revaluator.setContext(tuple);
                         execution.checkCancelOrTimeout();
-                        executeStripe(axisOrdinal - 1, revaluator, pos);
+                        executeStripe(axisOrdinal - 1, revaluator, pos, point);
                     } finally {
                         revaluator.restore(savepoint);
                     }
@@ -1201,7 +1634,7 @@ public class RolapResult extends ResultBase {
                     try {
                         revaluator.setContext(tuple);
                         execution.checkCancelOrTimeout();
-                        executeStripe(axisOrdinal - 1, revaluator, pos);
+                        executeStripe(axisOrdinal - 1, revaluator, pos, point);
                     } finally {
                         revaluator.restore(savepoint);
                     }
@@ -1554,7 +1987,7 @@ public class RolapResult extends ResultBase {
             this.result = result;
         }
 
-        protected Evaluator.NamedSetEvaluator evaluateNamedSet(
+        protected synchronized Evaluator.NamedSetEvaluator evaluateNamedSet(
             final NamedSet namedSet,
             boolean create)
         {
@@ -1572,7 +2005,7 @@ public class RolapResult extends ResultBase {
             return value;
         }
 
-        protected Evaluator.SetEvaluator evaluateSet(
+        protected synchronized Evaluator.SetEvaluator evaluateSet(
             final Exp exp,
             boolean create)
         {
@@ -1603,7 +2036,7 @@ public class RolapResult extends ResultBase {
             return value;
         }
 
-        public Object getParameterValue(ParameterSlot slot) {
+        public synchronized Object getParameterValue(ParameterSlot slot) {
             if (slot.isParameterSet()) {
                 return slot.getParameterValue();
             }
@@ -1880,23 +2313,14 @@ public class RolapResult extends ResultBase {
     /**
      * Implementation of {@link CellInfoContainer} which uses a {@link Map} to
      * store CellInfo Objects.
-     *
-     * <p>Note that the CellKey point instance variable is the same
-     * Object (NOT a copy) that is used and modified during
-     * the recursive calls to executeStripe - the
-     * <code>create</code> method relies on this fact.
      */
     static class CellInfoMap implements CellInfoContainer {
         private final Map<CellKey, CellInfo> cellInfoMap;
-        private final CellKey point;
 
         /**
-         * Creates a CellInfoMap
-         *
-         * @param point Cell position
+         * Creates a CellInfoMap.
          */
-        CellInfoMap(CellKey point) {
-            this.point = point;
+        CellInfoMap() {
             this.cellInfoMap = new HashMap<CellKey, CellInfo>();
         }
         public int size() {
@@ -1909,7 +2333,7 @@ public class RolapResult extends ResultBase {
             this.cellInfoMap.clear();
         }
         public CellInfo create(int[] pos) {
-            CellKey key = this.point.copy();
+            CellKey key = CellKey.Generator.newCellKey(pos);
             CellInfo ci = this.cellInfoMap.get(key);
             if (ci == null) {
                 ci = new CellInfo(0);
@@ -2105,6 +2529,39 @@ public class RolapResult extends ResultBase {
         }
     }
 
+    /**
+     * Implementation of {@link CellInfoContainer} that makes another container
+     * safe for use by several threads.
+     */
+    static class SynchronizedCellInfoContainer implements CellInfoContainer {
+        private final CellInfoContainer container;
+
+        /**
+         * Creates a SynchronizedCellInfoContainer.
+         *
+         * @param container Underlying container
+         */
+        SynchronizedCellInfoContainer(CellInfoContainer container) {
+            this.container = container;
+        }
+
+        public synchronized int size() {
+            return container.size();
+        }
+        public synchronized void trimToSize() {
+            container.trimToSize();
+        }
+        public synchronized void clear() {
+            container.clear();
+        }
+        public synchronized CellInfo create(int[] pos) {
+            return container.create(pos);
+        }
+        public synchronized CellInfo lookup(int[] pos) {
+            return container.lookup(pos);
+        }
+    }
+
     static TupleList mergeAxes(
         TupleList axis1,
         TupleIterable axis2,
@@ -0,0 +1,244 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.calc.TupleList;
+import mondrian.olap.*;
+
+import java.io.PrintWriter;
+import java.util.*;
+
+/**
+ * Cache of query results, shared by all connections in this JVM.
+ *
+ * <p>Enabled by setting
+ * {@link mondrian.olap.MondrianProperties#ResultCacheSize} to the maximum
+ * total number of cells of the cached results. Results are removed in
+ * least-recently-used order to keep within that limit.</p>
+ *
+ * <p>A result is keyed on the schema and on the text, role, locale and
+ * parameter values of its query. Any cache flush (see {@link CacheControl})
+ * or schema flush empties the cache and increments its epoch; a result whose
+ * evaluation started in an earlier epoch is not cached, because it may have
+ * read data that has since been flushed.</p>
+ *
+ * <p>Results whose axes are high-cardinality are not cached, because
+ * their cells are evaluated only when they are read.</p>
+ *
+ * <p>A cached result keeps a reference to the statement, and hence the
+ * connection, that computed it, after that connection has been closed. This
+ * is safe: closing a connection releases no state that a result's cells use
+ * (JDBC connections are held only while SQL is executing), and drill-through
+ * and cell properties need only the connection's schema and server. The
+ * reference lasts until the result is evicted or the cache is flushed, and
+ * the number of results is bounded by the cell limit.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ *
+ * @author agent
+ */
+class RolapResultCache {
+    private static final RolapResultCache INSTANCE = new RolapResultCache();
+
+    /** Results in access order. Guarded by this. */
+    private final LinkedHashMap<List<Object>, Entry> map =
+        new LinkedHashMap<List<Object>, Entry>(16, 0.75f, true);
+    private long cellCount;
+    private long epoch;
+
+    private RolapResultCache() {
+    }
+
+    /**
+     * Returns the singleton instance.
+     *
+     * @return Result cache
+     */
+    static RolapResultCache instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Returns the current epoch. A caller reads it before it starts
+     * evaluating a query, and passes it to
+     * {@link #put(java.util.List, long, mondrian.olap.Result)}.
+     *
+     * @return Epoch
+     */
+    synchronized long getEpoch() {
+        return epoch;
+    }
+
+    /**
+     * Returns the key of a query, or null if the query's result cannot be
+     * cached.
+     *
+     * <p>Results are not cached if the cache is disabled, or if the
+     * connection has an active scenario, because writeback changes the
+     * scenario's cells without a cache flush.</p>
+     *
+     * @param connection Connection
+     * @param query Query
+     * @return Key, or null
+     */
+    List<Object> key(RolapConnection connection, Query query) {
+        if (MondrianProperties.instance().ResultCacheSize.get() <= 0
+            || connection.getScenario() != null)
+        {
+            return null;
+        }
+        final List<Object> parameterValues = new ArrayList<Object>();
+        for (Parameter parameter : query.getParameters()) {
+            parameterValues.add(parameter.getName());
+            parameterValues.add(parameter.isSet());
+            parameterValues.add(parameter.getValue());
+        }
+        return Arrays.asList(
+            connection.getSchema(),
+            Util.unparse(query),
+            connection.getRole(),
+            connection.getLocale(),
+            parameterValues);
+    }
+
+    /**
+     * Looks up a result.
+     *
+     * @param key Key
+     * @param query Query being executed; the returned result reports it as
+     *   its query
+     * @return Cached result, or null
+     */
+    Result get(List<Object> key, Query query) {
+        final Entry entry;
+        synchronized (this) {
+            entry = map.get(key);
+        }
+        return entry == null ? null : new CachedResult(entry.result, query);
+    }
+
+    /**
+     * Offers a result to the cache.
+     *
+     * @param key Key
+     * @param epoch Epoch when evaluation of the result started
+     * @param result Result
+     * @return Whether the result was cached
+     */
+    boolean put(List<Object> key, long epoch, Result result) {
+        final int limit = MondrianProperties.instance().ResultCacheSize.get();
+        long cells = 1;
+        for (Axis axis : result.getAxes()) {
+            final TupleList tupleList = ((RolapAxis) axis).getTupleList();
+            if (!tupleList.isEmpty()
+                && isHighCardinality(tupleList.get(0)))
+            {
+                return false;
+            }
+            cells *= tupleList.size();
+            if (cells > limit) {
+                return false;
+            }
+        }
+        synchronized (this) {
+            if (epoch != this.epoch) {
+                return false;
+            }
+            final Entry previous = map.put(key, new Entry(result, cells));
+            if (previous != null) {
+                cellCount -= previous.cellCount;
+            }
+            cellCount += cells;
+            final Iterator<Entry> iterator = map.values().iterator();
+            while (cellCount > limit && iterator.hasNext()) {
+                cellCount -= iterator.next().cellCount;
+                iterator.remove();
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Removes all results, and starts a new epoch.
+     */
+    synchronized void invalidate() {
+        map.clear();
+        cellCount = 0;
+        ++epoch;
+    }
+
+    private static boolean isHighCardinality(List<Member> tuple) {
+        for (Member member : tuple) {
+            if (member.getDimension().isHighCardinality()) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Result and its number of cells.
+     */
+    private static class Entry {
+        final Result result;
+        final long cellCount;
+
+        Entry(Result result, long cellCount) {
+            this.result = result;
+            this.cellCount = cellCount;
+        }
+    }
+
+    /**
+     * Result returned from the cache. Reports the query that requested it,
+     * rather than the query that computed it.
+     */
+    static class CachedResult implements Result {
+        final Result underlying;
+        private final Query query;
+
+        CachedResult(Result underlying, Query query) {
+            this.underlying = underlying;
+            this.query = query;
+        }
+
+        public Query getQuery() {
+            return query;
+        }
+
+        public Axis[] getAxes() {
+            return underlying.getAxes();
+        }
+
+        public Axis getSlicerAxis() {
+            return underlying.getSlicerAxis();
+        }
+
+        public Cell getCell(int[] pos) {
+            // Looking up a cell may populate the underlying result's cell
+            // table, and the underlying result is shared between queries.
+            synchronized (underlying) {
+                return underlying.getCell(pos);
+            }
+        }
+
+        public void print(PrintWriter pw) {
+            synchronized (underlying) {
+                underlying.print(pw);
+            }
+        }
+
+        public void close() {
+            // The underlying result is shared, so leave it open.
+        }
+    }
+}
+
+// End RolapResultCache.java
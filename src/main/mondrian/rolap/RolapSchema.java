@@ -1043,6 +1043,13 @@ public class RolapSchema implements Schema {
         return mapNameToSet.get(name);
     }
 
+    /**
+     * Returns whether this schema defines any named sets.
+     */
+    boolean hasNamedSets() {
+        return !mapNameToSet.isEmpty();
+    }
+
     public NamedSet getNamedSet(IdentifierSegment segment) {
         // FIXME: write a map that efficiently maps segment->value, taking
         // into account case-sensitivity etc.
@@ -1435,6 +1442,19 @@ System.out.println("RolapSchema.createMemberReader: CONTAINS NAME");
 
     final RolapNativeRegistry nativeRegistry = new RolapNativeRegistry();
 
+    /**
+     * Validated queries, keyed by MDX text, used when a connection to this
+     * schema parses a statement.
+     */
+    final RolapQueryPlanCache queryPlanCache = new RolapQueryPlanCache();
+
+    /**
+     * Results of context-independent expressions, shared by the statements
+     * on this schema if {@link MondrianProperties#EnableSharedExpCache} is
+     * true.
+     */
+    final ExpResultCache sharedExpResultCache = new ExpResultCache();
+
     RolapNativeRegistry getNativeRegistry() {
         return nativeRegistry;
     }
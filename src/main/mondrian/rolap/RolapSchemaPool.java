@@ -194,6 +194,8 @@ class RolapSchemaPool {
                         + ", schema-id=" + System.identityHashCode(schema));
                 }
                 putSchema(schema, md5Bytes, pinSchemaTimeout);
+                RolapSchemaWarmer.instance().start(
+                    schema, connectInfo, dataSource);
             }
             return schema;
         }
@@ -223,6 +225,8 @@ class RolapSchemaPool {
                 LOGGER.debug("create: " + schema);
             }
             putSchema(schema, null, pinSchemaTimeout);
+            RolapSchemaWarmer.instance().start(
+                schema, connectInfo, dataSource);
         }
 
         return schema;
@@ -383,11 +387,13 @@ class RolapSchemaPool {
     }
 
     private void remove(SchemaKey key) {
+        RolapResultCache.instance().invalidate();
         Reference<RolapSchema> ref = mapKeyToSchema.get(key);
         if (ref != null) {
             RolapSchema schema = ref.get();
             if (schema != null) {
                 mapMd5ToSchema.remove(schema.getChecksum());
+                RolapSchemaWarmer.instance().cancel(schema);
                 schema.finalCleanUp();
             }
         }
@@ -398,11 +404,13 @@ class RolapSchemaPool {
         if (RolapSchema.LOGGER.isDebugEnabled()) {
             RolapSchema.LOGGER.debug("Pool.clear: clearing all RolapSchemas");
         }
+        RolapResultCache.instance().invalidate();
 
         for (Reference<RolapSchema> ref : mapKeyToSchema.values()) {
             if (ref != null) {
                 RolapSchema schema = ref.get();
                 if (schema != null) {
+                    RolapSchemaWarmer.instance().cancel(schema);
                     schema.finalCleanUp();
                 }
             }
@@ -0,0 +1,344 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.olap.*;
+import mondrian.server.monitor.WarmupInfo;
+
+import org.apache.log4j.Logger;
+
+import java.io.IOException;
+import java.util.*;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicInteger;
+import javax.sql.DataSource;
+
+/**
+ * Warms up the cache of a schema by running queries in the background after
+ * the schema is loaded.
+ *
+ * <p>The queries are read from the file named by the
+ * {@link RolapConnectionProperties#WarmupQueries} connect string property of
+ * the connection that caused the schema to be loaded. Each query runs on a
+ * connection of its own to that schema, and populates the segment cache and
+ * member cache just as a user's query would.</p>
+ *
+ * <p>Queries from all schemas share a queue, served by at most
+ * {@link MondrianProperties#WarmupNbThreads} daemon threads running at minimum
+ * priority, so that warm-up competes as little as possible with users'
+ * queries. A warm-up is abandoned when its schema is removed from the schema
+ * pool.</p>
+ *
+ * <p>Progress of the recent warm-ups is published by the monitor as
+ * {@link mondrian.server.monitor.Monitor#getWarmups()}.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ *
+ * @author agent
+ */
+public class RolapSchemaWarmer {
+    private static final Logger LOGGER =
+        Logger.getLogger(RolapSchemaWarmer.class);
+
+    private static final RolapSchemaWarmer INSTANCE = new RolapSchemaWarmer();
+
+    /** Maximum number of warm-ups reported by {@link #getWarmupInfos()}. */
+    private static final int HISTORY_SIZE = 100;
+
+    /** Executor, created when first needed. Guarded by this. */
+    private ExecutorService executor;
+
+    /** Recent warm-ups, oldest first. Guarded by this. */
+    private final LinkedList<Warmup> warmups = new LinkedList<Warmup>();
+
+    private RolapSchemaWarmer() {
+    }
+
+    /**
+     * Returns the singleton instance.
+     *
+     * @return Schema warmer
+     */
+    public static RolapSchemaWarmer instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Starts warming up a schema that has just been loaded, if the connection
+     * that loaded it has warm-up queries.
+     *
+     * @param schema Schema
+     * @param connectInfo Properties of the connection that loaded the schema
+     * @param dataSource Data source, or null
+     */
+    void start(
+        RolapSchema schema,
+        Util.PropertyList connectInfo,
+        DataSource dataSource)
+    {
+        final String url =
+            connectInfo.get(RolapConnectionProperties.WarmupQueries.name());
+        if (url == null) {
+            return;
+        }
+        // Queries run with the schema's default role, not the role of the
+        // connection that happened to load the schema.
+        final Util.PropertyList warmupConnectInfo = connectInfo.clone();
+        warmupConnectInfo.remove(RolapConnectionProperties.Role.name());
+        final Warmup warmup =
+            new Warmup(schema, warmupConnectInfo, dataSource);
+        final ExecutorService executor;
+        synchronized (this) {
+            warmups.add(warmup);
+            if (warmups.size() > HISTORY_SIZE) {
+                warmups.removeFirst();
+            }
+            executor = getExecutor();
+        }
+        // The caller holds the schema pool's lock, so read the file on the
+        // executor's thread.
+        executor.submit(warmup.new Load(url, executor));
+    }
+
+    /**
+     * Abandons any warm-up of a schema. Queries that are running finish, but
+     * no more are started.
+     *
+     * @param schema Schema
+     */
+    synchronized void cancel(RolapSchema schema) {
+        for (Warmup warmup : warmups) {
+            if (warmup.schema == schema) {
+                warmup.cancelled = true;
+            }
+        }
+    }
+
+    /**
+     * Returns the progress of recent warm-ups, oldest first.
+     *
+     * @return List of warm-up progress
+     */
+    public synchronized List<WarmupInfo> getWarmupInfos() {
+        final List<WarmupInfo> list = new ArrayList<WarmupInfo>();
+        for (Warmup warmup : warmups) {
+            list.add(warmup.toInfo());
+        }
+        return list;
+    }
+
+    private ExecutorService getExecutor() {
+        if (executor == null) {
+            final int threadCount =
+                Math.max(
+                    MondrianProperties.instance().WarmupNbThreads.get(), 1);
+            executor =
+                new ThreadPoolExecutor(
+                    threadCount,
+                    threadCount,
+                    10,
+                    TimeUnit.SECONDS,
+                    new LinkedBlockingQueue<Runnable>(),
+                    new ThreadFactory() {
+                        private final AtomicInteger counter =
+                            new AtomicInteger(0);
+                        public Thread newThread(Runnable r) {
+                            final Thread t =
+                                Executors.defaultThreadFactory().newThread(r);
+                            t.setDaemon(true);
+                            t.setPriority(Thread.MIN_PRIORITY);
+                            t.setName(
+                                "mondrian.rolap.RolapSchemaWarmer$executor_"
+                                + counter.incrementAndGet());
+                            return t;
+                        }
+                    });
+        }
+        return executor;
+    }
+
+    /**
+     * Splits the contents of a warm-up file into queries.
+     *
+     * @param text Contents of file
+     * @return List of queries
+     */
+    static List<String> parseQueries(String text) {
+        final List<String> queries = new ArrayList<String>();
+        final StringBuilder buf = new StringBuilder();
+        for (String line : text.split("\r?\n")) {
+            final String trimmed = line.trim();
+            if (trimmed.startsWith("--")) {
+                continue;
+            }
+            if (trimmed.endsWith(";")) {
+                buf.append(line.substring(0, line.lastIndexOf(';')));
+                addQuery(queries, buf);
+            } else {
+                buf.append(line).append('\n');
+            }
+        }
+        addQuery(queries, buf);
+        return queries;
+    }
+
+    private static void addQuery(List<String> queries, StringBuilder buf) {
+        final String query = buf.toString().trim();
+        if (query.length() > 0) {
+            queries.add(query);
+        }
+        buf.setLength(0);
+    }
+
+    /**
+     * Warm-up of one schema.
+     */
+    private static class Warmup {
+        /**
+         * Schema; set to null when the warm-up is over, so that the history
+         * does not prevent the schema from being garbage-collected.
+         */
+        volatile RolapSchema schema;
+        final String schemaName;
+        final Util.PropertyList connectInfo;
+        final DataSource dataSource;
+        final long startTimeMillis = System.currentTimeMillis();
+        final AtomicInteger executedCount = new AtomicInteger();
+        final AtomicInteger failedCount = new AtomicInteger();
+
+        /** Number of queries; zero until the file has been read. */
+        volatile int queryCount;
+
+        /** Number of queries executed, failed or skipped. */
+        final AtomicInteger doneCount = new AtomicInteger();
+        volatile long endTimeMillis;
+        volatile boolean cancelled;
+
+        Warmup(
+            RolapSchema schema,
+            Util.PropertyList connectInfo,
+            DataSource dataSource)
+        {
+            this.schema = schema;
+            this.schemaName = schema.getName();
+            this.connectInfo = connectInfo;
+            this.dataSource = dataSource;
+        }
+
+        /**
+         * Marks the warm-up as over.
+         */
+        void end() {
+            endTimeMillis = System.currentTimeMillis();
+            schema = null;
+        }
+
+        WarmupInfo toInfo() {
+            return new WarmupInfo(
+                null,
+                schemaName,
+                queryCount,
+                executedCount.get(),
+                failedCount.get(),
+                cancelled,
+                startTimeMillis,
+                endTimeMillis);
+        }
+
+        /**
+         * Reads the warm-up queries, and submits a task for each.
+         */
+        class Load implements Runnable {
+            private final String url;
+            private final ExecutorService executor;
+
+            Load(String url, ExecutorService executor) {
+                this.url = url;
+                this.executor = executor;
+            }
+
+            public void run() {
+                final List<String> queries;
+                try {
+                    queries = parseQueries(Util.readVirtualFileAsString(url));
+                } catch (IOException e) {
+                    LOGGER.warn(
+                        "Cannot read warm-up queries for schema '"
+                        + schemaName + "' from " + url,
+                        e);
+                    end();
+                    return;
+                }
+                queryCount = queries.size();
+                if (queryCount == 0) {
+                    end();
+                    return;
+                }
+                for (String query : queries) {
+                    executor.submit(new Task(query));
+                }
+            }
+        }
+
+        /**
+         * Runs one warm-up query.
+         */
+        class Task implements Runnable {
+            private final String mdx;
+
+            Task(String mdx) {
+                this.mdx = mdx;
+            }
+
+            public void run() {
+                try {
+                    final RolapSchema schema = Warmup.this.schema;
+                    if (!cancelled && schema != null) {
+                        execute(schema);
+                    }
+                } finally {
+                    if (doneCount.incrementAndGet() == queryCount) {
+                        end();
+                    }
+                }
+            }
+
+            private void execute(RolapSchema schema) {
+                final String instance =
+                    connectInfo.get(RolapConnectionProperties.Instance.name());
+                RolapConnection connection = null;
+                try {
+                    connection =
+                        new RolapConnection(
+                            MondrianServer.forId(instance),
+                            connectInfo,
+                            schema,
+                            dataSource);
+                    final Result result =
+                        connection.execute(connection.parseQuery(mdx));
+                    result.close();
+                    executedCount.incrementAndGet();
+                } catch (Throwable e) {
+                    failedCount.incrementAndGet();
+                    LOGGER.warn(
+                        "Warm-up query failed for schema '" + schemaName
+                        + "': " + mdx,
+                        e);
+                } finally {
+                    if (connection != null) {
+                        connection.close();
+                    }
+                }
+            }
+        }
+    }
+}
+
+// End RolapSchemaWarmer.java
@@ -20,6 +20,7 @@ import mondrian.rolap.sql.SqlQuery;
 import mondrian.server.Locus;
 import mondrian.spi.*;
 import mondrian.util.Bug;
+import mondrian.util.ValueDictionary;
 
 import org.apache.commons.collections.map.ReferenceMap;
 import org.apache.log4j.Logger;
@@ -79,6 +80,12 @@ public class RolapStar {
      */
     private final List<AggStar> aggStars = new LinkedList<AggStar>();
 
+    /**
+     * Index of {@link #aggStars}, created when first needed and discarded
+     * whenever the list changes.
+     */
+    private volatile AggStarIndex aggStarIndex;
+
     private DataSourceChangeListener changeListener;
 
     // temporary model, should eventually use RolapStar.Table and
@@ -192,6 +199,23 @@ public class RolapStar {
             new SoftReference<SegmentWithData>(segment));
     }
 
+    /**
+     * Returns the segments that the current thread has registered with this
+     * star, so that they can be registered by another thread that evaluates
+     * cells on its behalf.
+     *
+     * @return List of segments
+     */
+    List<SegmentWithData> getLocalSegments() {
+        final List<SegmentWithData> list = new ArrayList<SegmentWithData>();
+        for (SegmentWithData segment
+            : Util.GcIterator.over(localBars.get().segmentRefs))
+        {
+            list.add(segment);
+        }
+        return list;
+    }
+
     public RolapStatisticsCache getStatisticsCache() {
         return statisticsCache;
     }
@@ -422,6 +446,7 @@ public class RolapStar {
      */
     public void prepareToLoadAggregates() {
         aggStars.clear();
+        aggStarIndex = null;
     }
 
     /**
@@ -432,6 +457,8 @@ public class RolapStar {
      * ties do not matter.
      */
     public void addAggStar(AggStar aggStar) {
+        aggStarIndex = null;
+
         // Add it before the first AggStar which is larger, if there is one.
         int size = aggStar.getSize();
         ListIterator<AggStar> lit = aggStars.listIterator();
@@ -453,6 +480,7 @@ public class RolapStar {
      */
     void clearAggStarList() {
         aggStars.clear();
+        aggStarIndex = null;
     }
 
     /**
@@ -475,6 +503,19 @@ public class RolapStar {
         return aggStars;
     }
 
+    /**
+     * Returns an index of this RolapStar's aggregate table AggStars, used to
+     * find an aggregate table that has a given set of columns.
+     */
+    public AggStarIndex getAggStarIndex() {
+        AggStarIndex index = aggStarIndex;
+        if (index == null) {
+            index = new AggStarIndex(aggStars);
+            aggStarIndex = index;
+        }
+        return index;
+    }
+
     /**
      * Returns the fact table at the center of this RolapStar.
      *
@@ -553,6 +594,17 @@ public class RolapStar {
         }
     }
 
+    /**
+     * Replaces the value dictionary of each column of this star with an
+     * empty one. Called when segments of this star are flushed, so that the
+     * dictionaries do not fill up with values of segments that have gone.
+     */
+    public void resetValueDictionaries() {
+        for (Column column : columnList) {
+            column.resetValueDictionary();
+        }
+    }
+
     /**
      * Looks up an aggregation or creates one if it does not exist in an
      * atomic (synchronized) operation.
@@ -881,6 +933,15 @@ public class RolapStar {
         private AtomicInteger approxCardinality = new AtomicInteger(
             Integer.MIN_VALUE);
 
+        /**
+         * Dictionary of the values of this column that occur in segments.
+         * Segment axes and headers intern their value sets here, so that
+         * segments over the same values share them. Replaced by
+         * {@link #resetValueDictionary()}.
+         */
+        private volatile ValueDictionary valueDictionary =
+            new ValueDictionary();
+
         private Column(
             String name,
             Table table,
@@ -979,6 +1040,25 @@ public class RolapStar {
             return table;
         }
 
+        /**
+         * Returns the dictionary of values of this column.
+         *
+         * @return Value dictionary
+         */
+        public ValueDictionary getValueDictionary() {
+            return valueDictionary;
+        }
+
+        /**
+         * Replaces the dictionary of values of this column with an empty
+         * one, so that values that no segment uses any more no longer
+         * occupy it. Segments that were built using the old dictionary
+         * continue to use it.
+         */
+        void resetValueDictionary() {
+            valueDictionary = new ValueDictionary();
+        }
+
         public SqlQuery getSqlQuery() {
             return getTable().getStar().getSqlQuery();
         }
@@ -351,6 +351,37 @@ public class RolapUtil {
         return stmt;
     }
 
+    /**
+     * Executes a query, sharing its rows with identical queries that are
+     * executing at the same time.
+     *
+     * <p>As {@link #executeQuery}, but calls
+     * {@link SqlStatement#executeShared()}. The caller must read
+     * rows using only {@link java.sql.ResultSet#next()} and the statement's
+     * accessors.
+     *
+     * @param dataSource DataSource
+     * @param sql SQL string
+     * @param types Suggested types of columns, or null
+     * @param maxRowCount Maximum number of rows to retrieve, <= 0 if unlimited
+     * @param locus Execution context of this statement
+     * @return Statement
+     */
+    public static SqlStatement executeSharedQuery(
+        DataSource dataSource,
+        String sql,
+        List<SqlStatement.Type> types,
+        int maxRowCount,
+        Locus locus)
+    {
+        SqlStatement stmt =
+            new SqlStatement(
+                dataSource, sql, types, maxRowCount, 0, locus, -1, -1,
+                getDefaultCallback(locus));
+        stmt.executeShared();
+        return stmt;
+    }
+
     /**
      * Raises an alert that native SQL evaluation could not be used
      * in a case where it might have been beneficial, but some
@@ -0,0 +1,212 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.olap.MondrianProperties;
+import mondrian.server.monitor.SqlStatementEvent.Purpose;
+
+import java.util.*;
+import javax.sql.DataSource;
+
+/**
+ * Limits the number of SQL statements that run at the same time against a
+ * data source.
+ *
+ * <p>There is one controller per {@link DataSource}, so that a busy catalog
+ * does not hold up the statements of another. At most
+ * {@link MondrianProperties#QueryLimit} statements run at a time.</p>
+ *
+ * <p>Each statement is placed in a lane according to its {@link Purpose}.
+ * Each lane has its own queue, served in first-come, first-served order, and
+ * may have its own concurrency limit, such as
+ * {@link MondrianProperties#QueryLimitDrillThrough}. When a statement
+ * finishes, the next statement admitted is the head of the queue of the
+ * highest-priority lane that is under its limit. Member lookups have the
+ * highest priority, because they are usually small and a user is waiting for
+ * them; then cell loads; then drill-through, the largest and least urgent.
+ * A lane limit therefore stops, say, a burst of drill-through statements
+ * from using all of the data source's connections.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ *
+ * @see SqlStatement
+ *
+ * @author agent
+ */
+public class SqlAdmissionController {
+    private static final Map<DataSource, SqlAdmissionController> MAP =
+        new WeakHashMap<DataSource, SqlAdmissionController>();
+
+    /** Lanes, highest priority first. */
+    private static final Purpose[] PRIORITIES = {
+        Purpose.TUPLES,
+        Purpose.CELL_SEGMENT,
+        Purpose.OTHER,
+        Purpose.DRILL_THROUGH,
+    };
+
+    private final int limit;
+
+    /** Maximum number of running statements, indexed by lane ordinal. */
+    private final int[] laneLimits;
+
+    /** Number of running statements. Guarded by this. */
+    private int activeCount;
+
+    /**
+     * Number of running statements, indexed by lane ordinal. Guarded by
+     * this.
+     */
+    private final int[] laneActiveCounts;
+
+    /**
+     * Statements waiting to run, indexed by lane ordinal. Each waiting
+     * statement is represented by a ticket. Guarded by this.
+     */
+    private final List<LinkedList<Object>> queues;
+
+    /**
+     * Creates a SqlAdmissionController.
+     *
+     * @param limit Maximum number of statements running at a time
+     * @param laneLimits Maximum number of statements of each purpose running
+     *   at a time, indexed by purpose ordinal; 0 means no limit other than
+     *   {@code limit}
+     */
+    SqlAdmissionController(int limit, int[] laneLimits) {
+        assert laneLimits.length == Purpose.values().length;
+        this.limit = limit;
+        this.laneLimits = new int[laneLimits.length];
+        this.laneActiveCounts = new int[laneLimits.length];
+        this.queues = new ArrayList<LinkedList<Object>>();
+        for (int i = 0; i < laneLimits.length; i++) {
+            this.laneLimits[i] = laneLimits[i] > 0 ? laneLimits[i] : limit;
+            this.queues.add(new LinkedList<Object>());
+        }
+    }
+
+    /**
+     * Returns the controller for a data source, creating it if necessary.
+     * Limits are read from {@link MondrianProperties} when the controller is
+     * created.
+     *
+     * @param dataSource Data source
+     * @return Admission controller
+     */
+    public static synchronized SqlAdmissionController forDataSource(
+        DataSource dataSource)
+    {
+        SqlAdmissionController controller = MAP.get(dataSource);
+        if (controller == null) {
+            final MondrianProperties properties = MondrianProperties.instance();
+            final int[] laneLimits = new int[Purpose.values().length];
+            laneLimits[Purpose.TUPLES.ordinal()] =
+                properties.QueryLimitTuples.get();
+            laneLimits[Purpose.CELL_SEGMENT.ordinal()] =
+                properties.QueryLimitCellSegment.get();
+            laneLimits[Purpose.DRILL_THROUGH.ordinal()] =
+                properties.QueryLimitDrillThrough.get();
+            laneLimits[Purpose.OTHER.ordinal()] =
+                properties.QueryLimitOther.get();
+            controller =
+                new SqlAdmissionController(
+                    properties.QueryLimit.get(), laneLimits);
+            MAP.put(dataSource, controller);
+        }
+        return controller;
+    }
+
+    /**
+     * Waits until a statement may run. The caller must call
+     * {@link #release(Purpose)} when the statement has finished.
+     *
+     * @param purpose Purpose of statement
+     * @return Time spent waiting, in nanoseconds
+     * @throws InterruptedException if interrupted while waiting
+     */
+    public synchronized long acquire(Purpose purpose)
+        throws InterruptedException
+    {
+        final long startNanos = System.nanoTime();
+        final int lane = purpose.ordinal();
+        final LinkedList<Object> queue = queues.get(lane);
+        final Object ticket = new Object();
+        queue.add(ticket);
+        try {
+            while (next() != ticket) {
+                wait();
+            }
+        } catch (InterruptedException e) {
+            queue.remove(ticket);
+            // The ticket behind ours may now be the next to run.
+            notifyAll();
+            throw e;
+        }
+        queue.removeFirst();
+        ++activeCount;
+        ++laneActiveCounts[lane];
+        // There may be room for another statement, perhaps in another lane.
+        notifyAll();
+        return System.nanoTime() - startNanos;
+    }
+
+    /**
+     * Records that a statement has finished, and lets the next statement run.
+     *
+     * @param purpose Purpose of statement
+     */
+    public synchronized void release(Purpose purpose) {
+        assert activeCount > 0;
+        --activeCount;
+        --laneActiveCounts[purpose.ordinal()];
+        notifyAll();
+    }
+
+    /**
+     * Returns the ticket of the statement that should run next, or null if
+     * no statement can run yet.
+     */
+    private Object next() {
+        if (activeCount >= limit) {
+            return null;
+        }
+        for (Purpose purpose : PRIORITIES) {
+            final int lane = purpose.ordinal();
+            final LinkedList<Object> queue = queues.get(lane);
+            if (!queue.isEmpty() && laneActiveCounts[lane] < laneLimits[lane]) {
+                return queue.getFirst();
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Returns the number of statements of a given purpose that are running.
+     *
+     * @param purpose Purpose
+     * @return Number of running statements
+     */
+    public synchronized int getActiveCount(Purpose purpose) {
+        return laneActiveCounts[purpose.ordinal()];
+    }
+
+    /**
+     * Returns the number of statements of a given purpose that are waiting
+     * to run.
+     *
+     * @param purpose Purpose
+     * @return Number of waiting statements
+     */
+    public synchronized int getQueuedCount(Purpose purpose) {
+        return queues.get(purpose.ordinal()).size();
+    }
+}
+
+// End SqlAdmissionController.java
@@ -188,7 +188,7 @@ public class SqlConstraintUtils {
                         } else {
                             // No extra slicers.... just use the = method
                             final StringBuilder buf = new StringBuilder();
-                            sqlQuery.getDialect().quote(
+                            sqlQuery.quote(
                                 buf, value,
                                 column.getDatatype());
                             sqlQuery.addWhere(
@@ -202,7 +202,7 @@ public class SqlConstraintUtils {
                 } else {
                     // apply constraints not in the slicer
                     final StringBuilder buf = new StringBuilder();
-                    sqlQuery.getDialect().quote(
+                    sqlQuery.quote(
                         buf, value,
                         column.getDatatype());
                     sqlQuery.addWhere(
@@ -1261,7 +1261,7 @@ public class SqlConstraintUtils {
                 Double.valueOf(columnValue);
             }
             final StringBuilder buf = new StringBuilder();
-            query.getDialect().quote(buf, columnValue, datatype);
+            query.quote(buf, columnValue, datatype);
             String value = buf.toString();
             if (caseSensitive && datatype == Dialect.Datatype.String) {
                 // Some databases (like DB2) compare case-sensitive. We convert
@@ -1303,7 +1303,7 @@ public class SqlConstraintUtils {
             final StringBuilder buf = new StringBuilder();
             buf.append(columnString);
             buf.append(" = ");
-            query.getDialect().quote(buf, columnValue, datatype);
+            query.quote(buf, columnValue, datatype);
             return buf.toString();
         }
     }
@@ -1365,6 +1365,7 @@ public class SqlConstraintUtils {
         columnBuf.append(")");
 
         // generate the RHS of the IN predicate
+        final int maxInListSize = sqlQuery.getDialect().getMaxInListSize();
         valueBuf.append("(");
         int memberOrdinal = 0;
         for (RolapMember m : members) {
@@ -1420,7 +1421,7 @@ public class SqlConstraintUtils {
                     memberBuf.append(", ");
                 }
 
-                sqlQuery.getDialect().quote(
+                sqlQuery.quote(
                     memberBuf, value, level.getDatatype());
 
                 // Only needs to compare up to the first(lowest) unique level.
@@ -1434,9 +1435,20 @@ public class SqlConstraintUtils {
             // generated successfully.
             if (!containsNull) {
                 memberBuf.append(")");
-                if (memberOrdinal++ > 0) {
-                    valueBuf.append(", ");
+                if (memberOrdinal > 0) {
+                    if (maxInListSize > 0
+                        && memberOrdinal % maxInListSize == 0)
+                    {
+                        // The list is as long as the dialect allows. Start
+                        // another, as ListColumnPredicate does.
+                        valueBuf.append(") or ");
+                        valueBuf.append(columnBuf);
+                        valueBuf.append(" in (");
+                    } else {
+                        valueBuf.append(", ");
+                    }
                 }
+                ++memberOrdinal;
                 valueBuf.append(memberBuf);
             }
         }
@@ -1444,10 +1456,18 @@ public class SqlConstraintUtils {
         StringBuilder condition = new StringBuilder();
         if (memberOrdinal > 0) {
             // SQLs are generated for some members.
+            final boolean split =
+                maxInListSize > 0 && memberOrdinal > maxInListSize;
+            if (split) {
+                condition.append("(");
+            }
             condition.append(columnBuf);
             condition.append(" in ");
             condition.append(valueBuf);
             condition.append(")");
+            if (split) {
+                condition.append(")");
+            }
         }
 
         return condition.toString();
@@ -321,14 +321,13 @@ class SqlMemberSource
         List<SqlStatement.Type> types = pair.right;
         RolapLevel[] levels = (RolapLevel[]) hierarchy.getLevels();
         SqlStatement stmt =
-            RolapUtil.executeQuery(
-                dataSource, sql, types, 0, 0,
+            RolapUtil.executeSharedQuery(
+                dataSource, sql, types, 0,
                 new SqlStatement.StatementLocus(
                     null,
                     "SqlMemberSource.getMembers",
                     "while building member cache",
-                    SqlStatementEvent.Purpose.TUPLES, 0),
-                -1, -1, null);
+                    SqlStatementEvent.Purpose.TUPLES, 0));
         try {
             final List<SqlStatement.Accessor> accessors = stmt.getAccessors();
             List<RolapMember> list = new ArrayList<RolapMember>();
@@ -947,14 +946,13 @@ RME is this right
         final String sql = pair.left;
         final List<SqlStatement.Type> types = pair.right;
         SqlStatement stmt =
-            RolapUtil.executeQuery(
-                dataSource, sql, types, 0, 0,
+            RolapUtil.executeSharedQuery(
+                dataSource, sql, types, 0,
                 new SqlStatement.StatementLocus(
                     Locus.peek().execution,
                     "SqlMemberSource.getMemberChildren",
                     "while building member cache",
-                    SqlStatementEvent.Purpose.TUPLES, 0),
-                -1, -1, null);
+                    SqlStatementEvent.Purpose.TUPLES, 0));
         try {
             int limit = MondrianProperties.instance().ResultLimit.get();
             boolean checkCacheStatus = true;
@@ -1251,7 +1249,7 @@ RME is this right
         String parentId = level.getParentExp().getExpression(sqlQuery);
 
         StringBuilder buf = new StringBuilder();
-        sqlQuery.getDialect().quote(buf, member.getKey(), level.getDatatype());
+        sqlQuery.quote(buf, member.getKey(), level.getDatatype());
         sqlQuery.addWhere(parentId, " = ", buf.toString());
 
         hierarchy.addToFrom(sqlQuery, level.getKeyExp());
@@ -0,0 +1,296 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.olap.Util;
+import mondrian.server.monitor.SqlStatementEvent.Purpose;
+import mondrian.util.DelegatingInvocationHandler;
+import mondrian.util.SlotFuture;
+
+import java.lang.reflect.Proxy;
+import java.sql.Statement;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import javax.sql.DataSource;
+
+/**
+ * Registry of SQL statements that are executing, so that a statement that
+ * is identical to one already executing can wait for it and share its rows,
+ * rather than sending the same SQL to the database again.
+ *
+ * <p>This happens when many users open the same dashboard just after the
+ * cache has been flushed, and each needs the same members. Cell loads are
+ * already shared, by {@link mondrian.rolap.agg.SegmentCacheManager}; this
+ * registry is for the statements of {@link SqlMemberSource} and
+ * {@link SqlTupleReader}. See {@link SqlStatement#executeShared()}.</p>
+ *
+ * <p>The first statement to arrive is the leader: it executes the SQL and
+ * reads its rows into memory, up to
+ * {@link mondrian.olap.MondrianProperties#SqlSharingBufferLimit} rows.
+ * Statements that arrive while it is running attach to its {@link Flight}
+ * and wait for the rows. A flight is removed from the registry when its rows
+ * are ready, so statements that arrive afterwards execute the SQL again. If
+ * the result has too many rows, the flight fails, the statements that are
+ * waiting execute the SQL themselves, and the leader reads the rest of its
+ * rows from the database; see {@link #unshare}.</p>
+ *
+ * <p>Each statement attached to a flight, leader included, holds a
+ * reference to it. A statement whose {@link mondrian.server.Execution} is
+ * canceled releases its reference; the JDBC statement is canceled only
+ * when no references remain.</p>
+ *
+ * @author agent
+ */
+public class SqlSingleFlight {
+    private static final ConcurrentMap<Key, Flight> FLIGHTS =
+        new ConcurrentHashMap<Key, Flight>();
+
+    private SqlSingleFlight() {
+    }
+
+    /**
+     * Attaches to the flight that is executing a given statement, or, if
+     * there is none, registers a new flight.
+     *
+     * @param key Statement
+     * @param candidate Flight to register if there is none; the caller will
+     *   be its leader
+     * @return Flight to which the caller is attached; the caller is the
+     *   leader if and only if this is {@code candidate}
+     */
+    static Flight join(Key key, Flight candidate) {
+        for (;;) {
+            final Flight flight = FLIGHTS.putIfAbsent(key, candidate);
+            if (flight == null) {
+                return candidate;
+            }
+            if (flight.attach()) {
+                return flight;
+            }
+            // The flight is finishing or has been abandoned by all of its
+            // statements. Replace it.
+            FLIGHTS.remove(key, flight);
+        }
+    }
+
+    /**
+     * Removes a flight from the registry, so that no more statements attach
+     * to it.
+     *
+     * @param key Statement
+     * @param flight Flight
+     */
+    static void remove(Key key, Flight flight) {
+        flight.close();
+        FLIGHTS.remove(key, flight);
+    }
+
+    /**
+     * Removes a flight from the registry because its leader will not share
+     * its rows. Statements attached to the flight no longer hold a reference
+     * to it, and canceling the leader cancels the JDBC statement.
+     *
+     * @param key Statement
+     * @param flight Flight
+     */
+    static void unshare(Key key, Flight flight) {
+        flight.unshare();
+        FLIGHTS.remove(key, flight);
+    }
+
+    /**
+     * Identifies a SQL statement that may be shared.
+     */
+    static class Key {
+        private final DataSource dataSource;
+        private final String sql;
+        private final List<SqlStatement.Type> types;
+        private final int maxRows;
+        private final Purpose purpose;
+        private final int hashCode;
+
+        Key(
+            DataSource dataSource,
+            String sql,
+            List<SqlStatement.Type> types,
+            int maxRows,
+            Purpose purpose)
+        {
+            this.dataSource = dataSource;
+            this.sql = sql;
+            this.types = types;
+            this.maxRows = maxRows;
+            this.purpose = purpose;
+            int h = dataSource.hashCode();
+            h = Util.hash(h, sql);
+            h = Util.hash(h, types);
+            h = Util.hash(h, maxRows);
+            h = Util.hash(h, purpose);
+            this.hashCode = h;
+        }
+
+        public int hashCode() {
+            return hashCode;
+        }
+
+        public boolean equals(Object obj) {
+            if (!(obj instanceof Key)) {
+                return false;
+            }
+            final Key that = (Key) obj;
+            return this.hashCode == that.hashCode
+                && this.maxRows == that.maxRows
+                && this.purpose == that.purpose
+                && this.sql.equals(that.sql)
+                && Util.equals(this.types, that.types)
+                && this.dataSource.equals(that.dataSource);
+        }
+    }
+
+    /**
+     * Execution of a SQL statement on behalf of one or more
+     * {@link SqlStatement}s.
+     */
+    static class Flight {
+        /** Rows read by the leader. */
+        final SlotFuture<List<Object[]>> future =
+            new SlotFuture<List<Object[]>>();
+
+        /** Number of columns; set before {@link #future} is completed. */
+        volatile int columnCount;
+
+        /** Number of statements attached. Guarded by this. */
+        private int refCount = 1;
+
+        /** Whether no more statements may attach. Guarded by this. */
+        private boolean closed;
+
+        /** Whether the leader no longer shares its rows. Guarded by this. */
+        private boolean unshared;
+
+        /** JDBC statement of the leader, or null. Guarded by this. */
+        private Statement statement;
+
+        /**
+         * Attaches a statement to this flight.
+         *
+         * @return Whether attached; false if the flight is finishing or
+         *   abandoned
+         */
+        synchronized boolean attach() {
+            if (closed) {
+                return false;
+            }
+            ++refCount;
+            return true;
+        }
+
+        /**
+         * Detaches a statement whose execution has been canceled. If none
+         * remain, cancels the JDBC statement.
+         */
+        void detach() {
+            final Statement statementToCancel;
+            synchronized (this) {
+                if (--refCount > 0 || closed) {
+                    return;
+                }
+                closed = true;
+                statementToCancel = statement;
+            }
+            if (statementToCancel != null) {
+                Util.cancelStatement(statementToCancel);
+            }
+        }
+
+        /**
+         * Detaches the leader, whose execution has been canceled. If the
+         * flight has been unshared, cancels the JDBC statement regardless of
+         * other statements.
+         */
+        void detachLeader() {
+            final Statement statementToCancel;
+            synchronized (this) {
+                if (!unshared) {
+                    statementToCancel = null;
+                } else {
+                    statementToCancel = statement;
+                    statement = null;
+                }
+            }
+            if (statementToCancel != null) {
+                Util.cancelStatement(statementToCancel);
+            } else {
+                detach();
+            }
+        }
+
+        /**
+         * Records the JDBC statement that is executing on behalf of this
+         * flight. If every attached statement has already been canceled,
+         * cancels it straight away.
+         *
+         * @param statement JDBC statement
+         */
+        void setStatement(Statement statement) {
+            synchronized (this) {
+                if (!closed) {
+                    this.statement = statement;
+                    return;
+                }
+            }
+            Util.cancelStatement(statement);
+        }
+
+        private synchronized void close() {
+            closed = true;
+            statement = null;
+        }
+
+        private synchronized void unshare() {
+            closed = true;
+            unshared = true;
+        }
+
+        /**
+         * Returns a handle that the leader registers with its
+         * {@link mondrian.server.Execution} in place of the JDBC statement.
+         * Canceling the handle detaches the leader.
+         *
+         * @return Handle
+         */
+        Statement cancelHandle() {
+            return (Statement) Proxy.newProxyInstance(
+                null,
+                new Class<?>[] {Statement.class},
+                new CancelHandler(this));
+        }
+    }
+
+    /**
+     * Implements {@link Statement#cancel()} for the handle returned by
+     * {@link Flight#cancelHandle()}.
+     */
+    // must be public for reflection to work
+    public static class CancelHandler extends DelegatingInvocationHandler {
+        private final Flight flight;
+
+        CancelHandler(Flight flight) {
+            this.flight = flight;
+        }
+
+        public void cancel() {
+            flight.detachLeader();
+        }
+    }
+}
+
+// End SqlSingleFlight.java
@@ -10,6 +10,7 @@ package mondrian.rolap;
 
 import mondrian.olap.*;
 import mondrian.olap.Util.Functor1;
+import mondrian.rolap.sql.SqlParameter;
 import mondrian.server.Execution;
 import mondrian.server.Locus;
 import mondrian.server.monitor.*;
@@ -22,8 +23,9 @@ import java.lang.reflect.Proxy;
 import java.sql.*;
 import java.sql.Connection;
 import java.util.ArrayList;
+import java.util.Iterator;
 import java.util.List;
-import java.util.concurrent.Semaphore;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicLong;
 import javax.sql.DataSource;
 
@@ -62,20 +64,28 @@ public class SqlStatement {
     // used for SQL logging, allows for a SQL Statement UID
     private static final AtomicLong ID_GENERATOR = new AtomicLong();
 
-    private static final Semaphore querySemaphore = new Semaphore(
-        MondrianProperties.instance().QueryLimit.get(), true);
-
     private final DataSource dataSource;
     private Connection jdbcConnection;
     private ResultSet resultSet;
     private final String sql;
+
+    /** SQL with values in place of parameter markers, for messages. */
+    private final String displaySql;
     private final List<Type> types;
     private final int maxRows;
     private final int firstRowOrdinal;
     private final Locus locus;
     private final int resultSetType;
     private final int resultSetConcurrency;
-    private boolean haveSemaphore;
+    /** Controller that admitted this statement, or null if not admitted. */
+    private SqlAdmissionController admissionController;
+    private long queueWaitNanos;
+
+    /** Flight that this statement leads, if it is shared, otherwise null. */
+    private SqlSingleFlight.Flight flight;
+
+    /** Whether this statement's rows were read by another statement. */
+    private boolean attached;
     public int rowCount;
     private long startTimeNanos;
     private long startTimeMillis;
@@ -113,6 +123,7 @@ public class SqlStatement {
         this.id = ID_GENERATOR.getAndIncrement();
         this.dataSource = dataSource;
         this.sql = sql;
+        this.displaySql = SqlParameter.expand(sql);
         this.types = types;
         this.maxRows = maxRows;
         this.firstRowOrdinal = firstRowOrdinal;
@@ -135,9 +146,19 @@ public class SqlStatement {
             // Check execution state
             locus.execution.checkCancelOrTimeout();
 
+            // Wait for our turn before we take a connection from the pool.
+            final SqlAdmissionController controller =
+                SqlAdmissionController.forDataSource(dataSource);
+            queueWaitNanos = controller.acquire(getPurpose());
+            admissionController = controller;
+
             this.jdbcConnection = dataSource.getConnection();
-            querySemaphore.acquire();
-            haveSemaphore = true;
+
+            // Replace parameter markers, if any, with '?'.
+            final List<SqlParameter> parameters =
+                new ArrayList<SqlParameter>();
+            final String jdbcSql = SqlParameter.extract(sql, parameters);
+
             // Trace start of execution.
             if (RolapUtil.SQL_LOGGER.isDebugEnabled()) {
                 StringBuilder sqllog = new StringBuilder();
@@ -150,15 +171,18 @@ public class SqlStatement {
                     // start on its own line.
                     sqllog.append("\n");
                 }
-                sqllog.append(sql);
+                sqllog.append(jdbcSql);
                 sqllog.append(']');
+                if (!parameters.isEmpty()) {
+                    sqllog.append(" with parameters ").append(parameters);
+                }
                 RolapUtil.SQL_LOGGER.debug(sqllog.toString());
             }
 
             // Execute hook.
             RolapUtil.ExecuteQueryHook hook = RolapUtil.getHook();
             if (hook != null) {
-                hook.onExecuteQuery(sql);
+                hook.onExecuteQuery(jdbcSql);
             }
 
             // Check execution state
@@ -167,19 +191,47 @@ public class SqlStatement {
             startTimeNanos = System.nanoTime();
             startTimeMillis = System.currentTimeMillis();
 
-            if (resultSetType < 0 || resultSetConcurrency < 0) {
-                statement = jdbcConnection.createStatement();
+            final PreparedStatement preparedStatement;
+            if (parameters.isEmpty()) {
+                preparedStatement = null;
+                if (resultSetType < 0 || resultSetConcurrency < 0) {
+                    statement = jdbcConnection.createStatement();
+                } else {
+                    statement = jdbcConnection.createStatement(
+                        resultSetType,
+                        resultSetConcurrency);
+                }
             } else {
-                statement = jdbcConnection.createStatement(
-                    resultSetType,
-                    resultSetConcurrency);
+                if (resultSetType < 0 || resultSetConcurrency < 0) {
+                    preparedStatement =
+                        jdbcConnection.prepareStatement(jdbcSql);
+                } else {
+                    preparedStatement = jdbcConnection.prepareStatement(
+                        jdbcSql,
+                        resultSetType,
+                        resultSetConcurrency);
+                }
+                for (int i = 0; i < parameters.size(); i++) {
+                    parameters.get(i).bind(preparedStatement, i + 1);
+                }
+                statement = preparedStatement;
             }
             if (maxRows > 0) {
                 statement.setMaxRows(maxRows);
+            } else if (preparedStatement != null) {
+                // The statement may come from a cache, and have the limit of
+                // an earlier use.
+                statement.setMaxRows(0);
             }
 
             // First make sure to register with the execution instance.
-            if (getPurpose() != Purpose.CELL_SEGMENT) {
+            if (flight != null) {
+                // Statements that share our rows may still need them if our
+                // execution is canceled. Let the flight decide.
+                flight.setStatement(statement);
+                locus.execution.registerStatement(
+                    locus, flight.cancelHandle());
+            } else if (getPurpose() != Purpose.CELL_SEGMENT) {
                 locus.execution.registerStatement(locus, statement);
             } else {
                 if (callback != null) {
@@ -192,11 +244,16 @@ public class SqlStatement {
                     startTimeMillis,
                     id,
                     locus,
-                    sql,
+                    displaySql,
                     getPurpose(),
-                    getCellRequestCount()));
+                    getCellRequestCount(),
+                    queueWaitNanos));
 
-            this.resultSet = statement.executeQuery(sql);
+            if (preparedStatement == null) {
+                this.resultSet = statement.executeQuery(jdbcSql);
+            } else {
+                this.resultSet = preparedStatement.executeQuery();
+            }
 
             // skip to first row specified in request
             this.state = State.ACTIVE;
@@ -227,7 +284,7 @@ public class SqlStatement {
                     timeMillis,
                     id,
                     locus,
-                    sql,
+                    displaySql,
                     getPurpose(),
                     executeNanos));
 
@@ -255,8 +312,189 @@ public class SqlStatement {
 
             if (RolapUtil.LOGGER.isDebugEnabled()) {
                 RolapUtil.LOGGER.debug(
-                    locus.component + ": executing sql [" + sql + "]" + status);
+                    locus.component + ": executing sql [" + displaySql + "]"
+                    + status);
+            }
+        }
+    }
+
+    /**
+     * Executes the current statement, sharing its rows with identical
+     * statements that execute at the same time.
+     *
+     * <p>If {@link MondrianProperties#EnableSqlSharing} is set and another
+     * statement against the same data source with the same SQL, types,
+     * maximum row count and purpose is executing, waits for its rows rather
+     * than executing the SQL again. Otherwise, executes the SQL, and reads
+     * up to {@link MondrianProperties#SqlSharingBufferLimit} rows into
+     * memory, so that statements that arrive in the meantime can share them.
+     * If there are more rows, the statements that are waiting execute their
+     * own SQL, and this statement reads the rest of its rows from the
+     * database. See {@link SqlSingleFlight}.</p>
+     *
+     * <p>Either way, the caller reads rows using {@link #getResultSet()} and
+     * {@link #getAccessors()}, as after {@link #execute()}, but only
+     * {@link ResultSet#next()} and {@link ResultSet#close()} may be called on
+     * the result set.</p>
+     */
+    public void executeShared() {
+        if (!MondrianProperties.instance().EnableSqlSharing.get()
+            || firstRowOrdinal > 0
+            || resultSetType >= 0
+            || resultSetConcurrency >= 0)
+        {
+            execute();
+            return;
+        }
+        final SqlSingleFlight.Key key =
+            new SqlSingleFlight.Key(
+                dataSource, sql, types, maxRows, getPurpose());
+        final SqlSingleFlight.Flight candidate = new SqlSingleFlight.Flight();
+        final SqlSingleFlight.Flight flight =
+            SqlSingleFlight.join(key, candidate);
+        if (flight != candidate) {
+            if (!attach(flight)) {
+                // The other statement failed, perhaps because its own
+                // execution was canceled. Go it alone.
+                execute();
+            }
+            return;
+        }
+        this.flight = flight;
+        try {
+            execute();
+            final int bufferLimit =
+                MondrianProperties.instance().SqlSharingBufferLimit.get();
+            final List<Object[]> rows = new ArrayList<Object[]>();
+            boolean overflow = false;
+            try {
+                while (resultSet.next()) {
+                    final Object[] row = new Object[accessors.size()];
+                    for (int i = 0; i < row.length; i++) {
+                        row[i] = accessors.get(i).get();
+                    }
+                    rows.add(row);
+                    if (rows.size() > bufferLimit) {
+                        overflow = true;
+                        break;
+                    }
+                }
+            } catch (SQLException e) {
+                throw handle(e);
+            }
+            if (overflow) {
+                // Too many rows to hold in memory. Statements that are
+                // waiting execute their own SQL; we return the rows read so
+                // far, then read the rest from the database.
+                flight.future.fail(
+                    Util.newError(
+                        "More than " + bufferLimit
+                        + " rows; not shared; sql=[" + displaySql + "]"));
+                SqlSingleFlight.unshare(key, flight);
+                serve(accessors.size(), rows, resultSet);
+                return;
+            }
+            flight.columnCount = accessors.size();
+            flight.future.put(rows);
+            SqlSingleFlight.remove(key, flight);
+
+            // We have all the rows, so return the connection to the pool now
+            // rather than when the caller closes this statement.
+            final SQLException ex = Util.close(resultSet, null, jdbcConnection);
+            resultSet = null;
+            jdbcConnection = null;
+            if (admissionController != null) {
+                admissionController.release(getPurpose());
+                admissionController = null;
             }
+            if (ex != null) {
+                throw handle(ex);
+            }
+            serve(accessors.size(), rows, null);
+        } catch (RuntimeException e) {
+            if (!flight.future.isDone()) {
+                flight.future.fail(e);
+            }
+            SqlSingleFlight.remove(key, flight);
+            throw e;
+        } catch (Error e) {
+            if (!flight.future.isDone()) {
+                flight.future.fail(e);
+            }
+            SqlSingleFlight.remove(key, flight);
+            throw e;
+        }
+    }
+
+    /**
+     * Waits for the rows of a statement executing in another thread.
+     *
+     * @param flight Flight of the other statement
+     * @return Whether the other statement succeeded
+     */
+    private boolean attach(SqlSingleFlight.Flight flight) {
+        assert state == State.FRESH : "cannot re-execute";
+        final List<Object[]> rows;
+        try {
+            for (;;) {
+                try {
+                    rows = flight.future.get(100, TimeUnit.MILLISECONDS);
+                    break;
+                } catch (TimeoutException e) {
+                    locus.execution.checkCancelOrTimeout();
+                }
+            }
+        } catch (ExecutionException e) {
+            return false;
+        } catch (InterruptedException e) {
+            state = State.CLOSED;
+            flight.detach();
+            throw Util.newError(
+                e, locus.message + "; sql=[" + displaySql + "]");
+        } catch (RuntimeException e) {
+            // Our execution was canceled or timed out.
+            state = State.CLOSED;
+            flight.detach();
+            throw e;
+        }
+        RolapUtil.SQL_LOGGER.debug(
+            id + ": shared rows of identical statement; sql=["
+            + displaySql + "]");
+        state = State.ACTIVE;
+        attached = true;
+        serve(flight.columnCount, rows, null);
+        return true;
+    }
+
+    /**
+     * Makes this statement's result set and accessors read from rows in
+     * memory, and then, optionally, from the rest of a JDBC result set.
+     *
+     * @param columnCount Number of columns
+     * @param rows Rows
+     * @param rest Result set positioned after the last row in memory, whose
+     *   accessors are the current ones, or null
+     */
+    private void serve(int columnCount, List<Object[]> rows, ResultSet rest) {
+        final RowsInvocationHandler handler =
+            new RowsInvocationHandler(rows.iterator(), rest);
+        resultSet = (ResultSet) Proxy.newProxyInstance(
+            null,
+            new Class<?>[] {ResultSet.class},
+            handler);
+        final List<Accessor> restAccessors = new ArrayList<Accessor>(accessors);
+        accessors.clear();
+        for (int i = 0; i < columnCount; i++) {
+            final int column = i;
+            accessors.add(
+                new Accessor() {
+                    public Object get() throws SQLException {
+                        final Object[] row = handler.row;
+                        return row != null
+                            ? row[column]
+                            : restAccessors.get(column).get();
+                    }
+                });
         }
     }
 
@@ -278,9 +516,9 @@ public class SqlStatement {
         }
         state = State.CLOSED;
 
-        if (haveSemaphore) {
-            haveSemaphore = false;
-            querySemaphore.release();
+        if (admissionController != null) {
+            admissionController.release(getPurpose());
+            admissionController = null;
         }
 
         // According to the JDBC spec, closing a statement automatically closes
@@ -291,10 +529,15 @@ public class SqlStatement {
         resultSet = null;
         jdbcConnection = null;
 
+        if (attached) {
+            // Another statement executed the SQL, and will report it.
+            return;
+        }
+
         if (ex != null) {
             throw Util.newError(
                 ex,
-                locus.message + "; sql=[" + sql + "]");
+                locus.message + "; sql=[" + displaySql + "]");
         }
 
         long endTime = System.currentTimeMillis();
@@ -315,7 +558,7 @@ public class SqlStatement {
 
         if (RolapUtil.LOGGER.isDebugEnabled()) {
             RolapUtil.LOGGER.debug(
-                locus.component + ": done executing sql [" + sql + "]"
+                locus.component + ": done executing sql [" + displaySql + "]"
                 + status);
         }
 
@@ -329,7 +572,7 @@ public class SqlStatement {
                 endTime,
                 id,
                 locus,
-                sql,
+                displaySql,
                 getPurpose(),
                 rowCount,
                 false,
@@ -350,7 +593,7 @@ public class SqlStatement {
      */
     public RuntimeException handle(Throwable e) {
         RuntimeException runtimeException =
-            Util.newError(e, locus.message + "; sql=[" + sql + "]");
+            Util.newError(e, locus.message + "; sql=[" + displaySql + "]");
         try {
             close();
         } catch (Throwable t) {
@@ -550,6 +793,41 @@ public class SqlStatement {
         }
     }
 
+    /**
+     * Implements the {@link ResultSet} interface over rows in memory, and
+     * then optionally over the remaining rows of a JDBC result set, for a
+     * statement executed by {@link SqlStatement#executeShared()}.
+     */
+    // must be public for reflection to work
+    public static class RowsInvocationHandler
+        extends DelegatingInvocationHandler
+    {
+        private final Iterator<Object[]> iterator;
+        private final ResultSet rest;
+        private Object[] row;
+
+        RowsInvocationHandler(Iterator<Object[]> iterator, ResultSet rest) {
+            this.iterator = iterator;
+            this.rest = rest;
+        }
+
+        public boolean next() throws SQLException {
+            if (iterator.hasNext()) {
+                row = iterator.next();
+                return true;
+            }
+            row = null;
+            return rest != null && rest.next();
+        }
+
+        public void close() throws SQLException {
+            row = null;
+            if (rest != null) {
+                rest.close();
+            }
+        }
+    }
+
     private enum State {
         FRESH,
         ACTIVE,
@@ -13,6 +13,7 @@ package mondrian.rolap;
 
 import mondrian.calc.TupleList;
 import mondrian.calc.impl.ListTupleList;
+import mondrian.calc.impl.OrdinalTupleList;
 import mondrian.calc.impl.UnaryTupleList;
 import mondrian.olap.*;
 import mondrian.olap.fun.FunUtil;
@@ -398,14 +399,13 @@ public class SqlTupleReader implements TupleReader {
                 String sql = pair.left;
                 List<SqlStatement.Type> types = pair.right;
                 assert sql != null && !sql.equals("");
-                stmt = RolapUtil.executeQuery(
-                    dataSource, sql, types, maxRows, 0,
+                stmt = RolapUtil.executeSharedQuery(
+                    dataSource, sql, types, maxRows,
                     new SqlStatement.StatementLocus(
                         Locus.peek().execution,
                         "SqlTupleReader.readTuples " + partialTargets,
                         message,
-                        SqlStatementEvent.Purpose.TUPLES, 0),
-                    -1, -1, null);
+                        SqlStatementEvent.Purpose.TUPLES, 0));
                 resultSet = stmt.getResultSet();
             } else {
                 resultSet = null;
@@ -569,22 +569,38 @@ public class SqlTupleReader implements TupleReader {
         final int n = targets.size();
         @SuppressWarnings({"unchecked"})
         final Iterator<Member>[] iter = new Iterator[n];
+        int size = 0;
         for (int i = 0; i < n; i++) {
             TargetBase t = targets.get(i);
-            iter[i] = t.close().iterator();
+            final List<Member> list = t.close();
+            iter[i] = list.iterator();
+            size = list.size();
         }
-        List<Member> members = new ArrayList<Member>();
-        while (iter[0].hasNext()) {
-            for (int i = 0; i < n; i++) {
-                members.add(iter[i].next());
+        TupleList tupleList;
+        if (n > 1 && emptySets == 0) {
+            // Store ordinals, not members; a column of a long list
+            // contains few distinct members.
+            tupleList = new OrdinalTupleList(n, size);
+            final Member[] tuple = new Member[n];
+            while (iter[0].hasNext()) {
+                for (int i = 0; i < n; i++) {
+                    tuple[i] = iter[i].next();
+                }
+                tupleList.addTuple(tuple);
             }
+        } else {
+            List<Member> members = new ArrayList<Member>();
+            while (iter[0].hasNext()) {
+                for (int i = 0; i < n; i++) {
+                    members.add(iter[i].next());
+                }
+            }
+            tupleList =
+                n + emptySets == 1
+                    ? new UnaryTupleList(members)
+                    : new ListTupleList(n + emptySets, members);
         }
 
-        TupleList tupleList =
-            n + emptySets == 1
-                ? new UnaryTupleList(members)
-                : new ListTupleList(n + emptySets, members);
-
         // need to hierarchize the columns from the enumerated targets
         // since we didn't necessarily add them in the order in which
         // they originally appeared in the cross product
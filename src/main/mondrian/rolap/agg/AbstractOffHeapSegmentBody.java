@@ -0,0 +1,202 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.rolap.SqlStatement;
+import mondrian.util.Pair;
+
+import java.io.ObjectStreamException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * Abstract implementation of a segment body whose cell values and null
+ * indicators live outside the Java heap, in a direct {@link ByteBuffer}.
+ *
+ * <p>The buffer holds <code>valueCount</code> fixed-width values followed by
+ * a bitmap of null indicators, one bit per value, packed into longs. The
+ * axis value sets are small compared to the cells, and remain on the
+ * heap.</p>
+ *
+ * <p>Direct buffers are not serializable. When the body is serialized (for
+ * example by an external {@link mondrian.spi.SegmentCache}) it is replaced
+ * by its on-heap equivalent; see {@link #toHeap()}.</p>
+ *
+ * @author agent
+ */
+abstract class AbstractOffHeapSegmentBody extends AbstractSegmentBody {
+    private static final long serialVersionUID = 3218957321068493201L;
+
+    protected final transient ByteBuffer buffer;
+    protected final int valueCount;
+    private final int nullOffset;
+
+    /**
+     * Creates an AbstractOffHeapSegmentBody and allocates its buffer.
+     *
+     * @param valueCount Number of cell values
+     * @param valueWidth Width of each value, in bytes
+     * @param nullValues Null indicators; bit is set if value is null
+     * @param axes Axes
+     */
+    AbstractOffHeapSegmentBody(
+        int valueCount,
+        int valueWidth,
+        BitSet nullValues,
+        List<Pair<SortedSet<Comparable>, Boolean>> axes)
+    {
+        super(axes);
+        final long byteCount = byteCount(valueCount, valueWidth);
+        if (byteCount > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException(
+                "Segment of " + valueCount + " values is too large to store"
+                + " off-heap (" + byteCount + " bytes)");
+        }
+        this.valueCount = valueCount;
+        this.nullOffset = valueCount * valueWidth;
+        this.buffer =
+            ByteBuffer.allocateDirect((int) byteCount)
+                .order(ByteOrder.nativeOrder());
+        for (int i = nullValues.nextSetBit(0);
+             i >= 0 && i < valueCount;
+             i = nullValues.nextSetBit(i + 1))
+        {
+            final int index = nullOffset + (i >>> 6) * 8;
+            buffer.putLong(index, buffer.getLong(index) | (1L << i));
+        }
+    }
+
+    /**
+     * Returns the number of bytes needed to store a given number of values
+     * and their null indicators.
+     *
+     * @param valueCount Number of cell values
+     * @param valueWidth Width of each value, in bytes
+     * @return Number of bytes
+     */
+    static long byteCount(int valueCount, int valueWidth) {
+        return (long) valueCount * valueWidth
+            + (((long) valueCount + 63) >>> 6) * 8;
+    }
+
+    /**
+     * Returns whether a given number of values can be stored off-heap. A
+     * buffer is indexed by {@code int}, so can hold at most 2GB.
+     *
+     * @param valueCount Number of cell values
+     * @param valueWidth Width of each value, in bytes
+     * @return Whether the values fit in one buffer
+     */
+    static boolean fits(int valueCount, int valueWidth) {
+        return byteCount(valueCount, valueWidth) <= Integer.MAX_VALUE;
+    }
+
+    /**
+     * Returns the number of bytes of native memory held by this body.
+     *
+     * @return Number of bytes allocated outside the heap
+     */
+    public long getByteCount() {
+        return buffer.capacity();
+    }
+
+    /**
+     * Returns whether the value at a given offset is null.
+     *
+     * @param i Offset
+     * @return Whether value is null
+     */
+    protected final boolean isNull(int i) {
+        return (buffer.getLong(nullOffset + (i >>> 6) * 8) & (1L << i)) != 0;
+    }
+
+    @Override
+    public BitSet getNullValueIndicators() {
+        final BitSet nullValues = new BitSet(valueCount);
+        for (int w = 0; w < (valueCount + 63) >>> 6; w++) {
+            long word = buffer.getLong(nullOffset + w * 8);
+            while (word != 0) {
+                final int bit = Long.numberOfTrailingZeros(word);
+                nullValues.set((w << 6) + bit);
+                word &= word - 1;
+            }
+        }
+        return nullValues;
+    }
+
+    @Override
+    protected int getSize() {
+        return valueCount;
+    }
+
+    /**
+     * Returns the type of the values in this body.
+     *
+     * @return Value type
+     */
+    abstract SqlStatement.Type getType();
+
+    /**
+     * Returns the value at a given offset, as an {@code int}. The value is
+     * read from native memory; it is 0 if the value is null.
+     *
+     * @param i Offset
+     * @return Value
+     */
+    int getInt(int i) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns the value at a given offset, as a {@code double}. The value is
+     * read from native memory; it is 0 if the value is null.
+     *
+     * @param i Offset
+     * @return Value
+     */
+    double getDouble(int i) {
+        throw new UnsupportedOperationException();
+    }
+
+    /**
+     * Returns the list of axes, in the form accepted by the constructors of
+     * the on-heap segment bodies.
+     *
+     * @return List of axis value sets and null flags
+     */
+    protected List<Pair<SortedSet<Comparable>, Boolean>> getAxisList() {
+        final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+            new ArrayList<Pair<SortedSet<Comparable>, Boolean>>();
+        for (int i = 0; i < axisValueSets.length; i++) {
+            axes.add(Pair.of(axisValueSets[i], getNullAxisFlags()[i]));
+        }
+        return axes;
+    }
+
+    /**
+     * Creates an equivalent segment body that stores its values on the heap.
+     *
+     * @return On-heap segment body
+     */
+    abstract AbstractSegmentBody toHeap();
+
+    /**
+     * Substitutes the on-heap equivalent during serialization.
+     *
+     * @return Object to serialize
+     * @throws ObjectStreamException never
+     */
+    protected Object writeReplace() throws ObjectStreamException {
+        return toHeap();
+    }
+}
+
+// End AbstractOffHeapSegmentBody.java
@@ -0,0 +1,169 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.rolap.BitKey;
+import mondrian.rolap.aggmatcher.AggStar;
+
+import java.util.*;
+
+/**
+ * Index of the aggregate tables of a star, used by
+ * {@link AggregationManager#findAgg} to choose an aggregate table.
+ *
+ * <p>The index is an inverted bit index: for each column bit position, the
+ * set of ordinals of the {@link AggStar}s whose {@link AggStar#getBitKey()}
+ * contains that column. The aggregate tables that can satisfy a request are
+ * those whose bit keys are a superset of the request's bit key, which is the
+ * intersection of the sets of the request's columns. Because the ordinals
+ * follow the order of {@link mondrian.rolap.RolapStar#getAggStars()},
+ * smallest first, the candidates come out in the same order as a scan of the
+ * list.</p>
+ *
+ * <p>The index also remembers the results of recent lookups, keyed by level
+ * and measure bit keys. A result depends only on those bit keys and on the
+ * aggregate tables, and the star discards its index when its list of
+ * aggregate tables changes.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ *
+ * @author agent
+ */
+public class AggStarIndex {
+    /** Maximum number of lookup results remembered. */
+    private static final int MEMO_SIZE = 1000;
+
+    private final List<AggStar> aggStars;
+
+    /**
+     * For each column bit position, the ordinals of the aggregate tables that
+     * have that column, or null if none has.
+     */
+    private final BitSet[] postings;
+
+    /** Ordinals of all aggregate tables. */
+    private final BitSet all;
+
+    /** Results of recent lookups, in access order. Guarded by this. */
+    private final LinkedHashMap<List<BitKey>, Match> memo =
+        new LinkedHashMap<List<BitKey>, Match>(16, 0.75f, true);
+
+    /**
+     * Creates an AggStarIndex.
+     *
+     * @param aggStars Aggregate tables, in the order they should be
+     *   considered
+     */
+    public AggStarIndex(List<AggStar> aggStars) {
+        this.aggStars = new ArrayList<AggStar>(aggStars);
+        this.all = new BitSet(aggStars.size());
+        this.all.set(0, aggStars.size());
+        int length = 0;
+        for (AggStar aggStar : this.aggStars) {
+            final BitSet bitSet = aggStar.getBitKey().toBitSet();
+            length = Math.max(length, bitSet.length());
+        }
+        this.postings = new BitSet[length];
+        for (int i = 0; i < this.aggStars.size(); i++) {
+            final BitKey bitKey = this.aggStars.get(i).getBitKey();
+            for (int k = bitKey.nextSetBit(0); k >= 0;
+                k = bitKey.nextSetBit(k + 1))
+            {
+                if (postings[k] == null) {
+                    postings[k] = new BitSet(this.aggStars.size());
+                }
+                postings[k].set(i);
+            }
+        }
+    }
+
+    /**
+     * Returns the aggregate tables, in the order they should be considered.
+     */
+    List<AggStar> getAggStars() {
+        return aggStars;
+    }
+
+    /**
+     * Returns the ordinals of the aggregate tables whose bit key is a
+     * superset of a given bit key.
+     *
+     * @param bitKey Columns required
+     * @return Ordinals of aggregate tables that have all of the columns
+     */
+    BitSet candidates(BitKey bitKey) {
+        final BitSet candidates = (BitSet) all.clone();
+        for (int k = bitKey.nextSetBit(0);
+            k >= 0 && !candidates.isEmpty();
+            k = bitKey.nextSetBit(k + 1))
+        {
+            if (k >= postings.length || postings[k] == null) {
+                candidates.clear();
+            } else {
+                candidates.and(postings[k]);
+            }
+        }
+        return candidates;
+    }
+
+    /**
+     * Returns the remembered result of a lookup, or null.
+     *
+     * @param levelBitKey Set of levels
+     * @param measureBitKey Set of measures
+     * @return Result of a previous lookup with the same arguments, or null
+     */
+    synchronized Match lookup(BitKey levelBitKey, BitKey measureBitKey) {
+        return memo.get(Arrays.asList(levelBitKey, measureBitKey));
+    }
+
+    /**
+     * Remembers the result of a lookup.
+     *
+     * @param levelBitKey Set of levels
+     * @param measureBitKey Set of measures
+     * @param aggStar Aggregate table chosen, or null if none is suitable
+     * @param rollup Whether the aggregate table needs to be rolled up
+     */
+    void memoize(
+        BitKey levelBitKey,
+        BitKey measureBitKey,
+        AggStar aggStar,
+        boolean rollup)
+    {
+        // Copy the keys; callers may modify theirs.
+        final List<BitKey> key =
+            Arrays.asList(levelBitKey.copy(), measureBitKey.copy());
+        final Match match = new Match(aggStar, rollup);
+        synchronized (this) {
+            memo.put(key, match);
+            final Iterator<Match> iterator = memo.values().iterator();
+            while (memo.size() > MEMO_SIZE && iterator.hasNext()) {
+                iterator.next();
+                iterator.remove();
+            }
+        }
+    }
+
+    /**
+     * Result of a lookup.
+     */
+    static class Match {
+        final AggStar aggStar;
+        final boolean rollup;
+
+        Match(AggStar aggStar, boolean rollup) {
+            this.aggStar = aggStar;
+            this.rollup = rollup;
+        }
+    }
+}
+
+// End AggStarIndex.java
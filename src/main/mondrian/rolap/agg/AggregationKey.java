@@ -212,6 +212,8 @@ public class AggregationKey
             SqlQuery query =
                 new SqlQuery(
                     star.getSqlQueryDialect());
+            // Must match the strings in segment headers; see SegmentBuilder.
+            query.setBindParameters(false);
             compoundPredicate.toSql(query, buf);
             cp.add(buf.toString());
         }
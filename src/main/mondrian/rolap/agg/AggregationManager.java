@@ -347,6 +347,41 @@ public class AggregationManager extends RolapAggregationManager {
         final BitKey levelBitKey,
         final BitKey measureBitKey,
         boolean[] rollup)
+    {
+        assert rollup != null;
+        final AggStarIndex index = star.getAggStarIndex();
+        final AggStarIndex.Match match =
+            index.lookup(levelBitKey, measureBitKey);
+        if (match != null) {
+            if (match.aggStar != null) {
+                rollup[0] = match.rollup;
+            }
+            return match.aggStar;
+        }
+        final AggStar aggStar =
+            findAgg(index, levelBitKey, measureBitKey, rollup);
+        index.memoize(
+            levelBitKey, measureBitKey, aggStar,
+            aggStar != null && rollup[0]);
+        return aggStar;
+    }
+
+    /**
+     * Finds an aggregate table among the candidates of an index, without
+     * consulting the index's memo of previous results.
+     *
+     * @param index Index of the aggregate tables of a star
+     * @param levelBitKey Set of levels
+     * @param measureBitKey Set of measures
+     * @param rollup Out parameter, is set to true if the aggregate is not
+     *   an exact match
+     * @return An aggregate, or null if none is suitable.
+     */
+    static AggStar findAgg(
+        AggStarIndex index,
+        final BitKey levelBitKey,
+        final BitKey measureBitKey,
+        boolean[] rollup)
     {
         // If there is no distinct count measure, isDistinct == false,
         // then all we want is an AggStar whose BitKey is a superset
@@ -361,12 +396,15 @@ public class AggregationManager extends RolapAggregationManager {
         BitKey fullBitKey = levelBitKey.or(measureBitKey);
 
         // The AggStars are already ordered from smallest to largest so
-        // we need only find the first one and return it.
-        for (AggStar aggStar : star.getAggStars()) {
-            // superset match
-            if (!aggStar.superSetMatch(fullBitKey)) {
-                continue;
-            }
+        // we need only find the first one and return it. The index yields
+        // only those whose BitKey is a superset of the required BitKey.
+        final List<AggStar> aggStars = index.getAggStars();
+        final BitSet candidates = index.candidates(fullBitKey);
+        for (int i = candidates.nextSetBit(0); i >= 0;
+            i = candidates.nextSetBit(i + 1))
+        {
+            final AggStar aggStar = aggStars.get(i);
+            assert aggStar.superSetMatch(fullBitKey);
             boolean isDistinct = measureBitKey.intersects(
                 aggStar.getDistinctMeasureBitKey());
 
@@ -161,6 +161,8 @@ class DrillThroughQuerySpec extends AbstractQuerySpec {
 
     public Pair<String, List<SqlStatement.Type>> generateSqlQuery() {
         SqlQuery sqlQuery = newSqlQuery();
+        // Drill-through SQL is shown to the user, so write values as literals.
+        sqlQuery.setBindParameters(false);
         nonDistinctGenerateSql(sqlQuery);
         return sqlQuery.toSqlAndTypes();
     }
@@ -316,6 +316,7 @@ public class ListColumnPredicate extends AbstractColumnPredicate {
         int notNullCount = 0;
         final RolapStar.Column column = getConstrainedColumn();
         final String expr = column.generateExprString(sqlQuery);
+        final int maxInListSize = sqlQuery.getDialect().getMaxInListSize();
         final int marker = buf.length(); // to allow backtrack later
         buf.append(expr);
         ValueColumnPredicate firstNotNull = null;
@@ -327,15 +328,27 @@ public class ListColumnPredicate extends AbstractColumnPredicate {
             if (key == RolapUtil.sqlNullValue) {
                 continue;
             }
-            if (notNullCount > 0) {
-                buf.append(", ");
-            } else {
+            if (notNullCount == 0) {
                 firstNotNull = predicate2;
+            } else if (maxInListSize > 0
+                && notNullCount % maxInListSize == 0)
+            {
+                // The list is as long as the dialect allows. Start another,
+                // for example "(x in (1, 2) or x in (3, 4))".
+                buf.append(") or ");
+                buf.append(expr);
+                buf.append(" in (");
+            } else {
+                buf.append(", ");
             }
             ++notNullCount;
-            sqlQuery.getDialect().quote(buf, key, column.getDatatype());
+            sqlQuery.quote(buf, key, column.getDatatype());
         }
         buf.append(')');
+        if (maxInListSize > 0 && notNullCount > maxInListSize) {
+            buf.insert(marker, '(');
+            buf.append(')');
+        }
 
         // If all of the predicates were non-null, return what we've got, for
         // example, "x in (1, 2, 3)".
@@ -362,7 +375,7 @@ public class ListColumnPredicate extends AbstractColumnPredicate {
             buf.append('(');
             buf.append(expr);
             buf.append(" = ");
-            sqlQuery.getDialect().quote(
+            sqlQuery.quote(
                 buf,
                 firstNotNull.getValue(),
                 column.getDatatype());
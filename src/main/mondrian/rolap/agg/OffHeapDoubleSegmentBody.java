@@ -0,0 +1,97 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.rolap.SqlStatement;
+import mondrian.util.Pair;
+
+import java.util.*;
+
+/**
+ * Implementation of a segment body which stores double precision values
+ * outside the Java heap.
+ *
+ * @see DenseDoubleSegmentBody
+ * @author agent
+ */
+class OffHeapDoubleSegmentBody extends AbstractOffHeapSegmentBody {
+    private static final long serialVersionUID = -2469185502913563201L;
+
+    /**
+     * Creates an OffHeapDoubleSegmentBody.
+     *
+     * <p>Copies the given values into native memory; the caller may discard
+     * the arrays afterwards.</p>
+     *
+     * @param nullValues A bit-set indicating whether values are null
+     * @param values Cell values
+     * @param axes Axes
+     */
+    OffHeapDoubleSegmentBody(
+        BitSet nullValues,
+        double[] values,
+        List<Pair<SortedSet<Comparable>, Boolean>> axes)
+    {
+        super(values.length, 8, nullValues, axes);
+        for (int i = 0; i < values.length; i++) {
+            buffer.putDouble(i * 8, values[i]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Returns a copy of the values, on the heap.</p>
+     */
+    @Override
+    public Object getValueArray() {
+        final double[] values = new double[valueCount];
+        for (int i = 0; i < valueCount; i++) {
+            values[i] = buffer.getDouble(i * 8);
+        }
+        return values;
+    }
+
+    SqlStatement.Type getType() {
+        return SqlStatement.Type.DOUBLE;
+    }
+
+    @Override
+    double getDouble(int i) {
+        return buffer.getDouble(i * 8);
+    }
+
+    @Override
+    protected Object getObject(int i) {
+        double value = buffer.getDouble(i * 8);
+        if (value == 0d && isNull(i)) {
+            return null;
+        }
+        return value;
+    }
+
+    AbstractSegmentBody toHeap() {
+        return new DenseDoubleSegmentBody(
+            getNullValueIndicators(),
+            (double[]) getValueArray(),
+            getAxisList());
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapDoubleSegmentBody(size=" + valueCount
+            + ", bytes=" + getByteCount()
+            + ", axisValueSets=" + Arrays.toString(getAxisValueSets())
+            + ", nullAxisFlags=" + Arrays.toString(getNullAxisFlags())
+            + ")";
+    }
+}
+
+// End OffHeapDoubleSegmentBody.java
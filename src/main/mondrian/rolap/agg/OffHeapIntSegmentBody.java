@@ -0,0 +1,97 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.rolap.SqlStatement;
+import mondrian.util.Pair;
+
+import java.util.*;
+
+/**
+ * Implementation of a segment body which stores integer values
+ * outside the Java heap.
+ *
+ * @see DenseIntSegmentBody
+ * @author agent
+ */
+class OffHeapIntSegmentBody extends AbstractOffHeapSegmentBody {
+    private static final long serialVersionUID = 6039287116430358276L;
+
+    /**
+     * Creates an OffHeapIntSegmentBody.
+     *
+     * <p>Copies the given values into native memory; the caller may discard
+     * the arrays afterwards.</p>
+     *
+     * @param nullValues A bit-set indicating whether values are null
+     * @param values Cell values
+     * @param axes Axes
+     */
+    OffHeapIntSegmentBody(
+        BitSet nullValues,
+        int[] values,
+        List<Pair<SortedSet<Comparable>, Boolean>> axes)
+    {
+        super(values.length, 4, nullValues, axes);
+        for (int i = 0; i < values.length; i++) {
+            buffer.putInt(i * 4, values[i]);
+        }
+    }
+
+    /**
+     * {@inheritDoc}
+     *
+     * <p>Returns a copy of the values, on the heap.</p>
+     */
+    @Override
+    public Object getValueArray() {
+        final int[] values = new int[valueCount];
+        for (int i = 0; i < valueCount; i++) {
+            values[i] = buffer.getInt(i * 4);
+        }
+        return values;
+    }
+
+    SqlStatement.Type getType() {
+        return SqlStatement.Type.INT;
+    }
+
+    @Override
+    int getInt(int i) {
+        return buffer.getInt(i * 4);
+    }
+
+    @Override
+    protected Object getObject(int i) {
+        int value = buffer.getInt(i * 4);
+        if (value == 0 && isNull(i)) {
+            return null;
+        }
+        return value;
+    }
+
+    AbstractSegmentBody toHeap() {
+        return new DenseIntSegmentBody(
+            getNullValueIndicators(),
+            (int[]) getValueArray(),
+            getAxisList());
+    }
+
+    @Override
+    public String toString() {
+        return "OffHeapIntSegmentBody(size=" + valueCount
+            + ", bytes=" + getByteCount()
+            + ", axisValueSets=" + Arrays.toString(getAxisValueSets())
+            + ", nullAxisFlags=" + Arrays.toString(getNullAxisFlags())
+            + ")";
+    }
+}
+
+// End OffHeapIntSegmentBody.java
@@ -0,0 +1,100 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.rolap.CellKey;
+import mondrian.rolap.SqlStatement;
+import mondrian.spi.SegmentBody;
+import mondrian.util.Pair;
+
+import java.util.List;
+import java.util.SortedSet;
+
+/**
+ * Read-only implementation of {@link SegmentDataset} that reads cell values
+ * in place from the native memory of an off-heap segment body.
+ *
+ * <p>The dataset holds a reference to the body, so the body's buffer is not
+ * freed while a segment is using it, even if the cache has evicted the
+ * body.</p>
+ *
+ * @author agent
+ */
+class OffHeapSegmentDataset extends DenseSegmentDataset {
+    private final AbstractOffHeapSegmentBody body;
+
+    /**
+     * Creates an OffHeapSegmentDataset.
+     *
+     * @param axes Segment axes, containing actual column values
+     * @param body Off-heap segment body
+     */
+    OffHeapSegmentDataset(
+        SegmentAxis[] axes,
+        AbstractOffHeapSegmentBody body)
+    {
+        super(axes);
+        this.body = body;
+    }
+
+    public Object getObject(CellKey pos) {
+        if (body.getSize() == 0) {
+            return null;
+        }
+        return body.getObject(pos.getOffset(axisMultipliers));
+    }
+
+    protected Object getObject(int i) {
+        return body.getObject(i);
+    }
+
+    public int getInt(CellKey pos) {
+        return body.getInt(pos.getOffset(axisMultipliers));
+    }
+
+    public double getDouble(CellKey pos) {
+        return body.getDouble(pos.getOffset(axisMultipliers));
+    }
+
+    public boolean isNull(CellKey pos) {
+        return body.isNull(pos.getOffset(axisMultipliers));
+    }
+
+    public boolean exists(CellKey pos) {
+        return true;
+    }
+
+    public void populateFrom(int[] pos, SegmentDataset data, CellKey key) {
+        throw new UnsupportedOperationException();
+    }
+
+    public void populateFrom(
+        int[] pos, SegmentLoader.RowList rowList, int column)
+    {
+        throw new UnsupportedOperationException();
+    }
+
+    public SqlStatement.Type getType() {
+        return body.getType();
+    }
+
+    protected int getSize() {
+        return body.getSize();
+    }
+
+    public SegmentBody createSegmentBody(
+        List<Pair<SortedSet<Comparable>, Boolean>> axes)
+    {
+        // The body is immutable, and already has these axes.
+        return body;
+    }
+}
+
+// End OffHeapSegmentDataset.java
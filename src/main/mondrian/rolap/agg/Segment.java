@@ -277,6 +277,25 @@ public class Segment {
         int size)
     {
         if (sparse) {
+            // Store native values without boxing, provided that every cell
+            // ordinal fits into a long.
+            final long[] axisMultipliers;
+            switch (type) {
+            case INT:
+                axisMultipliers =
+                    SparseNativeSegmentDataset.computeAxisMultipliers(axes);
+                if (axisMultipliers != null) {
+                    return new SparseIntSegmentDataset(axisMultipliers);
+                }
+                break;
+            case DOUBLE:
+                axisMultipliers =
+                    SparseNativeSegmentDataset.computeAxisMultipliers(axes);
+                if (axisMultipliers != null) {
+                    return new SparseDoubleSegmentDataset(axisMultipliers);
+                }
+                break;
+            }
             return new SparseSegmentDataset();
         } else {
             switch (type) {
@@ -12,10 +12,12 @@
 package mondrian.rolap.agg;
 
 import mondrian.olap.Util;
+import mondrian.rolap.RolapStar;
 import mondrian.rolap.RolapUtil;
 import mondrian.rolap.StarColumnPredicate;
 import mondrian.util.ArraySortedSet;
 import mondrian.util.Pair;
+import mondrian.util.ValueDictionary;
 
 import java.util.*;
 
@@ -74,11 +76,23 @@ public class SegmentAxis {
             this.keys = NO_COMPARABLES;
             this.mapKeyToOffset = Collections.emptyMap();
         } else {
-            this.keys = keys;
+            final RolapStar.Column column = predicate.getConstrainedColumn();
+            if (column != null) {
+                // Intern into a copy; the caller still owns the array.
+                final ValueDictionary dictionary =
+                    column.getValueDictionary();
+                final Comparable[] internedKeys = new Comparable[keys.length];
+                for (int i = 0; i < keys.length; i++) {
+                    internedKeys[i] = dictionary.intern(keys[i]);
+                }
+                this.keys = internedKeys;
+            } else {
+                this.keys = keys;
+            }
             mapKeyToOffset =
                 new HashMap<Comparable, Integer>(keys.length * 3 / 2);
-            for (int i = 0; i < keys.length; i++) {
-                mapKeyToOffset.put(keys[i], i);
+            for (int i = 0; i < this.keys.length; i++) {
+                mapKeyToOffset.put(this.keys[i], i);
             }
         }
         assert predicate != null;
@@ -211,19 +225,31 @@ public class SegmentAxis {
         return matchCount;
     }
 
+    /**
+     * Returns the set of values on this axis, not including the null value,
+     * and whether the axis contains the null value.
+     *
+     * <p>If the axis belongs to a star column, the set is interned in the
+     * column's {@link ValueDictionary}, so segment bodies with the same
+     * values on this axis share a single set.</p>
+     *
+     * @return Set of values and null indicator
+     */
     @SuppressWarnings({"unchecked"})
     public Pair<SortedSet<Comparable>, Boolean> getValuesAndIndicator() {
-        if (keys.length > 0
-            && keys[keys.length - 1] == RolapUtil.sqlNullValue)
-        {
-            return (Pair) Pair.of(
-                new ArraySortedSet(keys, 0, keys.length - 1),
-                Boolean.TRUE);
-        } else {
-            return (Pair) Pair.of(
-                new ArraySortedSet(keys),
-                Boolean.FALSE);
-        }
+        final boolean hasNull =
+            keys.length > 0
+            && keys[keys.length - 1] == RolapUtil.sqlNullValue;
+        final SortedSet<Comparable> values =
+            hasNull
+                ? new ArraySortedSet(keys, 0, keys.length - 1)
+                : new ArraySortedSet(keys);
+        final RolapStar.Column column = predicate.getConstrainedColumn();
+        return (Pair) Pair.of(
+            column == null
+                ? values
+                : column.getValueDictionary().intern(values),
+            hasNull);
     }
 }
 
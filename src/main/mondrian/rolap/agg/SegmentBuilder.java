@@ -9,13 +9,13 @@
 package mondrian.rolap.agg;
 
 import mondrian.olap.Aggregator;
+import mondrian.olap.MondrianProperties;
 import mondrian.olap.Util;
 import mondrian.rolap.*;
 import mondrian.rolap.agg.Segment.ExcludedRegion;
 import mondrian.rolap.sql.SqlQuery;
 import mondrian.spi.*;
 import mondrian.spi.Dialect.Datatype;
-import mondrian.util.ArraySortedSet;
 import mondrian.util.Pair;
 
 import org.apache.log4j.Logger;
@@ -26,6 +26,7 @@ import java.math.BigInteger;
 
 import java.util.*;
 import java.util.Map.Entry;
+import java.util.concurrent.*;
 
 /**
  * Helper class that contains methods to convert between
@@ -37,6 +38,18 @@ import java.util.Map.Entry;
 public class SegmentBuilder {
     private static final Logger LOGGER =
         Logger.getLogger(SegmentBuilder.class);
+
+    /**
+     * Number of source cells in each chunk of a parallel rollup. Rollups of
+     * fewer cells run in the calling thread.
+     */
+    static final int ROLLUP_CHUNK_SIZE = 1 << 16;
+
+    /**
+     * Executor for parallel rollups; created on first use.
+     */
+    private static ExecutorService rollupExecutor;
+
     /**
      * Converts a segment plus a {@link SegmentBody} into a
      * {@link mondrian.rolap.agg.SegmentWithData}.
@@ -93,6 +106,28 @@ public class SegmentBuilder {
                     axes, (Object[]) body.getValueArray());
         } else if (body instanceof SparseSegmentBody) {
             dataSet = new SparseSegmentDataset(body.getValueMap());
+        } else if (body instanceof SparseDoubleSegmentBody) {
+            final SparseDoubleSegmentBody sparseBody =
+                (SparseDoubleSegmentBody) body;
+            dataSet =
+                new SparseDoubleSegmentDataset(
+                    sparseBody.getAxisMultipliers(),
+                    sparseBody.ordinals,
+                    sparseBody.values,
+                    sparseBody.nullValues);
+        } else if (body instanceof SparseIntSegmentBody) {
+            final SparseIntSegmentBody sparseBody =
+                (SparseIntSegmentBody) body;
+            dataSet =
+                new SparseIntSegmentDataset(
+                    sparseBody.getAxisMultipliers(),
+                    sparseBody.ordinals,
+                    sparseBody.values,
+                    sparseBody.nullValues);
+        } else if (body instanceof AbstractOffHeapSegmentBody) {
+            dataSet =
+                new OffHeapSegmentDataset(
+                    axes, (AbstractOffHeapSegmentBody) body);
         } else {
             throw Util.newInternal(
                 "Unknown segment body type: " + body.getClass() + ": " + body);
@@ -100,6 +135,101 @@ public class SegmentBuilder {
         return dataSet;
     }
 
+    /**
+     * Converts a segment body to an equivalent body that stores its cell
+     * values outside the Java heap.
+     *
+     * <p>Only dense bodies of native values (int and double) that fit in
+     * one buffer can be stored off-heap; other bodies are returned
+     * unchanged.</p>
+     *
+     * @param body Segment body
+     * @return Off-heap segment body, or the original body if it cannot be
+     *   converted
+     */
+    public static SegmentBody toOffHeap(SegmentBody body) {
+        if (body instanceof DenseDoubleSegmentBody
+            && AbstractOffHeapSegmentBody.fits(
+                ((DenseDoubleSegmentBody) body).getSize(), 8))
+        {
+            return new OffHeapDoubleSegmentBody(
+                body.getNullValueIndicators(),
+                (double[]) body.getValueArray(),
+                axisList(body));
+        } else if (body instanceof DenseIntSegmentBody
+            && AbstractOffHeapSegmentBody.fits(
+                ((DenseIntSegmentBody) body).getSize(), 4))
+        {
+            return new OffHeapIntSegmentBody(
+                body.getNullValueIndicators(),
+                (int[]) body.getValueArray(),
+                axisList(body));
+        }
+        return body;
+    }
+
+    /**
+     * Returns the number of bytes of native memory held by a segment body,
+     * or 0 if the body is held on the Java heap.
+     *
+     * @param body Segment body
+     * @return Number of bytes allocated outside the heap
+     */
+    public static long getOffHeapByteCount(SegmentBody body) {
+        if (body instanceof AbstractOffHeapSegmentBody) {
+            return ((AbstractOffHeapSegmentBody) body).getByteCount();
+        }
+        return 0;
+    }
+
+    /**
+     * Estimates the number of bytes of memory held by the cells of a segment
+     * body. Axis values are not counted, because they are mostly shared
+     * between segments.
+     *
+     * @param body Segment body
+     * @return Estimated number of bytes
+     */
+    public static long estimateByteCount(SegmentBody body) {
+        if (body instanceof AbstractOffHeapSegmentBody) {
+            return ((AbstractOffHeapSegmentBody) body).getByteCount();
+        }
+        if (!(body instanceof AbstractSegmentBody)) {
+            return 0;
+        }
+        final long cellCount = ((AbstractSegmentBody) body).getSize();
+        if (body instanceof DenseDoubleSegmentBody) {
+            return cellCount * 8;
+        } else if (body instanceof DenseIntSegmentBody) {
+            return cellCount * 4;
+        } else if (body instanceof SparseDoubleSegmentBody) {
+            // ordinal and value
+            return cellCount * 16;
+        } else if (body instanceof SparseIntSegmentBody) {
+            return cellCount * 12;
+        } else if (body instanceof SparseSegmentBody) {
+            // key, boxed value, and two references
+            return cellCount * 56;
+        } else {
+            // reference and boxed value
+            return cellCount * 24;
+        }
+    }
+
+    private static List<Pair<SortedSet<Comparable>, Boolean>> axisList(
+        SegmentBody body)
+    {
+        final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+            new ArrayList<Pair<SortedSet<Comparable>, Boolean>>();
+        for (int i = 0; i < body.getAxisValueSets().length; i++) {
+            axes.add(
+                Pair.of(
+                    body.getAxisValueSets()[i],
+                    body.getNullAxisFlags()[i]));
+        }
+        return axes;
+    }
+
     /**
      * Creates a segment from a SegmentHeader. The star,
      * constrainedColsBitKey, constrainedColumns and measure arguments are a
@@ -184,6 +314,33 @@ public class SegmentBuilder {
         BitKey targetBitkey,
         Aggregator rollupAggregator,
         Datatype datatype)
+    {
+        return rollup(
+            map, keepColumns, targetBitkey, rollupAggregator, datatype,
+            MondrianProperties.instance().InMemoryRollupThreads.get());
+    }
+
+    /**
+     * Rolls up segments, using up to a given number of threads.
+     *
+     * @param map Source segment headers and bodies
+     * @param keepColumns A list of column names to keep as part of
+     * the rolled up segment.
+     * @param targetBitkey The column bit key to match with the
+     * resulting segment.
+     * @param rollupAggregator The aggregator to use to rollup.
+     * @param datatype The data type to use.
+     * @param parallelism Maximum number of threads; if 1, the rollup runs
+     * entirely in the calling thread
+     * @return Segment header and body of requested dimensionality
+     */
+    static Pair<SegmentHeader, SegmentBody> rollup(
+        Map<SegmentHeader, SegmentBody> map,
+        Set<String> keepColumns,
+        BitKey targetBitkey,
+        Aggregator rollupAggregator,
+        Datatype datatype,
+        int parallelism)
     {
         class AxisInfo {
             SegmentColumn column;
@@ -285,84 +442,28 @@ public class SegmentBuilder {
 
         // Populate cells.
         //
-        // (This is a rough implementation, very inefficient. It makes all
-        // segment types pretend to be sparse, for purposes of reading. It
-        // maps all axis ordinals to a value, then back to an axis ordinal,
-        // even if this translation were not necessary, say if the source and
-        // target axes had the same set of values. And it always creates a
-        // sparse segment.
-        //
-        // We should do really efficient rollup if the source is an array: we
-        // should box values (e.g double to Double and back), and we should read
-        // a stripe of values from the and add them up into a single cell.
-        final Map<CellKey, List<Object>> cellValues =
-            new HashMap<CellKey, List<Object>>();
-        List<List<Comparable>> addedIntersections =
-            new ArrayList<List<Comparable>>();
-
-        for (Map.Entry<SegmentHeader, SegmentBody> entry : map.entrySet()) {
-            final int[] pos = new int[axes.length];
-            final Comparable[][] valueArrays =
-                new Comparable[firstHeader.getConstrainedColumns().size()][];
-            final SegmentBody body = entry.getValue();
-
-            // Copy source value sets into arrays. For axes that are being
-            // projected away, store null.
-            z = 0;
-            for (SortedSet<Comparable> set : body.getAxisValueSets()) {
-                valueArrays[z] = keepColumns.contains(
-                    firstHeader.getConstrainedColumns().get(z).columnExpression)
-                        ? set.toArray(new Comparable[set.size()])
-                        : null;
-                ++z;
-            }
-            Map<CellKey, Object> v = body.getValueMap();
-            entryLoop:
-            for (Map.Entry<CellKey, Object> vEntry : v.entrySet()) {
-                z = 0;
-                for (int i = 0; i < vEntry.getKey().size(); i++) {
-                    final Comparable[] valueArray = valueArrays[i];
-                    if (valueArray == null) {
-                        continue;
-                    }
-                    final int ordinal = vEntry.getKey().getOrdinals()[i];
-                    final int targetOrdinal;
-                    if (axes[z].hasNull && ordinal == valueArray.length) {
-                        targetOrdinal = axes[z].valueSet.size();
-                    } else {
-                        final Comparable value = valueArray[ordinal];
-                        if (value == null) {
-                            targetOrdinal = axes[z].valueSet.size();
-                        } else {
-                            targetOrdinal =
-                                Util.binarySearch(
-                                    axes[z].values,
-                                    0, axes[z].values.length,
-                                    value);
-                        }
-                    }
-                    if (targetOrdinal >= 0) {
-                        pos[z++] = targetOrdinal;
-                    } else {
-                        // This happens when one of the rollup candidate doesn't
-                        // contain the requested cell.
-                        continue entryLoop;
-                    }
-                }
-                final CellKey ck = CellKey.Generator.newCellKey(pos);
-                if (!cellValues.containsKey(ck)) {
-                    cellValues.put(ck, new ArrayList<Object>());
-                }
-                List<Comparable> colValues =  getColumnValsAtCellKey(
-                    body, vEntry.getKey());
-                if (!addedIntersections.contains(colValues)) {
-                    // only add the cell value if we haven't already.
-                    // there is a potential double add if segments overlap
-                    cellValues.get(ck).add(vEntry.getValue());
-                    addedIntersections.add(colValues);
-                }
-            }
+        // Each source cell is mapped onto the target axes by looking up its
+        // axis values, even if the source and target axes have the same set
+        // of values. Values of native bodies (int or double; dense, sparse or
+        // off-heap) are read in place and accumulated without boxing; other
+        // bodies are read via their value map. Large rollups are split into
+        // ranges of source cells, which are aggregated in parallel; see
+        // populateCells.
+        final Comparable[][] targetValues = new Comparable[axes.length][];
+        final boolean[] targetHasNull = new boolean[axes.length];
+        for (int i = 0; i < axes.length; i++) {
+            targetValues[i] = axes[i].values;
+            targetHasNull[i] = axes[i].hasNull;
         }
+        final Map<CellKey, Accumulator> cellValues =
+            populateCells(
+                segments,
+                keepColumns,
+                targetValues,
+                targetHasNull,
+                rollupAggregator,
+                datatype,
+                parallelism);
 
         // Build the axis list.
         final List<Pair<SortedSet<Comparable>, Boolean>> axisList =
@@ -399,22 +500,9 @@ public class SegmentBuilder {
                     axisList);
         } else if (sparse) {
             // The rule says we must use a sparse dataset.
-            // First, aggregate the values of each key.
-            final Map<CellKey, Object> data =
-                new HashMap<CellKey, Object>();
-            for (Entry<CellKey, List<Object>> entry
-                : cellValues.entrySet())
-            {
-                data.put(
-                    CellKey.Generator.newCellKey(entry.getKey().getOrdinals()),
-                    rollupAggregator.aggregate(
-                        entry.getValue(),
-                        datatype));
-            }
             body =
-                new SparseSegmentBody(
-                    data,
-                    axisList);
+                createSparseBody(
+                    cellValues, axisList, datatype);
         } else {
             final BitSet nullValues;
             final int valueCount = bigValueCount.intValue();
@@ -422,16 +510,14 @@ public class SegmentBuilder {
             case Integer:
                 final int[] ints = new int[valueCount];
                 nullValues = Util.bitSetBetween(0, valueCount);
-                for (Entry<CellKey, List<Object>> entry
+                for (Entry<CellKey, Accumulator> entry
                     : cellValues.entrySet())
                 {
                     final int offset =
                         CellKey.Generator.getOffset(
                             entry.getKey().getOrdinals(), axisMultipliers);
                     final Object value =
-                        rollupAggregator.aggregate(
-                            entry.getValue(),
-                            datatype);
+                        entry.getValue().get();
                     if (value != null) {
                         ints[offset] = (Integer) value;
                         nullValues.clear(offset);
@@ -446,16 +532,14 @@ public class SegmentBuilder {
             case Numeric:
                 final double[] doubles = new double[valueCount];
                 nullValues = Util.bitSetBetween(0, valueCount);
-                for (Entry<CellKey, List<Object>> entry
+                for (Entry<CellKey, Accumulator> entry
                     : cellValues.entrySet())
                 {
                     final int offset =
                         CellKey.Generator.getOffset(
                             entry.getKey().getOrdinals(), axisMultipliers);
                     final Object value =
-                        rollupAggregator.aggregate(
-                            entry.getValue(),
-                            datatype);
+                        entry.getValue().get();
                     if (value != null) {
                         doubles[offset] = (Double) value;
                         nullValues.clear(offset);
@@ -469,16 +553,14 @@ public class SegmentBuilder {
                 break;
             default:
                 final Object[] objects = new Object[valueCount];
-                for (Entry<CellKey, List<Object>> entry
+                for (Entry<CellKey, Accumulator> entry
                     : cellValues.entrySet())
                 {
                     final int offset =
                         CellKey.Generator.getOffset(
                             entry.getKey().getOrdinals(), axisMultipliers);
                     objects[offset] =
-                        rollupAggregator.aggregate(
-                            entry.getValue(),
-                            datatype);
+                        entry.getValue().get();
                 }
                 body =
                     new DenseObjectSegmentBody(
@@ -555,23 +637,581 @@ public class SegmentBuilder {
         return Pair.of(header, body);
     }
 
-    private static List<Comparable> getColumnValsAtCellKey(
-        SegmentBody body, CellKey cellKey)
+    /**
+     * Source segment of a rollup, with the information needed to map each of
+     * its cells onto the target axes.
+     *
+     * <p>Immutable, apart from the shared set of added intersections, which is
+     * thread-safe; therefore several threads can add cells at once.</p>
+     */
+    private static class RollupSource {
+        private final Comparable[][] valueArrays;
+        private final Comparable[][] allValueArrays;
+        private final boolean[] nullAxisFlags;
+        private final Comparable[][] targetValues;
+        private final boolean[] targetHasNull;
+        private final Aggregator rollupAggregator;
+        private final Datatype datatype;
+        private final ConcurrentMap<List<Comparable>, Boolean>
+            addedIntersections;
+
+        RollupSource(
+            SegmentHeader firstHeader,
+            SegmentBody body,
+            Set<String> keepColumns,
+            Comparable[][] targetValues,
+            boolean[] targetHasNull,
+            Aggregator rollupAggregator,
+            Datatype datatype,
+            ConcurrentMap<List<Comparable>, Boolean> addedIntersections)
+        {
+            this.targetValues = targetValues;
+            this.targetHasNull = targetHasNull;
+            this.rollupAggregator = rollupAggregator;
+            this.datatype = datatype;
+            this.addedIntersections = addedIntersections;
+            this.nullAxisFlags = body.getNullAxisFlags();
+
+            // Copy source value sets into arrays. For axes that are being
+            // projected away, store null in valueArrays.
+            final SortedSet<Comparable>[] sets = body.getAxisValueSets();
+            this.valueArrays = new Comparable[sets.length][];
+            this.allValueArrays = new Comparable[sets.length][];
+            for (int z = 0; z < sets.length; z++) {
+                allValueArrays[z] =
+                    sets[z].toArray(new Comparable[sets[z].size()]);
+                valueArrays[z] = keepColumns.contains(
+                    firstHeader.getConstrainedColumns().get(z).columnExpression)
+                        ? allValueArrays[z]
+                        : null;
+            }
+        }
+
+        /**
+         * Maps a source cell onto the target axes, and returns the
+         * accumulator for the target cell, creating it if necessary.
+         *
+         * @param srcPos Coordinates of source cell
+         * @param cellValues Accumulators, keyed by target cell
+         * @return Accumulator, or null if the cell does not roll up into the
+         *   target segment or has already been added from another segment
+         */
+        Accumulator accumulatorFor(
+            int[] srcPos,
+            Map<CellKey, Accumulator> cellValues)
+        {
+            final int[] pos = new int[targetValues.length];
+            int z = 0;
+            for (int i = 0; i < valueArrays.length; i++) {
+                final Comparable[] valueArray = valueArrays[i];
+                if (valueArray == null) {
+                    continue;
+                }
+                final int ordinal = srcPos[i];
+                final int targetOrdinal;
+                if (targetHasNull[z] && ordinal == valueArray.length) {
+                    targetOrdinal = targetValues[z].length;
+                } else {
+                    final Comparable axisValue = valueArray[ordinal];
+                    if (axisValue == null) {
+                        targetOrdinal = targetValues[z].length;
+                    } else {
+                        targetOrdinal =
+                            Util.binarySearch(
+                                targetValues[z],
+                                0, targetValues[z].length,
+                                axisValue);
+                    }
+                }
+                if (targetOrdinal >= 0) {
+                    pos[z++] = targetOrdinal;
+                } else {
+                    // This happens when one of the rollup candidate doesn't
+                    // contain the requested cell.
+                    return null;
+                }
+            }
+            if (addedIntersections != null
+                && addedIntersections.putIfAbsent(
+                    getColumnValues(srcPos), Boolean.TRUE) != null)
+            {
+                // We have already added this cell, from another segment.
+                return null;
+            }
+            final CellKey ck = CellKey.Generator.newCellKey(pos);
+            Accumulator accumulator = cellValues.get(ck);
+            if (accumulator == null) {
+                accumulator = Accumulator.of(rollupAggregator, datatype);
+                cellValues.put(ck, accumulator);
+            }
+            return accumulator;
+        }
+
+        /**
+         * Returns the values of all columns of a source cell.
+         */
+        private List<Comparable> getColumnValues(int[] srcPos) {
+            final Comparable[] columnValues =
+                new Comparable[allValueArrays.length];
+            for (int i = 0; i < allValueArrays.length; i++) {
+                int valCoord = nullAxisFlags[i]
+                    ? srcPos[i] - 1
+                    : srcPos[i];
+                if (valCoord >= 0) {
+                    columnValues[i] = allValueArrays[i][valCoord];
+                }
+            }
+            return Arrays.asList(columnValues);
+        }
+    }
+
+    /**
+     * Random-access view of the cells of a source segment body, for
+     * the purposes of rollup.
+     */
+    private abstract static class RollupCells {
+        /**
+         * Creates a view of the cells of a segment body. Native bodies are
+         * read in place; other bodies are read via their value map.
+         *
+         * @param body Segment body
+         * @return View of cells
+         */
+        static RollupCells of(SegmentBody body) {
+            if (body instanceof DenseDoubleSegmentBody
+                || body instanceof DenseIntSegmentBody)
+            {
+                return new NativeRollupCells(
+                    null,
+                    computeAxisMultipliers(body),
+                    body.getValueArray(),
+                    body.getNullValueIndicators());
+            }
+            if (body instanceof AbstractOffHeapSegmentBody) {
+                return new OffHeapRollupCells(
+                    (AbstractOffHeapSegmentBody) body,
+                    computeAxisMultipliers(body));
+            }
+            if (body instanceof SparseNativeSegmentBody) {
+                final SparseNativeSegmentBody sparseBody =
+                    (SparseNativeSegmentBody) body;
+                return new NativeRollupCells(
+                    sparseBody.ordinals,
+                    sparseBody.getAxisMultipliers(),
+                    body.getValueArray(),
+                    sparseBody.nullValues);
+            }
+            return new ObjectRollupCells(body.getValueMap());
+        }
+
+        private static long[] computeAxisMultipliers(SegmentBody body) {
+            final SortedSet<Comparable>[] sets = body.getAxisValueSets();
+            final boolean[] nullAxisFlags = body.getNullAxisFlags();
+            final int[] axisSizes = new int[sets.length];
+            for (int i = 0; i < axisSizes.length; i++) {
+                axisSizes[i] = sets[i].size() + (nullAxisFlags[i] ? 1 : 0);
+            }
+            return SparseNativeSegmentDataset.computeAxisMultipliers(
+                axisSizes);
+        }
+
+        /**
+         * Returns the number of cells, including null cells.
+         */
+        abstract int size();
+
+        /**
+         * Accumulates the non-null cells in a range of indexes.
+         *
+         * @param source Source segment, which maps cells onto the target
+         * @param start Index of first cell
+         * @param end Index after last cell
+         * @param cellValues Accumulators, keyed by target cell
+         */
+        abstract void accumulate(
+            RollupSource source,
+            int start,
+            int end,
+            Map<CellKey, Accumulator> cellValues);
+    }
+
+    /**
+     * View of the cells of a dense or sparse body whose values are held in an
+     * {@code int[]} or {@code double[]}.
+     */
+    private static class NativeRollupCells extends RollupCells {
+        private final long[] ordinals;
+        private final long[] axisMultipliers;
+        private final int[] intValues;
+        private final double[] doubleValues;
+        private final BitSet nullValues;
+
+        /**
+         * Creates a NativeRollupCells.
+         *
+         * @param ordinals Cell ordinals, or null if the body is dense and the
+         *   index of a cell is its ordinal
+         * @param axisMultipliers Axis multipliers of the cell ordinals
+         * @param values Cell values, an {@code int[]} or {@code double[]}
+         * @param nullValues Null indicators
+         */
+        NativeRollupCells(
+            long[] ordinals,
+            long[] axisMultipliers,
+            Object values,
+            BitSet nullValues)
+        {
+            this.ordinals = ordinals;
+            this.axisMultipliers = axisMultipliers;
+            this.intValues =
+                values instanceof int[] ? (int[]) values : null;
+            this.doubleValues =
+                values instanceof double[] ? (double[]) values : null;
+            this.nullValues = nullValues;
+        }
+
+        int size() {
+            return ordinals != null
+                ? ordinals.length
+                : intValues != null
+                ? intValues.length
+                : doubleValues.length;
+        }
+
+        void accumulate(
+            RollupSource source,
+            int start,
+            int end,
+            Map<CellKey, Accumulator> cellValues)
+        {
+            final int[] pos = new int[axisMultipliers.length];
+            for (int i = start; i < end; i++) {
+                if (nullValues.get(i)) {
+                    continue;
+                }
+                SparseNativeSegmentDataset.decode(
+                    axisMultipliers,
+                    ordinals == null ? i : ordinals[i],
+                    pos);
+                final Accumulator accumulator =
+                    source.accumulatorFor(pos, cellValues);
+                if (accumulator == null) {
+                    continue;
+                }
+                if (doubleValues != null) {
+                    accumulator.add(doubleValues[i]);
+                } else {
+                    accumulator.add(intValues[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * View of the cells of an off-heap body; values are read from native
+     * memory, without copying them onto the heap.
+     */
+    private static class OffHeapRollupCells extends RollupCells {
+        private final AbstractOffHeapSegmentBody body;
+        private final long[] axisMultipliers;
+        private final boolean isDouble;
+
+        OffHeapRollupCells(
+            AbstractOffHeapSegmentBody body,
+            long[] axisMultipliers)
+        {
+            this.body = body;
+            this.axisMultipliers = axisMultipliers;
+            this.isDouble = body.getType() == SqlStatement.Type.DOUBLE;
+        }
+
+        int size() {
+            return body.getSize();
+        }
+
+        void accumulate(
+            RollupSource source,
+            int start,
+            int end,
+            Map<CellKey, Accumulator> cellValues)
+        {
+            final int[] pos = new int[axisMultipliers.length];
+            for (int i = start; i < end; i++) {
+                if (body.isNull(i)) {
+                    continue;
+                }
+                SparseNativeSegmentDataset.decode(axisMultipliers, i, pos);
+                final Accumulator accumulator =
+                    source.accumulatorFor(pos, cellValues);
+                if (accumulator == null) {
+                    continue;
+                }
+                if (isDouble) {
+                    accumulator.add(body.getDouble(i));
+                } else {
+                    accumulator.add(body.getInt(i));
+                }
+            }
+        }
+    }
+
+    /**
+     * View of the cells of a body of object values, read via its value map.
+     */
+    private static class ObjectRollupCells extends RollupCells {
+        private final CellKey[] keys;
+        private final Object[] values;
+
+        ObjectRollupCells(Map<CellKey, Object> valueMap) {
+            final List<CellKey> keyList = new ArrayList<CellKey>();
+            final List<Object> valueList = new ArrayList<Object>();
+            for (Map.Entry<CellKey, Object> entry : valueMap.entrySet()) {
+                keyList.add(entry.getKey());
+                valueList.add(entry.getValue());
+            }
+            this.keys = keyList.toArray(new CellKey[keyList.size()]);
+            this.values = valueList.toArray();
+        }
+
+        int size() {
+            return keys.length;
+        }
+
+        void accumulate(
+            RollupSource source,
+            int start,
+            int end,
+            Map<CellKey, Accumulator> cellValues)
+        {
+            for (int i = start; i < end; i++) {
+                final Accumulator accumulator =
+                    source.accumulatorFor(keys[i].getOrdinals(), cellValues);
+                if (accumulator != null) {
+                    accumulator.add(values[i]);
+                }
+            }
+        }
+    }
+
+    /**
+     * Chunk of the cells of a source segment, to be accumulated by a task in
+     * a parallel rollup.
+     */
+    private static class RollupChunk
+        implements Callable<Map<CellKey, Accumulator>>
     {
-        List<Comparable> columnValues = new ArrayList<Comparable>();
-        for (int i = 0; i < body.getAxisValueSets().length; i++) {
-            List<Comparable> columnVals = new ArrayList<Comparable>();
-            columnVals.addAll(body.getAxisValueSets()[i]);
-            int valCoord = body.getNullAxisFlags()[i]
-                ? cellKey.getAxis(i) - 1
-                : cellKey.getAxis(i);
-            if (valCoord >= 0) {
-                columnValues.add(columnVals.get(valCoord));
+        private final RollupSource source;
+        private final RollupCells cells;
+        private final int start;
+        private final int end;
+
+        RollupChunk(
+            RollupSource source,
+            RollupCells cells,
+            int start,
+            int end)
+        {
+            this.source = source;
+            this.cells = cells;
+            this.start = start;
+            this.end = end;
+        }
+
+        public Map<CellKey, Accumulator> call() {
+            final Map<CellKey, Accumulator> cellValues =
+                new HashMap<CellKey, Accumulator>();
+            cells.accumulate(source, start, end, cellValues);
+            return cellValues;
+        }
+    }
+
+    /**
+     * Accumulates the values that roll up into one cell.
+     *
+     * <p>The sum, min and max aggregators have accumulators that hold the
+     * running result as a primitive {@code int} or {@code double}. Other
+     * aggregators collect the values into a list, and apply
+     * {@link Aggregator#aggregate(java.util.List, Datatype)} at the end.</p>
+     */
+    abstract static class Accumulator {
+        /**
+         * Creates an accumulator for a given aggregator and data type.
+         *
+         * @param aggregator Aggregator
+         * @param datatype Data type
+         * @return Accumulator
+         */
+        static Accumulator of(Aggregator aggregator, Datatype datatype) {
+            if (aggregator == RolapAggregator.Sum
+                || aggregator == RolapAggregator.Min
+                || aggregator == RolapAggregator.Max)
+            {
+                switch (datatype) {
+                case Integer:
+                    return new IntAccumulator((RolapAggregator) aggregator);
+                case Numeric:
+                    return new DoubleAccumulator((RolapAggregator) aggregator);
+                }
+            }
+            return new ListAccumulator(aggregator, datatype);
+        }
+
+        /**
+         * Adds a value.
+         *
+         * @param value Value, possibly null
+         */
+        abstract void add(Object value);
+
+        /**
+         * Adds an {@code int} value. The default implementation boxes it.
+         *
+         * @param value Value
+         */
+        void add(int value) {
+            add((Object) value);
+        }
+
+        /**
+         * Adds a {@code double} value. The default implementation boxes it.
+         *
+         * @param value Value
+         */
+        void add(double value) {
+            add((Object) value);
+        }
+
+        /**
+         * Adds the values accumulated by another accumulator of the same
+         * type.
+         *
+         * @param accumulator Accumulator
+         */
+        abstract void merge(Accumulator accumulator);
+
+        /**
+         * Returns the aggregated value, or null if no non-null values were
+         * added.
+         *
+         * @return Aggregated value
+         */
+        abstract Object get();
+    }
+
+    /**
+     * Accumulator that collects values into a list.
+     */
+    private static class ListAccumulator extends Accumulator {
+        private final List<Object> values = new ArrayList<Object>(2);
+        private final Aggregator aggregator;
+        private final Datatype datatype;
+
+        ListAccumulator(Aggregator aggregator, Datatype datatype) {
+            this.aggregator = aggregator;
+            this.datatype = datatype;
+        }
+
+        void add(Object value) {
+            values.add(value);
+        }
+
+        void merge(Accumulator accumulator) {
+            values.addAll(((ListAccumulator) accumulator).values);
+        }
+
+        Object get() {
+            return aggregator.aggregate(values, datatype);
+        }
+    }
+
+    /**
+     * Accumulator that computes the sum, min or max of {@code int} values.
+     */
+    private static class IntAccumulator extends Accumulator {
+        private final RolapAggregator aggregator;
+        private boolean empty = true;
+        private int result;
+
+        IntAccumulator(RolapAggregator aggregator) {
+            this.aggregator = aggregator;
+        }
+
+        void add(Object value) {
+            if (value != null) {
+                add(((Number) value).intValue());
+            }
+        }
+
+        void add(int value) {
+            if (empty) {
+                result = value;
+                empty = false;
+            } else if (aggregator == RolapAggregator.Sum) {
+                result += value;
+            } else if (aggregator == RolapAggregator.Min) {
+                result = Math.min(result, value);
+            } else {
+                result = Math.max(result, value);
+            }
+        }
+
+        void merge(Accumulator accumulator) {
+            final IntAccumulator other = (IntAccumulator) accumulator;
+            if (!other.empty) {
+                add(other.result);
+            }
+        }
+
+        Object get() {
+            return empty ? null : result;
+        }
+    }
+
+    /**
+     * Accumulator that computes the sum, min or max of {@code double} values.
+     */
+    private static class DoubleAccumulator extends Accumulator {
+        private final RolapAggregator aggregator;
+        private boolean empty = true;
+        private double result;
+
+        DoubleAccumulator(RolapAggregator aggregator) {
+            this.aggregator = aggregator;
+        }
+
+        void add(Object value) {
+            if (value != null) {
+                add(((Number) value).doubleValue());
+            }
+        }
+
+        void add(int value) {
+            add((double) value);
+        }
+
+        void add(double value) {
+            if (empty) {
+                result = value;
+                empty = false;
+            } else if (aggregator == RolapAggregator.Sum) {
+                result += value;
+            } else if (aggregator == RolapAggregator.Min) {
+                result = Math.min(result, value);
             } else {
-                columnValues.add(null);
+                result = Math.max(result, value);
+            }
+        }
+
+        void merge(Accumulator accumulator) {
+            final DoubleAccumulator other = (DoubleAccumulator) accumulator;
+            if (!other.empty) {
+                add(other.result);
             }
         }
-        return columnValues;
+
+        Object get() {
+            return empty ? null : result;
+        }
     }
 
     private static boolean allHeadersHaveSameDimensionality(
@@ -589,6 +1229,209 @@ public class SegmentBuilder {
         return true;
     }
 
+    /**
+     * Returns the executor that runs chunks of parallel rollups.
+     *
+     * <p>If all threads are busy, a chunk runs in the thread that submits
+     * it. This throttles the submitting thread, and means that rollups can
+     * never deadlock waiting for each other.</p>
+     */
+    private static synchronized ExecutorService getRollupExecutor() {
+        if (rollupExecutor == null) {
+            rollupExecutor =
+                Util.getExecutorService(
+                    MondrianProperties.instance().InMemoryRollupThreads.get(),
+                    0, 1,
+                    "mondrian.rolap.agg.SegmentBuilder$rollupExecutor",
+                    new ThreadPoolExecutor.CallerRunsPolicy());
+        }
+        return rollupExecutor;
+    }
+
+    /**
+     * Maps the cells of the source segments of a rollup onto the target axes,
+     * and accumulates the values of each target cell.
+     *
+     * <p>If {@code parallelism} is greater than 1, the cells of each source
+     * segment are split into ranges of {@link #ROLLUP_CHUNK_SIZE}, and each
+     * range is accumulated into a private map by a task in the rollup
+     * executor. The last range of each source segment is accumulated by the
+     * calling thread. The private maps are then merged. Tasks read the
+     * source body in place; values of native bodies are not boxed.</p>
+     *
+     * @param segments Source segment headers and bodies
+     * @param keepColumns Names of columns to keep
+     * @param targetValues Values of each target axis, sorted
+     * @param targetHasNull Whether each target axis has the null value
+     * @param rollupAggregator Aggregator
+     * @param datatype Data type of the values
+     * @param parallelism Maximum number of threads
+     * @return Accumulated values, keyed by target cell
+     */
+    private static Map<CellKey, Accumulator> populateCells(
+        List<Map.Entry<SegmentHeader, SegmentBody>> segments,
+        Set<String> keepColumns,
+        Comparable[][] targetValues,
+        boolean[] targetHasNull,
+        Aggregator rollupAggregator,
+        Datatype datatype,
+        int parallelism)
+    {
+        final Map<CellKey, Accumulator> cellValues =
+            new HashMap<CellKey, Accumulator>();
+
+        // If segments overlap, the same source cell may occur in several of
+        // them; only add the cell value once. A single segment cannot
+        // overlap itself.
+        final ConcurrentMap<List<Comparable>, Boolean> addedIntersections =
+            segments.size() > 1
+                ? new ConcurrentHashMap<List<Comparable>, Boolean>()
+                : null;
+        final SegmentHeader firstHeader = segments.get(0).getKey();
+        final LinkedList<Future<Map<CellKey, Accumulator>>> futures =
+            new LinkedList<Future<Map<CellKey, Accumulator>>>();
+
+        for (Map.Entry<SegmentHeader, SegmentBody> entry : segments) {
+            final RollupSource source =
+                new RollupSource(
+                    firstHeader,
+                    entry.getValue(),
+                    keepColumns,
+                    targetValues,
+                    targetHasNull,
+                    rollupAggregator,
+                    datatype,
+                    addedIntersections);
+            final RollupCells cells = RollupCells.of(entry.getValue());
+            final int size = cells.size();
+            int start = 0;
+            if (parallelism > 1) {
+                for (; start + ROLLUP_CHUNK_SIZE < size;
+                     start += ROLLUP_CHUNK_SIZE)
+                {
+                    futures.add(
+                        getRollupExecutor().submit(
+                            new RollupChunk(
+                                source, cells, start,
+                                start + ROLLUP_CHUNK_SIZE)));
+                    // Merge the results of finished chunks, so that they
+                    // can be garbage-collected.
+                    while (!futures.isEmpty() && futures.getFirst().isDone()) {
+                        merge(
+                            cellValues,
+                            Util.safeGet(futures.removeFirst(), "rollup"));
+                    }
+                }
+            }
+            cells.accumulate(source, start, size, cellValues);
+        }
+        while (!futures.isEmpty()) {
+            merge(cellValues, Util.safeGet(futures.removeFirst(), "rollup"));
+        }
+        return cellValues;
+    }
+
+    /**
+     * Merges accumulated values into a map of accumulated values.
+     */
+    private static void merge(
+        Map<CellKey, Accumulator> cellValues,
+        Map<CellKey, Accumulator> chunkValues)
+    {
+        if (cellValues.isEmpty()) {
+            cellValues.putAll(chunkValues);
+            return;
+        }
+        for (Map.Entry<CellKey, Accumulator> entry : chunkValues.entrySet()) {
+            final Accumulator accumulator = cellValues.get(entry.getKey());
+            if (accumulator == null) {
+                cellValues.put(entry.getKey(), entry.getValue());
+            } else {
+                accumulator.merge(entry.getValue());
+            }
+        }
+    }
+
+    /**
+     * Creates a sparse segment body from rolled-up cell values.
+     *
+     * <p>Integer and numeric values are stored without boxing, keyed by a
+     * cell ordinal, provided that the number of possible cells fits into a
+     * {@code long}; other values are stored in a
+     * {@link SparseSegmentBody}.</p>
+     *
+     * @param cellValues Accumulated values, keyed by target cell
+     * @param axisList Axes of the target segment
+     * @param datatype Data type of the values
+     * @return Sparse segment body
+     */
+    private static SegmentBody createSparseBody(
+        Map<CellKey, Accumulator> cellValues,
+        List<Pair<SortedSet<Comparable>, Boolean>> axisList,
+        Datatype datatype)
+    {
+        final int[] axisSizes = new int[axisList.size()];
+        for (int i = 0; i < axisSizes.length; i++) {
+            axisSizes[i] =
+                axisList.get(i).left.size() + (axisList.get(i).right ? 1 : 0);
+        }
+        final long[] axisMultipliers =
+            SparseNativeSegmentDataset.computeAxisMultipliers(axisSizes);
+        final int valueCount = cellValues.size();
+        if (axisMultipliers != null) {
+            switch (datatype) {
+            case Integer:
+            case Numeric:
+                final long[] ordinals = new long[valueCount];
+                final BitSet nullValues = new BitSet(valueCount);
+                final int[] ints =
+                    datatype == Datatype.Integer
+                        ? new int[valueCount]
+                        : null;
+                final double[] doubles =
+                    datatype == Datatype.Numeric
+                        ? new double[valueCount]
+                        : null;
+                int i = 0;
+                for (Entry<CellKey, Accumulator> entry
+                    : cellValues.entrySet())
+                {
+                    long ordinal = 0;
+                    final int[] pos = entry.getKey().getOrdinals();
+                    for (int k = 0; k < pos.length; k++) {
+                        ordinal += pos[k] * axisMultipliers[k];
+                    }
+                    ordinals[i] = ordinal;
+                    final Object value =
+                        entry.getValue().get();
+                    if (value == null) {
+                        nullValues.set(i);
+                    } else if (ints != null) {
+                        ints[i] = (Integer) value;
+                    } else {
+                        doubles[i] = (Double) value;
+                    }
+                    ++i;
+                }
+                if (ints != null) {
+                    return new SparseIntSegmentBody(
+                        ordinals, ints, nullValues, axisList);
+                } else {
+                    return new SparseDoubleSegmentBody(
+                        ordinals, doubles, nullValues, axisList);
+                }
+            }
+        }
+        final Map<CellKey, Object> data =
+            new HashMap<CellKey, Object>();
+        for (Entry<CellKey, Accumulator> entry : cellValues.entrySet()) {
+            data.put(
+                CellKey.Generator.newCellKey(entry.getKey().getOrdinals()),
+                entry.getValue().get());
+        }
+        return new SparseSegmentBody(data, axisList);
+    }
+
     private static int[] computeAxisMultipliers(
         List<Pair<SortedSet<Comparable>, Boolean>> axes)
     {
@@ -723,12 +1566,15 @@ public class SegmentBuilder {
                 Arrays.sort(
                     valuesArray,
                     Util.SqlNullSafeComparator.instance);
+                // Intern the values, so that headers over the same values
+                // share one set, and compare by reference.
                 ccs.add(
                     new SegmentColumn(
                         predicate.getConstrainedColumn()
                             .getExpression().getGenericExpression(),
                         predicate.getConstrainedColumn().getCardinality(),
-                        new ArraySortedSet(valuesArray)));
+                        predicate.getConstrainedColumn().getValueDictionary()
+                            .intern(valuesArray)));
             }
         }
         return ccs;
@@ -754,6 +1600,9 @@ public class SegmentBuilder {
             SqlQuery query =
                 new SqlQuery(
                     segment.star.getSqlQueryDialect());
+            // Headers may be shared with other servers via an external cache,
+            // so write values as literals.
+            query.setBindParameters(false);
             compoundPredicate.toSql(query, buf);
             cp.add(buf.toString());
         }
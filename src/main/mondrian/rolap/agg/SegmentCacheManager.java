@@ -31,6 +31,13 @@ import java.util.concurrent.*;
  * connections using a particular schema) and "external cache" (as implemented
  * by a {@link mondrian.spi.SegmentCache}.
  *
+ * <p>The segment index is partitioned by star. Each partition has its own
+ * actor thread, and the index of each {@link RolapStar} is owned by exactly
+ * one partition, chosen by hashing the schema checksum and fact table. Cell
+ * requests, segment loads and flushes for unrelated stars therefore do not
+ * queue behind each other. The number of partitions is set by
+ * {@link MondrianProperties#SegmentCacheManagerNumberIndexThreads}.</p>
+ *
  * <p>Segment states</p>
  *
  * <table>
@@ -208,8 +215,16 @@ import java.util.concurrent.*;
  */
 public class SegmentCacheManager {
     private final Handler handler = new Handler();
-    private final Actor ACTOR;
-    public final Thread thread;
+
+    /**
+     * Actors, one per partition of the segment index.
+     */
+    private final Actor[] actors;
+
+    /**
+     * Threads on which the actors run. Indexed by partition.
+     */
+    public final List<Thread> threads;
 
     /**
      * Executor with which to send requests to external caches.
@@ -260,17 +275,35 @@ public class SegmentCacheManager {
     public final SegmentCache compositeCache;
     private final SegmentCacheIndexRegistry indexRegistry;
 
+    /**
+     * The local segment cache, or null if disabled. Segments it spilled to
+     * disk in a previous run are indexed when their star is first used.
+     */
+    final MemorySegmentCache localCache;
+
     private static final Logger LOGGER =
         Logger.getLogger(AggregationManager.class);
     private final MondrianServer server;
 
     public SegmentCacheManager(MondrianServer server) {
         this.server = server;
-        ACTOR = new Actor();
-        thread = new Thread(
-            ACTOR, "mondrian.rolap.agg.SegmentCacheManager$ACTOR");
-        thread.setDaemon(true);
-        thread.start();
+        final int partitionCount =
+            Math.max(
+                1,
+                MondrianProperties.instance()
+                    .SegmentCacheManagerNumberIndexThreads.get());
+        actors = new Actor[partitionCount];
+        final List<Thread> threadList = new ArrayList<Thread>();
+        for (int i = 0; i < partitionCount; i++) {
+            actors[i] = new Actor();
+            final Thread thread = new Thread(
+                actors[i],
+                "mondrian.rolap.agg.SegmentCacheManager$ACTOR-" + i);
+            thread.setDaemon(true);
+            thread.start();
+            threadList.add(thread);
+        }
+        threads = Collections.unmodifiableList(threadList);
 
         // Create the index registry.
         this.indexRegistry = new SegmentCacheIndexRegistry();
@@ -279,9 +312,11 @@ public class SegmentCacheManager {
         if (!MondrianProperties.instance().DisableLocalSegmentCache.get()
             && !MondrianProperties.instance().DisableCaching.get())
         {
-            final MemorySegmentCache cache = new MemorySegmentCache();
+            localCache = new MemorySegmentCache();
             segmentCacheWorkers.add(
-                new SegmentCacheWorker(cache, thread));
+                new SegmentCacheWorker(localCache, threads));
+        } else {
+            localCache = null;
         }
 
         // Add an external cache, if configured.
@@ -289,7 +324,7 @@ public class SegmentCacheManager {
         for (SegmentCache cache : externalCache) {
             // Create a worker for this external cache
             segmentCacheWorkers.add(
-                new SegmentCacheWorker(cache, thread));
+                new SegmentCacheWorker(cache, threads));
             // Hook up a listener so it can update
             // the segment index.
             cache.addListener(
@@ -299,8 +334,71 @@ public class SegmentCacheManager {
         compositeCache = new CompositeSegmentCache(segmentCacheWorkers);
     }
 
+    /**
+     * Executes a command that is not tied to a particular star.
+     *
+     * <p>The command runs in the calling thread. It must not access a segment
+     * index directly; it should call {@link #execute(RolapStar, Command)} to
+     * run each piece of work on the partition that owns the index.</p>
+     *
+     * @param command Command
+     * @return Result of command
+     */
     public <T> T execute(Command<T> command) {
-        return ACTOR.execute(handler, command);
+        Locus.push(command.getLocus());
+        try {
+            return command.call();
+        } catch (RuntimeException e) {
+            throw e;
+        } catch (Error e) {
+            throw e;
+        } catch (Exception e) {
+            throw new RuntimeException(e);
+        } finally {
+            Locus.pop(command.getLocus());
+        }
+    }
+
+    /**
+     * Executes a command on the partition that owns the segment index of a
+     * given star, and waits for the result.
+     *
+     * <p>The command may access the index of {@code star}, and of any other
+     * star in the same partition, but not other indexes.</p>
+     *
+     * @param star Star
+     * @param command Command
+     * @return Result of command
+     */
+    public <T> T execute(RolapStar star, Command<T> command) {
+        return actorFor(star).execute(handler, command);
+    }
+
+    /**
+     * Returns the number of partitions of the segment index.
+     *
+     * @return Number of partitions
+     */
+    public int getPartitionCount() {
+        return actors.length;
+    }
+
+    private Actor actorFor(RolapStar star) {
+        return actors[
+            partition(
+                star.getSchema().getChecksum(),
+                star.getFactTable().getAlias())];
+    }
+
+    private Actor actorFor(SegmentHeader header) {
+        return actors[
+            partition(header.schemaChecksum, header.rolapStarFactTableName)];
+    }
+
+    private int partition(ByteString schemaChecksum, String factTableAlias) {
+        final int h =
+            Util.hash(schemaChecksum.hashCode(), factTableAlias);
+        return (h & Integer.MAX_VALUE) % actors.length;
     }
 
     public SegmentCacheIndexRegistry getIndexRegistry() {
@@ -324,7 +422,7 @@ public class SegmentCacheManager {
         SegmentBody body)
     {
         final Locus locus = Locus.peek();
-        ACTOR.event(
+        actorFor(star).event(
             handler,
             new SegmentLoadSucceededEvent(
                 System.currentTimeMillis(),
@@ -354,7 +452,7 @@ public class SegmentCacheManager {
         Throwable throwable)
     {
         final Locus locus = Locus.peek();
-        ACTOR.event(
+        actorFor(star).event(
             handler,
             new SegmentLoadFailedEvent(
                 System.currentTimeMillis(),
@@ -383,7 +481,7 @@ public class SegmentCacheManager {
         SegmentHeader header)
     {
         final Locus locus = Locus.peek();
-        ACTOR.event(
+        actorFor(star).event(
             handler,
             new SegmentRemoveEvent(
                 System.currentTimeMillis(),
@@ -409,7 +507,7 @@ public class SegmentCacheManager {
             // Ignore cache requests.
             return;
         }
-        ACTOR.event(
+        actorFor(header).event(
             handler,
             new ExternalSegmentCreatedEvent(
                 System.currentTimeMillis(),
@@ -434,7 +532,7 @@ public class SegmentCacheManager {
             // Ignore cache requests.
             return;
         }
-        ACTOR.event(
+        actorFor(header).event(
             handler,
             new ExternalSegmentDeletedEvent(
                 System.currentTimeMillis(),
@@ -452,16 +550,16 @@ public class SegmentCacheManager {
         PrintWriter pw,
         Locus locus)
     {
-        ACTOR.execute(
-            handler,
-            new PrintCacheStateCommand(region, pw, locus));
+        execute(new PrintCacheStateCommand(region, pw, locus));
     }
 
     /**
      * Shuts down this cache manager and all active threads and indexes.
      */
     public void shutdown() {
-        execute(new ShutdownCommand());
+        for (Actor actor : actors) {
+            actor.execute(handler, new ShutdownCommand());
+        }
         cacheExecutor.shutdown();
         sqlExecutor.shutdown();
     }
@@ -485,7 +583,7 @@ public class SegmentCacheManager {
      * cell value required by a particular cell request is in external cache.
      *
      * <p>'Quick' is relative. It is an asynchronous request (due to
-     * the aggregation manager being an actor) and therefore somewhat slow. If
+     * the index partition being an actor) and therefore somewhat slow. If
      * the segment is in cache, will save batching up future requests and
      * re-executing the query. Win should be particularly noticeable for queries
      * running on a populated cache. Without this feature, every query would
@@ -503,6 +601,7 @@ public class SegmentCacheManager {
     public SegmentWithData peek(final CellRequest request) {
         final SegmentCacheManager.PeekResponse response =
             execute(
+                request.getMeasure().getStar(),
                 new PeekCommand(request, Locus.peek()));
         for (SegmentHeader header : response.headerMap.keySet()) {
             final SegmentBody body = compositeCache.get(header);
@@ -658,6 +757,9 @@ public class SegmentCacheManager {
                     + event.header);
                 return;
             }
+            if (index.contains(event.header)) {
+                SegmentCacheMetrics.instance().recordEviction(event.header);
+            }
             index.remove(event.header);
             event.monitor.sendEvent(
                 new CellCacheSegmentDeleteEvent(
@@ -704,58 +806,107 @@ public class SegmentCacheManager {
         }
 
         public FlushResult call() throws Exception {
-            // For each measure and each star, ask the index
-            // which headers intersect.
-            final List<SegmentHeader> headers =
-                new ArrayList<SegmentHeader>();
-            final List<Member> measures =
-                CacheControlImpl.findMeasures(region);
+            // Group the measures by star. Each star's index is owned by one
+            // partition, so we do the work for each star on its partition.
             final SegmentColumn[] flushRegion =
                 CacheControlImpl.findAxisValues(region);
-            final List<RolapStar> starList =
-                CacheControlImpl.getStarList(region);
-
-            for (Member member : measures) {
+            final Map<RolapStar, List<RolapStoredMeasure>> starMeasures =
+                new LinkedHashMap<RolapStar, List<RolapStoredMeasure>>();
+            for (Member member : CacheControlImpl.findMeasures(region)) {
                 if (!(member instanceof RolapStoredMeasure)) {
                     continue;
                 }
                 final RolapStoredMeasure storedMeasure =
                     (RolapStoredMeasure) member;
                 final RolapStar star = storedMeasure.getCube().getStar();
-                final SegmentCacheIndex index =
-                    cacheMgr.indexRegistry.getIndex(star);
+                List<RolapStoredMeasure> list = starMeasures.get(star);
+                if (list == null) {
+                    list = new ArrayList<RolapStoredMeasure>();
+                    starMeasures.put(star, list);
+                }
+                list.add(storedMeasure);
+            }
+
+            final List<Callable<Boolean>> callableList =
+                new ArrayList<Callable<Boolean>>();
+            for (Map.Entry<RolapStar, List<RolapStoredMeasure>> entry
+                : starMeasures.entrySet())
+            {
+                final RolapStar star = entry.getKey();
+                final List<RolapStoredMeasure> storedMeasures =
+                    entry.getValue();
+                callableList.addAll(
+                    cacheMgr.execute(
+                        star,
+                        new Command<List<Callable<Boolean>>>() {
+                            public List<Callable<Boolean>> call() {
+                                return flushStar(
+                                    star, storedMeasures, flushRegion);
+                            }
+
+                            public Locus getLocus() {
+                                return locus;
+                            }
+                        }));
+            }
+
+            // Done
+            return new FlushResult(callableList);
+        }
+
+        /**
+         * Flushes the segments of one star. Must be called on the partition
+         * that owns the star's index.
+         *
+         * @param star Star
+         * @param storedMeasures Measures of the star that are to be flushed
+         * @param flushRegion Region to flush
+         * @return Tasks to flush segments from the external cache(s)
+         */
+        private List<Callable<Boolean>> flushStar(
+            RolapStar star,
+            List<RolapStoredMeasure> storedMeasures,
+            SegmentColumn[] flushRegion)
+        {
+            // Ask the index which headers intersect.
+            final SegmentCacheIndex index =
+                cacheMgr.indexRegistry.getIndex(star);
+            final List<SegmentHeader> headers =
+                new ArrayList<SegmentHeader>();
+            for (RolapStoredMeasure storedMeasure : storedMeasures) {
                 headers.addAll(
                     index.intersectRegion(
-                        member.getDimension().getSchema().getName(),
-                        ((RolapSchema) member.getDimension().getSchema())
-                            .getChecksum(),
+                        storedMeasure.getDimension().getSchema().getName(),
+                        ((RolapSchema) storedMeasure.getDimension()
+                            .getSchema()).getChecksum(),
                         storedMeasure.getCube().getName(),
                         storedMeasure.getName(),
-                        storedMeasure.getCube().getStar()
-                            .getFactTable().getAlias(),
+                        star.getFactTable().getAlias(),
                         flushRegion));
-                if (cacheControlImpl.isTraceEnabled()) {
-                    Collections.sort(
-                        headers,
-                        new Comparator<SegmentHeader>() {
-                            public int compare(
-                                SegmentHeader o1,
-                                SegmentHeader o2)
-                            {
-                                return o1.getUniqueID()
-                                    .compareTo(o2.getUniqueID());
-                            }
-                        });
-                }
+            }
+            if (!headers.isEmpty()) {
+                // Reclaim the dictionary codes of the flushed values.
+                star.resetValueDictionaries();
+            }
+            if (cacheControlImpl.isTraceEnabled()) {
+                Collections.sort(
+                    headers,
+                    new Comparator<SegmentHeader>() {
+                        public int compare(
+                            SegmentHeader o1,
+                            SegmentHeader o2)
+                        {
+                            return o1.getUniqueID()
+                                .compareTo(o2.getUniqueID());
+                        }
+                    });
             }
 
             // If flushRegion is empty, this means we must clear all
             // segments for the region's measures.
             if (flushRegion.length == 0) {
                 for (final SegmentHeader header : headers) {
-                    for (RolapStar star : starList) {
-                        cacheMgr.indexRegistry.getIndex(star).remove(header);
-                    }
+                    index.remove(header);
                     // Remove the segment from external caches. Use an
                     // executor, because it may take some time. We discard
                     // the future, because we don't care too much if it fails.
@@ -781,8 +932,7 @@ public class SegmentCacheManager {
                         });
                     Util.safeGet(task, "SegmentCacheManager.flush");
                 }
-                return new FlushResult(
-                    Collections.<Callable<Boolean>>emptyList());
+                return Collections.emptyList();
             }
 
             // Now we know which headers intersect. For each of them,
@@ -798,9 +948,7 @@ public class SegmentCacheManager {
                     cacheControlImpl.trace(
                         "discard segment - it cannot be constrained and maintain consistency:\n"
                         + header.getDescription());
-                    for (RolapStar star : starList) {
-                        cacheMgr.indexRegistry.getIndex(star).remove(header);
-                    }
+                    index.remove(header);
                     continue;
                 }
 
@@ -809,11 +957,7 @@ public class SegmentCacheManager {
                     header.constrain(flushRegion);
 
                 // Update the segment index.
-                for (RolapStar star : starList) {
-                    SegmentCacheIndex index =
-                        cacheMgr.indexRegistry.getIndex(star);
-                    index.update(header, newHeader);
-                }
+                index.update(header, newHeader);
 
                 // Update all of the cache workers.
                 for (final SegmentCacheWorker worker
@@ -839,9 +983,7 @@ public class SegmentCacheManager {
                         });
                 }
             }
-
-            // Done
-            return new FlushResult(callableList);
+            return callableList;
         }
     }
 
@@ -873,9 +1015,20 @@ public class SegmentCacheManager {
                             o2.getFactTable().getAlias());
                     }
                 });
-            for (RolapStar star : starList) {
-                indexRegistry.getIndex(star)
-                    .printCacheState(pw);
+            for (final RolapStar star : starList) {
+                execute(
+                    star,
+                    new Command<Void>() {
+                        public Void call() {
+                            indexRegistry.getIndex(star)
+                                .printCacheState(pw);
+                            return null;
+                        }
+
+                        public Locus getLocus() {
+                            return locus;
+                        }
+                    });
             }
             return null;
         }
@@ -1515,12 +1668,15 @@ public class SegmentCacheManager {
      * Registry of all the indexes that were created for this
      * cache manager, per {@link RolapStar}.
      *
-     * The index is based off the checksum of the schema.
+     * <p>The index is based off the checksum of the schema and the alias of
+     * the star's fact table. Each index belongs to one partition, and may only
+     * be accessed from that partition's actor thread.</p>
      */
     public class SegmentCacheIndexRegistry {
-        private final Map<ByteString, SegmentCacheIndex> indexes =
-            Collections.synchronizedMap(
-                new HashMap<ByteString, SegmentCacheIndex>());
+        private final Map<Pair<ByteString, String>, SegmentCacheIndex>
+            indexes =
+            new ConcurrentHashMap<Pair<ByteString, String>,
+                SegmentCacheIndex>();
 
         /**
          * Returns the {@link SegmentCacheIndex} for a given
@@ -1531,17 +1687,24 @@ public class SegmentCacheManager {
                 "SegmentCacheManager.SegmentCacheIndexRegistry.getIndex:"
                 + System.identityHashCode(star));
 
-            if (!indexes.containsKey(star.getSchema().getChecksum())) {
-                final SegmentCacheIndexImpl index =
-                    new SegmentCacheIndexImpl(thread);
+            final Pair<ByteString, String> key =
+                Pair.of(
+                    star.getSchema().getChecksum(),
+                    star.getFactTable().getAlias());
+            SegmentCacheIndex index = indexes.get(key);
+            if (index == null) {
+                // Only the partition's thread creates indexes for its stars,
+                // so there is no race between "get" and "put".
+                final Thread thread =
+                    threads.get(partition(key.left, key.right));
+                index = new SegmentCacheIndexImpl(thread);
                 LOGGER.trace(
                     "SegmentCacheManager.SegmentCacheIndexRegistry.getIndex:"
                     + "Creating New Index "
                     + System.identityHashCode(index));
-                indexes.put(star.getSchema().getChecksum(), index);
+                indexes.put(key, index);
+                addSpilledSegments(star, index);
             }
-            final SegmentCacheIndex index =
-                indexes.get(star.getSchema().getChecksum());
             LOGGER.trace(
                 "SegmentCacheManager.SegmentCacheIndexRegistry.getIndex:"
                 + "Returning Index "
@@ -1549,6 +1712,30 @@ public class SegmentCacheManager {
             return index;
         }
 
+        /**
+         * Indexes the segments of a star that the local cache holds on disk
+         * from a previous run.
+         */
+        private void addSpilledSegments(
+            RolapStar star,
+            SegmentCacheIndex index)
+        {
+            if (localCache == null) {
+                return;
+            }
+            final ByteString checksum = star.getSchema().getChecksum();
+            final String factTableName = star.getFactTable().getAlias();
+            for (SegmentHeader header
+                : localCache.getSpilledSegmentHeaders())
+            {
+                if (header.schemaChecksum.equals(checksum)
+                    && header.rolapStarFactTableName.equals(factTableName))
+                {
+                    index.add(header, getConverter(star, header), false);
+                }
+            }
+        }
+
         /**
          * Returns the {@link SegmentCacheIndex} for a given
          * {@link SegmentHeader}.
@@ -1558,8 +1745,13 @@ public class SegmentCacheManager {
         {
             // First we check the indexes that already exist.
             // This is fast.
-            if (indexes.containsKey(header.schemaChecksum)) {
-                return indexes.get(header.schemaChecksum);
+            final SegmentCacheIndex index =
+                indexes.get(
+                    Pair.of(
+                        header.schemaChecksum,
+                        header.rolapStarFactTableName));
+            if (index != null) {
+                return index;
             }
 
             // The index doesn't exist. Let's create it.
@@ -1573,9 +1765,41 @@ public class SegmentCacheManager {
                 return getIndex(star);
             }
         }
-        public void cancelExecutionSegments(Execution exec) {
-            for (SegmentCacheIndex index : indexes.values()) {
-                index.cancel(exec);
+
+        /**
+         * Cancels the segment registrations of an execution in every index.
+         *
+         * <p>Dispatches to each partition in turn; must not be called from
+         * a partition's thread.</p>
+         *
+         * @param exec Execution
+         */
+        public void cancelExecutionSegments(final Execution exec) {
+            for (int i = 0; i < actors.length; i++) {
+                final int partition = i;
+                actors[i].execute(
+                    handler,
+                    new Command<Void>() {
+                        public Void call() {
+                            for (Map.Entry<Pair<ByteString, String>,
+                                     SegmentCacheIndex> entry
+                                : indexes.entrySet())
+                            {
+                                final Pair<ByteString, String> key =
+                                    entry.getKey();
+                                if (partition(key.left, key.right)
+                                    == partition)
+                                {
+                                    entry.getValue().cancel(exec);
+                                }
+                            }
+                            return null;
+                        }
+
+                        public Locus getLocus() {
+                            return null;
+                        }
+                    });
             }
         }
     }
@@ -0,0 +1,312 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.rolap.RolapStar;
+import mondrian.server.monitor.SegmentCacheInfo;
+import mondrian.spi.SegmentBody;
+import mondrian.spi.SegmentHeader;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Counters of segment cache activity, by cube and measure.
+ *
+ * <p>Counters are recorded on the query path, so they are designed to be
+ * cheap enough to leave on all of the time. Each measure has a set of
+ * striped counters; a thread updates the stripe chosen by its thread id,
+ * so that threads rarely contend for the same cache line, and a reader adds
+ * up the stripes. Counters are not reset, and a reader sees each counter as
+ * of a slightly different moment.</p>
+ *
+ * <p>Counters are kept over all servers in this JVM, like the off-heap
+ * counters of {@link mondrian.rolap.cache.MemorySegmentCache}, and are
+ * published by the monitor as
+ * {@link mondrian.server.monitor.Monitor#getSegmentCaches()}.</p>
+ *
+ * @author agent
+ */
+public class SegmentCacheMetrics {
+    private static final SegmentCacheMetrics INSTANCE =
+        new SegmentCacheMetrics();
+
+    /**
+     * Upper bounds, in milliseconds, of the buckets of the load latency
+     * histogram. The last bucket has no upper bound.
+     */
+    public static final long[] LATENCY_BUCKET_MILLIS = {
+        1, 10, 100, 1000, 10000
+    };
+
+    // Offsets of counters within a stripe.
+    private static final int HIT = 0;
+    private static final int PENDING = 1;
+    private static final int ROLLUP = 2;
+    private static final int SQL = 3;
+    private static final int LOAD = 4;
+    private static final int LOAD_NANOS = 5;
+    private static final int CREATE = 6;
+    private static final int REMOVE = 7;
+    private static final int EVICT = 8;
+    private static final int BYTES = 9;
+    private static final int LATENCY = 10;
+
+    /** Number of longs per stripe; a multiple of a 64-byte cache line. */
+    private static final int STRIDE = 16;
+
+    private static final int STRIPE_COUNT = stripeCount();
+
+    static {
+        assert LATENCY + LATENCY_BUCKET_MILLIS.length + 1 <= STRIDE;
+    }
+
+    private final ConcurrentMap<List<String>, Counters> map =
+        new ConcurrentHashMap<List<String>, Counters>();
+
+    private SegmentCacheMetrics() {
+    }
+
+    /**
+     * Returns the singleton instance.
+     *
+     * @return Metrics
+     */
+    public static SegmentCacheMetrics instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Records that a cell request was satisfied by a segment in cache.
+     *
+     * @param measure Measure
+     */
+    public void recordHit(RolapStar.Measure measure) {
+        counters(measure).add(HIT, 1);
+    }
+
+    /**
+     * Records that a cell request will be satisfied by a segment that is
+     * currently being loaded.
+     *
+     * @param measure Measure
+     */
+    public void recordPending(RolapStar.Measure measure) {
+        counters(measure).add(PENDING, 1);
+    }
+
+    /**
+     * Records that a cell request will be satisfied by rolling up segments
+     * in cache.
+     *
+     * @param measure Measure
+     */
+    public void recordRollup(RolapStar.Measure measure) {
+        counters(measure).add(ROLLUP, 1);
+    }
+
+    /**
+     * Records that a cell request will be satisfied by loading a segment
+     * from SQL.
+     *
+     * @param measure Measure
+     */
+    public void recordSql(RolapStar.Measure measure) {
+        counters(measure).add(SQL, 1);
+    }
+
+    /**
+     * Records that a segment has been loaded from SQL.
+     *
+     * @param measure Measure
+     * @param nanos Time taken to execute the statement and read its results
+     */
+    public void recordLoad(RolapStar.Measure measure, long nanos) {
+        final Counters counters = counters(measure);
+        final int stripe = stripe();
+        counters.add(stripe, LOAD, 1);
+        counters.add(stripe, LOAD_NANOS, nanos);
+        final long millis = nanos / 1000000L;
+        int bucket = 0;
+        while (bucket < LATENCY_BUCKET_MILLIS.length
+            && millis >= LATENCY_BUCKET_MILLIS[bucket])
+        {
+            ++bucket;
+        }
+        counters.add(stripe, LATENCY + bucket, 1);
+    }
+
+    /**
+     * Records that a segment body has been added to the segment index, and
+     * returns an estimate of its size.
+     *
+     * @param header Segment header
+     * @param body Segment body
+     * @return Estimated number of bytes held by the body
+     */
+    public long recordCreate(SegmentHeader header, SegmentBody body) {
+        final long bytes = SegmentBuilder.estimateByteCount(body);
+        final Counters counters = counters(header);
+        final int stripe = stripe();
+        counters.add(stripe, CREATE, 1);
+        counters.add(stripe, BYTES, bytes);
+        return bytes;
+    }
+
+    /**
+     * Records that a segment has been removed from the segment index.
+     *
+     * @param header Segment header
+     * @param bytes Size of the body, as returned from
+     *   {@link #recordCreate(SegmentHeader, SegmentBody)}, or 0 if the body
+     *   was not loaded by this server
+     */
+    public void recordRemove(SegmentHeader header, long bytes) {
+        final Counters counters = counters(header);
+        final int stripe = stripe();
+        counters.add(stripe, REMOVE, 1);
+        counters.add(stripe, BYTES, -bytes);
+    }
+
+    /**
+     * Records that a segment that the index believed to be in cache has
+     * been evicted from the local cache or deleted from an external cache.
+     *
+     * @param header Segment header
+     */
+    public void recordEviction(SegmentHeader header) {
+        counters(header).add(EVICT, 1);
+    }
+
+    /**
+     * Returns a snapshot of the counters of each measure.
+     *
+     * @return List of counters, sorted by schema, cube and measure
+     */
+    public List<SegmentCacheInfo> getSegmentCacheInfos() {
+        final List<SegmentCacheInfo> list = new ArrayList<SegmentCacheInfo>();
+        for (Counters counters : map.values()) {
+            final long[] totals = counters.sum();
+            final long[] histogram = new long[LATENCY_BUCKET_MILLIS.length + 1];
+            System.arraycopy(totals, LATENCY, histogram, 0, histogram.length);
+            list.add(
+                new SegmentCacheInfo(
+                    null,
+                    counters.key.get(0),
+                    counters.key.get(1),
+                    counters.key.get(2),
+                    totals[HIT],
+                    totals[PENDING],
+                    totals[ROLLUP],
+                    totals[SQL],
+                    totals[LOAD],
+                    totals[LOAD_NANOS],
+                    histogram,
+                    totals[CREATE],
+                    totals[REMOVE],
+                    totals[EVICT],
+                    totals[BYTES]));
+        }
+        Collections.sort(
+            list,
+            new Comparator<SegmentCacheInfo>() {
+                public int compare(SegmentCacheInfo o1, SegmentCacheInfo o2) {
+                    int c = o1.schemaName.compareTo(o2.schemaName);
+                    if (c == 0) {
+                        c = o1.cubeName.compareTo(o2.cubeName);
+                    }
+                    if (c == 0) {
+                        c = o1.measureName.compareTo(o2.measureName);
+                    }
+                    return c;
+                }
+            });
+        return list;
+    }
+
+    private Counters counters(RolapStar.Measure measure) {
+        return counters(
+            measure.getStar().getSchema().getName(),
+            measure.getCubeName(),
+            measure.getName());
+    }
+
+    private Counters counters(SegmentHeader header) {
+        return counters(header.schemaName, header.cubeName, header.measureName);
+    }
+
+    private Counters counters(
+        String schemaName,
+        String cubeName,
+        String measureName)
+    {
+        final List<String> key =
+            Arrays.asList(schemaName, cubeName, measureName);
+        Counters counters = map.get(key);
+        if (counters == null) {
+            counters = new Counters(key);
+            final Counters previous = map.putIfAbsent(key, counters);
+            if (previous != null) {
+                counters = previous;
+            }
+        }
+        return counters;
+    }
+
+    private static int stripe() {
+        return (int) Thread.currentThread().getId() & (STRIPE_COUNT - 1);
+    }
+
+    private static int stripeCount() {
+        // Smallest power of 2 not less than the number of processors, at
+        // most 16.
+        final int processors = Runtime.getRuntime().availableProcessors();
+        int n = 1;
+        while (n < processors && n < 16) {
+            n <<= 1;
+        }
+        return n;
+    }
+
+    /**
+     * Striped counters of one measure.
+     */
+    private static class Counters {
+        final List<String> key;
+        final AtomicLongArray array =
+            new AtomicLongArray(STRIPE_COUNT * STRIDE);
+
+        Counters(List<String> key) {
+            this.key = key;
+        }
+
+        void add(int field, long delta) {
+            add(stripe(), field, delta);
+        }
+
+        void add(int stripe, int field, long delta) {
+            array.addAndGet(stripe * STRIDE + field, delta);
+        }
+
+        long[] sum() {
+            final long[] totals = new long[STRIDE];
+            for (int stripe = 0; stripe < STRIPE_COUNT; stripe++) {
+                for (int field = 0; field < STRIDE; field++) {
+                    totals[field] += array.get(stripe * STRIDE + field);
+                }
+            }
+            return totals;
+        }
+    }
+}
+
+// End SegmentCacheMetrics.java
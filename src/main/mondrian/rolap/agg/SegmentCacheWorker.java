@@ -31,21 +31,24 @@ public final class SegmentCacheWorker {
         Logger.getLogger(SegmentCacheWorker.class);
 
     final SegmentCache cache;
-    private final Thread cacheMgrThread;
+    private final List<Thread> cacheMgrThreads;
     private final boolean supportsRichIndex;
 
     /**
      * Creates a worker.
      *
      * @param cache Cache managed by this worker
-     * @param cacheMgrThread Thread that the cache manager actor is running on,
-     *                       and which therefore should not be used for
+     * @param cacheMgrThreads Threads that the cache manager actors are running
+     *                       on, and which therefore should not be used for
      *                       potentially long-running calls this this cache.
      *                       Pass null if methods can be called from any thread.
      */
-    public SegmentCacheWorker(SegmentCache cache, Thread cacheMgrThread) {
+    public SegmentCacheWorker(
+        SegmentCache cache,
+        List<Thread> cacheMgrThreads)
+    {
         this.cache = cache;
-        this.cacheMgrThread = cacheMgrThread;
+        this.cacheMgrThreads = cacheMgrThreads;
 
         // no need to call checkThread(): supportsRichIndex is a fast call
         this.supportsRichIndex = cache.supportsRichIndex();
@@ -219,9 +222,10 @@ public final class SegmentCacheWorker {
     }
 
     private void checkThread() {
-        assert cacheMgrThread != Thread.currentThread()
+        assert cacheMgrThreads == null
+            || !cacheMgrThreads.contains(Thread.currentThread())
             : "this method is potentially slow; you should not call it from "
-            + "the cache manager thread, " + cacheMgrThread;
+            + "a cache manager thread, " + Thread.currentThread();
     }
 }
 
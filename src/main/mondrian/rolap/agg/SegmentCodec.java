@@ -0,0 +1,921 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.olap.Util;
+import mondrian.rolap.*;
+import mondrian.spi.*;
+import mondrian.util.*;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.nio.ByteBuffer;
+import java.util.*;
+import java.util.zip.*;
+
+/**
+ * Compact binary encoding of {@link SegmentHeader} and {@link SegmentBody}.
+ *
+ * <p>Implementations of {@link mondrian.spi.SegmentCache} that store
+ * segments outside the JVM may use this codec instead of Java serialization.
+ * The encoding is versioned, and is much smaller and faster to read and write
+ * than Java serialization, especially for bodies with many cells:</p>
+ *
+ * <ul>
+ * <li>Integers, lengths and cell ordinals are written as variable-length
+ *     integers; signed values are zig-zag encoded.</li>
+ * <li>Cell values, null indicators and axis values are written column by
+ *     column. A column of values of one type (such as the keys of an axis)
+ *     writes the type once.</li>
+ * <li>Bodies may optionally be compressed.</li>
+ * <li>Decoding reads directly from a {@link ByteBuffer}, which may be a
+ *     direct or memory-mapped buffer; arrays of native values are copied out
+ *     in bulk.</li>
+ * </ul>
+ *
+ * <p>Values of types that the codec does not know are written using Java
+ * serialization, as are bodies that were not created by Mondrian.</p>
+ *
+ * <p>For example, a segment cache might store a body as follows:</p>
+ *
+ * <blockquote><pre>
+ * byte[] bytes = SegmentCodec.encodeBody(body, true);
+ * ...
+ * SegmentBody body2 = SegmentCodec.decodeBody(ByteBuffer.wrap(bytes));
+ * </pre></blockquote>
+ *
+ * @author agent
+ */
+public class SegmentCodec {
+    /** Version of the encoding written by this codec. */
+    public static final int VERSION = 1;
+
+    private static final byte[] MAGIC = {'M', 'S', 'C'};
+
+    private static final int FLAG_COMPRESSED = 1;
+
+    private static final byte KIND_HEADER = 1;
+    private static final byte KIND_DENSE_DOUBLE = 2;
+    private static final byte KIND_DENSE_INT = 3;
+    private static final byte KIND_DENSE_OBJECT = 4;
+    private static final byte KIND_SPARSE_OBJECT = 5;
+    private static final byte KIND_SPARSE_DOUBLE = 6;
+    private static final byte KIND_SPARSE_INT = 7;
+    private static final byte KIND_SERIALIZED = 8;
+
+    private static final byte TYPE_NULL = 0;
+    private static final byte TYPE_SQL_NULL = 1;
+    private static final byte TYPE_STRING = 2;
+    private static final byte TYPE_INT = 3;
+    private static final byte TYPE_LONG = 4;
+    private static final byte TYPE_DOUBLE = 5;
+    private static final byte TYPE_BOOLEAN = 6;
+    private static final byte TYPE_BIG_DECIMAL = 7;
+    private static final byte TYPE_BIG_INTEGER = 8;
+    private static final byte TYPE_FLOAT = 9;
+    private static final byte TYPE_SHORT = 10;
+    private static final byte TYPE_BYTE = 11;
+    private static final byte TYPE_SQL_DATE = 12;
+    private static final byte TYPE_SQL_TIME = 13;
+    private static final byte TYPE_SQL_TIMESTAMP = 14;
+    private static final byte TYPE_DATE = 15;
+    private static final byte TYPE_SERIALIZED = 16;
+
+    /** Marks a column of values whose types differ. */
+    private static final byte TYPE_MIXED = -1;
+
+    private SegmentCodec() {
+    }
+
+    /**
+     * Encodes a segment header.
+     *
+     * @param header Segment header
+     * @return Encoded header
+     */
+    public static byte[] encodeHeader(SegmentHeader header) {
+        final Writer w = new Writer();
+        w.writeByte(KIND_HEADER);
+        w.writeString(header.schemaName);
+        final ByteString checksum = header.schemaChecksum;
+        w.writeVarInt(checksum.length());
+        for (int i = 0; i < checksum.length(); i++) {
+            w.writeByte(checksum.byteAt(i));
+        }
+        w.writeString(header.cubeName);
+        w.writeString(header.measureName);
+        w.writeString(header.rolapStarFactTableName);
+        writeColumns(w, header.getConstrainedColumns());
+        w.writeVarInt(header.compoundPredicates.size());
+        for (String compoundPredicate : header.compoundPredicates) {
+            w.writeString(compoundPredicate);
+        }
+        final BitKey bitKey = header.constrainedColsBitKey;
+        w.writeVarInt(bitKey.cardinality());
+        int previous = -1;
+        for (int bit : bitKey) {
+            w.writeVarInt(bit - previous);
+            previous = bit;
+        }
+        writeColumns(w, header.getExcludedRegions());
+        return w.finish(false);
+    }
+
+    /**
+     * Decodes a segment header.
+     *
+     * <p>Reads from the buffer's current position, and leaves the position
+     * after the header.</p>
+     *
+     * @param buffer Buffer containing encoded header
+     * @return Segment header
+     */
+    public static SegmentHeader decodeHeader(ByteBuffer buffer) {
+        final Reader r = Reader.open(buffer);
+        checkKind(r.readByte(), KIND_HEADER);
+        final String schemaName = r.readString();
+        final byte[] checksum = new byte[r.readVarInt()];
+        r.buffer.get(checksum);
+        final String cubeName = r.readString();
+        final String measureName = r.readString();
+        final String factTableName = r.readString();
+        final List<SegmentColumn> constrainedColumns = readColumns(r);
+        final int compoundPredicateCount = r.readVarInt();
+        final List<String> compoundPredicates =
+            new ArrayList<String>(compoundPredicateCount);
+        for (int i = 0; i < compoundPredicateCount; i++) {
+            compoundPredicates.add(r.readString());
+        }
+        final int[] bits = new int[r.readVarInt()];
+        int previous = -1;
+        for (int i = 0; i < bits.length; i++) {
+            bits[i] = previous + r.readVarInt();
+            previous = bits[i];
+        }
+        final BitKey bitKey = BitKey.Factory.makeBitKey(previous + 1);
+        for (int bit : bits) {
+            bitKey.set(bit);
+        }
+        final List<SegmentColumn> excludedRegions = readColumns(r);
+        r.close();
+        return new SegmentHeader(
+            schemaName,
+            new ByteString(checksum),
+            cubeName,
+            measureName,
+            constrainedColumns,
+            compoundPredicates,
+            factTableName,
+            bitKey,
+            excludedRegions);
+    }
+
+    /**
+     * Encodes a segment body.
+     *
+     * @param body Segment body
+     * @param compress Whether to compress the encoded body
+     * @return Encoded body
+     */
+    public static byte[] encodeBody(SegmentBody body, boolean compress) {
+        if (body instanceof AbstractOffHeapSegmentBody) {
+            body = ((AbstractOffHeapSegmentBody) body).toHeap();
+        }
+        final Writer w = new Writer();
+        if (body instanceof DenseDoubleSegmentBody) {
+            w.writeByte(KIND_DENSE_DOUBLE);
+            writeAxes(w, body);
+            final double[] values = (double[]) body.getValueArray();
+            w.writeVarInt(values.length);
+            w.writeBits(body.getNullValueIndicators());
+            for (double value : values) {
+                w.writeDouble(value);
+            }
+        } else if (body instanceof DenseIntSegmentBody) {
+            w.writeByte(KIND_DENSE_INT);
+            writeAxes(w, body);
+            final int[] values = (int[]) body.getValueArray();
+            w.writeVarInt(values.length);
+            w.writeBits(body.getNullValueIndicators());
+            for (int value : values) {
+                w.writeZigZagInt(value);
+            }
+        } else if (body instanceof DenseObjectSegmentBody) {
+            w.writeByte(KIND_DENSE_OBJECT);
+            writeAxes(w, body);
+            writeValues(w, Arrays.asList((Object[]) body.getValueArray()));
+        } else if (body instanceof SparseDoubleSegmentBody) {
+            final SparseDoubleSegmentBody sparseBody =
+                (SparseDoubleSegmentBody) body;
+            w.writeByte(KIND_SPARSE_DOUBLE);
+            writeAxes(w, body);
+            writeOrdinals(w, sparseBody.ordinals, sparseBody.nullValues);
+            for (double value : sparseBody.values) {
+                w.writeDouble(value);
+            }
+        } else if (body instanceof SparseIntSegmentBody) {
+            final SparseIntSegmentBody sparseBody =
+                (SparseIntSegmentBody) body;
+            w.writeByte(KIND_SPARSE_INT);
+            writeAxes(w, body);
+            writeOrdinals(w, sparseBody.ordinals, sparseBody.nullValues);
+            for (int value : sparseBody.values) {
+                w.writeZigZagInt(value);
+            }
+        } else if (body instanceof SparseSegmentBody) {
+            final SparseSegmentBody sparseBody = (SparseSegmentBody) body;
+            w.writeByte(KIND_SPARSE_OBJECT);
+            writeAxes(w, body);
+            final int arity = body.getAxisValueSets().length;
+            w.writeVarInt(sparseBody.keys.length);
+            for (CellKey key : sparseBody.keys) {
+                for (int i = 0; i < arity; i++) {
+                    w.writeVarInt(key.getAxis(i));
+                }
+            }
+            writeValues(w, Arrays.asList(sparseBody.data));
+        } else {
+            w.writeByte(KIND_SERIALIZED);
+            w.writeSerialized(body);
+        }
+        return w.finish(compress);
+    }
+
+    /**
+     * Decodes a segment body.
+     *
+     * <p>Reads from the buffer's current position, and leaves the position
+     * after the body.</p>
+     *
+     * @param buffer Buffer containing encoded body
+     * @return Segment body
+     */
+    public static SegmentBody decodeBody(ByteBuffer buffer) {
+        final Reader r = Reader.open(buffer);
+        final byte kind = r.readByte();
+        final SegmentBody body;
+        switch (kind) {
+        case KIND_DENSE_DOUBLE: {
+            final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+                readAxes(r);
+            final double[] values = new double[r.readVarInt()];
+            final BitSet nullValues = r.readBits();
+            r.buffer.asDoubleBuffer().get(values);
+            r.skip(values.length * 8);
+            body = new DenseDoubleSegmentBody(nullValues, values, axes);
+            break;
+        }
+        case KIND_DENSE_INT: {
+            final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+                readAxes(r);
+            final int[] values = new int[r.readVarInt()];
+            final BitSet nullValues = r.readBits();
+            for (int i = 0; i < values.length; i++) {
+                values[i] = r.readZigZagInt();
+            }
+            body = new DenseIntSegmentBody(nullValues, values, axes);
+            break;
+        }
+        case KIND_DENSE_OBJECT: {
+            final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+                readAxes(r);
+            body = new DenseObjectSegmentBody(readValues(r), axes);
+            break;
+        }
+        case KIND_SPARSE_DOUBLE: {
+            final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+                readAxes(r);
+            final long[] ordinals = readOrdinals(r);
+            final BitSet nullValues = r.readBits();
+            final double[] values = new double[ordinals.length];
+            r.buffer.asDoubleBuffer().get(values);
+            r.skip(values.length * 8);
+            body =
+                new SparseDoubleSegmentBody(
+                    ordinals, values, nullValues, axes);
+            break;
+        }
+        case KIND_SPARSE_INT: {
+            final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+                readAxes(r);
+            final long[] ordinals = readOrdinals(r);
+            final BitSet nullValues = r.readBits();
+            final int[] values = new int[ordinals.length];
+            for (int i = 0; i < values.length; i++) {
+                values[i] = r.readZigZagInt();
+            }
+            body =
+                new SparseIntSegmentBody(ordinals, values, nullValues, axes);
+            break;
+        }
+        case KIND_SPARSE_OBJECT: {
+            final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+                readAxes(r);
+            final int arity = axes.size();
+            final CellKey[] keys = new CellKey[r.readVarInt()];
+            final int[] pos = new int[arity];
+            for (int i = 0; i < keys.length; i++) {
+                for (int j = 0; j < arity; j++) {
+                    pos[j] = r.readVarInt();
+                }
+                keys[i] = CellKey.Generator.newCellKey(pos);
+            }
+            final Object[] values = readValues(r);
+            final Map<CellKey, Object> map =
+                new LinkedHashMap<CellKey, Object>(keys.length * 3 / 2);
+            for (int i = 0; i < keys.length; i++) {
+                map.put(keys[i], values[i]);
+            }
+            body = new SparseSegmentBody(map, axes);
+            break;
+        }
+        case KIND_SERIALIZED:
+            body = (SegmentBody) r.readSerialized();
+            break;
+        default:
+            throw Util.newError("Unknown segment body kind " + kind);
+        }
+        r.close();
+        return body;
+    }
+
+    private static void checkKind(byte kind, byte expectedKind) {
+        if (kind != expectedKind) {
+            throw Util.newError(
+                "Expected segment kind " + expectedKind + ", was " + kind);
+        }
+    }
+
+    private static void writeColumns(Writer w, List<SegmentColumn> columns) {
+        w.writeVarInt(columns.size());
+        for (SegmentColumn column : columns) {
+            w.writeString(column.columnExpression);
+            w.writeZigZagInt(column.valueCount);
+            if (column.values == null) {
+                w.writeByte((byte) 0);
+            } else {
+                w.writeByte((byte) 1);
+                writeValues(w, column.values);
+            }
+        }
+    }
+
+    private static List<SegmentColumn> readColumns(Reader r) {
+        final int count = r.readVarInt();
+        final List<SegmentColumn> columns = new ArrayList<SegmentColumn>(count);
+        for (int i = 0; i < count; i++) {
+            final String columnExpression = r.readString();
+            final int valueCount = r.readZigZagInt();
+            final SortedSet<Comparable> values =
+                r.readByte() == 0
+                    ? null
+                    : readSortedSet(r);
+            columns.add(
+                new SegmentColumn(columnExpression, valueCount, values));
+        }
+        return columns;
+    }
+
+    private static void writeAxes(Writer w, SegmentBody body) {
+        final SortedSet<Comparable>[] valueSets = body.getAxisValueSets();
+        final boolean[] nullFlags = body.getNullAxisFlags();
+        w.writeVarInt(valueSets.length);
+        for (int i = 0; i < valueSets.length; i++) {
+            w.writeByte((byte) (nullFlags[i] ? 1 : 0));
+            writeValues(w, valueSets[i]);
+        }
+    }
+
+    private static List<Pair<SortedSet<Comparable>, Boolean>> readAxes(
+        Reader r)
+    {
+        final int count = r.readVarInt();
+        final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+            new ArrayList<Pair<SortedSet<Comparable>, Boolean>>(count);
+        for (int i = 0; i < count; i++) {
+            final boolean hasNull = r.readByte() != 0;
+            axes.add(Pair.of(readSortedSet(r), hasNull));
+        }
+        return axes;
+    }
+
+    private static void writeOrdinals(
+        Writer w,
+        long[] ordinals,
+        BitSet nullValues)
+    {
+        w.writeVarInt(ordinals.length);
+        long previous = 0;
+        for (long ordinal : ordinals) {
+            w.writeZigZagLong(ordinal - previous);
+            previous = ordinal;
+        }
+        w.writeBits(nullValues);
+    }
+
+    private static long[] readOrdinals(Reader r) {
+        final long[] ordinals = new long[r.readVarInt()];
+        long previous = 0;
+        for (int i = 0; i < ordinals.length; i++) {
+            ordinals[i] = previous + r.readZigZagLong();
+            previous = ordinals[i];
+        }
+        return ordinals;
+    }
+
+    /**
+     * Writes a column of values. Nulls are written as a bit set. If all
+     * other values have the same type, the type is written once; otherwise
+     * each value is preceded by its type.
+     */
+    private static void writeValues(Writer w, Collection<?> values) {
+        w.writeVarInt(values.size());
+        final BitSet nulls = new BitSet();
+        byte commonType = TYPE_NULL;
+        int i = 0;
+        for (Object value : values) {
+            final byte type = typeOf(value);
+            if (type == TYPE_NULL) {
+                nulls.set(i);
+            } else if (commonType == TYPE_NULL) {
+                commonType = type;
+            } else if (type != commonType) {
+                commonType = TYPE_MIXED;
+            }
+            ++i;
+        }
+        w.writeBits(nulls);
+        w.writeByte(commonType);
+        for (Object value : values) {
+            if (value == null) {
+                continue;
+            }
+            if (commonType == TYPE_MIXED) {
+                final byte type = typeOf(value);
+                w.writeByte(type);
+                writeValue(w, type, value);
+            } else {
+                writeValue(w, commonType, value);
+            }
+        }
+    }
+
+    private static Object[] readValues(Reader r) {
+        final Object[] values = new Object[r.readVarInt()];
+        final BitSet nulls = r.readBits();
+        final byte commonType = r.readByte();
+        for (int i = 0; i < values.length; i++) {
+            if (nulls.get(i)) {
+                continue;
+            }
+            values[i] =
+                readValue(
+                    r,
+                    commonType == TYPE_MIXED ? r.readByte() : commonType);
+        }
+        return values;
+    }
+
+    @SuppressWarnings({"unchecked"})
+    private static SortedSet<Comparable> readSortedSet(Reader r) {
+        final Object[] values = readValues(r);
+        final Comparable[] comparables = new Comparable[values.length];
+        System.arraycopy(values, 0, comparables, 0, values.length);
+        return new ArraySortedSet(comparables);
+    }
+
+    private static byte typeOf(Object value) {
+        if (value == null) {
+            return TYPE_NULL;
+        } else if (value == RolapUtil.sqlNullValue) {
+            return TYPE_SQL_NULL;
+        }
+        final Class<?> clazz = value.getClass();
+        if (clazz == String.class) {
+            return TYPE_STRING;
+        } else if (clazz == Integer.class) {
+            return TYPE_INT;
+        } else if (clazz == Long.class) {
+            return TYPE_LONG;
+        } else if (clazz == Double.class) {
+            return TYPE_DOUBLE;
+        } else if (clazz == Boolean.class) {
+            return TYPE_BOOLEAN;
+        } else if (clazz == BigDecimal.class) {
+            return TYPE_BIG_DECIMAL;
+        } else if (clazz == BigInteger.class) {
+            return TYPE_BIG_INTEGER;
+        } else if (clazz == Float.class) {
+            return TYPE_FLOAT;
+        } else if (clazz == Short.class) {
+            return TYPE_SHORT;
+        } else if (clazz == Byte.class) {
+            return TYPE_BYTE;
+        } else if (clazz == java.sql.Date.class) {
+            return TYPE_SQL_DATE;
+        } else if (clazz == java.sql.Time.class) {
+            return TYPE_SQL_TIME;
+        } else if (clazz == java.sql.Timestamp.class) {
+            return TYPE_SQL_TIMESTAMP;
+        } else if (clazz == java.util.Date.class) {
+            return TYPE_DATE;
+        } else {
+            return TYPE_SERIALIZED;
+        }
+    }
+
+    private static void writeValue(Writer w, byte type, Object value) {
+        switch (type) {
+        case TYPE_NULL:
+        case TYPE_SQL_NULL:
+            break;
+        case TYPE_STRING:
+            w.writeString((String) value);
+            break;
+        case TYPE_INT:
+        case TYPE_SHORT:
+        case TYPE_BYTE:
+            w.writeZigZagInt(((Number) value).intValue());
+            break;
+        case TYPE_LONG:
+            w.writeZigZagLong((Long) value);
+            break;
+        case TYPE_DOUBLE:
+            w.writeDouble((Double) value);
+            break;
+        case TYPE_FLOAT:
+            w.writeDouble((Float) value);
+            break;
+        case TYPE_BOOLEAN:
+            w.writeByte((byte) (((Boolean) value) ? 1 : 0));
+            break;
+        case TYPE_BIG_DECIMAL:
+        case TYPE_BIG_INTEGER:
+            w.writeString(value.toString());
+            break;
+        case TYPE_SQL_DATE:
+        case TYPE_SQL_TIME:
+        case TYPE_DATE:
+            w.writeZigZagLong(((java.util.Date) value).getTime());
+            break;
+        case TYPE_SQL_TIMESTAMP:
+            w.writeZigZagLong(((java.sql.Timestamp) value).getTime());
+            w.writeVarInt(((java.sql.Timestamp) value).getNanos());
+            break;
+        default:
+            w.writeSerialized(value);
+        }
+    }
+
+    private static Object readValue(Reader r, byte type) {
+        switch (type) {
+        case TYPE_NULL:
+            return null;
+        case TYPE_SQL_NULL:
+            return RolapUtil.sqlNullValue;
+        case TYPE_STRING:
+            return r.readString();
+        case TYPE_INT:
+            return r.readZigZagInt();
+        case TYPE_SHORT:
+            return (short) r.readZigZagInt();
+        case TYPE_BYTE:
+            return (byte) r.readZigZagInt();
+        case TYPE_LONG:
+            return r.readZigZagLong();
+        case TYPE_DOUBLE:
+            return r.readDouble();
+        case TYPE_FLOAT:
+            return (float) r.readDouble();
+        case TYPE_BOOLEAN:
+            return r.readByte() != 0;
+        case TYPE_BIG_DECIMAL:
+            return new BigDecimal(r.readString());
+        case TYPE_BIG_INTEGER:
+            return new BigInteger(r.readString());
+        case TYPE_SQL_DATE:
+            return new java.sql.Date(r.readZigZagLong());
+        case TYPE_SQL_TIME:
+            return new java.sql.Time(r.readZigZagLong());
+        case TYPE_DATE:
+            return new java.util.Date(r.readZigZagLong());
+        case TYPE_SQL_TIMESTAMP:
+            final java.sql.Timestamp timestamp =
+                new java.sql.Timestamp(r.readZigZagLong());
+            timestamp.setNanos(r.readVarInt());
+            return timestamp;
+        case TYPE_SERIALIZED:
+            return r.readSerialized();
+        default:
+            throw Util.newError("Unknown value type " + type);
+        }
+    }
+
+    /**
+     * Growable buffer into which values are encoded.
+     */
+    private static class Writer {
+        private byte[] bytes = new byte[256];
+        private int pos = 0;
+
+        private void ensure(int n) {
+            if (pos + n > bytes.length) {
+                final byte[] newBytes =
+                    new byte[Math.max(bytes.length * 2, pos + n)];
+                System.arraycopy(bytes, 0, newBytes, 0, pos);
+                bytes = newBytes;
+            }
+        }
+
+        void writeByte(byte b) {
+            ensure(1);
+            bytes[pos++] = b;
+        }
+
+        void writeBytes(byte[] b, int off, int len) {
+            ensure(len);
+            System.arraycopy(b, off, bytes, pos, len);
+            pos += len;
+        }
+
+        void writeVarInt(int v) {
+            ensure(5);
+            while ((v & ~0x7F) != 0) {
+                bytes[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            bytes[pos++] = (byte) v;
+        }
+
+        void writeVarLong(long v) {
+            ensure(10);
+            while ((v & ~0x7FL) != 0) {
+                bytes[pos++] = (byte) ((v & 0x7F) | 0x80);
+                v >>>= 7;
+            }
+            bytes[pos++] = (byte) v;
+        }
+
+        void writeZigZagInt(int v) {
+            writeVarInt((v << 1) ^ (v >> 31));
+        }
+
+        void writeZigZagLong(long v) {
+            writeVarLong((v << 1) ^ (v >> 63));
+        }
+
+        void writeDouble(double d) {
+            ensure(8);
+            final long v = Double.doubleToRawLongBits(d);
+            for (int shift = 56; shift >= 0; shift -= 8) {
+                bytes[pos++] = (byte) (v >>> shift);
+            }
+        }
+
+        void writeString(String s) {
+            final byte[] b;
+            try {
+                b = s.getBytes("UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw Util.newInternal(e, "UTF-8 not supported");
+            }
+            writeVarInt(b.length);
+            writeBytes(b, 0, b.length);
+        }
+
+        /**
+         * Writes the positions of the set bits in a bit set, as deltas.
+         */
+        void writeBits(BitSet bits) {
+            writeVarInt(bits.cardinality());
+            int previous = -1;
+            for (int i = bits.nextSetBit(0); i >= 0;
+                 i = bits.nextSetBit(i + 1))
+            {
+                writeVarInt(i - previous);
+                previous = i;
+            }
+        }
+
+        void writeSerialized(Object o) {
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            try {
+                final ObjectOutputStream oos = new ObjectOutputStream(out);
+                oos.writeObject(o);
+                oos.close();
+            } catch (IOException e) {
+                throw Util.newError(e, "Error while serializing " + o);
+            }
+            final byte[] b = out.toByteArray();
+            writeVarInt(b.length);
+            writeBytes(b, 0, b.length);
+        }
+
+        /**
+         * Returns the encoded bytes, preceded by the magic number, version
+         * and flags, and optionally compressed.
+         */
+        byte[] finish(boolean compress) {
+            final Writer w = new Writer();
+            w.writeBytes(MAGIC, 0, MAGIC.length);
+            w.writeByte((byte) VERSION);
+            if (!compress) {
+                w.writeByte((byte) 0);
+                w.writeBytes(bytes, 0, pos);
+            } else {
+                w.writeByte((byte) FLAG_COMPRESSED);
+                w.writeVarInt(pos);
+                final Deflater deflater = new Deflater(Deflater.BEST_SPEED);
+                deflater.setInput(bytes, 0, pos);
+                deflater.finish();
+                final byte[] chunk = new byte[8192];
+                while (!deflater.finished()) {
+                    final int n = deflater.deflate(chunk);
+                    w.writeBytes(chunk, 0, n);
+                }
+                deflater.end();
+            }
+            final byte[] result = new byte[w.pos];
+            System.arraycopy(w.bytes, 0, result, 0, w.pos);
+            return result;
+        }
+    }
+
+    /**
+     * Reads encoded values from a buffer.
+     */
+    private static class Reader {
+        final ByteBuffer buffer;
+        private final ByteBuffer source;
+        private final int start;
+        private final int end;
+
+        /**
+         * Creates a Reader.
+         *
+         * @param buffer Buffer to read values from
+         * @param source Buffer containing the encoded object
+         * @param start Position in source of the start of the values
+         * @param end Position in source of the end of the encoded object,
+         *     or -1 if values are read directly from the source
+         */
+        private Reader(ByteBuffer buffer, ByteBuffer source, int start, int end)
+        {
+            this.buffer = buffer;
+            this.source = source;
+            this.start = start;
+            this.end = end;
+        }
+
+        /**
+         * Checks the magic number and version at the buffer's position, and
+         * creates a reader over the rest of the encoded object, inflating it
+         * if it is compressed.
+         */
+        static Reader open(ByteBuffer source) {
+            for (byte b : MAGIC) {
+                if (source.get() != b) {
+                    throw Util.newError("Not an encoded segment");
+                }
+            }
+            final int version = source.get();
+            if (version != VERSION) {
+                throw Util.newError(
+                    "Unsupported segment encoding version " + version);
+            }
+            final int flags = source.get();
+            if ((flags & FLAG_COMPRESSED) == 0) {
+                // Read in place. A slice always has big-endian byte order,
+                // whatever the order of the source.
+                return new Reader(
+                    source.slice(), source, source.position(), -1);
+            }
+            final int length = readVarInt(source);
+            final int start = source.position();
+            final byte[] input = new byte[source.remaining()];
+            source.get(input);
+            final byte[] output = new byte[length];
+            final Inflater inflater = new Inflater();
+            try {
+                inflater.setInput(input);
+                int n = 0;
+                while (n < length) {
+                    final int k = inflater.inflate(output, n, length - n);
+                    if (k == 0
+                        && (inflater.finished() || inflater.needsInput()))
+                    {
+                        throw Util.newError("Truncated segment");
+                    }
+                    n += k;
+                }
+                final int consumed = input.length - inflater.getRemaining();
+                return new Reader(
+                    ByteBuffer.wrap(output), source, start, start + consumed);
+            } catch (DataFormatException e) {
+                throw Util.newError(e, "Corrupt segment");
+            } finally {
+                inflater.end();
+            }
+        }
+
+        /**
+         * Positions the source buffer after the encoded object.
+         */
+        void close() {
+            source.position(end < 0 ? start + buffer.position() : end);
+        }
+
+        void skip(int n) {
+            buffer.position(buffer.position() + n);
+        }
+
+        byte readByte() {
+            return buffer.get();
+        }
+
+        int readVarInt() {
+            return readVarInt(buffer);
+        }
+
+        static int readVarInt(ByteBuffer buffer) {
+            int v = 0;
+            for (int shift = 0;; shift += 7) {
+                final byte b = buffer.get();
+                v |= (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return v;
+                }
+            }
+        }
+
+        long readVarLong() {
+            long v = 0;
+            for (int shift = 0;; shift += 7) {
+                final byte b = buffer.get();
+                v |= (long) (b & 0x7F) << shift;
+                if (b >= 0) {
+                    return v;
+                }
+            }
+        }
+
+        int readZigZagInt() {
+            final int v = readVarInt();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        long readZigZagLong() {
+            final long v = readVarLong();
+            return (v >>> 1) ^ -(v & 1);
+        }
+
+        double readDouble() {
+            return buffer.getDouble();
+        }
+
+        String readString() {
+            final int length = readVarInt();
+            final byte[] b = new byte[length];
+            buffer.get(b);
+            try {
+                return new String(b, "UTF-8");
+            } catch (UnsupportedEncodingException e) {
+                throw Util.newInternal(e, "UTF-8 not supported");
+            }
+        }
+
+        BitSet readBits() {
+            final int count = readVarInt();
+            final BitSet bits = new BitSet();
+            int previous = -1;
+            for (int i = 0; i < count; i++) {
+                previous += readVarInt();
+                bits.set(previous);
+            }
+            return bits;
+        }
+
+        Object readSerialized() {
+            final byte[] b = new byte[readVarInt()];
+            buffer.get(b);
+            try {
+                return new ObjectInputStream(new ByteArrayInputStream(b))
+                    .readObject();
+            } catch (IOException e) {
+                throw Util.newError(e, "Error while deserializing");
+            } catch (ClassNotFoundException e) {
+                throw Util.newError(e, "Error while deserializing");
+            }
+        }
+    }
+}
+
+// End SegmentCodec.java
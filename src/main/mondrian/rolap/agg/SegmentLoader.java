@@ -16,6 +16,7 @@ import mondrian.olap.Util;
 import mondrian.resource.MondrianResource;
 import mondrian.rolap.*;
 import mondrian.rolap.agg.SegmentCacheManager.AbortException;
+import mondrian.rolap.aggmatcher.AggRecommender;
 import mondrian.rolap.cache.SegmentCacheIndex;
 import mondrian.server.Locus;
 import mondrian.server.monitor.SqlStatementEvent;
@@ -187,6 +188,7 @@ public class SegmentLoader {
         final Map<Segment, SegmentWithData> segmentMap =
             new HashMap<Segment, SegmentWithData>();
         Throwable throwable = null;
+        final long startNanos = System.nanoTime();
         try {
             int arity = defaultColumns.length;
             SortedSet<Comparable>[] axisValueSets =
@@ -204,6 +206,17 @@ public class SegmentLoader {
 
             boolean[] axisContainsNull = new boolean[arity];
 
+            if (MondrianProperties.instance().SegmentLoadStreaming.get()) {
+                loadStreaming(
+                    stmt,
+                    axisContainsNull,
+                    axisValueSets,
+                    groupingSetsList,
+                    segmentMap,
+                    startNanos);
+                return segmentMap;
+            }
+
             RowList rows =
                 processData(
                     stmt,
@@ -231,7 +244,8 @@ public class SegmentLoader {
             setDataToSegments(
                 groupingSetsList,
                 groupingDataSetsMap,
-                segmentMap);
+                segmentMap,
+                startNanos);
 
             return segmentMap;
         } catch (Throwable e) {
@@ -244,6 +258,26 @@ public class SegmentLoader {
             if (stmt != null) {
                 stmt.close();
             }
+            if (throwable == null) {
+                final long nanos = System.nanoTime() - startNanos;
+                for (Segment segment : segmentMap.keySet()) {
+                    SegmentCacheMetrics.instance().recordLoad(
+                        segment.measure, nanos);
+                }
+                if (stmt != null
+                    && MondrianProperties.instance().RecordAggregateWorkload
+                        .get())
+                {
+                    // Share the time between the grouping sets that the
+                    // statement computed.
+                    for (GroupingSet groupingSet : groupingSets) {
+                        AggRecommender.instance().record(
+                            groupingSetsList.getStar(),
+                            groupingSet.getLevelBitKey(),
+                            nanos / groupingSets.size());
+                    }
+                }
+            }
             setFailOnStillLoadingSegments(
                 segmentMap, groupingSetsList, throwable);
         }
@@ -255,11 +289,13 @@ public class SegmentLoader {
      *
      * @param header Segment header
      * @param body Segment body
+     * @param costNanos Time taken to load the segment, in nanoseconds
      */
     private void cacheSegment(
         RolapStar star,
         SegmentHeader header,
-        SegmentBody body)
+        SegmentBody body,
+        long costNanos)
     {
         // Write the segment into external cache.
         //
@@ -271,6 +307,9 @@ public class SegmentLoader {
         // called cacheMgr.loadSucceeded. That call will allow the current
         // query to proceed.
         if (!MondrianProperties.instance().DisableCaching.get()) {
+            if (cacheMgr.localCache != null) {
+                cacheMgr.localCache.setLoadCost(header, costNanos);
+            }
             cacheMgr.compositeCache.put(header, body);
             cacheMgr.loadSucceeded(star, header, body);
         }
@@ -375,12 +414,35 @@ public class SegmentLoader {
         boolean[] axisContainsNull,
         GroupingSetsList groupingSetsList,
         RowList rows)
+    {
+        final int n =
+            setAxisData(axisValueSets, axisContainsNull, groupingSetsList);
+        // If the number of cells overflows an int, use a sparse array.
+        return n < 0
+            ? useSparse(true, Integer.MAX_VALUE, rows)
+            : useSparse(false, n, rows);
+    }
+
+    /**
+     * Creates the axes of each grouping set from the distinct values of each
+     * column, and returns the number of cells in the default grouping set.
+     *
+     * @param axisValueSets Distinct values of each column
+     * @param axisContainsNull Whether each column contains the null value
+     * @param groupingSetsList Grouping sets
+     * @return Number of cells, or -1 if the number of cells does not fit into
+     *   an int
+     */
+    private int setAxisData(
+        SortedSet<Comparable>[] axisValueSets,
+        boolean[] axisContainsNull,
+        GroupingSetsList groupingSetsList)
     {
         SegmentAxis[] axes = groupingSetsList.getDefaultAxes();
         RolapStar.Column[] allColumns = groupingSetsList.getDefaultColumns();
         // Figure out size of dense array, and allocate it, or use a sparse
         // array if appropriate.
-        boolean sparse = false;
+        boolean overflow = false;
         int n = 1;
         for (int i = 0; i < axes.length; i++) {
             SortedSet<Comparable> valueSet = axisValueSets[i];
@@ -400,10 +462,10 @@ public class SegmentLoader {
             if ((n < previous) || (n < size)) {
                 // Overflow has occurred.
                 n = Integer.MAX_VALUE;
-                sparse = true;
+                overflow = true;
             }
         }
-        return useSparse(sparse, n, rows);
+        return overflow ? -1 : n;
     }
 
     boolean useSparse(boolean sparse, int n, RowList rows) {
@@ -414,7 +476,8 @@ public class SegmentLoader {
     private void setDataToSegments(
         GroupingSetsList groupingSetsList,
         Map<BitKey, GroupingSetsList.Cohort> datasetsMap,
-        Map<Segment, SegmentWithData> segmentSlotMap)
+        Map<Segment, SegmentWithData> segmentSlotMap,
+        long startNanos)
     {
         List<GroupingSet> groupingSets = groupingSetsList.getGroupingSets();
         for (int i = 0; i < groupingSets.size(); i++) {
@@ -454,7 +517,9 @@ public class SegmentLoader {
 
                 // Send a message to the agg manager. It will place the segment
                 // in the index.
-                cacheSegment(segment.star, header, body);
+                cacheSegment(
+                    segment.star, header, body,
+                    System.nanoTime() - startNanos);
             }
         }
     }
@@ -576,6 +641,7 @@ public class SegmentLoader {
             new Util.Functor1<Void, Statement>() {
                 public Void apply(final Statement stmt) {
                     cacheMgr.execute(
+                        groupingSetsList.getStar(),
                         new SegmentCacheManager.Command<Void>() {
                             public Void call() throws Exception {
                                 boolean atLeastOneActive = false;
@@ -674,6 +740,7 @@ public class SegmentLoader {
             processedTypes = types;
         }
         final RowList processedRows = new RowList(processedTypes, 100);
+        final boolean[] numeric = numericMeasures(segments);
 
         while (rawRows.next()) {
             checkResultLimit(++stmt.rowCount);
@@ -763,74 +830,307 @@ public class SegmentLoader {
                 }
             }
 
-            // pre-compute which measures are numeric
-            final boolean[] numeric = new boolean[measureCount];
-            int k = 0;
-            for (Segment segment : segments) {
-                numeric[k++] = segment.measure.getDatatype().isNumeric();
+            setMeasureValues(
+                rawRows, types, numeric, columnIndex, processedRows);
+            columnIndex += measureCount;
+
+            if (groupingSetsList.useGroupingSets()) {
+                processedRows.setObject(
+                    columnIndex,
+                    getRollupBitKey(
+                        groupingSetsList.getRollupColumns().size(),
+                        rawRows, columnIndex));
             }
+        }
+        return processedRows;
+    }
+
+    /**
+     * Loads the segments of a grouping sets list in a single pass over the
+     * result set of an executed SQL statement.
+     *
+     * <p>Unlike {@link #processData}, does not buffer the axis values of each
+     * row. As each row is read, each axis value is looked up in a dictionary
+     * of that axis's distinct values, and the row is buffered as the
+     * dictionary ordinals and the measure values. There is one buffer per
+     * grouping set, so the grouping bit key is not buffered either.</p>
+     *
+     * <p>Rows of a GROUP BY query are distinct, so rows are buffered in the
+     * order they arrive and never need to be re-keyed as an axis grows. When
+     * the result set is exhausted, each dictionary is sorted to create the
+     * axes, the datasets are created, and each buffer is written into the
+     * datasets of its grouping set and released.</p>
+     *
+     * @param stmt Executed SQL statement
+     * @param axisContainsNull Workspace to record whether each axis contains
+     *   the null value
+     * @param axisValueSets Workspace to collect the distinct values of each
+     *   axis
+     * @param groupingSetsList Grouping sets
+     * @param segmentMap Map to receive the loaded segments
+     * @param startNanos Time at which the load started, per
+     *   {@link System#nanoTime()}
+     * @throws SQLException on error
+     */
+    private void loadStreaming(
+        SqlStatement stmt,
+        boolean[] axisContainsNull,
+        SortedSet<Comparable>[] axisValueSets,
+        GroupingSetsList groupingSetsList,
+        Map<Segment, SegmentWithData> segmentMap,
+        long startNanos) throws SQLException
+    {
+        final List<Segment> segments = groupingSetsList.getDefaultSegments();
+        final int measureCount = segments.size();
+        final ResultSet rawRows = loadData(stmt, groupingSetsList);
+        final List<SqlStatement.Type> types = stmt.guessTypes();
+        final int arity = axisValueSets.length;
+        final int groupingColumnStartIndex = arity + measureCount;
+        final boolean useGroupingSets = groupingSetsList.useGroupingSets();
+        final boolean[] numeric = numericMeasures(segments);
+
+        // Buffered rows have an INT column for the dictionary ordinal of each
+        // axis (or -1 if the axis is rolled up), then the measure columns.
+        final List<SqlStatement.Type> bufferTypes =
+            new ArrayList<SqlStatement.Type>(
+                Collections.nCopies(arity, SqlStatement.Type.INT));
+        bufferTypes.addAll(types.subList(arity, groupingColumnStartIndex));
+
+        final List<Map<Comparable, Integer>> dictionaries =
+            new ArrayList<Map<Comparable, Integer>>(arity);
+        for (int i = 0; i < arity; i++) {
+            dictionaries.add(new HashMap<Comparable, Integer>());
+        }
+        final Map<BitKey, RowList> buffers = new HashMap<BitKey, RowList>();
+        int rowCount = 0;
 
-            // get the measure
-            for (int i = 0; i < measureCount; i++, columnIndex++) {
-                final SqlStatement.Type type =
-                    types.get(columnIndex);
+        while (rawRows.next()) {
+            checkResultLimit(++stmt.rowCount);
+            ++rowCount;
+            final BitKey groupingBitKey =
+                useGroupingSets
+                    ? getRollupBitKey(
+                        groupingSetsList.getRollupColumns().size(),
+                        rawRows,
+                        groupingColumnStartIndex)
+                    : BitKey.EMPTY;
+            RowList buffer = buffers.get(groupingBitKey);
+            if (buffer == null) {
+                buffer = new RowList(bufferTypes, 100);
+                buffers.put(groupingBitKey, buffer);
+            }
+            buffer.createRow();
+
+            for (int axisIndex = 0; axisIndex < arity; axisIndex++) {
+                Comparable value;
+                final SqlStatement.Type type = types.get(axisIndex);
                 switch (type) {
                 case OBJECT:
                 case STRING:
-                    Object o = rawRows.getObject(columnIndex + 1);
-                    if (o == null) {
-                        o = Util.nullValue; // convert to placeholder
-                    } else if (numeric[i]) {
-                        if (o instanceof Double) {
-                            // nothing to do
-                        } else if (o instanceof Number) {
-                            o = ((Number) o).doubleValue();
-                        } else if (o instanceof byte[]) {
-                            // On MySQL 5.0 in German locale, values can come
-                            // out as byte arrays. Don't know why. Bug 1594119.
-                            o = Double.parseDouble(new String((byte[]) o));
-                        } else {
-                            o = Double.parseDouble(o.toString());
-                        }
-                    }
-                    processedRows.setObject(columnIndex, o);
+                    value = (Comparable) rawRows.getObject(axisIndex + 1);
                     break;
                 case INT:
-                    final int intValue = rawRows.getInt(columnIndex + 1);
-                    processedRows.setInt(columnIndex, intValue);
-                    if (intValue == 0 && rawRows.wasNull()) {
-                        processedRows.setNull(columnIndex, true);
-                    }
+                    final int intValue = rawRows.getInt(axisIndex + 1);
+                    value =
+                        intValue == 0 && rawRows.wasNull()
+                            ? null
+                            : Integer.valueOf(intValue);
                     break;
                 case LONG:
-                    final long longValue = rawRows.getLong(columnIndex + 1);
-                    processedRows.setLong(columnIndex, longValue);
-                    if (longValue == 0 && rawRows.wasNull()) {
-                        processedRows.setNull(columnIndex, true);
-                    }
+                    final long longValue = rawRows.getLong(axisIndex + 1);
+                    value =
+                        longValue == 0 && rawRows.wasNull()
+                            ? null
+                            : Long.valueOf(longValue);
                     break;
                 case DOUBLE:
+                    // As in processData, a null double is recorded as the
+                    // value 0 and also marks the axis as containing null.
                     final double doubleValue =
-                        rawRows.getDouble(columnIndex + 1);
-                    processedRows.setDouble(columnIndex, doubleValue);
+                        rawRows.getDouble(axisIndex + 1);
                     if (doubleValue == 0 && rawRows.wasNull()) {
-                        processedRows.setNull(columnIndex, true);
+                        if (!useGroupingSets
+                            || !isAggregateNull(
+                                rawRows, groupingColumnStartIndex,
+                                groupingSetsList, axisIndex))
+                        {
+                            axisContainsNull[axisIndex] = true;
+                        }
                     }
+                    value = doubleValue;
                     break;
                 default:
                     throw Util.unexpected(type);
                 }
+                if (value == null) {
+                    if (useGroupingSets
+                        && isAggregateNull(
+                            rawRows, groupingColumnStartIndex,
+                            groupingSetsList, axisIndex))
+                    {
+                        // Column is rolled up in this row's grouping set.
+                        buffer.setInt(axisIndex, -1);
+                        continue;
+                    }
+                    axisContainsNull[axisIndex] = true;
+                    value = RolapUtil.sqlNullValue;
+                }
+                final Map<Comparable, Integer> dictionary =
+                    dictionaries.get(axisIndex);
+                Integer ordinal = dictionary.get(value);
+                if (ordinal == null) {
+                    ordinal = dictionary.size();
+                    dictionary.put(value, ordinal);
+                }
+                buffer.setInt(axisIndex, ordinal);
             }
 
-            if (groupingSetsList.useGroupingSets()) {
-                processedRows.setObject(
-                    columnIndex,
-                    getRollupBitKey(
-                        groupingSetsList.getRollupColumns().size(),
-                        rawRows, columnIndex));
+            setMeasureValues(rawRows, types, numeric, arity, buffer);
+        }
+
+        // Sort the distinct values of each axis, and map each dictionary
+        // ordinal to the ordinal of the value on the axis.
+        for (int i = 0; i < arity; i++) {
+            for (Comparable value : dictionaries.get(i).keySet()) {
+                if (value != RolapUtil.sqlNullValue) {
+                    axisValueSets[i].add(value);
+                }
+            }
+        }
+        final int n =
+            setAxisData(axisValueSets, axisContainsNull, groupingSetsList);
+        final boolean sparse = n < 0 || useSparse(n, rowCount);
+        final SegmentAxis[] axes = groupingSetsList.getDefaultAxes();
+        final int[][] axisOrdinals = new int[arity][];
+        for (int i = 0; i < arity; i++) {
+            final Map<Comparable, Integer> dictionary = dictionaries.get(i);
+            axisOrdinals[i] = new int[dictionary.size()];
+            for (Map.Entry<Comparable, Integer> entry : dictionary.entrySet()) {
+                axisOrdinals[i][entry.getValue()] =
+                    axes[i].getOffset(entry.getKey());
+            }
+            dictionaries.set(i, null);
+        }
+
+        final Map<BitKey, GroupingSetsList.Cohort> groupingDataSetsMap =
+            createDataSetsForGroupingSets(
+                groupingSetsList,
+                sparse,
+                types.subList(arity, groupingColumnStartIndex));
+        for (Iterator<Map.Entry<BitKey, RowList>> iterator =
+                 buffers.entrySet().iterator();
+             iterator.hasNext();)
+        {
+            final Map.Entry<BitKey, RowList> entry = iterator.next();
+            final GroupingSetsList.Cohort cohort =
+                groupingDataSetsMap.get(entry.getKey());
+            final RowList buffer = entry.getValue();
+            final int[] pos = cohort.pos;
+            for (buffer.first(); buffer.next();) {
+                for (int j = 0, k = 0; j < arity; j++) {
+                    final int ordinal = buffer.getInt(j);
+                    if (ordinal >= 0) {
+                        pos[k++] = axisOrdinals[j][ordinal];
+                    }
+                }
+                for (int j = 0; j < measureCount; j++) {
+                    cohort.segmentDatasetList.get(j).populateFrom(
+                        pos, buffer, arity + j);
+                }
+            }
+            // Release the buffer as soon as its rows are in the datasets.
+            iterator.remove();
+        }
+
+        setDataToSegments(
+            groupingSetsList,
+            groupingDataSetsMap,
+            segmentMap,
+            startNanos);
+    }
+
+    /**
+     * Returns, for each measure of a list of segments, whether the measure is
+     * numeric.
+     */
+    private static boolean[] numericMeasures(List<Segment> segments) {
+        final boolean[] numeric = new boolean[segments.size()];
+        int k = 0;
+        for (Segment segment : segments) {
+            numeric[k++] = segment.measure.getDatatype().isNumeric();
+        }
+        return numeric;
+    }
+
+    /**
+     * Reads the measure columns of the current row of a result set, and
+     * writes them into the current row of a row list. Measure columns have
+     * the same index in both.
+     *
+     * @param rawRows Result set
+     * @param types Column types of the result set
+     * @param numeric For each measure, whether it is numeric
+     * @param columnIndex Index of the first measure column
+     * @param rows Row list
+     * @throws SQLException on error
+     */
+    private static void setMeasureValues(
+        ResultSet rawRows,
+        List<SqlStatement.Type> types,
+        boolean[] numeric,
+        int columnIndex,
+        RowList rows) throws SQLException
+    {
+        for (int i = 0; i < numeric.length; i++, columnIndex++) {
+            final SqlStatement.Type type =
+                types.get(columnIndex);
+            switch (type) {
+            case OBJECT:
+            case STRING:
+                Object o = rawRows.getObject(columnIndex + 1);
+                if (o == null) {
+                    o = Util.nullValue; // convert to placeholder
+                } else if (numeric[i]) {
+                    if (o instanceof Double) {
+                        // nothing to do
+                    } else if (o instanceof Number) {
+                        o = ((Number) o).doubleValue();
+                    } else if (o instanceof byte[]) {
+                        // On MySQL 5.0 in German locale, values can come
+                        // out as byte arrays. Don't know why. Bug 1594119.
+                        o = Double.parseDouble(new String((byte[]) o));
+                    } else {
+                        o = Double.parseDouble(o.toString());
+                    }
+                }
+                rows.setObject(columnIndex, o);
+                break;
+            case INT:
+                final int intValue = rawRows.getInt(columnIndex + 1);
+                rows.setInt(columnIndex, intValue);
+                if (intValue == 0 && rawRows.wasNull()) {
+                    rows.setNull(columnIndex, true);
+                }
+                break;
+            case LONG:
+                final long longValue = rawRows.getLong(columnIndex + 1);
+                rows.setLong(columnIndex, longValue);
+                if (longValue == 0 && rawRows.wasNull()) {
+                    rows.setNull(columnIndex, true);
+                }
+                break;
+            case DOUBLE:
+                final double doubleValue =
+                    rawRows.getDouble(columnIndex + 1);
+                rows.setDouble(columnIndex, doubleValue);
+                if (doubleValue == 0 && rawRows.wasNull()) {
+                    rows.setNull(columnIndex, true);
+                }
+                break;
+            default:
+                throw Util.unexpected(type);
             }
         }
-        return processedRows;
     }
 
     private void checkResultLimit(int currentCount) {
@@ -298,8 +298,9 @@ public class SegmentWithData extends Segment {
         // will be sparse.)
         SegmentDataset newData =
             createDataset(
-                axes,
-                data instanceof SparseSegmentDataset,
+                newAxes,
+                data instanceof SparseSegmentDataset
+                || data instanceof SparseNativeSegmentDataset,
                 data.getType(),
                 valueCount);
 
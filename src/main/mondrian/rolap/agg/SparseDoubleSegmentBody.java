@@ -0,0 +1,67 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.util.Pair;
+
+import java.util.*;
+
+/**
+ * Implementation of a segment body which stores the data of a sparse
+ * segment as an array of cell ordinals and a primitive array of double
+ * precision numbers.
+ *
+ * @author agent
+ */
+class SparseDoubleSegmentBody extends SparseNativeSegmentBody {
+    private static final long serialVersionUID = 8364071958716301572L;
+
+    final double[] values;
+
+    /**
+     * Creates a SparseDoubleSegmentBody.
+     *
+     * <p>Stores the given arrays; caller must not modify them afterwards.</p>
+     *
+     * @param ordinals Cell ordinals
+     * @param values Cell values
+     * @param nullValues Null indicators, by index in the ordinal array
+     * @param axes Axes
+     */
+    SparseDoubleSegmentBody(
+        long[] ordinals,
+        double[] values,
+        BitSet nullValues,
+        List<Pair<SortedSet<Comparable>, Boolean>> axes)
+    {
+        super(ordinals, nullValues, axes);
+        this.values = values;
+    }
+
+    @Override
+    public Object getValueArray() {
+        return values;
+    }
+
+    @Override
+    protected Object getObject(int i) {
+        if (nullValues.get(i)) {
+            return null;
+        }
+        return values[i];
+    }
+
+    @Override
+    public String toString() {
+        return "SparseDoubleSegmentBody(size=" + ordinals.length + ")";
+    }
+}
+
+// End SparseDoubleSegmentBody.java
@@ -0,0 +1,117 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.rolap.CellKey;
+import mondrian.rolap.SqlStatement;
+import mondrian.spi.SegmentBody;
+import mondrian.util.Pair;
+
+import java.util.*;
+
+/**
+ * Implementation of {@link SparseNativeSegmentDataset} that stores
+ * values of type {@code double}.
+ *
+ * @author agent
+ */
+class SparseDoubleSegmentDataset extends SparseNativeSegmentDataset {
+    private double[] values;
+
+    /**
+     * Creates an empty SparseDoubleSegmentDataset.
+     *
+     * @param axisMultipliers Axis multipliers
+     */
+    SparseDoubleSegmentDataset(long[] axisMultipliers) {
+        this(axisMultipliers, new long[0], new double[0], new BitSet());
+    }
+
+    /**
+     * Creates a populated SparseDoubleSegmentDataset.
+     *
+     * @param axisMultipliers Axis multipliers
+     * @param ordinals Cell ordinals; not copied
+     * @param values Cell values; not copied
+     * @param nullValues Null indicators; not copied
+     */
+    SparseDoubleSegmentDataset(
+        long[] axisMultipliers,
+        long[] ordinals,
+        double[] values,
+        BitSet nullValues)
+    {
+        super(axisMultipliers, ordinals, ordinals.length, nullValues);
+        this.values = values;
+    }
+
+    protected void grow(int capacity) {
+        final double[] newValues = new double[capacity];
+        System.arraycopy(values, 0, newValues, 0, size);
+        values = newValues;
+    }
+
+    protected Double getObject(int index) {
+        if (nullValues.get(index)) {
+            return null;
+        }
+        return values[index];
+    }
+
+    public int getInt(CellKey pos) {
+        throw new UnsupportedOperationException();
+    }
+
+    public double getDouble(CellKey pos) {
+        final int index = indexOf(getOrdinal(pos));
+        return index < 0 ? 0d : values[index];
+    }
+
+    public double getBytes() {
+        // 8 bytes each for ordinal and value, 8 bytes of hash table
+        return 24L * size;
+    }
+
+    public void populateFrom(int[] pos, SegmentDataset data, CellKey key) {
+        final int index = add(getOrdinal(pos));
+        final double value = values[index] = data.getDouble(key);
+        if (value != 0d || !data.isNull(key)) {
+            nullValues.clear(index);
+        }
+    }
+
+    public void populateFrom(
+        int[] pos, SegmentLoader.RowList rowList, int column)
+    {
+        final int index = add(getOrdinal(pos));
+        final double value = values[index] = rowList.getDouble(column);
+        if (value != 0d || !rowList.isNull(column)) {
+            nullValues.clear(index);
+        }
+    }
+
+    public SqlStatement.Type getType() {
+        return SqlStatement.Type.DOUBLE;
+    }
+
+    public SegmentBody createSegmentBody(
+        List<Pair<SortedSet<Comparable>, Boolean>> axes)
+    {
+        final double[] trimmed = new double[size];
+        System.arraycopy(values, 0, trimmed, 0, size);
+        return new SparseDoubleSegmentBody(
+            trimOrdinals(),
+            trimmed,
+            nullValues.get(0, size),
+            axes);
+    }
+}
+
+// End SparseDoubleSegmentDataset.java
@@ -0,0 +1,66 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.util.Pair;
+
+import java.util.*;
+
+/**
+ * Implementation of a segment body which stores the data of a sparse
+ * segment as an array of cell ordinals and a primitive array of integers.
+ *
+ * @author agent
+ */
+class SparseIntSegmentBody extends SparseNativeSegmentBody {
+    private static final long serialVersionUID = -1450861735394822640L;
+
+    final int[] values;
+
+    /**
+     * Creates a SparseIntSegmentBody.
+     *
+     * <p>Stores the given arrays; caller must not modify them afterwards.</p>
+     *
+     * @param ordinals Cell ordinals
+     * @param values Cell values
+     * @param nullValues Null indicators, by index in the ordinal array
+     * @param axes Axes
+     */
+    SparseIntSegmentBody(
+        long[] ordinals,
+        int[] values,
+        BitSet nullValues,
+        List<Pair<SortedSet<Comparable>, Boolean>> axes)
+    {
+        super(ordinals, nullValues, axes);
+        this.values = values;
+    }
+
+    @Override
+    public Object getValueArray() {
+        return values;
+    }
+
+    @Override
+    protected Object getObject(int i) {
+        if (nullValues.get(i)) {
+            return null;
+        }
+        return values[i];
+    }
+
+    @Override
+    public String toString() {
+        return "SparseIntSegmentBody(size=" + ordinals.length + ")";
+    }
+}
+
+// End SparseIntSegmentBody.java
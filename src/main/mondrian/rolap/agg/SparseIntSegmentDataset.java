@@ -0,0 +1,117 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.rolap.CellKey;
+import mondrian.rolap.SqlStatement;
+import mondrian.spi.SegmentBody;
+import mondrian.util.Pair;
+
+import java.util.*;
+
+/**
+ * Implementation of {@link SparseNativeSegmentDataset} that stores
+ * values of type {@code int}.
+ *
+ * @author agent
+ */
+class SparseIntSegmentDataset extends SparseNativeSegmentDataset {
+    private int[] values;
+
+    /**
+     * Creates an empty SparseIntSegmentDataset.
+     *
+     * @param axisMultipliers Axis multipliers
+     */
+    SparseIntSegmentDataset(long[] axisMultipliers) {
+        this(axisMultipliers, new long[0], new int[0], new BitSet());
+    }
+
+    /**
+     * Creates a populated SparseIntSegmentDataset.
+     *
+     * @param axisMultipliers Axis multipliers
+     * @param ordinals Cell ordinals; not copied
+     * @param values Cell values; not copied
+     * @param nullValues Null indicators; not copied
+     */
+    SparseIntSegmentDataset(
+        long[] axisMultipliers,
+        long[] ordinals,
+        int[] values,
+        BitSet nullValues)
+    {
+        super(axisMultipliers, ordinals, ordinals.length, nullValues);
+        this.values = values;
+    }
+
+    protected void grow(int capacity) {
+        final int[] newValues = new int[capacity];
+        System.arraycopy(values, 0, newValues, 0, size);
+        values = newValues;
+    }
+
+    protected Integer getObject(int index) {
+        if (nullValues.get(index)) {
+            return null;
+        }
+        return values[index];
+    }
+
+    public int getInt(CellKey pos) {
+        final int index = indexOf(getOrdinal(pos));
+        return index < 0 ? 0 : values[index];
+    }
+
+    public double getDouble(CellKey pos) {
+        throw new UnsupportedOperationException();
+    }
+
+    public double getBytes() {
+        // 8 bytes for ordinal, 4 for value, 8 bytes of hash table
+        return 20L * size;
+    }
+
+    public void populateFrom(int[] pos, SegmentDataset data, CellKey key) {
+        final int index = add(getOrdinal(pos));
+        final int value = values[index] = data.getInt(key);
+        if (value != 0 || !data.isNull(key)) {
+            nullValues.clear(index);
+        }
+    }
+
+    public void populateFrom(
+        int[] pos, SegmentLoader.RowList rowList, int column)
+    {
+        final int index = add(getOrdinal(pos));
+        final int value = values[index] = rowList.getInt(column);
+        if (value != 0 || !rowList.isNull(column)) {
+            nullValues.clear(index);
+        }
+    }
+
+    public SqlStatement.Type getType() {
+        return SqlStatement.Type.INT;
+    }
+
+    public SegmentBody createSegmentBody(
+        List<Pair<SortedSet<Comparable>, Boolean>> axes)
+    {
+        final int[] trimmed = new int[size];
+        System.arraycopy(values, 0, trimmed, 0, size);
+        return new SparseIntSegmentBody(
+            trimOrdinals(),
+            trimmed,
+            nullValues.get(0, size),
+            axes);
+    }
+}
+
+// End SparseIntSegmentDataset.java
@@ -0,0 +1,94 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.rolap.CellKey;
+import mondrian.util.Pair;
+
+import java.util.*;
+
+/**
+ * Abstract implementation of a segment body which stores the data of a
+ * sparse segment as parallel arrays of cell ordinals and native values.
+ *
+ * <p>Each cell ordinal encodes the coordinates of a cell in mixed radix over
+ * the sizes of the axes; see {@link SparseNativeSegmentDataset}. The value
+ * array is returned from {@link #getValueArray()}, and null indicators,
+ * indexed the same way, from {@link #getNullValueIndicators()}.</p>
+ *
+ * @author agent
+ */
+abstract class SparseNativeSegmentBody extends AbstractSegmentBody {
+    private static final long serialVersionUID = -3204612938577109316L;
+
+    final long[] ordinals;
+    final BitSet nullValues;
+
+    /**
+     * Creates a SparseNativeSegmentBody.
+     *
+     * <p>Stores the given arrays; caller must not modify them afterwards.</p>
+     *
+     * @param ordinals Cell ordinals
+     * @param nullValues Null indicators, by index in the ordinal array
+     * @param axes Axes
+     */
+    SparseNativeSegmentBody(
+        long[] ordinals,
+        BitSet nullValues,
+        List<Pair<SortedSet<Comparable>, Boolean>> axes)
+    {
+        super(axes);
+        this.ordinals = ordinals;
+        this.nullValues = nullValues;
+    }
+
+    /**
+     * Computes the axis multipliers with which the cell ordinals of this
+     * body were encoded.
+     *
+     * @return Axis multipliers
+     */
+    long[] getAxisMultipliers() {
+        final int[] axisSizes = new int[axisValueSets.length];
+        for (int i = 0; i < axisSizes.length; i++) {
+            axisSizes[i] =
+                axisValueSets[i].size() + (getNullAxisFlags()[i] ? 1 : 0);
+        }
+        return SparseNativeSegmentDataset.computeAxisMultipliers(axisSizes);
+    }
+
+    @Override
+    public BitSet getNullValueIndicators() {
+        return nullValues;
+    }
+
+    @Override
+    protected int getSize() {
+        return ordinals.length;
+    }
+
+    @Override
+    public Map<CellKey, Object> getValueMap() {
+        final long[] axisMultipliers = getAxisMultipliers();
+        final Map<CellKey, Object> map =
+            new HashMap<CellKey, Object>(
+                (int) Math.min(Integer.MAX_VALUE, ordinals.length * 3L / 2));
+        for (int i = 0; i < ordinals.length; i++) {
+            final int[] pos = new int[axisMultipliers.length];
+            SparseNativeSegmentDataset.decode(
+                axisMultipliers, ordinals[i], pos);
+            map.put(CellKey.Generator.newCellKey(pos), getObject(i));
+        }
+        return map;
+    }
+}
+
+// End SparseNativeSegmentBody.java
@@ -0,0 +1,275 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.rolap.CellKey;
+import mondrian.util.Pair;
+
+import java.util.*;
+
+/**
+ * Sparse segment dataset that stores values of a native type ({@code int}
+ * or {@code double}) without boxing.
+ *
+ * <p>The coordinates of each cell are encoded as a single {@code long}
+ * ordinal, in mixed radix over the sizes of the segment axes. Ordinals,
+ * values and null indicators are held in parallel arrays, in insertion
+ * order; an open-addressing hash table of {@code int} maps each ordinal to
+ * its index in those arrays.</p>
+ *
+ * <p>The storage requirements are as follows. Ordinal is 2 words, value is 1
+ * or 2 words, hash table slot is 1 word at a load factor of at most 0.5.
+ * Total space is about 6 words per value, compared with (4 + d) words plus a
+ * boxed value for {@link SparseSegmentDataset}.</p>
+ *
+ * <p>NOTE: This class is not synchronized.</p>
+ *
+ * @see SparseNativeSegmentBody
+ * @author agent
+ */
+abstract class SparseNativeSegmentDataset implements SegmentDataset {
+    private static final int INITIAL_CAPACITY = 16;
+
+    protected final long[] axisMultipliers;
+    protected long[] ordinals;
+    protected final BitSet nullValues;
+    protected int size;
+
+    /**
+     * Hash table. Each slot holds 1 + the index of an entry in
+     * {@link #ordinals}, or 0 if the slot is empty. Length is a power of 2.
+     */
+    private int[] table;
+
+    /**
+     * Creates a SparseNativeSegmentDataset.
+     *
+     * @param axisMultipliers Multiplier of each axis, per
+     *     {@link #computeAxisMultipliers(int[])}
+     * @param ordinals Ordinals of cells; not copied
+     * @param size Number of cells
+     * @param nullValues Null indicators, by index in ordinal array; not copied
+     */
+    SparseNativeSegmentDataset(
+        long[] axisMultipliers,
+        long[] ordinals,
+        int size,
+        BitSet nullValues)
+    {
+        this.axisMultipliers = axisMultipliers;
+        this.ordinals = ordinals;
+        this.size = size;
+        this.nullValues = nullValues;
+        int tableSize = INITIAL_CAPACITY * 2;
+        while (tableSize < 2L * size) {
+            tableSize <<= 1;
+        }
+        this.table = new int[tableSize];
+        for (int i = 0; i < size; i++) {
+            table[slot(ordinals[i])] = i + 1;
+        }
+    }
+
+    /**
+     * Computes the multiplier of each axis, so that the ordinal of a cell is
+     * the sum of its axis ordinals times the corresponding multipliers.
+     *
+     * @param axisSizes Number of values on each axis, including the null
+     *     value if present
+     * @return Multipliers, or null if the number of possible cells does not
+     *     fit into a {@code long}
+     */
+    static long[] computeAxisMultipliers(int[] axisSizes) {
+        final long[] axisMultipliers = new long[axisSizes.length];
+        long multiplier = 1;
+        for (int i = axisSizes.length - 1; i >= 0; --i) {
+            axisMultipliers[i] = multiplier;
+            final int axisSize = Math.max(axisSizes[i], 1);
+            if (multiplier > Long.MAX_VALUE / axisSize) {
+                return null;
+            }
+            multiplier *= axisSize;
+        }
+        return axisMultipliers;
+    }
+
+    /**
+     * Computes the multiplier of each axis of a segment.
+     *
+     * @param axes Segment axes
+     * @return Multipliers, or null if the number of possible cells does not
+     *     fit into a {@code long}
+     */
+    static long[] computeAxisMultipliers(SegmentAxis[] axes) {
+        final int[] axisSizes = new int[axes.length];
+        for (int i = 0; i < axes.length; i++) {
+            axisSizes[i] = axes[i].getKeys().length;
+        }
+        return computeAxisMultipliers(axisSizes);
+    }
+
+    /**
+     * Converts a cell ordinal back into its coordinates.
+     *
+     * @param axisMultipliers Axis multipliers
+     * @param ordinal Cell ordinal
+     * @param pos Array to receive coordinates
+     */
+    static void decode(long[] axisMultipliers, long ordinal, int[] pos) {
+        for (int i = 0; i < axisMultipliers.length; i++) {
+            pos[i] = (int) (ordinal / axisMultipliers[i]);
+            ordinal %= axisMultipliers[i];
+        }
+    }
+
+    protected final long getOrdinal(CellKey key) {
+        long ordinal = 0;
+        for (int i = 0; i < axisMultipliers.length; i++) {
+            ordinal += key.getAxis(i) * axisMultipliers[i];
+        }
+        return ordinal;
+    }
+
+    protected final long getOrdinal(int[] pos) {
+        long ordinal = 0;
+        for (int i = 0; i < axisMultipliers.length; i++) {
+            ordinal += pos[i] * axisMultipliers[i];
+        }
+        return ordinal;
+    }
+
+    /**
+     * Returns the slot in the hash table that holds, or would hold, a given
+     * ordinal.
+     */
+    private int slot(long ordinal) {
+        final int mask = table.length - 1;
+        long h = ordinal * 0x9E3779B97F4A7C15L;
+        int slot = (int) (h ^ (h >>> 32)) & mask;
+        for (;;) {
+            final int entry = table[slot];
+            if (entry == 0 || ordinals[entry - 1] == ordinal) {
+                return slot;
+            }
+            slot = (slot + 1) & mask;
+        }
+    }
+
+    /**
+     * Returns the index of the entry for a given cell ordinal, or -1 if there
+     * is no entry.
+     *
+     * @param ordinal Cell ordinal
+     * @return Index of entry, or -1
+     */
+    protected final int indexOf(long ordinal) {
+        return table[slot(ordinal)] - 1;
+    }
+
+    /**
+     * Returns the index of the entry for a given cell ordinal, creating an
+     * entry (whose value is null) if there is none.
+     *
+     * @param ordinal Cell ordinal
+     * @return Index of entry
+     */
+    protected final int add(long ordinal) {
+        int slot = slot(ordinal);
+        if (table[slot] != 0) {
+            return table[slot] - 1;
+        }
+        if (size == ordinals.length) {
+            final int capacity =
+                (int) Math.min(
+                    Integer.MAX_VALUE - 8,
+                    Math.max(INITIAL_CAPACITY, 2L * size));
+            final long[] newOrdinals = new long[capacity];
+            System.arraycopy(ordinals, 0, newOrdinals, 0, size);
+            ordinals = newOrdinals;
+            grow(capacity);
+        }
+        final int index = size++;
+        ordinals[index] = ordinal;
+        nullValues.set(index);
+        if (2L * size > table.length) {
+            table = new int[table.length * 2];
+            for (int i = 0; i < size; i++) {
+                table[slot(ordinals[i])] = i + 1;
+            }
+        } else {
+            table[slot] = index + 1;
+        }
+        return index;
+    }
+
+    /**
+     * Grows the value array to a given capacity.
+     *
+     * @param capacity New capacity
+     */
+    protected abstract void grow(int capacity);
+
+    /**
+     * Returns the value at a given index, or null.
+     *
+     * @param index Index of entry
+     * @return Value
+     */
+    protected abstract Object getObject(int index);
+
+    public Object getObject(CellKey pos) {
+        final int index = indexOf(getOrdinal(pos));
+        return index < 0 ? null : getObject(index);
+    }
+
+    public boolean isNull(CellKey pos) {
+        final int index = indexOf(getOrdinal(pos));
+        return index < 0 || nullValues.get(index);
+    }
+
+    public boolean exists(CellKey pos) {
+        return indexOf(getOrdinal(pos)) >= 0;
+    }
+
+    public Iterator<Map.Entry<CellKey, Object>> iterator() {
+        return new Iterator<Map.Entry<CellKey, Object>>() {
+            private int i = 0;
+
+            public boolean hasNext() {
+                return i < size;
+            }
+
+            public Map.Entry<CellKey, Object> next() {
+                final int[] pos = new int[axisMultipliers.length];
+                decode(axisMultipliers, ordinals[i], pos);
+                final Object value = getObject(i);
+                ++i;
+                return Pair.of(CellKey.Generator.newCellKey(pos), value);
+            }
+
+            public void remove() {
+                throw new UnsupportedOperationException();
+            }
+        };
+    }
+
+    /**
+     * Returns a copy of the first {@code size} ordinals.
+     *
+     * @return Array of ordinals
+     */
+    protected final long[] trimOrdinals() {
+        final long[] trimmed = new long[size];
+        System.arraycopy(ordinals, 0, trimmed, 0, size);
+        return trimmed;
+    }
+}
+
+// End SparseNativeSegmentDataset.java
@@ -157,7 +157,7 @@ public class ValueColumnPredicate
             buf.append(" is null");
         } else {
             buf.append(" = ");
-            sqlQuery.getDialect().quote(buf, key, column.getDatatype());
+            sqlQuery.quote(buf, key, column.getDatatype());
         }
     }
 
@@ -179,7 +179,7 @@ public class ValueColumnPredicate
     }
 
     public void toInListSql(SqlQuery sqlQuery, StringBuilder buf) {
-        sqlQuery.getDialect().quote(
+        sqlQuery.quote(
             buf, value, getConstrainedColumn().getDatatype());
     }
 }
@@ -19,6 +19,8 @@ import mondrian.rolap.sql.SqlQuery;
 
 import org.apache.log4j.Logger;
 
+import org.eigenbase.xom.XMLUtil;
+
 import java.io.PrintWriter;
 import java.io.StringWriter;
 import java.sql.SQLException;
@@ -873,7 +875,64 @@ public class AggGen {
         return sw.toString();
     }
 
+    /**
+     * Return the schema element that maps the collapsed dimension table onto
+     * the cube. It belongs in the fact table's Table element.
+     *
+     * @param levelNames Unique name of the level whose key is each of the
+     *   columns of the aggregation request; columns without a level are
+     *   omitted
+     * @return AggName element
+     */
+    public String createCollapsedAggName(
+        Map<RolapStar.Column, String> levelNames)
+    {
+        StringWriter sw = new StringWriter(512);
+        PrintWriter pw = new PrintWriter(sw);
+        String prefix = "    ";
+
+        pw.print("<AggName");
+        XMLUtil.printAtt(
+            pw, "name", makeCollapsedAggregateTableName(getFactTableName()));
+        pw.println(">");
+
+        // do fact_count
+        pw.print(prefix);
+        pw.print("<AggFactCount");
+        XMLUtil.printAtt(pw, "column", getFactCount());
+        pw.println("/>");
+
+        // do measures
+        for (JdbcSchema.Table.Column.Usage usage : measures) {
+            pw.print(prefix);
+            pw.print("<AggMeasure");
+            XMLUtil.printAtt(
+                pw, "name",
+                "[Measures].[" + usage.getSymbolicName() + "]");
+            XMLUtil.printAtt(pw, "column", getUsageName(usage));
+            pw.println("/>");
+        }
 
+        // do levels
+        for (RolapStar.Column column : columns) {
+            String levelName = levelNames.get(column);
+            String name = getRolapStarColumnName(column);
+            if (levelName == null || name == null) {
+                continue;
+            }
+            if (column.getUsagePrefix() != null) {
+                name = column.getUsagePrefix() + name;
+            }
+            pw.print(prefix);
+            pw.print("<AggLevel");
+            XMLUtil.printAtt(pw, "name", levelName);
+            XMLUtil.printAtt(pw, "column", name);
+            pw.println("/>");
+        }
+
+        pw.println("</AggName>");
+        return sw.toString();
+    }
 
     private String getUsageName(final JdbcSchema.Table.Column.Usage usage) {
         JdbcSchema.Table.Column c = usage.getColumn();
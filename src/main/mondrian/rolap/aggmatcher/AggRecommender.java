@@ -0,0 +1,435 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap.aggmatcher;
+
+import mondrian.olap.Level;
+import mondrian.olap.Util;
+import mondrian.rolap.*;
+
+import org.apache.log4j.Logger;
+
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Recommends aggregate tables for a cube, based on the cell requests that
+ * have been loaded from SQL.
+ *
+ * <p>When {@link mondrian.olap.MondrianProperties#RecordAggregateWorkload} is
+ * set, the segment loader calls {@link #record} for each grouping set it
+ * loads, with the columns it grouped by and the time the load took. The
+ * workload of a star is therefore a set of column combinations, each with
+ * a weight that is the total time spent loading it.</p>
+ *
+ * <p>{@link #recommend} chooses aggregate tables from the lattice of column
+ * combinations using the greedy algorithm of Harinarayan, Rajaraman and
+ * Ullman. The candidates are the recorded combinations and the unions of
+ * pairs of them. The number of rows of a candidate is estimated as the
+ * product of the cardinalities of its columns, but no more than the number
+ * of rows in the fact table, and the time to load a combination is assumed
+ * to be proportional to the number of rows of the table it is read from.
+ * At each step the candidate with the greatest saving per row is chosen,
+ * until no candidate fits in what remains of the budget.</p>
+ *
+ * <p>For each table chosen, {@link AggGen} generates the SQL to create and
+ * populate a collapsed aggregate table, and the AggName element that tells
+ * the cube to use it. Table names have the form
+ * <code>agg_r<i>n</i>_<i>fact table</i></code>, which the default rules
+ * also recognize.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ *
+ * @author agent
+ */
+public class AggRecommender {
+    private static final Logger LOGGER =
+        Logger.getLogger(AggRecommender.class);
+
+    private static final AggRecommender INSTANCE = new AggRecommender();
+
+    /** Maximum number of candidate aggregate tables considered. */
+    private static final int MAX_CANDIDATES = 1000;
+
+    /** Workload of each star. Guarded by this. */
+    private final Map<RolapStar, ConcurrentMap<BitKey, AtomicLong>>
+        workloads =
+        new WeakHashMap<RolapStar, ConcurrentMap<BitKey, AtomicLong>>();
+
+    private AggRecommender() {
+    }
+
+    /**
+     * Returns the singleton instance.
+     *
+     * @return Aggregate recommender
+     */
+    public static AggRecommender instance() {
+        return INSTANCE;
+    }
+
+    /**
+     * Records that a combination of columns has been loaded from SQL.
+     *
+     * @param star Star
+     * @param levelBitKey Columns grouped by
+     * @param nanos Time taken to load, in nanoseconds
+     */
+    public void record(RolapStar star, BitKey levelBitKey, long nanos) {
+        ConcurrentMap<BitKey, AtomicLong> workload;
+        synchronized (this) {
+            workload = workloads.get(star);
+            if (workload == null) {
+                workload = new ConcurrentHashMap<BitKey, AtomicLong>();
+                workloads.put(star, workload);
+            }
+        }
+        AtomicLong weight = workload.get(levelBitKey);
+        if (weight == null) {
+            final AtomicLong weight2 = new AtomicLong();
+            weight = workload.putIfAbsent(levelBitKey.copy(), weight2);
+            if (weight == null) {
+                weight = weight2;
+            }
+        }
+        // Give each load a weight of at least 1, so that loads too fast to
+        // measure still count.
+        weight.addAndGet(Math.max(nanos, 1));
+    }
+
+    /**
+     * Returns the recorded workload of a star.
+     *
+     * @param star Star
+     * @return Total load time of each combination of columns, in nanoseconds
+     */
+    public Map<BitKey, Long> getWorkload(RolapStar star) {
+        final ConcurrentMap<BitKey, AtomicLong> workload;
+        synchronized (this) {
+            workload = workloads.get(star);
+        }
+        final Map<BitKey, Long> map = new LinkedHashMap<BitKey, Long>();
+        if (workload != null) {
+            for (Map.Entry<BitKey, AtomicLong> entry : workload.entrySet()) {
+                map.put(entry.getKey(), entry.getValue().get());
+            }
+        }
+        return map;
+    }
+
+    /**
+     * Discards the recorded workload of all stars.
+     */
+    public synchronized void clear() {
+        workloads.clear();
+    }
+
+    /**
+     * Recommends aggregate tables for a cube.
+     *
+     * @param cube Cube; must not be virtual
+     * @param budget Maximum total number of rows of the recommended tables
+     * @return Recommended tables, most beneficial first
+     */
+    public List<Recommendation> recommend(RolapCube cube, long budget) {
+        if (cube.isVirtual()) {
+            throw Util.newError(
+                "Cannot recommend aggregate tables for virtual cube '"
+                + cube.getName() + "'");
+        }
+        final RolapStar star = cube.getStar();
+        final Map<BitKey, Long> workload = getWorkload(star);
+        final List<Recommendation> recommendations =
+            new ArrayList<Recommendation>();
+        if (workload.isEmpty()) {
+            return recommendations;
+        }
+        final RolapStar.Table factTable = star.getFactTable();
+        final long factRowCount =
+            star.getStatisticsCache().getRelationCardinality(
+                factTable.getRelation(), factTable.getAlias(), -1);
+        if (factRowCount <= 0) {
+            LOGGER.warn(
+                "Cannot recommend aggregate tables for cube '"
+                + cube.getName() + "': row count of fact table '"
+                + factTable.getAlias() + "' is not known");
+            return recommendations;
+        }
+        final long[] cardinalities = new long[star.getColumnCount()];
+        for (BitKey bitKey : workload.keySet()) {
+            for (int bit = bitKey.nextSetBit(0); bit >= 0;
+                bit = bitKey.nextSetBit(bit + 1))
+            {
+                if (cardinalities[bit] == 0) {
+                    cardinalities[bit] =
+                        star.getColumn(bit).getCardinality();
+                }
+            }
+        }
+
+        final Map<RolapStar.Column, String> levelNames =
+            new HashMap<RolapStar.Column, String>();
+        for (RolapHierarchy hierarchy : cube.getHierarchies()) {
+            for (Level level : hierarchy.getLevels()) {
+                if (level instanceof RolapCubeLevel) {
+                    final RolapStar.Column column =
+                        ((RolapCubeLevel) level).getStarKeyColumn();
+                    if (column != null) {
+                        levelNames.put(column, level.getUniqueName());
+                    }
+                }
+            }
+        }
+
+        for (View view
+            : select(workload, cardinalities, factRowCount, budget))
+        {
+            final String tableName =
+                "agg_r" + (recommendations.size() + 1) + "_"
+                + factTable.getAlias();
+            final List<RolapStar.Column> columns =
+                new ArrayList<RolapStar.Column>();
+            for (int bit = view.bitKey.nextSetBit(0); bit >= 0;
+                bit = view.bitKey.nextSetBit(bit + 1))
+            {
+                columns.add(star.getColumn(bit));
+            }
+            final AggGen aggGen =
+                new AggGen(
+                    cube.getName(),
+                    star,
+                    columns.toArray(new RolapStar.Column[columns.size()]))
+                {
+                    String makeCollapsedAggregateTableName(
+                        String factTableName)
+                    {
+                        return tableName;
+                    }
+                };
+            if (!aggGen.isReady()) {
+                LOGGER.warn(
+                    "Cannot generate aggregate table for columns " + columns);
+                continue;
+            }
+            recommendations.add(
+                new Recommendation(
+                    tableName,
+                    columns,
+                    view.rowCount,
+                    view.benefit,
+                    aggGen.createCollapsed(),
+                    aggGen.insertIntoCollapsed(),
+                    aggGen.createCollapsedAggName(levelNames)));
+        }
+        return recommendations;
+    }
+
+    /**
+     * Chooses aggregate tables for a workload.
+     *
+     * @param workload Weight of each combination of columns
+     * @param cardinalities Cardinality of each column, by bit position; zero
+     *   or negative if not known
+     * @param factRowCount Number of rows in the fact table
+     * @param budget Maximum total number of rows of the chosen tables
+     * @return Chosen tables, in the order they were chosen
+     */
+    static List<View> select(
+        Map<BitKey, Long> workload,
+        long[] cardinalities,
+        long factRowCount,
+        long budget)
+    {
+        final List<BitKey> queries = new ArrayList<BitKey>(workload.keySet());
+        final Set<BitKey> candidates = new LinkedHashSet<BitKey>(queries);
+        for (int i = 0; i < queries.size(); i++) {
+            for (int j = i + 1;
+                j < queries.size() && candidates.size() < MAX_CANDIDATES;
+                j++)
+            {
+                candidates.add(queries.get(i).or(queries.get(j)));
+            }
+        }
+
+        // Number of rows read to answer each query; initially, all queries
+        // read the fact table.
+        final Map<BitKey, Long> costs = new HashMap<BitKey, Long>();
+        for (BitKey query : queries) {
+            costs.put(query, factRowCount);
+        }
+
+        final List<View> views = new ArrayList<View>();
+        long remaining = budget;
+        for (;;) {
+            View best = null;
+            for (BitKey candidate : candidates) {
+                final long rowCount =
+                    estimateRowCount(candidate, cardinalities, factRowCount);
+                if (rowCount > remaining || rowCount >= factRowCount) {
+                    continue;
+                }
+                double benefit = 0;
+                for (BitKey query : queries) {
+                    final long cost = costs.get(query);
+                    if (cost > rowCount && candidate.isSuperSetOf(query)) {
+                        benefit +=
+                            (double) workload.get(query)
+                            * (cost - rowCount) / factRowCount;
+                    }
+                }
+                if (benefit > 0
+                    && (best == null
+                        || benefit / Math.max(rowCount, 1)
+                        > best.benefit / Math.max(best.rowCount, 1)))
+                {
+                    best = new View(candidate, rowCount, benefit);
+                }
+            }
+            if (best == null) {
+                return views;
+            }
+            views.add(best);
+            candidates.remove(best.bitKey);
+            remaining -= best.rowCount;
+            for (BitKey query : queries) {
+                if (best.bitKey.isSuperSetOf(query)
+                    && costs.get(query) > best.rowCount)
+                {
+                    costs.put(query, best.rowCount);
+                }
+            }
+        }
+    }
+
+    /**
+     * Estimates the number of rows of an aggregate table.
+     */
+    static long estimateRowCount(
+        BitKey bitKey,
+        long[] cardinalities,
+        long factRowCount)
+    {
+        long rowCount = 1;
+        for (int bit = bitKey.nextSetBit(0); bit >= 0;
+            bit = bitKey.nextSetBit(bit + 1))
+        {
+            final long cardinality =
+                bit < cardinalities.length ? cardinalities[bit] : 0;
+            if (cardinality <= 0 || cardinality >= factRowCount / rowCount) {
+                return factRowCount;
+            }
+            rowCount *= cardinality;
+        }
+        return Math.min(rowCount, factRowCount);
+    }
+
+    /**
+     * Aggregate table chosen by {@link #select}.
+     */
+    static class View {
+        final BitKey bitKey;
+        final long rowCount;
+
+        /** Estimated load time saved, in nanoseconds. */
+        final double benefit;
+
+        View(BitKey bitKey, long rowCount, double benefit) {
+            this.bitKey = bitKey;
+            this.rowCount = rowCount;
+            this.benefit = benefit;
+        }
+    }
+
+    /**
+     * Recommended aggregate table.
+     */
+    public static class Recommendation {
+        private final String tableName;
+        private final List<RolapStar.Column> columns;
+        private final long rowCount;
+        private final double benefit;
+        private final String createSql;
+        private final String insertSql;
+        private final String schemaXml;
+
+        Recommendation(
+            String tableName,
+            List<RolapStar.Column> columns,
+            long rowCount,
+            double benefit,
+            String createSql,
+            String insertSql,
+            String schemaXml)
+        {
+            this.tableName = tableName;
+            this.columns = columns;
+            this.rowCount = rowCount;
+            this.benefit = benefit;
+            this.createSql = createSql;
+            this.insertSql = insertSql;
+            this.schemaXml = schemaXml;
+        }
+
+        public String getTableName() {
+            return tableName;
+        }
+
+        /**
+         * Returns the columns that the table groups by.
+         */
+        public List<RolapStar.Column> getColumns() {
+            return columns;
+        }
+
+        /**
+         * Returns the estimated number of rows in the table.
+         */
+        public long getRowCount() {
+            return rowCount;
+        }
+
+        /**
+         * Returns the estimated load time, in nanoseconds, that the table
+         * would have saved over the recorded workload.
+         */
+        public double getBenefit() {
+            return benefit;
+        }
+
+        /**
+         * Returns the SQL code to create the table.
+         */
+        public String getCreateSql() {
+            return createSql;
+        }
+
+        /**
+         * Returns the SQL code to populate the table from the fact table.
+         */
+        public String getInsertSql() {
+            return insertSql;
+        }
+
+        /**
+         * Returns the AggName element to add to the fact table's Table
+         * element in the schema.
+         */
+        public String getSchemaXml() {
+            return schemaXml;
+        }
+
+        public String toString() {
+            return createSql + Util.nl + insertSql + Util.nl + schemaXml;
+        }
+    }
+}
+
+// End AggRecommender.java
@@ -0,0 +1,289 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap.cache;
+
+import mondrian.rolap.agg.SegmentBuilder;
+import mondrian.spi.SegmentBody;
+import mondrian.spi.SegmentHeader;
+import mondrian.util.Pair;
+
+import java.util.*;
+
+/**
+ * Store of segments on the Java heap within a byte budget, used by
+ * {@link MemorySegmentCache} when
+ * {@link mondrian.olap.MondrianProperties#SegmentCacheEvictionPolicy} is
+ * "cost".
+ *
+ * <p>Each segment has a value, which is the number of times it has been
+ * requested recently (estimated by a {@link FrequencySketch}) multiplied by
+ * the time it took to load from SQL. To make room for a new segment, the store
+ * looks at the least recently used few segments and chooses victims with
+ * the lowest value per byte, so that large, rarely used segments go first.
+ * The new segment is admitted only if its value is at least the total value
+ * of its victims; otherwise it is rejected, and the resident segments stay.
+ * This is the TinyLFU admission policy, weighted by size and cost.</p>
+ *
+ * <p>Requests for segments that are not in the store are counted too, so a
+ * segment that is rejected on its first load may be admitted when it comes
+ * back.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ *
+ * @author agent
+ */
+class CostAwareSegmentStore {
+    /**
+     * Load cost assumed for a segment whose load time is not known, for
+     * example because it was read from disk or from an external cache.
+     */
+    static final long DEFAULT_COST_NANOS = 1000000L;
+
+    /**
+     * Number of least-recently used segments considered as victims for each
+     * eviction.
+     */
+    private static final int SAMPLE_SIZE = 8;
+
+    private final long limit;
+
+    /** Segments in access order. Guarded by this. */
+    private final LinkedHashMap<SegmentHeader, Entry> map =
+        new LinkedHashMap<SegmentHeader, Entry>(16, 0.75f, true);
+    private final FrequencySketch sketch = new FrequencySketch();
+    private long byteCount;
+
+    /**
+     * Creates a CostAwareSegmentStore.
+     *
+     * @param limit Maximum total size of segments, in bytes
+     */
+    CostAwareSegmentStore(long limit) {
+        this.limit = limit;
+    }
+
+    /**
+     * Returns a segment body, and counts the request whether or not the
+     * segment is present.
+     *
+     * @param header Segment header
+     * @return Segment body, or null
+     */
+    synchronized SegmentBody get(SegmentHeader header) {
+        sketch.increment(header);
+        final Entry entry = map.get(header);
+        return entry == null ? null : entry.body;
+    }
+
+    synchronized boolean contains(SegmentHeader header) {
+        return map.containsKey(header);
+    }
+
+    synchronized List<SegmentHeader> getSegmentHeaders() {
+        return new ArrayList<SegmentHeader>(map.keySet());
+    }
+
+    /**
+     * Offers a segment to the store.
+     *
+     * @param header Segment header
+     * @param body Segment body
+     * @param costNanos Time taken to load the segment, in nanoseconds, or a
+     *   negative value if not known
+     * @param evicted List to which to add the segments evicted to make
+     *   room
+     * @return Whether the segment was admitted
+     */
+    synchronized boolean put(
+        SegmentHeader header,
+        SegmentBody body,
+        long costNanos,
+        List<Pair<SegmentHeader, SegmentBody>> evicted)
+    {
+        sketch.increment(header);
+        remove(header);
+        final long bytes = SegmentBuilder.estimateByteCount(body);
+        if (bytes > limit) {
+            return false;
+        }
+        final Entry entry =
+            new Entry(
+                body,
+                bytes,
+                costNanos < 0 ? DEFAULT_COST_NANOS : costNanos);
+
+        // Choose victims from the least recently used segments, cheapest
+        // per byte first, until there is room.
+        final List<Map.Entry<SegmentHeader, Entry>> victims =
+            new ArrayList<Map.Entry<SegmentHeader, Entry>>();
+        long freed = 0;
+        double victimValue = 0;
+        final Iterator<Map.Entry<SegmentHeader, Entry>> iterator =
+            map.entrySet().iterator();
+        while (byteCount - freed + bytes > limit) {
+            final List<Map.Entry<SegmentHeader, Entry>> sample =
+                new ArrayList<Map.Entry<SegmentHeader, Entry>>();
+            while (sample.size() < SAMPLE_SIZE && iterator.hasNext()) {
+                sample.add(iterator.next());
+            }
+            if (sample.isEmpty()) {
+                break;
+            }
+            Collections.sort(
+                sample,
+                new Comparator<Map.Entry<SegmentHeader, Entry>>() {
+                    public int compare(
+                        Map.Entry<SegmentHeader, Entry> e1,
+                        Map.Entry<SegmentHeader, Entry> e2)
+                    {
+                        return Double.compare(
+                            density(e1.getKey(), e1.getValue()),
+                            density(e2.getKey(), e2.getValue()));
+                    }
+                });
+            for (Map.Entry<SegmentHeader, Entry> victim : sample) {
+                if (byteCount - freed + bytes <= limit) {
+                    break;
+                }
+                victims.add(victim);
+                freed += victim.getValue().bytes;
+                victimValue += value(victim.getKey(), victim.getValue());
+            }
+        }
+
+        // Admit the new segment only if it is worth more than the segments
+        // it would displace.
+        if (!victims.isEmpty() && value(header, entry) < victimValue) {
+            return false;
+        }
+        for (Map.Entry<SegmentHeader, Entry> victim : victims) {
+            map.remove(victim.getKey());
+            byteCount -= victim.getValue().bytes;
+            evicted.add(Pair.of(victim.getKey(), victim.getValue().body));
+        }
+        map.put(header, entry);
+        byteCount += bytes;
+        return true;
+    }
+
+    /**
+     * Removes a segment.
+     *
+     * @param header Segment header
+     * @return Whether the segment was present
+     */
+    synchronized boolean remove(SegmentHeader header) {
+        final Entry entry = map.remove(header);
+        if (entry == null) {
+            return false;
+        }
+        byteCount -= entry.bytes;
+        return true;
+    }
+
+    /**
+     * Returns the estimated total size of the segments in this store.
+     *
+     * @return Number of bytes
+     */
+    synchronized long getByteCount() {
+        return byteCount;
+    }
+
+    synchronized void clear() {
+        map.clear();
+        byteCount = 0;
+    }
+
+    private double value(SegmentHeader header, Entry entry) {
+        return (double) sketch.frequency(header) * entry.costNanos;
+    }
+
+    private double density(SegmentHeader header, Entry entry) {
+        return value(header, entry) / Math.max(entry.bytes, 1);
+    }
+
+    /**
+     * Segment body and its size and cost.
+     */
+    private static class Entry {
+        final SegmentBody body;
+        final long bytes;
+        final long costNanos;
+
+        Entry(SegmentBody body, long bytes, long costNanos) {
+            this.body = body;
+            this.bytes = bytes;
+            this.costNanos = costNanos;
+        }
+    }
+
+    /**
+     * Count-min sketch that estimates how often each segment has been
+     * requested recently.
+     *
+     * <p>Counters saturate at 15. After a number of increments proportional
+     * to the size of the sketch, all counters are halved, so that the
+     * frequency of a segment that is no longer used decays.</p>
+     *
+     * <p>Not thread-safe.</p>
+     */
+    static class FrequencySketch {
+        private static final int DEPTH = 4;
+        private static final int WIDTH = 4096;
+        private static final int MAX_COUNT = 15;
+        private static final int RESET_SIZE = 10 * WIDTH;
+        private static final int[] SEEDS = {
+            0x9E3779B9, 0x85EBCA6B, 0xC2B2AE35, 0x27D4EB2F
+        };
+
+        private final byte[] counters = new byte[DEPTH * WIDTH];
+        private int size;
+
+        void increment(Object o) {
+            final int hash = o.hashCode();
+            boolean added = false;
+            for (int i = 0; i < DEPTH; i++) {
+                final int index = index(hash, i);
+                if (counters[index] < MAX_COUNT) {
+                    ++counters[index];
+                    added = true;
+                }
+            }
+            if (added && ++size >= RESET_SIZE) {
+                reset();
+            }
+        }
+
+        int frequency(Object o) {
+            final int hash = o.hashCode();
+            int frequency = MAX_COUNT;
+            for (int i = 0; i < DEPTH; i++) {
+                frequency = Math.min(frequency, counters[index(hash, i)]);
+            }
+            return frequency;
+        }
+
+        private void reset() {
+            for (int i = 0; i < counters.length; i++) {
+                counters[i] >>= 1;
+            }
+            size /= 2;
+        }
+
+        private static int index(int hash, int i) {
+            int h = hash * SEEDS[i];
+            h ^= h >>> 16;
+            return i * WIDTH + (h & (WIDTH - 1));
+        }
+    }
+}
+
+// End CostAwareSegmentStore.java
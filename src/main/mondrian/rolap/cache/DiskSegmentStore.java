@@ -0,0 +1,268 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap.cache;
+
+import mondrian.olap.Util;
+import mondrian.rolap.agg.SegmentCodec;
+import mondrian.spi.SegmentBody;
+import mondrian.spi.SegmentHeader;
+
+import org.apache.log4j.Logger;
+
+import java.io.*;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.*;
+
+/**
+ * Store of segments in files in a directory, used by
+ * {@link MemorySegmentCache} as a second tier behind memory.
+ *
+ * <p>Each segment is written to its own file, named after the unique ID of
+ * its header, containing the header and body encoded by
+ * {@link SegmentCodec}. Files are memory-mapped when they are read.</p>
+ *
+ * <p>Files are deleted in least-recently-used order to keep their total
+ * size within a limit. Files left by a previous instance are indexed when
+ * the store is created, oldest first; because the schema checksum is part
+ * of each header, a file is only ever read by a schema identical to the one
+ * that wrote it, and files of obsolete schemas are eventually deleted.</p>
+ *
+ * <p>This class is thread-safe.</p>
+ *
+ * @author agent
+ */
+class DiskSegmentStore {
+    private static final Logger LOGGER =
+        Logger.getLogger(DiskSegmentStore.class);
+
+    private static final String SUFFIX = ".seg";
+
+    private final File directory;
+    private final long limit;
+
+    /** Files in access order, with their sizes. Guarded by this. */
+    private final LinkedHashMap<SegmentHeader, Long> files =
+        new LinkedHashMap<SegmentHeader, Long>(16, 0.75f, true);
+    private long byteCount;
+
+    /**
+     * Creates a DiskSegmentStore and indexes the segments already in its
+     * directory.
+     *
+     * @param directory Directory; created if it does not exist
+     * @param limit Maximum total size of files, in bytes
+     */
+    DiskSegmentStore(File directory, long limit) {
+        this.directory = directory;
+        this.limit = limit;
+        if (!directory.isDirectory() && !directory.mkdirs()) {
+            throw Util.newError(
+                "Cannot create segment spill directory " + directory);
+        }
+        final File[] existingFiles = directory.listFiles();
+        Arrays.sort(
+            existingFiles,
+            new Comparator<File>() {
+                public int compare(File f1, File f2) {
+                    final long t1 = f1.lastModified();
+                    final long t2 = f2.lastModified();
+                    return t1 < t2 ? -1 : t1 == t2 ? 0 : 1;
+                }
+            });
+        for (File file : existingFiles) {
+            if (file.getName().endsWith(SUFFIX)) {
+                final SegmentHeader header = readHeader(file);
+                if (header == null) {
+                    delete(file);
+                } else {
+                    files.put(header, file.length());
+                    byteCount += file.length();
+                }
+            } else if (file.getName().endsWith(SUFFIX + ".tmp")) {
+                delete(file);
+            }
+        }
+        evict(null, new ArrayList<SegmentHeader>());
+    }
+
+    /**
+     * Writes a segment to disk, replacing any previous file for the same
+     * header.
+     *
+     * @param header Segment header
+     * @param body Segment body
+     * @param evicted List to which to add the headers of segments whose
+     *   files were deleted to stay within the size limit
+     * @return Whether the segment was written
+     */
+    boolean put(
+        SegmentHeader header,
+        SegmentBody body,
+        List<SegmentHeader> evicted)
+    {
+        final byte[] headerBytes = SegmentCodec.encodeHeader(header);
+        final byte[] bodyBytes = SegmentCodec.encodeBody(body, false);
+        final long length = headerBytes.length + bodyBytes.length;
+        if (length > limit) {
+            return false;
+        }
+        final File file = fileFor(header);
+        File tmpFile = null;
+        try {
+            tmpFile =
+                File.createTempFile("segment", SUFFIX + ".tmp", directory);
+            final OutputStream out = new FileOutputStream(tmpFile);
+            try {
+                out.write(headerBytes);
+                out.write(bodyBytes);
+            } finally {
+                out.close();
+            }
+        } catch (IOException e) {
+            LOGGER.warn("Error while writing segment to " + directory, e);
+            if (tmpFile != null) {
+                delete(tmpFile);
+            }
+            return false;
+        }
+        synchronized (this) {
+            remove(header);
+            if (!tmpFile.renameTo(file)) {
+                delete(tmpFile);
+                return false;
+            }
+            files.put(header, length);
+            byteCount += length;
+            evict(header, evicted);
+        }
+        return true;
+    }
+
+    /**
+     * Reads a segment from disk.
+     *
+     * @param header Segment header
+     * @return Segment body, or null if there is no file for this segment or
+     *     it cannot be read
+     */
+    SegmentBody get(SegmentHeader header) {
+        final File file;
+        synchronized (this) {
+            if (files.get(header) == null) {
+                return null;
+            }
+            file = fileFor(header);
+        }
+        try {
+            final MappedByteBuffer buffer = map(file);
+            SegmentCodec.decodeHeader(buffer);
+            return SegmentCodec.decodeBody(buffer);
+        } catch (IOException e) {
+            LOGGER.warn("Error while reading segment from " + file, e);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Error while reading segment from " + file, e);
+        }
+        remove(header);
+        return null;
+    }
+
+    synchronized boolean contains(SegmentHeader header) {
+        return files.containsKey(header);
+    }
+
+    synchronized List<SegmentHeader> getSegmentHeaders() {
+        return new ArrayList<SegmentHeader>(files.keySet());
+    }
+
+    /**
+     * Deletes the file for a segment.
+     *
+     * @param header Segment header
+     * @return Whether there was a file
+     */
+    synchronized boolean remove(SegmentHeader header) {
+        final Long length = files.remove(header);
+        if (length == null) {
+            return false;
+        }
+        byteCount -= length;
+        delete(fileFor(header));
+        return true;
+    }
+
+    /**
+     * Returns the total size of the files in this store.
+     *
+     * @return Number of bytes
+     */
+    synchronized long getByteCount() {
+        return byteCount;
+    }
+
+    /**
+     * Forgets all segments. Files are left on disk, to be used by the next
+     * instance of the store.
+     */
+    synchronized void clear() {
+        files.clear();
+        byteCount = 0;
+    }
+
+    // Must be called while holding the lock on this.
+    private void evict(SegmentHeader keep, List<SegmentHeader> evicted) {
+        final Iterator<Map.Entry<SegmentHeader, Long>> iterator =
+            files.entrySet().iterator();
+        while (byteCount > limit && iterator.hasNext()) {
+            final Map.Entry<SegmentHeader, Long> entry = iterator.next();
+            if (entry.getKey().equals(keep)) {
+                continue;
+            }
+            iterator.remove();
+            byteCount -= entry.getValue();
+            delete(fileFor(entry.getKey()));
+            evicted.add(entry.getKey());
+        }
+    }
+
+    private File fileFor(SegmentHeader header) {
+        return new File(directory, header.getUniqueID() + SUFFIX);
+    }
+
+    private static SegmentHeader readHeader(File file) {
+        try {
+            return SegmentCodec.decodeHeader(map(file));
+        } catch (IOException e) {
+            LOGGER.warn("Error while reading segment from " + file, e);
+        } catch (RuntimeException e) {
+            LOGGER.warn("Error while reading segment from " + file, e);
+        }
+        return null;
+    }
+
+    private static MappedByteBuffer map(File file) throws IOException {
+        final RandomAccessFile raf = new RandomAccessFile(file, "r");
+        try {
+            return raf.getChannel().map(
+                FileChannel.MapMode.READ_ONLY, 0, raf.length());
+        } finally {
+            // The mapping remains valid after the file is closed.
+            raf.close();
+        }
+    }
+
+    private static void delete(File file) {
+        if (!file.delete() && file.exists()) {
+            LOGGER.warn("Could not delete segment file " + file);
+        }
+    }
+}
+
+// End DiskSegmentStore.java
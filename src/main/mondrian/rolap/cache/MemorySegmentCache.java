@@ -9,12 +9,17 @@
 
 package mondrian.rolap.cache;
 
+import mondrian.olap.MondrianProperties;
+import mondrian.olap.Util;
+import mondrian.rolap.agg.SegmentBuilder;
 import mondrian.spi.*;
+import mondrian.util.Pair;
 
+import java.io.File;
 import java.lang.ref.SoftReference;
-import java.util.concurrent.ConcurrentHashMap;
 import java.util.*;
-import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Implementation of {@link mondrian.spi.SegmentCache} that stores segments
@@ -23,43 +28,258 @@ import java.util.concurrent.CopyOnWriteArrayList;
  * <p>Segments are held via soft references, so the garbage collector can remove
  * them if it sees fit.</p>
  *
+ * <p>If {@link MondrianProperties#SegmentCacheEvictionPolicy} is "cost",
+ * segments are instead held strongly within a budget of
+ * {@link MondrianProperties#SegmentCacheLimit}, and the cache decides which
+ * segments to keep based on how often they are used, how large they are,
+ * and how long they took to load; see {@link CostAwareSegmentStore}.</p>
+ *
+ * <p>If {@link MondrianProperties#EnableOffHeapSegmentCache} is set, dense
+ * numeric segments are converted to bodies whose cell values are stored
+ * outside the Java heap. The garbage collector cannot see the memory they
+ * occupy, so they are held strongly, in least-recently-used order, and
+ * evicted when their total size exceeds
+ * {@link MondrianProperties#OffHeapSegmentCacheLimit}.</p>
+ *
+ * <p>If {@link MondrianProperties#SegmentCacheSpillDirectory} is set, a
+ * segment that is evicted from off-heap memory, or evicted or rejected by
+ * the cost-aware store, is written to a file in that directory, and is read
+ * back from the file the next time it is requested. Files are written by a
+ * background thread, and survive a restart of the server. Segments held by
+ * soft references are not written, because the garbage collector gives no
+ * notice before it reclaims them.</p>
+ *
  * @author Julian Hyde
  */
 public class MemorySegmentCache implements SegmentCache {
+    /**
+     * Number of bytes of native memory held by off-heap segments, over all
+     * instances of this cache. Reported by the monitor.
+     */
+    private static final AtomicLong OFF_HEAP_BYTES = new AtomicLong();
+
+    /**
+     * Number of off-heap segments that have been evicted to stay within the
+     * memory budget, over all instances of this cache.
+     */
+    private static final AtomicLong OFF_HEAP_EVICTION_COUNT = new AtomicLong();
+
+    /**
+     * Executor that writes evicted segments to disk, in the order that they
+     * were evicted.
+     */
+    private static final ExecutorService SPILL_EXECUTOR =
+        Util.getScheduledExecutorService(
+            1, "mondrian.rolap.cache.MemorySegmentCache$spillExecutor");
+
     // Use a thread-safe map because the SegmentCache
     // interface requires thread safety.
     private final Map<SegmentHeader, SoftReference<SegmentBody>> map =
         new ConcurrentHashMap<SegmentHeader, SoftReference<SegmentBody>>();
+
+    // Off-heap segments, in access order. Guarded by itself.
+    private final LinkedHashMap<SegmentHeader, SegmentBody> offHeapMap =
+        new LinkedHashMap<SegmentHeader, SegmentBody>(16, 0.75f, true);
+    private long offHeapBytes;
+
+    private final boolean offHeap;
+    private final long offHeapLimit;
+
+    // Second tier, or null if segments are not spilled to disk.
+    private final DiskSegmentStore diskStore;
+
+    // Segments that have been evicted from memory and are waiting to be
+    // written to disk.
+    private final ConcurrentMap<SegmentHeader, SegmentBody> spilling =
+        new ConcurrentHashMap<SegmentHeader, SegmentBody>();
+
+    // Held while writing a segment to disk, and while removing one, so that
+    // a removed segment is never written afterwards.
+    private final Object spillLock = new Object();
+
+    // Strongly held on-heap segments, or null if segments are held via soft
+    // references.
+    private final CostAwareSegmentStore costStore;
+
+    // Load times of segments that are about to be put, in nanoseconds.
+    private final Map<SegmentHeader, Long> loadCosts =
+        new ConcurrentHashMap<SegmentHeader, Long>();
+
     private final List<SegmentCacheListener> listeners =
         new CopyOnWriteArrayList<SegmentCacheListener>();
 
+    /**
+     * Creates a MemorySegmentCache.
+     */
+    public MemorySegmentCache() {
+        this.offHeap =
+            MondrianProperties.instance().EnableOffHeapSegmentCache.get();
+        this.offHeapLimit =
+            MondrianProperties.instance().OffHeapSegmentCacheLimit.get()
+            * 1024L * 1024L;
+        final String spillDirectory =
+            MondrianProperties.instance().SegmentCacheSpillDirectory.get();
+        this.diskStore =
+            spillDirectory == null || spillDirectory.equals("")
+                ? null
+                : new DiskSegmentStore(
+                    new File(spillDirectory),
+                    MondrianProperties.instance().SegmentCacheSpillLimit.get()
+                    * 1024L * 1024L);
+        final String evictionPolicy =
+            MondrianProperties.instance().SegmentCacheEvictionPolicy.get();
+        if (evictionPolicy.equalsIgnoreCase("cost")) {
+            this.costStore =
+                new CostAwareSegmentStore(
+                    MondrianProperties.instance().SegmentCacheLimit.get()
+                    * 1024L * 1024L);
+        } else if (evictionPolicy.equalsIgnoreCase("soft")) {
+            this.costStore = null;
+        } else {
+            throw Util.newError(
+                "Unknown segment cache eviction policy '" + evictionPolicy
+                + "'; expected 'soft' or 'cost'");
+        }
+    }
+
+    /**
+     * Returns the number of bytes of native memory currently held by
+     * off-heap segments in all local segment caches.
+     *
+     * @return Number of bytes
+     */
+    public static long getOffHeapByteCount() {
+        return OFF_HEAP_BYTES.get();
+    }
+
+    /**
+     * Returns the number of off-heap segments that have been evicted from
+     * local segment caches to stay within
+     * {@link MondrianProperties#OffHeapSegmentCacheLimit}.
+     *
+     * @return Number of evicted segments
+     */
+    public static long getOffHeapEvictionCount() {
+        return OFF_HEAP_EVICTION_COUNT.get();
+    }
+
+    /**
+     * Records how long a segment took to load from SQL, just before it is
+     * put into the cache. The cost-aware eviction policy keeps segments that
+     * are expensive to reload in preference to cheap ones.
+     *
+     * @param header Segment header
+     * @param nanos Load time, in nanoseconds
+     */
+    public void setLoadCost(SegmentHeader header, long nanos) {
+        if (costStore != null) {
+            loadCosts.put(header, nanos);
+        }
+    }
+
     public SegmentBody get(SegmentHeader header) {
+        if (offHeap) {
+            synchronized (offHeapMap) {
+                final SegmentBody body = offHeapMap.get(header);
+                if (body != null) {
+                    return body;
+                }
+            }
+        }
+        if (costStore != null) {
+            final SegmentBody body = costStore.get(header);
+            if (body != null) {
+                return body;
+            }
+        }
         final SoftReference<SegmentBody> ref = map.get(header);
-        if (ref == null) {
+        if (ref != null) {
+            final SegmentBody body = ref.get();
+            if (body != null) {
+                return body;
+            }
+            map.remove(header);
+        }
+        return getFromDisk(header);
+    }
+
+    /**
+     * Reads a segment from the disk tier, or from the queue of segments
+     * waiting to be written there, and if found, puts it back into memory.
+     *
+     * @param header Segment header
+     * @return Segment body, or null if not found
+     */
+    private SegmentBody getFromDisk(SegmentHeader header) {
+        if (diskStore == null) {
             return null;
         }
-        final SegmentBody body = ref.get();
+        SegmentBody body = spilling.remove(header);
         if (body == null) {
-            map.remove(header);
+            body = diskStore.get(header);
+        }
+        if (body != null
+            && (!offHeap || !putOffHeap(header, body)))
+        {
+            putOnHeap(header, body, -1);
         }
         return body;
     }
 
     public boolean contains(SegmentHeader header) {
-        final SoftReference<SegmentBody> ref = map.get(header);
-        if (ref == null) {
-            return false;
+        if (offHeap) {
+            synchronized (offHeapMap) {
+                if (offHeapMap.containsKey(header)) {
+                    return true;
+                }
+            }
         }
-        final SegmentBody body = ref.get();
-        if (body == null) {
+        if (costStore != null && costStore.contains(header)) {
+            return true;
+        }
+        final SoftReference<SegmentBody> ref = map.get(header);
+        if (ref != null) {
+            if (ref.get() != null) {
+                return true;
+            }
             map.remove(header);
-            return false;
         }
-        return true;
+        return diskStore != null
+            && (spilling.containsKey(header) || diskStore.contains(header));
     }
 
     public List<SegmentHeader> getSegmentHeaders() {
-        return new ArrayList<SegmentHeader>(map.keySet());
+        final Set<SegmentHeader> set =
+            new LinkedHashSet<SegmentHeader>(map.keySet());
+        if (offHeap) {
+            synchronized (offHeapMap) {
+                set.addAll(offHeapMap.keySet());
+            }
+        }
+        if (costStore != null) {
+            set.addAll(costStore.getSegmentHeaders());
+        }
+        if (diskStore != null) {
+            set.addAll(spilling.keySet());
+            set.addAll(diskStore.getSegmentHeaders());
+        }
+        return new ArrayList<SegmentHeader>(set);
+    }
+
+    /**
+     * Returns the headers of the segments that are held on disk. Empty if
+     * {@link MondrianProperties#SegmentCacheSpillDirectory} is not set.
+     *
+     * <p>When the cache is created, these include segments written by a
+     * previous run of the server.</p>
+     *
+     * @return Headers of segments on disk
+     */
+    public List<SegmentHeader> getSpilledSegmentHeaders() {
+        if (diskStore == null) {
+            return Collections.emptyList();
+        }
+        return diskStore.getSegmentHeaders();
     }
 
     public boolean put(final SegmentHeader header, SegmentBody body) {
@@ -67,7 +287,11 @@ public class MemorySegmentCache implements SegmentCache {
         // and throwing an exception?
         assert header != null;
         assert body != null;
-        map.put(header, new SoftReference<SegmentBody>(body));
+        spilling.remove(header);
+        final Long cost = loadCosts.remove(header);
+        if (!offHeap || !putOffHeap(header, body)) {
+            putOnHeap(header, body, cost == null ? -1 : cost);
+        }
         fireSegmentCacheEvent(
             new SegmentCache.SegmentCacheListener.SegmentCacheEvent() {
                 public boolean isLocal() {
@@ -84,30 +308,232 @@ public class MemorySegmentCache implements SegmentCache {
         return true; // success
     }
 
-    public boolean remove(final SegmentHeader header) {
-        final boolean result =
-            map.remove(header) != null;
-        if (result) {
-            fireSegmentCacheEvent(
-                new SegmentCache.SegmentCacheListener.SegmentCacheEvent() {
-                    public boolean isLocal() {
-                        return true;
-                    }
-                    public SegmentHeader getSource() {
-                        return header;
-                    }
-                    public EventType getEventType() {
-                        return
-                            SegmentCacheListener.SegmentCacheEvent
-                                .EventType.ENTRY_DELETED;
+    /**
+     * Stores a segment off-heap, evicting least recently used off-heap
+     * segments if necessary to stay within the memory budget.
+     *
+     * @param header Segment header
+     * @param body Segment body
+     * @return Whether the segment was stored off-heap; false if the body
+     *   cannot be stored off-heap, or is larger than the budget
+     */
+    private boolean putOffHeap(SegmentHeader header, SegmentBody body) {
+        final SegmentBody offHeapBody = SegmentBuilder.toOffHeap(body);
+        final long bytes = SegmentBuilder.getOffHeapByteCount(offHeapBody);
+        if (offHeapBody == body || bytes > offHeapLimit) {
+            return false;
+        }
+        final List<Pair<SegmentHeader, SegmentBody>> evicted =
+            new ArrayList<Pair<SegmentHeader, SegmentBody>>();
+        synchronized (offHeapMap) {
+            removeOffHeap(header);
+            offHeapMap.put(header, offHeapBody);
+            addOffHeapBytes(bytes);
+            final Iterator<Map.Entry<SegmentHeader, SegmentBody>> iterator =
+                offHeapMap.entrySet().iterator();
+            while (offHeapBytes > offHeapLimit && iterator.hasNext()) {
+                final Map.Entry<SegmentHeader, SegmentBody> entry =
+                    iterator.next();
+                if (entry.getKey().equals(header)) {
+                    continue;
+                }
+                iterator.remove();
+                addOffHeapBytes(
+                    -SegmentBuilder.getOffHeapByteCount(entry.getValue()));
+                evicted.add(Pair.of(entry.getKey(), entry.getValue()));
+            }
+        }
+        map.remove(header);
+        if (costStore != null) {
+            costStore.remove(header);
+        }
+        OFF_HEAP_EVICTION_COUNT.addAndGet(evicted.size());
+        spill(evicted);
+        return true;
+    }
+
+    /**
+     * Stores a segment on the Java heap, either via a soft reference or, if
+     * the cost-aware eviction policy is enabled, in the cost-aware store.
+     *
+     * @param header Segment header
+     * @param body Segment body
+     * @param costNanos Time taken to load the segment, or -1 if not known
+     */
+    private void putOnHeap(
+        SegmentHeader header,
+        SegmentBody body,
+        long costNanos)
+    {
+        if (costStore == null) {
+            map.put(header, new SoftReference<SegmentBody>(body));
+            return;
+        }
+        // If the store rejects the segment, it is not held in memory, but
+        // may be spilled to disk. If not, the index still references it, so
+        // the next request will find that it is missing and reload it; by
+        // then, its frequency will have grown.
+        final List<Pair<SegmentHeader, SegmentBody>> evicted =
+            new ArrayList<Pair<SegmentHeader, SegmentBody>>();
+        if (!costStore.put(header, body, costNanos, evicted)
+            && diskStore != null)
+        {
+            evicted.add(Pair.of(header, body));
+        }
+        spill(evicted);
+    }
+
+    /**
+     * Handles segments that have been evicted from memory. If there is a
+     * disk tier, queues them to be written to disk by a background thread;
+     * otherwise, tells listeners that they have left the cache.
+     *
+     * @param evicted Evicted segments
+     */
+    private void spill(List<Pair<SegmentHeader, SegmentBody>> evicted) {
+        for (final Pair<SegmentHeader, SegmentBody> pair : evicted) {
+            if (diskStore == null) {
+                fireDeletedEvent(pair.left);
+                continue;
+            }
+            spilling.put(pair.left, pair.right);
+            SPILL_EXECUTOR.submit(
+                new Runnable() {
+                    public void run() {
+                        writeToDisk(pair.left, pair.right);
                     }
                 });
         }
+    }
+
+    /**
+     * Writes an evicted segment to disk, unless it has since been removed,
+     * replaced, or read back into memory. Called by the spill thread.
+     *
+     * @param header Segment header
+     * @param body Segment body
+     */
+    private void writeToDisk(SegmentHeader header, SegmentBody body) {
+        final List<SegmentHeader> diskEvicted = new ArrayList<SegmentHeader>();
+        final boolean written;
+        synchronized (spillLock) {
+            if (spilling.get(header) != body) {
+                return;
+            }
+            // Segments are immutable, so an existing file is up to date.
+            written =
+                diskStore.contains(header)
+                || diskStore.put(header, body, diskEvicted);
+            if (!spilling.remove(header, body)) {
+                // Read back into memory while it was being written.
+                return;
+            }
+        }
+        if (!written) {
+            fireDeletedEvent(header);
+        }
+        for (SegmentHeader evictedHeader : diskEvicted) {
+            if (!isInMemory(evictedHeader)) {
+                fireDeletedEvent(evictedHeader);
+            }
+        }
+    }
+
+    /**
+     * Returns whether a segment is held in memory, or is waiting to be
+     * written to disk.
+     */
+    private boolean isInMemory(SegmentHeader header) {
+        if (spilling.containsKey(header)) {
+            return true;
+        }
+        if (offHeap) {
+            synchronized (offHeapMap) {
+                if (offHeapMap.containsKey(header)) {
+                    return true;
+                }
+            }
+        }
+        if (costStore != null && costStore.contains(header)) {
+            return true;
+        }
+        final SoftReference<SegmentBody> ref = map.get(header);
+        return ref != null && ref.get() != null;
+    }
+
+    // Must be called while holding the lock on offHeapMap.
+    private boolean removeOffHeap(SegmentHeader header) {
+        final SegmentBody body = offHeapMap.remove(header);
+        if (body == null) {
+            return false;
+        }
+        addOffHeapBytes(-SegmentBuilder.getOffHeapByteCount(body));
+        return true;
+    }
+
+    // Must be called while holding the lock on offHeapMap.
+    private void addOffHeapBytes(long bytes) {
+        offHeapBytes += bytes;
+        OFF_HEAP_BYTES.addAndGet(bytes);
+    }
+
+    public boolean remove(final SegmentHeader header) {
+        boolean result = map.remove(header) != null;
+        if (costStore != null) {
+            result |= costStore.remove(header);
+        }
+        if (offHeap) {
+            synchronized (offHeapMap) {
+                result |= removeOffHeap(header);
+            }
+        }
+        if (diskStore != null) {
+            synchronized (spillLock) {
+                result |= spilling.remove(header) != null;
+                result |= diskStore.remove(header);
+            }
+        }
+        if (result) {
+            fireDeletedEvent(header);
+        }
         return result;
     }
 
+    private void fireDeletedEvent(final SegmentHeader header) {
+        fireSegmentCacheEvent(
+            new SegmentCache.SegmentCacheListener.SegmentCacheEvent() {
+                public boolean isLocal() {
+                    return true;
+                }
+                public SegmentHeader getSource() {
+                    return header;
+                }
+                public EventType getEventType() {
+                    return
+                        SegmentCacheListener.SegmentCacheEvent
+                            .EventType.ENTRY_DELETED;
+                }
+            });
+    }
+
     public void tearDown() {
         map.clear();
+        if (costStore != null) {
+            costStore.clear();
+        }
+        loadCosts.clear();
+        synchronized (offHeapMap) {
+            offHeapMap.clear();
+            addOffHeapBytes(-offHeapBytes);
+        }
+        if (diskStore != null) {
+            // Leave the files, so that the next server can use them.
+            // Segments that are waiting to be written are discarded.
+            synchronized (spillLock) {
+                spilling.clear();
+                diskStore.clear();
+            }
+        }
         listeners.clear();
     }
 
@@ -274,6 +274,10 @@ public class SegmentCacheIndexImpl implements SegmentCacheIndex {
         if (!headerInfo.slot.isDone()) {
             headerInfo.slot.put(body);
         }
+        if (body != null) {
+            headerInfo.byteCount =
+                SegmentCacheMetrics.instance().recordCreate(header, body);
+        }
         if (headerInfo.removeAfterLoad) {
             remove(header);
         }
@@ -334,6 +338,8 @@ public class SegmentCacheIndexImpl implements SegmentCacheIndex {
         }
 
         headerMap.remove(header);
+        SegmentCacheMetrics.instance().recordRemove(
+            header, headerInfo.byteCount);
 
         final List factKey = makeFactKey(header);
         final FactInfo factInfo = factMap.get(factKey);
@@ -1068,6 +1074,11 @@ public class SegmentCacheIndexImpl implements SegmentCacheIndex {
          * when flushing.
          */
         private boolean removeAfterLoad;
+        /**
+         * Estimated size of the segment body, if it was loaded by this
+         * index; otherwise 0.
+         */
+        private long byteCount;
     }
 }
 
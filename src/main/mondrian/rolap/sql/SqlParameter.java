@@ -0,0 +1,191 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap.sql;
+
+import mondrian.spi.Dialect;
+
+import java.math.BigDecimal;
+import java.sql.PreparedStatement;
+import java.sql.SQLException;
+import java.util.List;
+
+/**
+ * Value that is sent to the database as a bind parameter of a prepared
+ * statement, rather than as a literal in the SQL string.
+ *
+ * <p>When {@link SqlQuery#quote} generates a parameter, it writes a marker
+ * into the SQL string that holds the value. Markers survive the ways that
+ * mondrian builds SQL: strings are concatenated into unions and sub-queries,
+ * wrapped in functions such as {@code UPPER}, and truncated and re-written
+ * by predicates. Just before the statement is executed,
+ * {@link #extract(String, java.util.List)} replaces each marker with '?' and
+ * returns the values in the order that the JDBC driver expects them.</p>
+ *
+ * <p>Only string and numeric values are bound. Other values, and values that
+ * cannot be parsed, are written as literals.</p>
+ *
+ * @see mondrian.olap.MondrianProperties#GenerateBindParameters
+ *
+ * @author agent
+ */
+public class SqlParameter {
+    private static final char START = '\u0001';
+    private static final char END = '\u0002';
+
+    private final Dialect.Datatype datatype;
+    private final String value;
+
+    private SqlParameter(Dialect.Datatype datatype, String value) {
+        this.datatype = datatype;
+        this.value = value;
+    }
+
+    /**
+     * Appends a marker for a parameter to a SQL string, if the value can be
+     * bound.
+     *
+     * @param buf Buffer
+     * @param value Value
+     * @param datatype Datatype of value
+     * @return Whether the value can be bound, and a marker was appended
+     */
+    static boolean append(
+        StringBuilder buf,
+        Object value,
+        Dialect.Datatype datatype)
+    {
+        if (value == null) {
+            return false;
+        }
+        final String s = value.toString();
+        if (s.indexOf(START) >= 0 || s.indexOf(END) >= 0) {
+            return false;
+        }
+        final char code;
+        switch (datatype) {
+        case String:
+            code = 'S';
+            break;
+        case Integer:
+        case Numeric:
+            try {
+                new BigDecimal(s);
+            } catch (NumberFormatException e) {
+                return false;
+            }
+            code = datatype == Dialect.Datatype.Integer ? 'I' : 'N';
+            break;
+        default:
+            return false;
+        }
+        buf.append(START).append(code).append(s).append(END);
+        return true;
+    }
+
+    /**
+     * Replaces each parameter marker in a SQL string with '?', and adds the
+     * parameter to a list.
+     *
+     * @param sql SQL string, possibly containing markers
+     * @param parameters List to which to add parameters, in order
+     * @return SQL string to pass to
+     *   {@link java.sql.Connection#prepareStatement(String)}
+     */
+    public static String extract(String sql, List<SqlParameter> parameters) {
+        return replace(sql, parameters);
+    }
+
+    /**
+     * Replaces each parameter marker in a SQL string with the value it
+     * holds, for messages and logs.
+     *
+     * @param sql SQL string, possibly containing markers
+     * @return SQL string without markers
+     */
+    public static String expand(String sql) {
+        return replace(sql, null);
+    }
+
+    private static String replace(String sql, List<SqlParameter> parameters) {
+        int start = sql.indexOf(START);
+        if (start < 0) {
+            return sql;
+        }
+        final StringBuilder buf = new StringBuilder(sql.length());
+        int prev = 0;
+        while (start >= 0) {
+            final int end = sql.indexOf(END, start);
+            final Dialect.Datatype datatype;
+            switch (sql.charAt(start + 1)) {
+            case 'S':
+                datatype = Dialect.Datatype.String;
+                break;
+            case 'I':
+                datatype = Dialect.Datatype.Integer;
+                break;
+            default:
+                datatype = Dialect.Datatype.Numeric;
+                break;
+            }
+            final SqlParameter parameter =
+                new SqlParameter(datatype, sql.substring(start + 2, end));
+            buf.append(sql, prev, start);
+            if (parameters == null) {
+                buf.append(parameter);
+            } else {
+                buf.append('?');
+                parameters.add(parameter);
+            }
+            prev = end + 1;
+            start = sql.indexOf(START, prev);
+        }
+        buf.append(sql, prev, sql.length());
+        return buf.toString();
+    }
+
+    /**
+     * Sets the value of this parameter in a prepared statement.
+     *
+     * @param statement Prepared statement
+     * @param ordinal Parameter ordinal, 1-based
+     * @throws SQLException on error
+     */
+    public void bind(PreparedStatement statement, int ordinal)
+        throws SQLException
+    {
+        switch (datatype) {
+        case String:
+            statement.setString(ordinal, value);
+            break;
+        case Integer:
+            final BigDecimal decimal = new BigDecimal(value);
+            long n;
+            try {
+                n = decimal.longValueExact();
+            } catch (ArithmeticException e) {
+                statement.setBigDecimal(ordinal, decimal);
+                break;
+            }
+            statement.setLong(ordinal, n);
+            break;
+        default:
+            statement.setBigDecimal(ordinal, new BigDecimal(value));
+            break;
+        }
+    }
+
+    public String toString() {
+        return datatype == Dialect.Datatype.String
+            ? "'" + value.replace("'", "''") + "'"
+            : value;
+    }
+}
+
+// End SqlParameter.java
@@ -90,6 +90,9 @@ public class SqlQuery {
     /** Controls whether table optimization hints are used */
     private boolean allowHints;
 
+    /** Whether {@link #quote} generates bind parameters. */
+    private boolean bindParameters;
+
     /**
      * This list is used to keep track of what aliases have been  used in the
      * FROM clause. One might think that a java.util.Set would be a more
@@ -151,6 +154,8 @@ public class SqlQuery {
         // allows us to them on selectively in specific situations.
         // Usage will likely expand with experimentation.
         this.allowHints = false;
+        this.bindParameters =
+            MondrianProperties.instance().GenerateBindParameters.get();
     }
 
     /**
@@ -189,6 +194,40 @@ public class SqlQuery {
         this.allowHints = t;
     }
 
+    /**
+     * Chooses whether values are sent to the database as bind parameters
+     * of a prepared statement. The default is the value of the
+     * {@link MondrianProperties#GenerateBindParameters} property.
+     *
+     * <p>Turn it off for SQL that is shown to the user or used as a key,
+     * rather than executed.
+     *
+     * @param bindParameters Whether to generate bind parameters
+     */
+    public void setBindParameters(boolean bindParameters) {
+        this.bindParameters = bindParameters;
+    }
+
+    /**
+     * Appends a value to a SQL string. If this query generates bind
+     * parameters, and the value can be bound, appends a parameter marker
+     * (see {@link SqlParameter}); otherwise appends a literal generated by
+     * the dialect.
+     *
+     * @param buf Buffer
+     * @param value Value
+     * @param datatype Datatype of value
+     */
+    public void quote(
+        StringBuilder buf,
+        Object value,
+        Dialect.Datatype datatype)
+    {
+        if (!bindParameters || !SqlParameter.append(buf, value, datatype)) {
+            dialect.quote(buf, value, datatype);
+        }
+    }
+
     /**
      * Adds a subquery to the FROM clause of this Query with a given alias.
      * If the query already exists it either, depending on
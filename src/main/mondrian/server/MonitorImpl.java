@@ -11,7 +11,10 @@ package mondrian.server;
 
 import mondrian.olap.MondrianProperties;
 import mondrian.olap.Util;
+import mondrian.rolap.RolapSchemaWarmer;
 import mondrian.rolap.RolapUtil;
+import mondrian.rolap.agg.SegmentCacheMetrics;
+import mondrian.rolap.cache.MemorySegmentCache;
 import mondrian.server.monitor.*;
 import mondrian.server.monitor.MonitorMXBean;
 import mondrian.util.*;
@@ -132,6 +135,17 @@ class MonitorImpl
         return (List<SqlStatementInfo>) execute(new SqlStatementsCommand());
     }
 
+    public List<SegmentCacheInfo> getSegmentCaches() {
+        // Segment cache counters are thread-safe, and are read directly
+        // rather than via the actor.
+        return SegmentCacheMetrics.instance().getSegmentCacheInfos();
+    }
+
+    public List<WarmupInfo> getWarmups() {
+        // Like segment cache counters, read directly.
+        return RolapSchemaWarmer.instance().getWarmupInfos();
+    }
+
     private Object execute(Command command) {
         return ACTOR.execute(handler, command);
     }
@@ -219,6 +233,7 @@ class MonitorImpl
                 aggSql.endCount,
                 aggSql.rowFetchCount,
                 aggSql.executeNanos,
+                aggSql.queueWaitNanos,
                 aggSql.cellRequestCount,
                 aggExec.cellCacheHitCount,
                 aggExec.cellCacheRequestCount,
@@ -237,7 +252,9 @@ class MonitorImpl
                 aggExec.cellCacheSegmentCreateViaRollupCount,
                 aggExec.cellCacheSegmentCreateViaSqlCount,
                 aggExec.cellCacheSegmentCellCount,
-                aggExec.cellCacheSegmentCoordinateSum);
+                aggExec.cellCacheSegmentCoordinateSum,
+                MemorySegmentCache.getOffHeapByteCount(),
+                MemorySegmentCache.getOffHeapEvictionCount());
         }
     }
 
@@ -395,6 +412,7 @@ class MonitorImpl
         private int endCount;
         private int cellRequestCount;
         private long executeNanos;
+        private long queueWaitNanos;
         private long rowFetchCount;
         private final String stack;
         private final String sql;
@@ -415,7 +433,8 @@ class MonitorImpl
             return new SqlStatementInfo(
                 stack,
                 sqlStatementId,
-                sql);
+                sql,
+                queueWaitNanos);
         }
     }
 
@@ -876,6 +895,7 @@ class MonitorImpl
         {
             ++sql.startCount;
             sql.cellRequestCount += event.cellRequestCount;
+            sql.queueWaitNanos += event.queueWaitNanos;
         }
 
         public Object visit(SqlStatementExecuteEvent event) {
@@ -31,6 +31,21 @@ public interface Monitor {
 
     List<SqlStatementInfo> getSqlStatements();
 
+    /**
+     * Returns segment cache statistics for each stored measure that has
+     * been used.
+     *
+     * @return List of statistics, sorted by schema, cube and measure
+     */
+    List<SegmentCacheInfo> getSegmentCaches();
+
+    /**
+     * Returns the progress of recent warm-ups of schema caches.
+     *
+     * @return List of warm-ups, oldest first
+     */
+    List<WarmupInfo> getWarmups();
+
     /**
      * Sends an event to the monitor.
      *
@@ -25,6 +25,10 @@ public interface MonitorMXBean {
     List<StatementInfo> getStatements();
 
     List<SqlStatementInfo> getSqlStatements();
+
+    List<SegmentCacheInfo> getSegmentCaches();
+
+    List<WarmupInfo> getWarmups();
 }
 
 // End MonitorMXBean.java
\ No newline at end of file
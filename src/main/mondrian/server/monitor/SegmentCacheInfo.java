@@ -0,0 +1,223 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.server.monitor;
+
+/**
+ * Information about the segment cache activity of a stored measure.
+ *
+ * <p>Each cell request that reaches the cache manager is counted exactly once,
+ * as a hit (a segment in cache contains the cell), a pending hit (a segment
+ * being loaded will contain the cell), a rollup (the cell will be computed
+ * from segments in cache), or a SQL load.</p>
+ *
+ * <p>Counters are cumulative since the JVM started, over all servers.</p>
+ *
+ * @see ServerInfo
+ */
+public class SegmentCacheInfo extends Info {
+    public final String schemaName;
+    public final String cubeName;
+    public final String measureName;
+
+    /**
+     * Number of cell requests satisfied by a segment in cache.
+     */
+    public final long hitCount;
+
+    /**
+     * Number of cell requests that will be satisfied by a segment that was
+     * being loaded.
+     */
+    public final long pendingCount;
+
+    /**
+     * Number of cell requests that will be satisfied by rolling up segments
+     * in cache.
+     */
+    public final long rollupCount;
+
+    /**
+     * Number of cell requests that required a segment to be loaded from SQL.
+     */
+    public final long sqlCount;
+
+    /**
+     * Number of segments loaded from SQL.
+     */
+    public final long loadCount;
+
+    /**
+     * Total time spent loading segments from SQL, in nanoseconds. A statement
+     * that loads several segments counts once for each segment.
+     */
+    public final long loadNanos;
+
+    /**
+     * Number of segment loads by latency. The buckets count loads that took
+     * less than 1 millisecond, 1 to 10, 10 to 100, 100 to 1,000, 1,000 to
+     * 10,000, and 10,000 milliseconds or more.
+     *
+     * @see mondrian.rolap.agg.SegmentCacheMetrics#LATENCY_BUCKET_MILLIS
+     */
+    public final long[] loadLatencyHistogram;
+
+    /**
+     * Number of segments that have been added to the index after they were
+     * loaded from SQL.
+     */
+    public final long segmentCreateCount;
+
+    /**
+     * Number of segments that have been removed from the index, whether
+     * flushed, evicted, or discarded after a failed load.
+     */
+    public final long segmentRemoveCount;
+
+    /**
+     * Number of segments that left the cache while the index still
+     * referenced them, because they were evicted from the local cache or
+     * deleted from an external cache.
+     */
+    public final long evictionCount;
+
+    /**
+     * Estimated number of bytes held by cells of segments in the index that
+     * were loaded by this JVM.
+     */
+    public final long byteCount;
+
+    public SegmentCacheInfo(
+        String stack,
+        String schemaName,
+        String cubeName,
+        String measureName,
+        long hitCount,
+        long pendingCount,
+        long rollupCount,
+        long sqlCount,
+        long loadCount,
+        long loadNanos,
+        long[] loadLatencyHistogram,
+        long segmentCreateCount,
+        long segmentRemoveCount,
+        long evictionCount,
+        long byteCount)
+    {
+        super(stack);
+        this.schemaName = schemaName;
+        this.cubeName = cubeName;
+        this.measureName = measureName;
+        this.hitCount = hitCount;
+        this.pendingCount = pendingCount;
+        this.rollupCount = rollupCount;
+        this.sqlCount = sqlCount;
+        this.loadCount = loadCount;
+        this.loadNanos = loadNanos;
+        this.loadLatencyHistogram = loadLatencyHistogram;
+        this.segmentCreateCount = segmentCreateCount;
+        this.segmentRemoveCount = segmentRemoveCount;
+        this.evictionCount = evictionCount;
+        this.byteCount = byteCount;
+    }
+
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    public String getCubeName() {
+        return cubeName;
+    }
+
+    public String getMeasureName() {
+        return measureName;
+    }
+
+    public long getHitCount() {
+        return hitCount;
+    }
+
+    public long getPendingCount() {
+        return pendingCount;
+    }
+
+    public long getRollupCount() {
+        return rollupCount;
+    }
+
+    public long getSqlCount() {
+        return sqlCount;
+    }
+
+    /**
+     * Returns the total number of cell requests.
+     */
+    public long getRequestCount() {
+        return hitCount + pendingCount + rollupCount + sqlCount;
+    }
+
+    /**
+     * Returns the fraction of cell requests that were satisfied without
+     * loading from SQL, or 0 if there have been no requests.
+     */
+    public double getHitRatio() {
+        final long requestCount = getRequestCount();
+        return requestCount == 0
+            ? 0d
+            : (double) (requestCount - sqlCount) / requestCount;
+    }
+
+    /**
+     * Returns the fraction of cell requests not satisfied by a segment in
+     * cache that were satisfied by rollup rather than by SQL, or 0 if there
+     * have been no such requests.
+     */
+    public double getRollupRatio() {
+        final long count = rollupCount + sqlCount;
+        return count == 0 ? 0d : (double) rollupCount / count;
+    }
+
+    public long getLoadCount() {
+        return loadCount;
+    }
+
+    public long getLoadNanos() {
+        return loadNanos;
+    }
+
+    /**
+     * Returns the average time to load a segment from SQL, in milliseconds,
+     * or 0 if no segments have been loaded.
+     */
+    public double getAverageLoadMillis() {
+        return loadCount == 0 ? 0d : loadNanos / 1000000d / loadCount;
+    }
+
+    public long[] getLoadLatencyHistogram() {
+        return loadLatencyHistogram.clone();
+    }
+
+    public long getSegmentCreateCount() {
+        return segmentCreateCount;
+    }
+
+    public long getSegmentRemoveCount() {
+        return segmentRemoveCount;
+    }
+
+    public long getEvictionCount() {
+        return evictionCount;
+    }
+
+    public long getByteCount() {
+        return byteCount;
+    }
+}
+
+// End SegmentCacheInfo.java
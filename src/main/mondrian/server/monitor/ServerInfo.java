@@ -31,6 +31,13 @@ public class ServerInfo extends Info {
      */
     public final long sqlStatementExecuteNanos;
 
+    /**
+     * Cumulative time that SQL statements have waited to be admitted.
+     *
+     * @see mondrian.rolap.SqlAdmissionController
+     */
+    public final long sqlStatementQueueWaitNanos;
+
     /**
      * Total, over all SQL statements that are fetching cells into cache, of
      * the number of requested cells that will be satisfied by those SQL
@@ -102,6 +109,20 @@ public class ServerInfo extends Info {
      */
     public final int cellCoordinateCount;
 
+    /**
+     * The number of bytes of native memory held by segments that are cached
+     * off-heap. See
+     * {@link mondrian.olap.MondrianProperties#EnableOffHeapSegmentCache}.
+     */
+    public final long segmentOffHeapBytes;
+
+    /**
+     * The number of off-heap segments that have been evicted since the server
+     * started, to keep within
+     * {@link mondrian.olap.MondrianProperties#OffHeapSegmentCacheLimit}.
+     */
+    public final long segmentOffHeapEvictionCount;
+
     public ServerInfo(
         String stack,
         int connectionStartCount,
@@ -113,6 +134,7 @@ public class ServerInfo extends Info {
         int sqlStatementEndCount,
         long sqlStatementRowFetchCount,
         long sqlStatementExecuteNanos,
+        long sqlStatementQueueWaitNanos,
         int sqlStatementCellRequestCount,
         int cellCacheHitCount,
         int cellCacheRequestCount,
@@ -130,7 +152,9 @@ public class ServerInfo extends Info {
         int segmentCreateViaRollupCount,
         int segmentCreateViaSqlCount,
         int cellCount,
-        int cellCoordinateCount)
+        int cellCoordinateCount,
+        long segmentOffHeapBytes,
+        long segmentOffHeapEvictionCount)
     {
         super(stack);
         this.connectionStartCount = connectionStartCount;
@@ -142,6 +166,7 @@ public class ServerInfo extends Info {
         this.sqlStatementEndCount = sqlStatementEndCount;
         this.sqlStatementRowFetchCount = sqlStatementRowFetchCount;
         this.sqlStatementExecuteNanos = sqlStatementExecuteNanos;
+        this.sqlStatementQueueWaitNanos = sqlStatementQueueWaitNanos;
         this.sqlStatementCellRequestCount = sqlStatementCellRequestCount;
         this.cellCacheRequestCount = cellCacheRequestCount;
         this.cellCacheHitCount = cellCacheHitCount;
@@ -160,6 +185,8 @@ public class ServerInfo extends Info {
         this.segmentCreateViaSqlCount = segmentCreateViaSqlCount;
         this.cellCount = cellCount;
         this.cellCoordinateCount = cellCoordinateCount;
+        this.segmentOffHeapBytes = segmentOffHeapBytes;
+        this.segmentOffHeapEvictionCount = segmentOffHeapEvictionCount;
     }
 
     public int getCellCacheMissCount() {
@@ -230,6 +257,10 @@ public class ServerInfo extends Info {
         return sqlStatementExecuteNanos;
     }
 
+    public long getSqlStatementQueueWaitNanos() {
+        return sqlStatementQueueWaitNanos;
+    }
+
     public int getSqlStatementCellRequestCount() {
         return sqlStatementCellRequestCount;
     }
@@ -297,6 +328,14 @@ public class ServerInfo extends Info {
     public int getCellCoordinateCount() {
         return cellCoordinateCount;
     }
+
+    public long getSegmentOffHeapBytes() {
+        return segmentOffHeapBytes;
+    }
+
+    public long getSegmentOffHeapEvictionCount() {
+        return segmentOffHeapEvictionCount;
+    }
 }
 
 // End ServerInfo.java
@@ -19,14 +19,21 @@ public class SqlStatementInfo extends Info {
     public final long sqlStatementId;
     public final String sql;
 
+    /**
+     * Time that the statement waited to be admitted, in nanoseconds.
+     */
+    public final long queueWaitNanos;
+
     public SqlStatementInfo(
         String stack,
         long sqlStatementId,
-        String sql)
+        String sql,
+        long queueWaitNanos)
     {
         super(stack);
         this.sqlStatementId = sqlStatementId;
         this.sql = sql;
+        this.queueWaitNanos = queueWaitNanos;
     }
 
     public long getSqlStatementId() {
@@ -37,6 +44,10 @@ public class SqlStatementInfo extends Info {
         return sql;
     }
 
+    public long getQueueWaitNanos() {
+        return queueWaitNanos;
+    }
+
 }
 
 // End SqlStatementInfo.java
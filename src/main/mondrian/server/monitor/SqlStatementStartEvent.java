@@ -17,6 +17,14 @@ import mondrian.server.Locus;
 public class SqlStatementStartEvent extends SqlStatementEvent {
     public final int cellRequestCount;
 
+    /**
+     * Time that the statement waited for other statements against the same
+     * data source to finish, in nanoseconds.
+     *
+     * @see mondrian.rolap.SqlAdmissionController
+     */
+    public final long queueWaitNanos;
+
     /**
      * Creates a SqlStatementStartEvent.
      *
@@ -26,6 +34,7 @@ public class SqlStatementStartEvent extends SqlStatementEvent {
      * @param sql SQL
      * @param purpose Why Mondrian is executing this statement
      * @param cellRequestCount Number of missed cells that led to this request
+     * @param queueWaitNanos Time waiting to be admitted, in nanoseconds
      */
     public SqlStatementStartEvent(
         long timestamp,
@@ -33,10 +42,12 @@ public class SqlStatementStartEvent extends SqlStatementEvent {
         Locus locus,
         String sql,
         Purpose purpose,
-        int cellRequestCount)
+        int cellRequestCount,
+        long queueWaitNanos)
     {
         super(timestamp, sqlStatementId, locus, sql, purpose);
         this.cellRequestCount = cellRequestCount;
+        this.queueWaitNanos = queueWaitNanos;
     }
 
     public String toString() {
@@ -0,0 +1,120 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.server.monitor;
+
+/**
+ * Information about the progress of warming up the cache of a schema.
+ *
+ * @see mondrian.rolap.RolapSchemaWarmer
+ */
+public class WarmupInfo extends Info {
+    public final String schemaName;
+
+    /**
+     * Number of queries in the warm-up; zero until the file of queries has
+     * been read.
+     */
+    public final int queryCount;
+
+    /**
+     * Number of queries that have been executed successfully.
+     */
+    public final int executedCount;
+
+    /**
+     * Number of queries that failed.
+     */
+    public final int failedCount;
+
+    /**
+     * Whether the warm-up was abandoned because its schema was removed from
+     * the schema pool.
+     */
+    public final boolean cancelled;
+
+    /**
+     * Time that the warm-up started, in milliseconds since the epoch.
+     */
+    public final long startTimeMillis;
+
+    /**
+     * Time that the warm-up finished, in milliseconds since the epoch, or 0
+     * if it is still running.
+     */
+    public final long endTimeMillis;
+
+    public WarmupInfo(
+        String stack,
+        String schemaName,
+        int queryCount,
+        int executedCount,
+        int failedCount,
+        boolean cancelled,
+        long startTimeMillis,
+        long endTimeMillis)
+    {
+        super(stack);
+        this.schemaName = schemaName;
+        this.queryCount = queryCount;
+        this.executedCount = executedCount;
+        this.failedCount = failedCount;
+        this.cancelled = cancelled;
+        this.startTimeMillis = startTimeMillis;
+        this.endTimeMillis = endTimeMillis;
+    }
+
+    public String getSchemaName() {
+        return schemaName;
+    }
+
+    public int getQueryCount() {
+        return queryCount;
+    }
+
+    public int getExecutedCount() {
+        return executedCount;
+    }
+
+    public int getFailedCount() {
+        return failedCount;
+    }
+
+    public boolean isCancelled() {
+        return cancelled;
+    }
+
+    /**
+     * Returns whether the warm-up has finished, either because all of its
+     * queries have run or because it was cancelled and the last of its
+     * queries has been skipped.
+     */
+    public boolean isDone() {
+        return endTimeMillis != 0;
+    }
+
+    /**
+     * Returns the fraction of queries that have run, successfully or not.
+     */
+    public double getProgress() {
+        return queryCount == 0
+            ? (isDone() ? 1d : 0d)
+            : (double) (executedCount + failedCount) / queryCount;
+    }
+
+    public long getStartTimeMillis() {
+        return startTimeMillis;
+    }
+
+    public long getEndTimeMillis() {
+        return endTimeMillis;
+    }
+}
+
+// End WarmupInfo.java
@@ -457,6 +457,19 @@ public interface Dialect {
      */
     boolean supportsUnlimitedValueList();
 
+    /**
+     * Returns the maximum number of values that this Dialect allows in an
+     * IN list, or 0 if there is no limit. Oracle, for example, allows 1,000.
+     *
+     * <p>Mondrian splits a longer list into several IN lists joined by OR.
+     * This matters most when values are bind parameters (see
+     * {@link mondrian.olap.MondrianProperties#GenerateBindParameters}),
+     * because some drivers also limit the number of parameters.
+     *
+     * @return Maximum number of values in an IN list, or 0 if unlimited
+     */
+    int getMaxInListSize();
+
     /**
      * Returns true if this Dialect can include expressions in the GROUP BY
      * clause only by adding an expression to the SELECT clause and using
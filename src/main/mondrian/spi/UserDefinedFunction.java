@@ -83,6 +83,21 @@ public interface UserDefinedFunction {
      */
     public String[] getReservedWords();
 
+    /**
+     * Marker interface for a user-defined function whose result depends only
+     * on its arguments and on the cells and members that it reads, not on
+     * state such as the time, a random number generator or the user's
+     * session.
+     *
+     * <p>Mondrian shares the results of context-independent expressions
+     * between statements (see
+     * {@link mondrian.olap.MondrianProperties#EnableSharedExpCache}) only if
+     * every user-defined function that they call implements this
+     * interface.</p>
+     */
+    interface Deterministic {
+    }
+
     interface Argument {
         /**
          * Returns the type of the argument.
@@ -857,6 +857,10 @@ public class JdbcDialectImpl implements Dialect {
         return false;
     }
 
+    public int getMaxInListSize() {
+        return 0;
+    }
+
     public boolean requiresGroupByAlias() {
         return false;
     }
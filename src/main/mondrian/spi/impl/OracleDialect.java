@@ -62,6 +62,12 @@ public class OracleDialect extends JdbcDialectImpl {
         return true;
     }
 
+    @Override
+    public int getMaxInListSize() {
+        // ORA-01795: maximum number of expressions in a list is 1000
+        return 1000;
+    }
+
     @Override
     public String generateOrderByNulls(
         String expr,
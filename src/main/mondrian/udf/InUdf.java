@@ -20,7 +20,9 @@ import java.util.List;
  *
  * @author schoi
  */
-public class InUdf implements UserDefinedFunction {
+public class InUdf
+    implements UserDefinedFunction, UserDefinedFunction.Deterministic
+{
 
     public Object execute(Evaluator evaluator, Argument[] arguments) {
         Object arg0 = arguments[0].evaluate(evaluator);
@@ -41,7 +41,9 @@ import org.apache.log4j.Logger;
  *         FORMAT_STRING = "0.0000"
  * </pre></code></blockquote>
  */
-public class InverseNormalUdf implements UserDefinedFunction {
+public class InverseNormalUdf
+    implements UserDefinedFunction, UserDefinedFunction.Deterministic
+{
     private static final Logger LOGGER =
         Logger.getLogger(InverseNormalUdf.class);
 
@@ -21,7 +21,9 @@ import java.util.List;
  *
  * @author jhyde
  */
-public class LastNonEmptyUdf implements UserDefinedFunction {
+public class LastNonEmptyUdf
+    implements UserDefinedFunction, UserDefinedFunction.Deterministic
+{
 
     public String getName() {
         return "LastNonEmpty";
@@ -21,7 +21,9 @@ import java.util.regex.Pattern;
  *
  * @author schoi
  */
-public class MatchesUdf implements UserDefinedFunction {
+public class MatchesUdf
+    implements UserDefinedFunction, UserDefinedFunction.Deterministic
+{
 
     public Object execute(Evaluator evaluator, Argument[] arguments) {
         Object arg0 = arguments[0].evaluateScalar(evaluator);
@@ -20,7 +20,9 @@ import mondrian.spi.UserDefinedFunction;
  *
  * @author remberson,jhyde
  */
-public class NullValueUdf implements UserDefinedFunction {
+public class NullValueUdf
+    implements UserDefinedFunction, UserDefinedFunction.Deterministic
+{
 
     public String getName() {
         return "NullValue";
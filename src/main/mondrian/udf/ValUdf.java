@@ -20,7 +20,9 @@ import mondrian.spi.UserDefinedFunction;
  *
  * @author Gang Chen
  */
-public class ValUdf implements UserDefinedFunction {
+public class ValUdf
+    implements UserDefinedFunction, UserDefinedFunction.Deterministic
+{
 
     public Object execute(Evaluator evaluator, Argument[] arguments) {
         Object arg = arguments[0].evaluateScalar(evaluator);
@@ -0,0 +1,356 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.util;
+
+import mondrian.olap.MondrianProperties;
+
+import java.io.ObjectStreamException;
+import java.lang.ref.ReferenceQueue;
+import java.lang.ref.WeakReference;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+
+/**
+ * Dictionary of the values of a column.
+ *
+ * <p>Each distinct value is assigned an {@code int} code the first time it is
+ * seen, and the dictionary holds one canonical instance of that value. Sets of
+ * values are interned as {@link EncodedSortedSet}s, which remember the code of
+ * each element; all sets with the same codes share a single instance, so
+ * comparing two interned sets is a reference comparison, and comparing two
+ * sets encoded by the same dictionary is an {@code int} array
+ * comparison.</p>
+ *
+ * <p>Interned sets are held weakly, so a set is released when the last
+ * segment that references it is gone. Values themselves are held for the
+ * life of the dictionary, so the dictionary holds at most
+ * {@code maxSize} values (by default,
+ * {@link MondrianProperties#ValueDictionaryMaxSize}). Once it is full,
+ * further values are not encoded: {@link #intern(Comparable)} returns them
+ * unchanged, and sets that contain them are not interned. To reclaim the
+ * codes of values that are no longer used, the owner replaces the
+ * dictionary with a new one; sets encoded by different dictionaries are
+ * still compared correctly, by value.</p>
+ *
+ * <p>This class is thread-safe. Looking up a value or a set that has been
+ * seen before does not lock.</p>
+ *
+ * @author agent
+ */
+public class ValueDictionary {
+    private final int maxSize;
+    private final ConcurrentMap<Comparable, Integer> codes =
+        new ConcurrentHashMap<Comparable, Integer>();
+    private final ConcurrentMap<CodeKey, SetReference> sets =
+        new ConcurrentHashMap<CodeKey, SetReference>();
+    private final ReferenceQueue<EncodedSortedSet> queue =
+        new ReferenceQueue<EncodedSortedSet>();
+
+    /**
+     * Values, indexed by code. Written only while holding the lock on this
+     * dictionary; a value is written before its code is published in
+     * {@link #codes}.
+     */
+    private volatile Comparable[] values = new Comparable[16];
+    private volatile int size;
+
+    /**
+     * Creates an empty ValueDictionary that holds up to
+     * {@link MondrianProperties#ValueDictionaryMaxSize} values.
+     */
+    public ValueDictionary() {
+        this(MondrianProperties.instance().ValueDictionaryMaxSize.get());
+    }
+
+    /**
+     * Creates an empty ValueDictionary.
+     *
+     * @param maxSize Maximum number of values
+     */
+    public ValueDictionary(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    /**
+     * Returns the code of a value, assigning a new code if the value has not
+     * been seen before.
+     *
+     * @param value Value; must not be null
+     * @return Code of value, or -1 if the value is new and the dictionary is
+     *     full
+     */
+    public int encode(Comparable value) {
+        final Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        return encodeNew(value);
+    }
+
+    private synchronized int encodeNew(Comparable value) {
+        final Integer code = codes.get(value);
+        if (code != null) {
+            return code;
+        }
+        final int newCode = size;
+        if (newCode >= maxSize) {
+            return -1;
+        }
+        Comparable[] values = this.values;
+        if (newCode == values.length) {
+            final Comparable[] newValues =
+                new Comparable[Math.min(maxSize, newCode * 2)];
+            System.arraycopy(values, 0, newValues, 0, newCode);
+            this.values = values = newValues;
+        }
+        values[newCode] = value;
+        size = newCode + 1;
+        codes.put(value, newCode);
+        return newCode;
+    }
+
+    /**
+     * Returns the value with a given code.
+     *
+     * @param code Code
+     * @return Value
+     */
+    public Comparable decode(int code) {
+        if (code < 0 || code >= size) {
+            throw new IndexOutOfBoundsException(
+                "code " + code + ", size " + size);
+        }
+        return values[code];
+    }
+
+    /**
+     * Returns the canonical instance of a value.
+     *
+     * @param value Value; must not be null
+     * @return Value equal to the given value, shared with all other users of
+     *     this dictionary; or the value itself if the dictionary is full
+     */
+    public Comparable intern(Comparable value) {
+        final int code = encode(value);
+        return code < 0 ? value : decode(code);
+    }
+
+    /**
+     * Returns the number of distinct values in this dictionary.
+     *
+     * @return Number of values
+     */
+    public int size() {
+        return size;
+    }
+
+    /**
+     * Returns the canonical set equal to a given set of values.
+     *
+     * @param set Set of values, sorted
+     * @return Interned set, or the given set if it contains values that do
+     *     not fit into the dictionary
+     */
+    public SortedSet<Comparable> intern(SortedSet<Comparable> set) {
+        if (set instanceof EncodedSortedSet
+            && ((EncodedSortedSet) set).dictionary == this)
+        {
+            return set;
+        }
+        final Comparable[] sortedValues =
+            set.toArray(new Comparable[set.size()]);
+        final EncodedSortedSet encodedSet = internEncoded(sortedValues);
+        return encodedSet == null ? set : encodedSet;
+    }
+
+    /**
+     * Returns the canonical set containing the values in a given array.
+     *
+     * @param sortedValues Values, sorted; not modified
+     * @return Interned set, or a plain set if the values do not fit into the
+     *     dictionary
+     */
+    @SuppressWarnings({"unchecked"})
+    public SortedSet<Comparable> intern(Comparable[] sortedValues) {
+        final EncodedSortedSet set = internEncoded(sortedValues);
+        return set != null
+            ? set
+            : new ArraySortedSet(sortedValues.clone());
+    }
+
+    private EncodedSortedSet internEncoded(Comparable[] sortedValues) {
+        expungeStaleSets();
+        final int[] setCodes = new int[sortedValues.length];
+        for (int i = 0; i < sortedValues.length; i++) {
+            setCodes[i] = encode(sortedValues[i]);
+            if (setCodes[i] < 0) {
+                return null;
+            }
+        }
+        final CodeKey key = new CodeKey(setCodes);
+        for (;;) {
+            final SetReference ref = sets.get(key);
+            if (ref != null) {
+                final EncodedSortedSet set = ref.get();
+                if (set != null) {
+                    return set;
+                }
+                sets.remove(key, ref);
+            }
+            final Comparable[] canonicalValues =
+                new Comparable[sortedValues.length];
+            for (int i = 0; i < setCodes.length; i++) {
+                canonicalValues[i] = decode(setCodes[i]);
+            }
+            final EncodedSortedSet set =
+                new EncodedSortedSet(this, key, canonicalValues);
+            if (sets.putIfAbsent(key, new SetReference(set, queue)) == null) {
+                return set;
+            }
+            // Another thread interned the same set; use that one.
+        }
+    }
+
+    /**
+     * Removes the entries of sets that have been garbage-collected.
+     */
+    private void expungeStaleSets() {
+        for (;;) {
+            final SetReference ref = (SetReference) queue.poll();
+            if (ref == null) {
+                return;
+            }
+            sets.remove(ref.key, ref);
+        }
+    }
+
+    /**
+     * Weak reference to an interned set, which remembers the key under which
+     * the set is registered.
+     */
+    private static class SetReference extends WeakReference<EncodedSortedSet> {
+        private final CodeKey key;
+
+        SetReference(
+            EncodedSortedSet set,
+            ReferenceQueue<EncodedSortedSet> queue)
+        {
+            super(set, queue);
+            this.key = set.key;
+        }
+    }
+
+    /**
+     * Wrapper around an array of codes that implements equality.
+     */
+    private static class CodeKey {
+        private final int[] codes;
+        private final int hashCode;
+
+        CodeKey(int[] codes) {
+            this.codes = codes;
+            this.hashCode = Arrays.hashCode(codes);
+        }
+
+        @Override
+        public int hashCode() {
+            return hashCode;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            return obj == this
+                || obj instanceof CodeKey
+                && Arrays.equals(codes, ((CodeKey) obj).codes);
+        }
+    }
+
+    /**
+     * Sorted set of values that knows the dictionary code of each of its
+     * elements.
+     *
+     * <p>Codes are only meaningful within the dictionary that assigned them,
+     * so when the set is serialized it is replaced by a plain
+     * {@link ArraySortedSet}.</p>
+     */
+    public static class EncodedSortedSet extends ArraySortedSet {
+        private static final long serialVersionUID = 4203614731058921173L;
+        private final transient ValueDictionary dictionary;
+        private final transient CodeKey key;
+        private transient int hashCode;
+
+        @SuppressWarnings({"unchecked"})
+        private EncodedSortedSet(
+            ValueDictionary dictionary,
+            CodeKey key,
+            Comparable[] values)
+        {
+            super(values);
+            this.dictionary = dictionary;
+            this.key = key;
+        }
+
+        /**
+         * Returns the dictionary that encoded this set.
+         *
+         * @return Dictionary
+         */
+        public ValueDictionary getDictionary() {
+            return dictionary;
+        }
+
+        /**
+         * Returns the code of each element of this set. Do not modify.
+         *
+         * @return Array of codes
+         */
+        public int[] getCodes() {
+            return key.codes;
+        }
+
+        @Override
+        public int hashCode() {
+            int h = hashCode;
+            if (h == 0) {
+                h = super.hashCode();
+                hashCode = h;
+            }
+            return h;
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            if (o == this) {
+                return true;
+            }
+            if (o instanceof EncodedSortedSet
+                && ((EncodedSortedSet) o).dictionary == dictionary)
+            {
+                return key.equals(((EncodedSortedSet) o).key);
+            }
+            return super.equals(o);
+        }
+
+        /**
+         * Substitutes a plain {@link ArraySortedSet} during serialization.
+         *
+         * @return Object to serialize
+         * @throws ObjectStreamException never
+         */
+        @SuppressWarnings({"unchecked"})
+        protected Object writeReplace() throws ObjectStreamException {
+            return new ArraySortedSet(
+                (Comparable[]) toArray(new Comparable[size()]));
+        }
+    }
+}
+
+// End ValueDictionary.java
@@ -1353,6 +1353,91 @@ public class UtilTestCase extends TestCase {
         checkToString("[e]", Util.intersect(ace, bde));
     }
 
+    /**
+     * Unit test for {@link ValueDictionary}.
+     */
+    public void testValueDictionary() throws Exception {
+        final ValueDictionary dictionary = new ValueDictionary();
+        assertEquals(0, dictionary.size());
+        final String b1 = new String("b");
+        final String b2 = new String("b");
+        assertEquals(0, dictionary.encode("a"));
+        assertEquals(1, dictionary.encode(b1));
+        assertEquals(1, dictionary.encode(b2));
+        assertEquals(2, dictionary.size());
+        assertEquals("b", dictionary.decode(1));
+        assertSame(b1, dictionary.intern(b2));
+
+        // Sets with the same values are the same instance, and share
+        // canonical values.
+        final ValueDictionary.EncodedSortedSet set1 =
+            (ValueDictionary.EncodedSortedSet)
+                dictionary.intern(new Comparable[] {"a", b2, "c"});
+        final SortedSet<Comparable> set2 =
+            dictionary.intern(
+                (SortedSet<Comparable>) new ArraySortedSet(
+                    new Comparable[] {"a", "b", "c"}));
+        assertSame(set1, set2);
+        assertSame(set1, dictionary.intern(set1));
+        assertSame(b1, set1.toArray()[1]);
+        assertEquals(3, dictionary.size());
+        assertEquals("[0, 1, 2]", Arrays.toString(set1.getCodes()));
+        checkToString("[a, b, c]", Util.<String>cast(set1));
+
+        // Equal to, and same hash code as, a plain set.
+        final ArraySortedSet<String> abc =
+            new ArraySortedSet<String>(new String[] {"a", "b", "c"});
+        assertEquals(abc, set1);
+        assertEquals(set1, abc);
+        assertEquals(abc.hashCode(), set1.hashCode());
+
+        final ValueDictionary.EncodedSortedSet set3 =
+            (ValueDictionary.EncodedSortedSet)
+                dictionary.intern(new Comparable[] {"a", "c"});
+        assertFalse(set1.equals(set3));
+        assertEquals("[0, 2]", Arrays.toString(set3.getCodes()));
+
+        // Serializes as a plain set.
+        final java.io.ByteArrayOutputStream bytes =
+            new java.io.ByteArrayOutputStream();
+        final java.io.ObjectOutputStream out =
+            new java.io.ObjectOutputStream(bytes);
+        out.writeObject(set1);
+        out.close();
+        final Object o =
+            new java.io.ObjectInputStream(
+                new java.io.ByteArrayInputStream(bytes.toByteArray()))
+                .readObject();
+        assertEquals(ArraySortedSet.class, o.getClass());
+        assertEquals(set1, o);
+
+        // A full dictionary does not encode new values, and does not intern
+        // sets that contain them.
+        final ValueDictionary small = new ValueDictionary(2);
+        assertEquals(0, small.encode("a"));
+        assertEquals(1, small.encode("b"));
+        assertEquals(-1, small.encode("c"));
+        assertEquals(2, small.size());
+        final String c = new String("c");
+        assertSame(c, small.intern(c));
+        final Comparable[] values = {"a", "c"};
+        final SortedSet<Comparable> set4 = small.intern(values);
+        assertFalse(set4 instanceof ValueDictionary.EncodedSortedSet);
+        checkToString("[a, c]", Util.<String>cast(set4));
+        assertTrue(
+            small.intern(new Comparable[] {"a", "b"})
+                instanceof ValueDictionary.EncodedSortedSet);
+
+        // By default, a dictionary holds more values than a large column
+        // typically has; for example, FoodMart has 10,281 customers.
+        final ValueDictionary large = new ValueDictionary();
+        for (int i = 0; i < 20000; i++) {
+            assertEquals(i, large.encode(i));
+        }
+        assertEquals(20000, large.size());
+        assertEquals(19999, large.decode(19999));
+    }
+
     /**
      * Unit test for {@link Triple}.
      */
@@ -15,6 +15,7 @@ import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.*;
 import mondrian.olap.type.*;
 import mondrian.test.FoodMartTestCase;
+import mondrian.test.TestContext;
 
 import junit.framework.Assert;
 
@@ -252,6 +253,45 @@ if (! Util.Retrowoven) {
         Assert.assertEquals(e, s);
     }
 
+    ////////////////////////////////////////////////////////////////////////
+    // Pruning
+    ////////////////////////////////////////////////////////////////////////
+
+    /**
+     * Tests that a NON EMPTY crossjoin that is not evaluated natively returns
+     * the same tuples when it skips prefixes that have no data, and that it
+     * honors the iteration limit.
+     */
+    public void testPruneProduct() {
+        propSaver.set(propSaver.properties.EnableNativeCrossJoin, false);
+        final String query =
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + " NON EMPTY Crossjoin([Store].[Store City].Members,\n"
+            + "   Crossjoin([Gender].Children,\n"
+            + "     [Promotion Media].[Media Type].Members)) on 1\n"
+            + "from [Sales]";
+        final String expected = TestContext.toString(executeQuery(query));
+        propSaver.set(propSaver.properties.EnableCrossJoinPruning, true);
+        assertQueryReturns(query, expected);
+
+        // The pruned walk skips the empty cities, so it visits fewer tuples
+        // than the product has.
+        final int productSize =
+            axisSize("[Store].[Store City].Members")
+            * axisSize("[Gender].Children")
+            * axisSize("[Promotion Media].[Media Type].Members");
+        propSaver.set(propSaver.properties.IterationLimit, productSize - 1);
+        assertQueryReturns(query, expected);
+
+        propSaver.set(propSaver.properties.IterationLimit, 10);
+        assertQueryThrows(query, "Number of iterations exceeded limit of 10");
+    }
+
+    private int axisSize(String set) {
+        return executeQuery("select " + set + " on 0 from [Sales]")
+            .getAxes()[0].getPositions().size();
+    }
+
     ////////////////////////////////////////////////////////////////////////
     // Helper methods
     ////////////////////////////////////////////////////////////////////////
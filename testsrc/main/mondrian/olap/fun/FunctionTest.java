@@ -3450,6 +3450,40 @@ public class FunctionTest extends FoodMartTestCase {
             "SUM({[Promotion Media].[Media Type].members})", "266,773");
     }
 
+    /**
+     * Tests aggregate functions over arithmetic expressions, which are
+     * evaluated for the whole set in one call (see
+     * {@link mondrian.calc.BatchDoubleCalc}). [Time].[1998] has no sales, so
+     * its values are null.
+     */
+    public void testAggregateBatch() {
+        assertExprReturns(
+            "SUM({[Store].[USA].children}, [Measures].[Unit Sales] * 2)",
+            "533,546");
+        assertExprReturns(
+            "SUM({[Store].[USA].children}, - [Measures].[Unit Sales])",
+            "-266,773");
+        assertExprReturns(
+            "SUM({[Time].[1997], [Time].[1998]}, [Measures].[Unit Sales] * 2)",
+            "533,546");
+        // null + 1 is 1
+        assertExprReturns(
+            "SUM({[Time].[1997], [Time].[1998]}, [Measures].[Unit Sales] + 1)",
+            "266,775");
+        assertExprReturns(
+            "MIN({[Time].[1997], [Time].[1998]}, [Measures].[Unit Sales] + 1)",
+            "1");
+        assertExprReturns(
+            "MAX({[Time].[1997], [Time].[1998]}, [Measures].[Unit Sales] + 1)",
+            "266,774");
+        assertExprReturns(
+            "AVG({[Time].[1997], [Time].[1998]}, [Measures].[Unit Sales] * 2)",
+            "533,546");
+        assertExprReturns(
+            "SUM({[Time].[1998]}, [Measures].[Unit Sales] * 2)",
+            "");
+    }
+
     public void testValue() {
         // VALUE is usually a cell property, not a member property.
         // We allow it because MS documents it as a function, <Member>.VALUE.
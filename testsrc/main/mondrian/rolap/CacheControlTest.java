@@ -12,6 +12,7 @@ package mondrian.rolap;
 import mondrian.olap.*;
 import mondrian.olap.CacheControl.CellRegion;
 import mondrian.test.*;
+import mondrian.util.ValueDictionary;
 
 import java.io.PrintWriter;
 import java.io.StringWriter;
@@ -1279,6 +1280,126 @@ public class CacheControlTest extends FoodMartTestCase {
         assertCacheStateEquals(tag, expected, actual);
     }
 
+    /**
+     * Tests that a cache flush empties the value dictionaries of the star's
+     * columns, and that the size of a dictionary is limited by
+     * {@link MondrianProperties#ValueDictionaryMaxSize}.
+     */
+    public void testValueDictionaryFlush() {
+        final TestContext testContext = getTestContext();
+        flushCache(testContext);
+        final String query =
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + " [Customers].[Name].Members on 1\n"
+            + "from [Sales]";
+        final Result result = testContext.executeQuery(query);
+        final RolapCubeLevel level =
+            (RolapCubeLevel) result.getAxes()[1].getPositions().get(0).get(0)
+                .getLevel();
+        final RolapStar.Column column =
+            level.getBaseStarKeyColumn((RolapCube) result.getQuery().getCube());
+        final ValueDictionary dictionary = column.getValueDictionary();
+        assertTrue(dictionary.size() > 100);
+
+        propSaver.set(
+            MondrianProperties.instance().ValueDictionaryMaxSize, 100);
+        flushCache(testContext);
+        assertNotSame(dictionary, column.getValueDictionary());
+        assertEquals(0, column.getValueDictionary().size());
+
+        testContext.executeQuery(query);
+        assertEquals(100, column.getValueDictionary().size());
+    }
+
+    /**
+     * Tests that the result cache returns the result of an identical query,
+     * and is emptied by a cache flush.
+     */
+    public void testResultCache() {
+        propSaver.set(MondrianProperties.instance().ResultCacheSize, 1000);
+        final TestContext testContext = getTestContext();
+        final String query =
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + " [Gender].Members on 1\n"
+            + "from [Sales]";
+        final Result result1 = testContext.executeQuery(query);
+        final Result result2 = testContext.executeQuery(query);
+        assertTrue(result2 instanceof RolapResultCache.CachedResult);
+        assertSame(
+            ((RolapResultCache.CachedResult) result1).underlying,
+            ((RolapResultCache.CachedResult) result2).underlying);
+        assertEquals(
+            TestContext.toString(result1),
+            TestContext.toString(result2));
+
+        // A different query is not a hit.
+        final Result result3 =
+            testContext.executeQuery(query.replace("Unit", "Store"));
+        assertNotSame(
+            ((RolapResultCache.CachedResult) result1).underlying,
+            ((RolapResultCache.CachedResult) result3).underlying);
+
+        // After a flush, the query is evaluated again.
+        flushCache(testContext);
+        final Result result4 = testContext.executeQuery(query);
+        assertNotSame(
+            ((RolapResultCache.CachedResult) result1).underlying,
+            ((RolapResultCache.CachedResult) result4).underlying);
+        assertEquals(
+            TestContext.toString(result1),
+            TestContext.toString(result4));
+
+        // A result with more cells than the limit is not cached.
+        propSaver.set(MondrianProperties.instance().ResultCacheSize, 2);
+        final Result result5 = testContext.executeQuery(query);
+        assertFalse(result5 instanceof RolapResultCache.CachedResult);
+    }
+
+    /**
+     * Tests that a cached result can still be read, by another connection,
+     * after the connection that computed it has been closed.
+     */
+    public void testResultCacheAfterClose() {
+        propSaver.set(MondrianProperties.instance().ResultCacheSize, 1000);
+        final TestContext testContext = getTestContext();
+        flushCache(testContext);
+        final String query =
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + " [Gender].Members on 1\n"
+            + "from [Sales]";
+        final Connection connection1 =
+            DriverManager.getConnection(
+                testContext.getConnectionProperties(), null, null);
+        final Result result1 =
+            connection1.execute(connection1.parseQuery(query));
+        final String expected = TestContext.toString(result1);
+        connection1.close();
+
+        final Connection connection2 =
+            DriverManager.getConnection(
+                testContext.getConnectionProperties(), null, null);
+        try {
+            final Result result2 =
+                connection2.execute(connection2.parseQuery(query));
+            assertTrue(result2 instanceof RolapResultCache.CachedResult);
+            assertSame(
+                ((RolapResultCache.CachedResult) result1).underlying,
+                ((RolapResultCache.CachedResult) result2).underlying);
+            assertEquals(expected, TestContext.toString(result2));
+
+            // Cell properties are evaluated when they are read, using the
+            // closed connection's evaluator.
+            final Cell cell = result2.getCell(new int[] {0, 1});
+            assertEquals("131,558", cell.getFormattedValue());
+            assertEquals(
+                cell.getFormattedValue(),
+                cell.getPropertyValue("FORMATTED_VALUE"));
+            assertEquals("Standard", cell.getPropertyValue("FORMAT_STRING"));
+        } finally {
+            connection2.close();
+        }
+    }
+
     // todo: Test flushing a segment which is unconstrained
 
     // todo: Test flushing a segment where 2 or more axes are reduced. E.g.
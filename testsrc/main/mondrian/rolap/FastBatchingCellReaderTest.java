@@ -1156,6 +1156,45 @@ public class FastBatchingCellReaderTest extends BatchTestCase {
         assertFalse(secondBatch.canBatch(firstBatch));
     }
 
+    /**
+     * Tests that when the number of cell requests reaches the batch size,
+     * the reader sends the batch to the cache manager and carries on
+     * collecting requests, up to
+     * {@link MondrianProperties#CellBatchPipelineDepth} batches; and that
+     * {@link FastBatchingCellReader#loadAggregations()} loads every batch.
+     */
+    public void testPipelinedBatches() {
+        propSaver.set(propSaver.properties.CellBatchSize, 1);
+        propSaver.set(propSaver.properties.CellBatchPipelineDepth, 2);
+        final FastBatchingCellReader reader =
+            new FastBatchingCellReader(e, salesCube, aggMgr);
+        final CellRequest[] requests = {
+            createRequest(
+                cubeNameSales, measureUnitSales, tableCustomer, fieldGender,
+                "F"),
+            createRequest(
+                cubeNameSales, measureUnitSales, tableCustomer, fieldGender,
+                "M"),
+            createRequest(
+                cubeNameSales, measureUnitSales, tableTime, fieldYear, "1997"),
+        };
+        reader.recordCellRequest(requests[0]);
+        reader.recordCellRequest(requests[1]);
+        assertTrue(reader.isDirty());
+        try {
+            reader.recordCellRequest(requests[2]);
+            fail("expected CellRequestQuantumExceededException");
+        } catch (CellRequestQuantumExceededException ex) {
+            // ok; pipeline is full
+        }
+        assertEquals(3, reader.getMissCount());
+        assertTrue(reader.loadAggregations());
+        assertFalse(reader.isDirty());
+        for (CellRequest request : requests) {
+            assertNotNull(aggMgr.getCellFromCache(request));
+        }
+    }
+
     public void testCompositeBatchLoadAggregation() throws Exception {
         if (!getTestContext().getDialect().supportsGroupingSets()) {
             return;
@@ -1206,6 +1245,7 @@ public class FastBatchingCellReaderTest extends BatchTestCase {
         MondrianServer.forConnection(
             getTestContext().getConnection())
                 .getAggregationManager().cacheMgr.execute(
+                    salesCube.getStar(),
                     new SegmentCacheManager.Command<Void>() {
                         private final Locus locus =
                             Locus.peek();
@@ -9,6 +9,8 @@
 
 package mondrian.rolap;
 
+import mondrian.mdx.MemberExpr;
+import mondrian.mdx.ResolvedFunCall;
 import mondrian.olap.*;
 import mondrian.olap.CacheControl.MemberEditCommand;
 import mondrian.olap.Hierarchy;
@@ -1138,6 +1140,69 @@ public class MemberCacheControlTest extends FoodMartTestCase {
         }
     }
 
+    /**
+     * Tests that a connection creates a query from the query plan cache if it
+     * has parsed the same text before, that each such query has calculated
+     * members of its own, and that editing members empties the cache.
+     */
+    public void testQueryPlanCache() {
+        propSaver.set(MondrianProperties.instance().QueryPlanCacheSize, 10);
+        final TestContext tc = getTestContext();
+        final Connection conn = tc.getConnection();
+        final String mdx =
+            "with member [Measures].[Double Sales] as\n"
+            + " '[Measures].[Unit Sales] * 2'\n"
+            + " set [CA Cities] as\n"
+            + " 'Filter([Retail].[CA].Children,\n"
+            + "   [Measures].[Double Sales] > 0)'\n"
+            + "select {[Measures].[Double Sales]} on columns,\n"
+            + " [CA Cities] on rows\n"
+            + "from [Sales]";
+        final Query q1 = conn.parseQuery(mdx);
+        final Query q2 = conn.parseQuery(mdx);
+        assertNotSame(q1, q2);
+
+        // The second query was copied from the first, so it shares the
+        // identifiers that were parsed for the first, but it has its own
+        // calculated member, and its axis refers to that member.
+        assertSame(
+            q1.getFormulas()[0].getIdentifier(),
+            q2.getFormulas()[0].getIdentifier());
+        final Member member2 = q2.getFormulas()[0].getMdxMember();
+        assertNotSame(q1.getFormulas()[0].getMdxMember(), member2);
+        assertSame(
+            member2,
+            ((MemberExpr) ((ResolvedFunCall) q2.getAxes()[0].getSet())
+                .getArg(0)).getMember());
+        assertNotSame(
+            member2,
+            conn.parseQuery(mdx).getFormulas()[0].getMdxMember());
+        assertEquals(Util.unparse(q1), Util.unparse(q2));
+        assertEquals(
+            TestContext.toString(conn.execute(q1)),
+            TestContext.toString(conn.execute(q2)));
+
+        // A query with parameters is not cached.
+        final String mdx2 =
+            "with member [Measures].[Foo] as\n"
+            + " 'Parameter(\"P\", NUMERIC, 1)'\n"
+            + "select {[Measures].[Foo]} on columns\n"
+            + "from [Sales]";
+        assertNotSame(
+            conn.parseQuery(mdx2).getFormulas()[0].getIdentifier(),
+            conn.parseQuery(mdx2).getFormulas()[0].getIdentifier());
+
+        // Deleting a member empties the cache.
+        final CacheControl cc = conn.getCacheControl(null);
+        cc.execute(
+            cc.createDeleteCommand(
+                findMember(tc, "Sales", "Retail", "CA", "San Francisco")));
+        final Query q3 = conn.parseQuery(mdx);
+        assertNotSame(
+            q1.getFormulas()[0].getIdentifier(),
+            q3.getFormulas()[0].getIdentifier());
+    }
+
     /**
      * Runs the same command ({@code foo(testContext, k)}) three times. Between
      * the 2nd and the 3rd, flushes the cache, and makes sure that the 3rd time
@@ -9,10 +9,20 @@
 
 package mondrian.rolap;
 
+import mondrian.olap.CacheControl;
+import mondrian.olap.Connection;
+import mondrian.olap.Cube;
+import mondrian.olap.QueryTiming;
 import mondrian.olap.Result;
 import mondrian.rolap.aggmatcher.AggTableTestCase;
+import mondrian.spi.ProfileHandler;
 import mondrian.test.TestContext;
 
+import org.olap4j.*;
+
+import java.sql.SQLException;
+import java.util.Arrays;
+
 /**
  * Testcase for
  *
@@ -322,6 +332,258 @@ Axis #2:
             + "Row #2: \n"
             + "Row #2: \n");
     }
+
+    /**
+     * Tests that evaluating cells in several threads, with
+     * {@link mondrian.olap.MondrianProperties#CellEvaluationParallelism},
+     * gives the same result as evaluating them in one thread.
+     */
+    public void testParallelCellEvaluation() {
+        final String mdx =
+            "with member [Measures].[Profit Share] as\n"
+            + "  '([Measures].[Store Sales] - [Measures].[Store Cost])\n"
+            + "   / ([Measures].[Store Sales], [Product].[All Products])',\n"
+            + "  format_string = '0.00%'\n"
+            + "select {[Measures].[Unit Sales], [Measures].[Profit Share]}\n"
+            + "  * [Time].[1997].Children on columns,\n"
+            + "  [Product].[Product Family].Members * [Gender].Members on rows\n"
+            + "from [Sales]";
+        final TestContext testContext = TestContext.instance();
+        clearCache(testContext);
+        final String expected =
+            TestContext.toString(testContext.executeQuery(mdx));
+
+        propSaver.set(propSaver.properties.CellEvaluationParallelism, 4);
+        clearCache(testContext);
+        assertEquals(
+            expected,
+            TestContext.toString(testContext.executeQuery(mdx)));
+
+        // With small batches, each thread's cell requests are loaded over
+        // several passes.
+        propSaver.set(propSaver.properties.CellBatchSize, 3);
+        clearCache(testContext);
+        assertEquals(
+            expected,
+            TestContext.toString(testContext.executeQuery(mdx)));
+
+        // More threads than rows, and more than processors. The shared pool
+        // never grows beyond its bound.
+        propSaver.set(propSaver.properties.CellEvaluationParallelism, 20);
+        assertEquals(
+            expected,
+            TestContext.toString(testContext.executeQuery(mdx)));
+        final int largestPoolSize =
+            RolapResult.getCellExecutorLargestPoolSize();
+        assertTrue(largestPoolSize >= 1);
+        assertTrue(
+            largestPoolSize + " > " + RolapResult.getCellExecutorMaxThreads(),
+            largestPoolSize <= RolapResult.getCellExecutorMaxThreads());
+    }
+
+    /**
+     * Tests that after a phase loads cells, the cells whose values were
+     * already known are not evaluated again.
+     */
+    public void testIncrementalPhases() throws SQLException {
+        final String mdx =
+            "select {[Measures].[Unit Sales], [Measures].[Store Sales]}"
+            + " on columns,\n"
+            + "  [Product].[Product Family].Members on rows\n"
+            + "from [Sales]";
+        final TestContext testContext = TestContext.instance();
+        clearCache(testContext);
+
+        // Load the [Unit Sales] cells, so that only the [Store Sales] cells
+        // are missing in the first pass of the query.
+        testContext.executeQuery(
+            "select [Measures].[Unit Sales] on columns,\n"
+            + "  [Product].[Product Family].Members on rows\n"
+            + "from [Sales]");
+
+        final OlapStatement statement =
+            testContext.getOlap4jConnection().createStatement();
+        final String[] timings = {null};
+        ((mondrian.server.Statement) statement).enableProfiling(
+            new ProfileHandler() {
+                public void explain(String plan, QueryTiming timing) {
+                    timings[0] = String.valueOf(timing);
+                }
+            });
+        final CellSet cellSet = statement.executeOlapQuery(mdx);
+        assertEquals(24597d, cellSet.getCell(0).getDoubleValue(), 0d);
+        assertEquals(48836.21d, cellSet.getCell(1).getDoubleValue(), 0.001d);
+        cellSet.close();
+        // The second pass evaluates only the 3 [Store Sales] cells.
+        assertTrue(
+            timings[0],
+            timings[0].contains(
+                RolapResult.CELL_EVALUATIONS_SAVED + " counted 3"));
+
+        testContext.assertQueryReturns(
+            mdx,
+            "Axis #0:\n"
+            + "{}\n"
+            + "Axis #1:\n"
+            + "{[Measures].[Unit Sales]}\n"
+            + "{[Measures].[Store Sales]}\n"
+            + "Axis #2:\n"
+            + "{[Product].[Drink]}\n"
+            + "{[Product].[Food]}\n"
+            + "{[Product].[Non-Consumable]}\n"
+            + "Row #0: 24,597\n"
+            + "Row #0: 48,836.21\n"
+            + "Row #1: 191,940\n"
+            + "Row #1: 409,035.59\n"
+            + "Row #2: 50,236\n"
+            + "Row #2: 107,366.33\n");
+    }
+
+    /**
+     * Tests that {@link ExpResultCache} keeps within its size limit, and
+     * removes temporary results before valid results.
+     */
+    public void testExpResultCacheLimit() {
+        propSaver.set(propSaver.properties.ExpCacheLimit, 10);
+        final ExpResultCache cache = new ExpResultCache();
+        cache.put("a", Arrays.asList(1, 2, 3, 4, 5), true);
+        cache.put("b", "x", false);
+        assertEquals(7, cache.getSize());
+
+        // Exceeds the limit; the temporary result goes first.
+        cache.put("c", Arrays.asList(1, 2, 3), true);
+        assertEquals(10, cache.getSize());
+        assertNull(cache.get("b"));
+        assertNotNull(cache.get("a"));
+        assertNotNull(cache.get("c"));
+
+        // Larger than the limit on its own; not cached.
+        cache.put("d", Arrays.asList(new Object[20]), true);
+        assertNull(cache.get("d"));
+        assertEquals(2, cache.getHitCount());
+        assertEquals(2, cache.getMissCount());
+
+        cache.clear(false);
+        assertEquals(10, cache.getSize());
+        cache.clear(true);
+        assertEquals(0, cache.getSize());
+    }
+
+    /**
+     * Tests that the result of a context-independent expression is shared
+     * between statements if
+     * {@link mondrian.olap.MondrianProperties#EnableSharedExpCache} is set,
+     * and that a cache flush removes it.
+     */
+    public void testSharedExpCache() throws SQLException {
+        propSaver.set(propSaver.properties.EnableSharedExpCache, true);
+        final String mdx =
+            "with member [Measures].[Family Rank] as\n"
+            + "  'Rank([Product].CurrentMember,"
+            + " [Product].[Product Family].Members)'\n"
+            + "select [Measures].[Family Rank] on columns,\n"
+            + "  [Product].[Product Family].Members on rows\n"
+            + "from [Sales]";
+        final TestContext testContext = TestContext.instance();
+        clearCache(testContext);
+        assertEquals(
+            0L,
+            executeAndCount(
+                testContext, mdx, ExpResultCache.SHARED_HIT_COUNT));
+        assertTrue(
+            executeAndCount(
+                testContext, mdx, ExpResultCache.SHARED_HIT_COUNT) > 0);
+        clearCache(testContext);
+        assertEquals(
+            0L,
+            executeAndCount(
+                testContext, mdx, ExpResultCache.SHARED_HIT_COUNT));
+    }
+
+    /**
+     * Tests that an expression that calls {@code Rnd()}, or a user-defined
+     * function that is not
+     * {@link mondrian.spi.UserDefinedFunction.Deterministic}, is not shared
+     * between statements, but one that calls a deterministic user-defined
+     * function is.
+     */
+    public void testSharedExpCacheVolatile() throws SQLException {
+        propSaver.set(propSaver.properties.EnableSharedExpCache, true);
+        final TestContext testContext =
+            TestContext.instance().create(
+                null, null, null, null,
+                "<UserDefinedFunction name=\"PlusOne\" "
+                + "className=\"mondrian.test.UdfTest$PlusOneUdf\"/>\n",
+                null);
+        final String[] conditions = {"Rnd() >= 0", "PlusOne(1) > 0"};
+        for (String condition : conditions) {
+            final String mdx = rankMdx(condition);
+            clearCache(testContext);
+            executeAndCount(
+                testContext, mdx, ExpResultCache.SHARED_HIT_COUNT);
+            assertEquals(
+                condition,
+                0L,
+                executeAndCount(
+                    testContext, mdx, ExpResultCache.SHARED_HIT_COUNT));
+        }
+
+        // Val is a deterministic user-defined function.
+        final String mdx = rankMdx("Val(\"1\") > 0");
+        clearCache(testContext);
+        executeAndCount(testContext, mdx, ExpResultCache.SHARED_HIT_COUNT);
+        assertTrue(
+            executeAndCount(
+                testContext, mdx, ExpResultCache.SHARED_HIT_COUNT) > 0);
+    }
+
+    /**
+     * Returns a query that ranks product families within those that meet a
+     * condition. The condition must be true for every family.
+     */
+    private static String rankMdx(String condition) {
+        return "with member [Measures].[Family Rank] as\n"
+            + "  'Rank([Product].CurrentMember,"
+            + " Filter([Product].[Product Family].Members, "
+            + condition + "))'\n"
+            + "select [Measures].[Family Rank] on columns,\n"
+            + "  [Product].[Product Family].Members on rows\n"
+            + "from [Sales]";
+    }
+
+    /**
+     * Executes a query that ranks product families, checks its result, and
+     * returns the value of a counter from its profile.
+     */
+    private static long executeAndCount(
+        TestContext testContext,
+        String mdx,
+        final String counter)
+        throws SQLException
+    {
+        final OlapStatement statement =
+            testContext.getOlap4jConnection().createStatement();
+        final long[] counts = {-1};
+        ((mondrian.server.Statement) statement).enableProfiling(
+            new ProfileHandler() {
+                public void explain(String plan, QueryTiming timing) {
+                    counts[0] = timing.getCount(counter);
+                }
+            });
+        final CellSet cellSet = statement.executeOlapQuery(mdx);
+        assertEquals(1d, cellSet.getCell(0).getDoubleValue(), 0d);
+        assertEquals(2d, cellSet.getCell(1).getDoubleValue(), 0d);
+        assertEquals(3d, cellSet.getCell(2).getDoubleValue(), 0d);
+        cellSet.close();
+        return counts[0];
+    }
+
+    private static void clearCache(TestContext testContext) {
+        final Connection connection = testContext.getConnection();
+        final CacheControl cacheControl = connection.getCacheControl(null);
+        final Cube salesCube = connection.getSchema().lookupCube("Sales", true);
+        cacheControl.flush(cacheControl.createMeasuresRegion(salesCube));
+    }
 }
 
 // End RolapResultTest.java
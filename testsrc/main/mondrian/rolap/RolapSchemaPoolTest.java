@@ -9,16 +9,21 @@
 
 package mondrian.rolap;
 
+import mondrian.olap.MondrianServer;
 import mondrian.olap.Util;
 import mondrian.olap.Util.PropertyList;
+import mondrian.server.monitor.WarmupInfo;
 import mondrian.spi.DynamicSchemaProcessor;
 import mondrian.test.FoodMartTestCase;
 import mondrian.test.TestContext;
 
 import java.io.File;
+import java.io.FileWriter;
 import java.io.IOException;
 import java.net.MalformedURLException;
 import java.net.URL;
+import java.util.Arrays;
+import java.util.List;
 import javax.sql.DataSource;
 
 /**
@@ -168,6 +173,69 @@ public class RolapSchemaPoolTest extends FoodMartTestCase {
         assertTrue(schema == schemaDS);
     }
 
+    /**
+     * Tests that the warm-up queries of a connection run in the background
+     * after its schema is loaded, and that their progress is reported.
+     */
+    public void testWarmup() throws Exception {
+        assertEquals(
+            Arrays.asList(
+                "select from [Sales]",
+                "select [Store].Children on 0\nfrom [Sales]"),
+            RolapSchemaWarmer.parseQueries(
+                "-- a comment\n"
+                + "select from [Sales];\n"
+                + "\n"
+                + "select [Store].Children on 0\n"
+                + "from [Sales]"));
+
+        final File file = File.createTempFile("warmup", ".mdx");
+        file.deleteOnExit();
+        final FileWriter writer = new FileWriter(file);
+        writer.write(
+            "select {[Measures].[Unit Sales]} on 0\n"
+            + "from [Sales];\n"
+            + "select from [Bogus];\n");
+        writer.close();
+
+        RolapSchemaPool pool = RolapSchemaPool.instance();
+        pool.clear();
+        String catalogUrl = getFoodmartCatalogUrl().toString();
+        Util.PropertyList connectInfo =
+            Util.parseConnectString(TestContext.getDefaultConnectString());
+        connectInfo.put(
+            RolapConnectionProperties.JdbcConnectionUuid.name(),
+            "UUID-warmup");
+        connectInfo.put(
+            RolapConnectionProperties.WarmupQueries.name(),
+            Util.toURL(file).toString());
+        final RolapSchema schema =
+            pool.get(
+                catalogUrl,
+                "connectionKeyA",
+                "joeTheUser",
+                "aDataSource",
+                connectInfo);
+
+        WarmupInfo info = null;
+        for (int i = 0; i < 600; i++) {
+            final List<WarmupInfo> infos =
+                MondrianServer.forId(null).getMonitor().getWarmups();
+            info = infos.get(infos.size() - 1);
+            if (info.isDone()) {
+                break;
+            }
+            Thread.sleep(100);
+        }
+        assertEquals(schema.getName(), info.getSchemaName());
+        assertTrue(info.isDone());
+        assertFalse(info.isCancelled());
+        assertEquals(2, info.getQueryCount());
+        assertEquals(1, info.getExecutedCount());
+        assertEquals(1, info.getFailedCount());
+        assertEquals(1d, info.getProgress());
+        pool.clear();
+    }
 
     protected URL getFoodmartCatalogUrl() {
         // Works if we are running in root directory of source tree
@@ -0,0 +1,147 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.server.monitor.SqlStatementEvent.Purpose;
+
+import junit.framework.TestCase;
+
+import java.util.*;
+
+/**
+ * Unit test for {@link SqlAdmissionController}.
+ *
+ * @author agent
+ */
+public class SqlAdmissionControllerTest extends TestCase {
+    public SqlAdmissionControllerTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests that when a statement finishes, a waiting member lookup runs
+     * before a drill-through that has been waiting longer.
+     */
+    public void testPriority() throws Exception {
+        final SqlAdmissionController controller =
+            new SqlAdmissionController(1, new int[Purpose.values().length]);
+        controller.acquire(Purpose.OTHER);
+
+        final List<Purpose> admitted =
+            Collections.synchronizedList(new ArrayList<Purpose>());
+        final Thread drillThrough =
+            start(controller, Purpose.DRILL_THROUGH, admitted);
+        waitForQueued(controller, Purpose.DRILL_THROUGH, 1);
+        final Thread tuples = start(controller, Purpose.TUPLES, admitted);
+        waitForQueued(controller, Purpose.TUPLES, 1);
+        assertTrue(admitted.isEmpty());
+
+        controller.release(Purpose.OTHER);
+        drillThrough.join(10000);
+        tuples.join(10000);
+        assertEquals(
+            Arrays.asList(Purpose.TUPLES, Purpose.DRILL_THROUGH), admitted);
+        assertEquals(0, controller.getActiveCount(Purpose.TUPLES));
+        assertEquals(0, controller.getActiveCount(Purpose.DRILL_THROUGH));
+    }
+
+    /**
+     * Tests that a lane at its limit waits, but does not hold up other
+     * lanes.
+     */
+    public void testLaneLimit() throws Exception {
+        final int[] laneLimits = new int[Purpose.values().length];
+        laneLimits[Purpose.DRILL_THROUGH.ordinal()] = 1;
+        final SqlAdmissionController controller =
+            new SqlAdmissionController(3, laneLimits);
+        controller.acquire(Purpose.DRILL_THROUGH);
+
+        final List<Purpose> admitted =
+            Collections.synchronizedList(new ArrayList<Purpose>());
+        final Thread drillThrough =
+            start(controller, Purpose.DRILL_THROUGH, admitted);
+        waitForQueued(controller, Purpose.DRILL_THROUGH, 1);
+
+        // Cell loads still run, up to the overall limit.
+        controller.acquire(Purpose.CELL_SEGMENT);
+        controller.acquire(Purpose.CELL_SEGMENT);
+        assertEquals(2, controller.getActiveCount(Purpose.CELL_SEGMENT));
+        assertTrue(admitted.isEmpty());
+
+        controller.release(Purpose.CELL_SEGMENT);
+        controller.release(Purpose.CELL_SEGMENT);
+        assertEquals(1, controller.getQueuedCount(Purpose.DRILL_THROUGH));
+        controller.release(Purpose.DRILL_THROUGH);
+        drillThrough.join(10000);
+        assertEquals(Arrays.asList(Purpose.DRILL_THROUGH), admitted);
+    }
+
+    /**
+     * Tests that a statement that is interrupted while waiting leaves the
+     * queue.
+     */
+    public void testInterrupt() throws Exception {
+        final SqlAdmissionController controller =
+            new SqlAdmissionController(1, new int[Purpose.values().length]);
+        controller.acquire(Purpose.OTHER);
+        final List<Purpose> admitted =
+            Collections.synchronizedList(new ArrayList<Purpose>());
+        final Thread thread = start(controller, Purpose.TUPLES, admitted);
+        waitForQueued(controller, Purpose.TUPLES, 1);
+        thread.interrupt();
+        thread.join(10000);
+        assertEquals(0, controller.getQueuedCount(Purpose.TUPLES));
+        assertTrue(admitted.isEmpty());
+        controller.release(Purpose.OTHER);
+        controller.acquire(Purpose.TUPLES);
+        assertEquals(1, controller.getActiveCount(Purpose.TUPLES));
+    }
+
+    /**
+     * Starts a thread that waits to be admitted, records its purpose, and
+     * finishes straight away.
+     */
+    private static Thread start(
+        final SqlAdmissionController controller,
+        final Purpose purpose,
+        final List<Purpose> admitted)
+    {
+        final Thread thread = new Thread(
+            new Runnable() {
+                public void run() {
+                    try {
+                        controller.acquire(purpose);
+                    } catch (InterruptedException e) {
+                        return;
+                    }
+                    admitted.add(purpose);
+                    controller.release(purpose);
+                }
+            });
+        thread.start();
+        return thread;
+    }
+
+    private static void waitForQueued(
+        SqlAdmissionController controller,
+        Purpose purpose,
+        int count) throws InterruptedException
+    {
+        for (int i = 0; i < 1000; i++) {
+            if (controller.getQueuedCount(purpose) == count) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("expected " + count + " " + purpose + " statements waiting");
+    }
+}
+
+// End SqlAdmissionControllerTest.java
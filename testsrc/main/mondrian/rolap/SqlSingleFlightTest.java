@@ -0,0 +1,122 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap;
+
+import mondrian.server.monitor.SqlStatementEvent.Purpose;
+
+import junit.framework.TestCase;
+
+import java.sql.Statement;
+import java.util.Collections;
+import javax.sql.DataSource;
+
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+
+/**
+ * Unit test for {@link SqlSingleFlight}.
+ *
+ * @author agent
+ */
+public class SqlSingleFlightTest extends TestCase {
+    public SqlSingleFlightTest(String name) {
+        super(name);
+    }
+
+    private SqlSingleFlight.Key key(DataSource dataSource, String sql) {
+        return new SqlSingleFlight.Key(
+            dataSource,
+            sql,
+            Collections.singletonList(SqlStatement.Type.INT),
+            0,
+            Purpose.TUPLES);
+    }
+
+    /**
+     * Tests that a statement with the same SQL attaches to the executing
+     * flight, and that a statement with different SQL does not.
+     */
+    public void testJoin() {
+        final DataSource dataSource = mock(DataSource.class);
+        final SqlSingleFlight.Key key = key(dataSource, "select 1");
+        final SqlSingleFlight.Flight leader = new SqlSingleFlight.Flight();
+        assertSame(leader, SqlSingleFlight.join(key, leader));
+        try {
+            assertSame(
+                leader,
+                SqlSingleFlight.join(
+                    key(dataSource, "select 1"),
+                    new SqlSingleFlight.Flight()));
+
+            final SqlSingleFlight.Flight other = new SqlSingleFlight.Flight();
+            final SqlSingleFlight.Key otherKey = key(dataSource, "select 2");
+            assertSame(other, SqlSingleFlight.join(otherKey, other));
+            SqlSingleFlight.remove(otherKey, other);
+        } finally {
+            SqlSingleFlight.remove(key, leader);
+        }
+
+        // Once removed, the flight is not joined again.
+        final SqlSingleFlight.Flight next = new SqlSingleFlight.Flight();
+        assertSame(next, SqlSingleFlight.join(key, next));
+        SqlSingleFlight.remove(key, next);
+    }
+
+    /**
+     * Tests that the JDBC statement is canceled only when every statement
+     * attached to the flight has been canceled.
+     */
+    public void testCancel() throws Exception {
+        final Statement statement = mock(Statement.class);
+        final SqlSingleFlight.Flight flight = new SqlSingleFlight.Flight();
+        flight.setStatement(statement);
+        assertTrue(flight.attach());
+
+        flight.cancelHandle().cancel();
+        verify(statement, never()).cancel();
+
+        flight.detach();
+        verify(statement, times(1)).cancel();
+
+        // A canceled flight accepts no more statements.
+        assertFalse(flight.attach());
+    }
+
+    /**
+     * Tests that once the leader stops sharing its rows, canceling the other
+     * statements does not cancel the JDBC statement, canceling the leader
+     * does, and a new statement starts a new flight.
+     */
+    public void testUnshare() throws Exception {
+        final DataSource dataSource = mock(DataSource.class);
+        final SqlSingleFlight.Key key = key(dataSource, "select 1");
+        final Statement statement = mock(Statement.class);
+        final SqlSingleFlight.Flight flight = new SqlSingleFlight.Flight();
+        assertSame(flight, SqlSingleFlight.join(key, flight));
+        flight.setStatement(statement);
+        assertSame(
+            flight,
+            SqlSingleFlight.join(key, new SqlSingleFlight.Flight()));
+
+        SqlSingleFlight.unshare(key, flight);
+        final SqlSingleFlight.Flight next = new SqlSingleFlight.Flight();
+        assertSame(next, SqlSingleFlight.join(key, next));
+        SqlSingleFlight.remove(key, next);
+
+        flight.detach();
+        verify(statement, never()).cancel();
+        flight.cancelHandle().cancel();
+        verify(statement, times(1)).cancel();
+    }
+}
+
+// End SqlSingleFlightTest.java
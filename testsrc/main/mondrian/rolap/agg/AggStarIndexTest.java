@@ -0,0 +1,222 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.rolap.BitKey;
+import mondrian.rolap.RolapStar;
+import mondrian.rolap.aggmatcher.AggStar;
+
+import junit.framework.TestCase;
+
+import org.apache.log4j.Logger;
+
+import java.util.*;
+
+import static org.mockito.Mockito.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+/**
+ * Unit test for {@link AggStarIndex} and for
+ * {@link AggregationManager#findAgg}, using synthetic aggregate tables.
+ *
+ * @author agent
+ */
+public class AggStarIndexTest extends TestCase {
+    private static final Logger LOGGER =
+        Logger.getLogger(AggStarIndexTest.class);
+
+    /** Number of columns of the synthetic star. */
+    private static final int COLUMN_COUNT = 60;
+
+    /** Columns 0 .. LEVEL_COUNT - 1 are levels, the rest measures. */
+    private static final int LEVEL_COUNT = 40;
+
+    public AggStarIndexTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests that the candidates of an index are exactly the aggregate tables
+     * whose columns are a superset of the request, in order.
+     */
+    public void testCandidates() {
+        final Random random = new Random(1234);
+        final List<AggStar> aggStars = createAggStars(random, 50);
+        final AggStarIndex index = new AggStarIndex(aggStars);
+        for (int i = 0; i < 1000; i++) {
+            final BitKey bitKey =
+                randomBitKey(random, 0, COLUMN_COUNT, random.nextInt(6));
+            final BitSet expected = new BitSet();
+            for (int j = 0; j < aggStars.size(); j++) {
+                if (aggStars.get(j).superSetMatch(bitKey)) {
+                    expected.set(j);
+                }
+            }
+            assertEquals(expected, index.candidates(bitKey));
+        }
+
+        // A request for no columns matches every table.
+        assertEquals(
+            aggStars.size(),
+            index.candidates(BitKey.Factory.makeBitKey(COLUMN_COUNT))
+                .cardinality());
+
+        // A column beyond those of any table matches none.
+        final BitKey bitKey = BitKey.Factory.makeBitKey(COLUMN_COUNT + 10);
+        bitKey.set(COLUMN_COUNT + 5);
+        assertTrue(index.candidates(bitKey).isEmpty());
+
+        // An index of no tables.
+        assertTrue(
+            new AggStarIndex(Collections.<AggStar>emptyList())
+                .candidates(bitKey).isEmpty());
+    }
+
+    /**
+     * Tests that {@link AggregationManager#findAgg} returns the first
+     * suitable table, and that it remembers its result.
+     */
+    public void testFindAgg() {
+        final Random random = new Random(5678);
+        final List<AggStar> aggStars = createAggStars(random, 50);
+        final AggStarIndex index = new AggStarIndex(aggStars);
+        final RolapStar star = mock(RolapStar.class);
+        when(star.getAggStarIndex()).thenReturn(index);
+        for (int i = 0; i < 1000; i++) {
+            final BitKey levelBitKey =
+                randomBitKey(random, 0, LEVEL_COUNT, 1 + random.nextInt(3));
+            final BitKey measureBitKey =
+                randomBitKey(random, LEVEL_COUNT, COLUMN_COUNT, 1);
+            final AggStar expected =
+                linearFind(aggStars, levelBitKey.or(measureBitKey));
+            final boolean[] rollup = {false};
+            assertSame(
+                expected,
+                AggregationManager.findAgg(
+                    star, levelBitKey, measureBitKey, rollup));
+            if (expected != null) {
+                assertEquals(
+                    !expected.getLevelBitKey().equals(levelBitKey),
+                    rollup[0]);
+            }
+
+            // Second time, the result comes from the memo.
+            final boolean[] rollup2 = {false};
+            assertSame(
+                expected,
+                AggregationManager.findAgg(
+                    star, levelBitKey.copy(), measureBitKey.copy(), rollup2));
+            assertEquals(rollup[0], rollup2[0]);
+            assertNotNull(index.lookup(levelBitKey, measureBitKey));
+        }
+    }
+
+    /**
+     * Compares the time to find an aggregate table by scanning the tables
+     * with the time taken using an index. Durations are logged only if
+     * logging is enabled at debug level.
+     */
+    public void testFindAggPerformance() {
+        final Random random = new Random(4321);
+        final List<AggStar> aggStars = createAggStars(random, 100);
+        final List<BitKey> bitKeys = new ArrayList<BitKey>();
+        for (AggStar aggStar : aggStars) {
+            bitKeys.add(aggStar.getBitKey());
+        }
+        final AggStarIndex index = new AggStarIndex(aggStars);
+        final List<BitKey> requests = new ArrayList<BitKey>();
+        for (int i = 0; i < 10000; i++) {
+            requests.add(
+                randomBitKey(random, 0, COLUMN_COUNT, 2 + random.nextInt(4)));
+        }
+        for (int iteration = 0; iteration < 5; iteration++) {
+            long start = System.nanoTime();
+            int linearCount = 0;
+            for (BitKey request : requests) {
+                for (BitKey bitKey : bitKeys) {
+                    if (bitKey.isSuperSetOf(request)) {
+                        ++linearCount;
+                        break;
+                    }
+                }
+            }
+            final long linearNanos = System.nanoTime() - start;
+
+            start = System.nanoTime();
+            int indexCount = 0;
+            for (BitKey request : requests) {
+                if (index.candidates(request).nextSetBit(0) >= 0) {
+                    ++indexCount;
+                }
+            }
+            final long indexNanos = System.nanoTime() - start;
+            assertEquals(linearCount, indexCount);
+            if (LOGGER.isDebugEnabled()) {
+                LOGGER.debug(
+                    "iteration #" + iteration + ": " + requests.size()
+                    + " requests, " + aggStars.size() + " tables; scan "
+                    + linearNanos / 1000 + " us, index "
+                    + indexNanos / 1000 + " us");
+            }
+        }
+    }
+
+    private static AggStar linearFind(List<AggStar> aggStars, BitKey bitKey) {
+        for (AggStar aggStar : aggStars) {
+            if (aggStar.superSetMatch(bitKey)) {
+                return aggStar;
+            }
+        }
+        return null;
+    }
+
+    /**
+     * Creates synthetic aggregate tables, smallest first, with no distinct
+     * count measures. Each has a few levels and measures; larger tables tend
+     * to have more.
+     */
+    private static List<AggStar> createAggStars(Random random, int count) {
+        final List<AggStar> aggStars = new ArrayList<AggStar>();
+        for (int i = 0; i < count; i++) {
+            final BitKey levelBitKey =
+                randomBitKey(
+                    random, 0, LEVEL_COUNT, 2 + random.nextInt(4) + i / 10);
+            final BitKey measureBitKey =
+                randomBitKey(
+                    random, LEVEL_COUNT, COLUMN_COUNT, 1 + random.nextInt(8));
+            final BitKey bitKey = levelBitKey.or(measureBitKey);
+            final AggStar aggStar = mock(AggStar.class);
+            when(aggStar.getSize()).thenReturn(i);
+            when(aggStar.getBitKey()).thenReturn(bitKey);
+            when(aggStar.getLevelBitKey()).thenReturn(levelBitKey);
+            when(aggStar.getMeasureBitKey()).thenReturn(measureBitKey);
+            when(aggStar.getDistinctMeasureBitKey())
+                .thenReturn(BitKey.Factory.makeBitKey(COLUMN_COUNT));
+            when(aggStar.superSetMatch(any(BitKey.class))).thenCallRealMethod();
+            when(aggStar.isFullyCollapsed()).thenReturn(true);
+            when(aggStar.hasIgnoredColumns()).thenReturn(false);
+            aggStars.add(aggStar);
+        }
+        return aggStars;
+    }
+
+    private static BitKey randomBitKey(
+        Random random, int from, int to, int bitCount)
+    {
+        final BitKey bitKey = BitKey.Factory.makeBitKey(COLUMN_COUNT);
+        for (int i = 0; i < bitCount; i++) {
+            bitKey.set(from + random.nextInt(to - from));
+        }
+        return bitKey;
+    }
+}
+
+// End AggStarIndexTest.java
@@ -10,10 +10,14 @@ package mondrian.rolap.agg;
 
 import mondrian.olap.*;
 import mondrian.rolap.*;
+import mondrian.rolap.cache.MemorySegmentCache;
+import mondrian.server.monitor.Monitor;
+import mondrian.server.monitor.ServerInfo;
 import mondrian.spi.*;
 import mondrian.test.*;
 import mondrian.util.*;
 
+import java.io.*;
 import java.util.*;
 
 /**
@@ -318,6 +322,371 @@ public class SegmentBuilderTest extends BatchTestCase {
             valueMap.toString());
     }
 
+    /**
+     * Tests that a dense body converted to off-heap storage has the same
+     * values and null indicators, and that it serializes as an ordinary
+     * on-heap body.
+     */
+    public void testOffHeapSegmentBody() throws Exception {
+        List<Pair<SortedSet<Comparable>, Boolean>> axes =
+            new ArrayList<Pair<SortedSet<Comparable>, Boolean>>();
+        axes.add(new Pair<SortedSet<Comparable>, Boolean>(
+            new TreeSet<Comparable>(
+                Arrays.asList(new String[] { "foo1", "bar1"})), true));
+        axes.add(new Pair<SortedSet<Comparable>, Boolean>(
+            new TreeSet<Comparable>(
+                Arrays.asList(new String[] { "foo2", "bar2", "baz3"})), false));
+        final BitSet nullValues = new BitSet();
+        nullValues.set(1);
+        nullValues.set(7);
+        SegmentBody heapBody = new DenseDoubleSegmentBody(
+            nullValues,
+            new double[]{1.5, 0, 3, 4, 0, 6, 7, 0, 9},
+            axes);
+        SegmentBody offHeapBody = SegmentBuilder.toOffHeap(heapBody);
+        assertTrue(offHeapBody instanceof OffHeapDoubleSegmentBody);
+        assertEquals(
+            9 * 8 + 8, SegmentBuilder.getOffHeapByteCount(offHeapBody));
+        assertEquals(
+            heapBody.getValueMap().toString(),
+            offHeapBody.getValueMap().toString());
+        assertEquals(
+            nullValues, offHeapBody.getNullValueIndicators());
+        assertArraysAreEqual(
+            (double[]) heapBody.getValueArray(),
+            (double[]) offHeapBody.getValueArray());
+
+        final ByteArrayOutputStream out = new ByteArrayOutputStream();
+        final ObjectOutputStream oos = new ObjectOutputStream(out);
+        oos.writeObject(offHeapBody);
+        oos.close();
+        final Object o =
+            new ObjectInputStream(
+                new ByteArrayInputStream(out.toByteArray())).readObject();
+        assertTrue(o instanceof DenseDoubleSegmentBody);
+        assertEquals(
+            heapBody.getValueMap().toString(),
+            ((SegmentBody) o).getValueMap().toString());
+
+        // Bodies that cannot be stored off-heap are returned unchanged.
+        SegmentBody objectBody =
+            new DenseObjectSegmentBody(new Object[9], axes);
+        assertSame(objectBody, SegmentBuilder.toOffHeap(objectBody));
+        assertEquals(0, SegmentBuilder.getOffHeapByteCount(objectBody));
+    }
+
+    /**
+     * Tests a sparse dataset of native values, keyed by cell ordinal: lookup,
+     * growth of the hash table, and conversion to and from a segment body.
+     */
+    public void testSparseNativeSegmentDataset() {
+        final long[] axisMultipliers =
+            SparseNativeSegmentDataset.computeAxisMultipliers(
+                new int[] {1000, 1000});
+        assertEquals("[1000, 1]", Arrays.toString(axisMultipliers));
+        assertNull(
+            SparseNativeSegmentDataset.computeAxisMultipliers(
+                new int[] {Integer.MAX_VALUE, Integer.MAX_VALUE, 4}));
+
+        final BitSet nullValues = new BitSet();
+        nullValues.set(1);
+        final SparseDoubleSegmentDataset source =
+            new SparseDoubleSegmentDataset(
+                axisMultipliers,
+                new long[] {1, 1002, 999999},
+                new double[] {1.5, 0, 9},
+                nullValues);
+        assertEquals(1.5, source.getObject(cellKey(0, 1)));
+        assertEquals(9d, source.getDouble(cellKey(999, 999)));
+        assertTrue(source.exists(cellKey(1, 2)));
+        assertTrue(source.isNull(cellKey(1, 2)));
+        assertFalse(source.exists(cellKey(0, 0)));
+        assertNull(source.getObject(cellKey(0, 0)));
+
+        // Populate an empty dataset with enough cells to force it to grow.
+        final SparseDoubleSegmentDataset target =
+            new SparseDoubleSegmentDataset(axisMultipliers);
+        for (Map.Entry<CellKey, Object> entry : source) {
+            target.populateFrom(
+                entry.getKey().getOrdinals(), source, entry.getKey());
+        }
+        for (int i = 0; i < 500; i++) {
+            target.populateFrom(new int[] {i, 500}, source, cellKey(0, 1));
+        }
+        assertEquals(503, target.size);
+        assertEquals(1.5, target.getObject(cellKey(7, 500)));
+        assertTrue(target.isNull(cellKey(1, 2)));
+        assertFalse(target.exists(cellKey(7, 501)));
+
+        // Round trip through a segment body.
+        final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+            new ArrayList<Pair<SortedSet<Comparable>, Boolean>>();
+        for (int i = 0; i < 2; i++) {
+            final SortedSet<Comparable> values = new TreeSet<Comparable>();
+            for (int j = 0; j < 1000; j++) {
+                values.add(j);
+            }
+            axes.add(Pair.of(values, false));
+        }
+        final SegmentBody body = target.createSegmentBody(axes);
+        assertTrue(body instanceof SparseDoubleSegmentBody);
+        final Map<CellKey, Object> valueMap = body.getValueMap();
+        assertEquals(503, valueMap.size());
+        assertEquals(9d, valueMap.get(cellKey(999, 999)));
+        assertTrue(valueMap.containsKey(cellKey(1, 2)));
+        assertNull(valueMap.get(cellKey(1, 2)));
+    }
+
+    private static CellKey cellKey(int i, int j) {
+        return CellKey.Generator.newCellKey(new int[] {i, j});
+    }
+
+    /**
+     * Tests that the size of an off-heap body is computed without overflow,
+     * and that a body too large for one buffer stays on the heap.
+     */
+    public void testOffHeapSegmentBodyTooLarge() {
+        assertEquals(
+            2400000000L + 4687500L * 8,
+            AbstractOffHeapSegmentBody.byteCount(300000000, 8));
+        assertFalse(AbstractOffHeapSegmentBody.fits(300000000, 8));
+        assertTrue(AbstractOffHeapSegmentBody.fits(300000000, 4));
+    }
+
+    /**
+     * Tests that the local segment cache stores dense segments off-heap,
+     * evicts the least recently used off-heap segment to stay within
+     * {@link MondrianProperties#OffHeapSegmentCacheLimit}, and that the
+     * monitor reports the native memory held and the number of evictions.
+     */
+    public void testOffHeapSegmentCacheEviction() {
+        propSaver.set(
+            MondrianProperties.instance().EnableOffHeapSegmentCache, true);
+        propSaver.set(
+            MondrianProperties.instance().OffHeapSegmentCacheLimit, 1);
+        final MemorySegmentCache cache = new MemorySegmentCache();
+        final Monitor monitor =
+            MondrianServer.forConnection(getConnection()).getMonitor();
+        final long bytes0 = MemorySegmentCache.getOffHeapByteCount();
+        final long evictions0 = MemorySegmentCache.getOffHeapEvictionCount();
+        assertEquals(bytes0, monitor.getServer().segmentOffHeapBytes);
+
+        // 300 * 300 doubles and a null bitmap of 1,407 longs.
+        final Map.Entry<SegmentHeader, SegmentBody> a =
+            makeDenseDoubleSegmentMap(new String[] {"a1", "a2"}, 300)
+                .entrySet().iterator().next();
+        final long aBytes = 300 * 300 * 8 + 1407 * 8;
+        cache.put(a.getKey(), a.getValue());
+        final SegmentBody aBody = cache.get(a.getKey());
+        assertTrue(aBody instanceof OffHeapDoubleSegmentBody);
+        assertEquals(aBytes, SegmentBuilder.getOffHeapByteCount(aBody));
+        assertEquals(
+            bytes0 + aBytes, MemorySegmentCache.getOffHeapByteCount());
+        assertEquals(
+            bytes0 + aBytes, monitor.getServer().segmentOffHeapBytes);
+
+        // 250 * 250 doubles and 977 longs. Both segments together exceed the
+        // budget of 1MB, so the least recently used one is evicted.
+        final Map.Entry<SegmentHeader, SegmentBody> b =
+            makeDenseDoubleSegmentMap(new String[] {"b1", "b2"}, 250)
+                .entrySet().iterator().next();
+        final long bBytes = 250 * 250 * 8 + 977 * 8;
+        final List<SegmentHeader> deleted = new ArrayList<SegmentHeader>();
+        cache.addListener(
+            new SegmentCache.SegmentCacheListener() {
+                public void handle(SegmentCacheEvent e) {
+                    if (e.getEventType()
+                        == SegmentCacheEvent.EventType.ENTRY_DELETED)
+                    {
+                        deleted.add(e.getSource());
+                    }
+                }
+            });
+        cache.put(b.getKey(), b.getValue());
+        assertFalse(cache.contains(a.getKey()));
+        assertTrue(cache.contains(b.getKey()));
+        assertEquals(Collections.singletonList(a.getKey()), deleted);
+        assertEquals(
+            bytes0 + bBytes, MemorySegmentCache.getOffHeapByteCount());
+        assertEquals(
+            evictions0 + 1, MemorySegmentCache.getOffHeapEvictionCount());
+        final ServerInfo serverInfo = monitor.getServer();
+        assertEquals(bytes0 + bBytes, serverInfo.segmentOffHeapBytes);
+        assertEquals(evictions0 + 1, serverInfo.segmentOffHeapEvictionCount);
+
+        // A segment larger than the whole budget stays on the heap.
+        final Map.Entry<SegmentHeader, SegmentBody> c =
+            makeDenseDoubleSegmentMap(new String[] {"c1", "c2"}, 400)
+                .entrySet().iterator().next();
+        cache.put(c.getKey(), c.getValue());
+        assertTrue(cache.get(c.getKey()) instanceof DenseDoubleSegmentBody);
+        assertTrue(cache.contains(b.getKey()));
+        assertEquals(
+            bytes0 + bBytes, MemorySegmentCache.getOffHeapByteCount());
+
+        // Removing and tearing down release the native memory.
+        assertTrue(cache.remove(b.getKey()));
+        assertEquals(bytes0, MemorySegmentCache.getOffHeapByteCount());
+        cache.tearDown();
+        assertEquals(bytes0, monitor.getServer().segmentOffHeapBytes);
+    }
+
+    /**
+     * Tests that the local segment cache writes segments to its spill
+     * directory only when they are evicted from memory, reads them back after
+     * a restart, and keeps the files within the size limit.
+     */
+    public void testSegmentCacheSpill() throws Exception {
+        final File dir = File.createTempFile("mondrian-spill", "");
+        assertTrue(dir.delete());
+        propSaver.set(
+            MondrianProperties.instance().SegmentCacheSpillDirectory,
+            dir.getPath());
+        propSaver.set(
+            MondrianProperties.instance().SegmentCacheSpillLimit, 1);
+        propSaver.set(
+            MondrianProperties.instance().SegmentCacheEvictionPolicy, "cost");
+        propSaver.set(MondrianProperties.instance().SegmentCacheLimit, 1);
+        try {
+            // Each body has 300 * 300 doubles, about 0.7MB, so only one fits
+            // in memory, and only one fits on disk.
+            final Map.Entry<SegmentHeader, SegmentBody> a =
+                makeDenseDoubleSegmentMap(new String[] {"a1", "a2"}, 300)
+                    .entrySet().iterator().next();
+            final Map.Entry<SegmentHeader, SegmentBody> b =
+                makeDenseDoubleSegmentMap(new String[] {"b1", "b2"}, 300)
+                    .entrySet().iterator().next();
+            MemorySegmentCache cache = new MemorySegmentCache();
+            cache.put(a.getKey(), a.getValue());
+            assertEquals(0, dir.list().length);
+
+            // Putting b evicts a, which is written to disk in the
+            // background. Meanwhile, and afterwards, a is still in the cache.
+            cache.put(b.getKey(), b.getValue());
+            assertTrue(cache.contains(a.getKey()));
+            waitForSpill(cache, a.getKey());
+            assertEquals(1, dir.list().length);
+            assertTrue(cache.contains(a.getKey()));
+            cache.tearDown();
+
+            // A new cache, as after a restart, finds the segment on disk.
+            cache = new MemorySegmentCache();
+            assertEquals(
+                Collections.singletonList(a.getKey()),
+                cache.getSegmentHeaders());
+            assertTrue(cache.contains(a.getKey()));
+            final SegmentBody body = cache.get(a.getKey());
+            assertNotNull(body);
+            assertArraysAreEqual(
+                (double[]) a.getValue().getValueArray(),
+                (double[]) body.getValueArray());
+
+            // a is back in memory, and has been used more than b, so b is
+            // rejected and written to disk instead. Its file exceeds the
+            // limit, and evicts the least recently used file, a's; a is
+            // still in memory.
+            cache.put(b.getKey(), b.getValue());
+            waitForSpill(cache, b.getKey());
+            assertEquals(
+                Collections.singletonList(b.getKey()),
+                cache.getSpilledSegmentHeaders());
+            assertEquals(1, dir.list().length);
+            assertNotNull(cache.get(a.getKey()));
+
+            // Removing a segment deletes its file.
+            assertTrue(cache.remove(b.getKey()));
+            assertEquals(0, dir.list().length);
+            cache.tearDown();
+        } finally {
+            final File[] files = dir.listFiles();
+            if (files != null) {
+                for (File file : files) {
+                    file.delete();
+                }
+            }
+            dir.delete();
+        }
+    }
+
+    /**
+     * Waits until the local segment cache has written a segment to its spill
+     * directory.
+     */
+    private static void waitForSpill(
+        MemorySegmentCache cache,
+        SegmentHeader header)
+        throws InterruptedException
+    {
+        for (int i = 0; i < 1000; i++) {
+            if (cache.getSpilledSegmentHeaders().contains(header)) {
+                return;
+            }
+            Thread.sleep(10);
+        }
+        fail("segment was not written to disk: " + header);
+    }
+
+    /**
+     * Tests the "cost" eviction policy of {@link MemorySegmentCache}. A large
+     * segment that is rarely used is evicted first, and a new segment that is
+     * worth less than the segments it would displace is not admitted.
+     */
+    public void testSegmentCacheCostPolicy() {
+        propSaver.set(
+            MondrianProperties.instance().SegmentCacheEvictionPolicy, "cost");
+        propSaver.set(MondrianProperties.instance().SegmentCacheLimit, 1);
+        final MemorySegmentCache cache = new MemorySegmentCache();
+
+        // A cold segment of 300 * 300 doubles, 720,000 bytes, whose load
+        // cost is not known.
+        final Map.Entry<SegmentHeader, SegmentBody> cold =
+            makeDenseDoubleSegmentMap(new String[] {"c1", "c2"}, 300)
+                .entrySet().iterator().next();
+        cache.put(cold.getKey(), cold.getValue());
+
+        // Eight hot segments of 20,000 bytes each, each used 5 times.
+        final List<SegmentHeader> hot = new ArrayList<SegmentHeader>();
+        for (int i = 0; i < 8; i++) {
+            final Map.Entry<SegmentHeader, SegmentBody> entry =
+                makeDenseDoubleSegmentMap(
+                    new String[] {"h" + i + "a", "h" + i + "b"}, 50)
+                    .entrySet().iterator().next();
+            cache.setLoadCost(entry.getKey(), 10000000L);
+            cache.put(entry.getKey(), entry.getValue());
+            hot.add(entry.getKey());
+        }
+        for (int j = 0; j < 5; j++) {
+            for (SegmentHeader header : hot) {
+                assertNotNull(cache.get(header));
+            }
+        }
+        assertTrue(cache.contains(cold.getKey()));
+
+        // A new segment of 180,000 bytes that took 50ms to load does not fit.
+        // The cold segment is the least valuable per byte, and is evicted.
+        final Map.Entry<SegmentHeader, SegmentBody> medium =
+            makeDenseDoubleSegmentMap(new String[] {"m1", "m2"}, 150)
+                .entrySet().iterator().next();
+        cache.setLoadCost(medium.getKey(), 50000000L);
+        cache.put(medium.getKey(), medium.getValue());
+        assertTrue(cache.contains(medium.getKey()));
+        assertFalse(cache.contains(cold.getKey()));
+
+        // A one-off giant segment of 871,200 bytes that took 30ms to load
+        // would displace a segment worth more, so is not admitted.
+        final Map.Entry<SegmentHeader, SegmentBody> giant =
+            makeDenseDoubleSegmentMap(new String[] {"g1", "g2"}, 330)
+                .entrySet().iterator().next();
+        cache.setLoadCost(giant.getKey(), 30000000L);
+        cache.put(giant.getKey(), giant.getValue());
+        assertFalse(cache.contains(giant.getKey()));
+        assertTrue(cache.contains(medium.getKey()));
+        for (SegmentHeader header : hot) {
+            assertTrue(cache.contains(header));
+        }
+        cache.tearDown();
+    }
+
     public void testSparseRollup() {
         // functional test for a case that causes OOM if rollup creates
         // a dense segment.
@@ -363,7 +732,7 @@ public class SegmentBuilderTest extends BatchTestCase {
                     null, 47000, 4, false, null),
                 new HashSet<String>(Arrays.asList("col1", "col2")),
                 null, RolapAggregator.Sum, Dialect.Datatype.Numeric);
-        assertTrue(rollup.right instanceof SparseSegmentBody);
+        assertTrue(rollup.right instanceof SparseDoubleSegmentBody);
     }
 
     public void testRollupWithOOMPossibility() {
@@ -380,7 +749,135 @@ public class SegmentBuilderTest extends BatchTestCase {
                     null, 44000, 4, false, null),
                 new HashSet<String>(Arrays.asList("col1", "col2")),
                 null, RolapAggregator.Sum, Dialect.Datatype.Numeric);
-        assertTrue(rollup.right instanceof SparseSegmentBody);
+        assertTrue(rollup.right instanceof SparseDoubleSegmentBody);
+    }
+
+    /**
+     * Checks that a parallel in-memory rollup produces the same result as a
+     * serial one. The source segments are large enough to be split into
+     * several chunks, so the parallel path is taken. The benchmark is
+     * {@link PerformanceTest#testParallelRollup()}.
+     */
+    public void testParallelRollup() {
+        // 60^3 = 216,000 cells, at least two chunks.
+        final int n = 60;
+        assertTrue(n * n * n > 2 * SegmentBuilder.ROLLUP_CHUNK_SIZE);
+        final Map<SegmentHeader, SegmentBody> map =
+            makeDenseDoubleSegmentMap(new String[] {"col1", "col2", "col3"}, n);
+        double[] values = (double[]) checkParallelRollup(map).getValueArray();
+        assertEquals(n * n, values.length);
+        // Each target cell is the sum of n source cells, with values 0, 1,
+        // ... of the third column.
+        assertEquals((double) n * (n - 1) / 2, values[0], 0d);
+
+        // Same cells, stored off-heap.
+        final SegmentHeader header = map.keySet().iterator().next();
+        final SegmentBody body = map.get(header);
+        final SegmentBody offHeapBody = SegmentBuilder.toOffHeap(body);
+        assertTrue(offHeapBody instanceof AbstractOffHeapSegmentBody);
+        values =
+            (double[]) checkParallelRollup(
+                Collections.singletonMap(header, offHeapBody))
+                .getValueArray();
+        assertEquals((double) n * (n - 1) / 2, values[0], 0d);
+
+        // Two thirds of the cells, stored sparse.
+        final double[] denseValues = (double[]) body.getValueArray();
+        final long[] ordinals = new long[denseValues.length * 2 / 3];
+        final double[] sparseValues = new double[ordinals.length];
+        int k = 0;
+        for (int i = 0; i < denseValues.length; i++) {
+            if (i % 3 != 0) {
+                ordinals[k] = i;
+                sparseValues[k++] = denseValues[i];
+            }
+        }
+        assertEquals(ordinals.length, k);
+        assertTrue(k > 2 * SegmentBuilder.ROLLUP_CHUNK_SIZE);
+        final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+            new ArrayList<Pair<SortedSet<Comparable>, Boolean>>();
+        for (int i = 0; i < body.getAxisValueSets().length; i++) {
+            axes.add(
+                Pair.of(
+                    body.getAxisValueSets()[i], body.getNullAxisFlags()[i]));
+        }
+        checkParallelRollup(
+            Collections.<SegmentHeader, SegmentBody>singletonMap(
+                header,
+                new SparseDoubleSegmentBody(
+                    ordinals, sparseValues, new BitSet(), axes)));
+    }
+
+    /**
+     * Rolls up segments onto their first two columns, serially and in
+     * parallel, checks that the results are the same, and returns the body of
+     * the serial result.
+     */
+    private SegmentBody checkParallelRollup(
+        Map<SegmentHeader, SegmentBody> map)
+    {
+        final Set<String> keepColumns =
+            new HashSet<String>(Arrays.asList("col1", "col2"));
+        final Pair<SegmentHeader, SegmentBody> serial =
+            SegmentBuilder.rollup(
+                map, keepColumns, null, RolapAggregator.Sum,
+                Dialect.Datatype.Numeric, 1);
+        final Pair<SegmentHeader, SegmentBody> parallel =
+            SegmentBuilder.rollup(
+                map, keepColumns, null, RolapAggregator.Sum,
+                Dialect.Datatype.Numeric, 4);
+        assertEquals(serial.left, parallel.left);
+        // Cell values are integers, so the sums are exact whatever order
+        // they are added in.
+        assertEquals(serial.right.getValueMap(), parallel.right.getValueMap());
+        return serial.right;
+    }
+
+    /**
+     * Creates a map containing one dense segment of {@code double} values,
+     * with {@code numValsPerCol} values on each axis. The value of each cell
+     * is its ordinal on the last axis.
+     *
+     * <p>Also used by {@link PerformanceTest#testParallelRollup()}.</p>
+     */
+    public static Map<SegmentHeader, SegmentBody> makeDenseDoubleSegmentMap(
+        String[] colNames, int numValsPerCol)
+    {
+        final String[][] colVals =
+            dummyColumnValues(colNames.length, numValsPerCol);
+        final List<SegmentColumn> constrainedColumns =
+            new ArrayList<SegmentColumn>();
+        final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+            new ArrayList<Pair<SortedSet<Comparable>, Boolean>>();
+        int cellCount = 1;
+        for (int i = 0; i < colNames.length; i++) {
+            final SortedSet<Comparable> vals =
+                new TreeSet<Comparable>(Arrays.<Comparable>asList(colVals[i]));
+            constrainedColumns.add(
+                new SegmentColumn(colNames[i], numValsPerCol, vals));
+            axes.add(Pair.of(vals, false));
+            cellCount *= numValsPerCol;
+        }
+        final double[] cells = new double[cellCount];
+        for (int i = 0; i < cellCount; i++) {
+            // Value is the ordinal on the last axis.
+            cells[i] = i % numValsPerCol;
+        }
+        final Map<SegmentHeader, SegmentBody> map =
+            new HashMap<SegmentHeader, SegmentBody>();
+        map.put(
+            new SegmentHeader(
+                "dummySchemaName",
+                new ByteString(new byte[]{}),
+                "dummyCubeName",
+                "dummyMeasureName",
+                constrainedColumns,
+                Collections.<String>emptyList(),
+                "dummyFactTable",
+                BitKey.Factory.makeBitKey(3),
+                Collections.<SegmentColumn>emptyList()),
+            new DenseDoubleSegmentBody(new BitSet(), cells, axes));
+        return map;
     }
 
     public void testRollupShouldBeDense() {
@@ -966,7 +1463,7 @@ public class SegmentBuilderTest extends BatchTestCase {
                 axes));
     }
 
-    private String [][] dummyColumnValues(int cols, int numVals) {
+    private static String [][] dummyColumnValues(int cols, int numVals) {
         String [][] dummyColVals = new String[cols][numVals];
         for (int i = 0; i < cols; i++) {
             for (int j = 0; j < numVals; j++) {
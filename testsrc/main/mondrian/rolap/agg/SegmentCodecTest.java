@@ -0,0 +1,294 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap.agg;
+
+import mondrian.rolap.*;
+import mondrian.spi.*;
+import mondrian.test.PerformanceTest;
+import mondrian.util.*;
+
+import junit.framework.TestCase;
+
+import java.io.*;
+import java.math.BigDecimal;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.util.*;
+
+/**
+ * Unit test for {@link SegmentCodec}.
+ *
+ * @author agent
+ */
+public class SegmentCodecTest extends TestCase {
+    public void testHeader() {
+        final SegmentHeader header = makeHeader();
+        final SegmentHeader header2 =
+            SegmentCodec.decodeHeader(
+                ByteBuffer.wrap(SegmentCodec.encodeHeader(header)));
+        assertEquals(header, header2);
+        assertEquals(header.getUniqueID(), header2.getUniqueID());
+        assertEquals(header.hashCode(), header2.hashCode());
+        assertEquals(header.schemaChecksum, header2.schemaChecksum);
+        assertEquals(
+            header.constrainedColsBitKey, header2.constrainedColsBitKey);
+        assertEquals(
+            header.getConstrainedColumns(), header2.getConstrainedColumns());
+        assertEquals(
+            header.getExcludedRegions(), header2.getExcludedRegions());
+        assertEquals(header.compoundPredicates, header2.compoundPredicates);
+        assertSame(
+            RolapUtil.sqlNullValue,
+            header2.getConstrainedColumns().get(1).values.first());
+    }
+
+    public void testDenseDouble() {
+        final BitSet nullValues = new BitSet();
+        nullValues.set(1);
+        final SegmentBody body =
+            new DenseDoubleSegmentBody(
+                nullValues,
+                new double[] {1.5, 0, -2.25, Double.NaN, 1e300, 7},
+                axes(true));
+        final SegmentBody body2 = checkRoundTrip(body);
+        assertTrue(body2 instanceof DenseDoubleSegmentBody);
+        assertTrue(Double.isNaN(((double[]) body2.getValueArray())[3]));
+        assertEquals(nullValues, body2.getNullValueIndicators());
+    }
+
+    public void testDenseInt() {
+        final BitSet nullValues = new BitSet();
+        nullValues.set(0);
+        nullValues.set(5);
+        final SegmentBody body =
+            new DenseIntSegmentBody(
+                nullValues,
+                new int[] {0, -1, Integer.MAX_VALUE, Integer.MIN_VALUE, 300, 0},
+                axes(false));
+        final SegmentBody body2 = checkRoundTrip(body);
+        assertTrue(body2 instanceof DenseIntSegmentBody);
+        assertEquals(nullValues, body2.getNullValueIndicators());
+    }
+
+    public void testDenseObject() {
+        final SegmentBody body =
+            new DenseObjectSegmentBody(
+                new Object[] {
+                    "a", null, 1, 2L, new BigDecimal("1.25"), Boolean.TRUE
+                },
+                axes(false));
+        final SegmentBody body2 = checkRoundTrip(body);
+        assertTrue(body2 instanceof DenseObjectSegmentBody);
+        assertEquals(
+            Arrays.asList((Object[]) body.getValueArray()),
+            Arrays.asList((Object[]) body2.getValueArray()));
+    }
+
+    public void testSparse() {
+        final Map<CellKey, Object> map = new HashMap<CellKey, Object>();
+        map.put(CellKey.Generator.newCellKey(new int[] {0, 1}), "x");
+        map.put(CellKey.Generator.newCellKey(new int[] {2, 0}), null);
+        map.put(CellKey.Generator.newCellKey(new int[] {1, 2}), 3.5);
+        final SegmentBody body2 =
+            checkRoundTrip(new SparseSegmentBody(map, axes(false)));
+        assertTrue(body2 instanceof SparseSegmentBody);
+    }
+
+    public void testSparseNative() {
+        final BitSet nullValues = new BitSet();
+        nullValues.set(2);
+        final long[] ordinals = {7, 0, 3, 8};
+        SegmentBody body2 =
+            checkRoundTrip(
+                new SparseDoubleSegmentBody(
+                    ordinals, new double[] {1, -2, 0, 4.5}, nullValues,
+                    axes(true)));
+        assertTrue(body2 instanceof SparseDoubleSegmentBody);
+        body2 =
+            checkRoundTrip(
+                new SparseIntSegmentBody(
+                    ordinals, new int[] {1, -2, 0, 45}, nullValues,
+                    axes(true)));
+        assertTrue(body2 instanceof SparseIntSegmentBody);
+    }
+
+    public void testOffHeap() {
+        final BitSet nullValues = new BitSet();
+        nullValues.set(4);
+        final OffHeapDoubleSegmentBody body =
+            new OffHeapDoubleSegmentBody(
+                nullValues, new double[] {1, 2, 3, 4, 0, 6}, axes(false));
+        final SegmentBody body2 = checkRoundTrip(body);
+        assertTrue(body2 instanceof DenseDoubleSegmentBody);
+    }
+
+    /**
+     * Tests that several encoded objects can be read from one buffer, whatever
+     * its byte order, and that the buffer is left positioned after each.
+     */
+    public void testBuffer() {
+        final SegmentHeader header = makeHeader();
+        final SegmentBody body =
+            new DenseDoubleSegmentBody(
+                new BitSet(), new double[] {1, 2, 3, 4, 5, 6}, axes(false));
+        final byte[] b1 = SegmentCodec.encodeHeader(header);
+        final byte[] b2 = SegmentCodec.encodeBody(body, true);
+        final byte[] b3 = SegmentCodec.encodeBody(body, false);
+        final ByteBuffer buffer =
+            ByteBuffer.allocateDirect(b1.length + b2.length + b3.length + 1)
+                .order(ByteOrder.LITTLE_ENDIAN);
+        buffer.put(b1).put(b2).put(b3).put((byte) 99).flip();
+        assertEquals(header, SegmentCodec.decodeHeader(buffer));
+        assertEquals(b1.length, buffer.position());
+        assertBodyEquals(body, SegmentCodec.decodeBody(buffer));
+        assertEquals(b1.length + b2.length, buffer.position());
+        assertBodyEquals(body, SegmentCodec.decodeBody(buffer));
+        assertEquals(99, buffer.get());
+        assertFalse(buffer.hasRemaining());
+
+        try {
+            SegmentCodec.decodeBody(ByteBuffer.wrap(new byte[] {1, 2, 3, 4}));
+            fail("expected error");
+        } catch (RuntimeException e) {
+            assertTrue(
+                e.getMessage(),
+                e.getMessage().contains("Not an encoded segment"));
+        }
+    }
+
+    /**
+     * Compares the size and speed of the codec with Java serialization, for
+     * a large dense object body. Timings are logged if
+     * {@link PerformanceTest#LOGGER} is enabled for debug.
+     */
+    public void testThroughput() throws Exception {
+        final int n = PerformanceTest.LOGGER.isDebugEnabled() ? 100 : 30;
+        final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+            new ArrayList<Pair<SortedSet<Comparable>, Boolean>>();
+        for (int i = 0; i < 3; i++) {
+            final Comparable[] values = new Comparable[n];
+            for (int j = 0; j < n; j++) {
+                values[j] = 1000 + j;
+            }
+            axes.add(
+                Pair.<SortedSet<Comparable>, Boolean>of(
+                    new ArraySortedSet(values), false));
+        }
+        final Object[] cells = new Object[n * n * n];
+        for (int i = 0; i < cells.length; i++) {
+            cells[i] = i % 7 == 0 ? null : new BigDecimal(i).movePointLeft(2);
+        }
+        final SegmentBody body = new DenseObjectSegmentBody(cells, axes);
+
+        byte[] serialized = null;
+        byte[] encoded = null;
+        byte[] compressed = null;
+        for (int i = 0; i < 3; i++) {
+            long start = System.nanoTime();
+            final ByteArrayOutputStream out = new ByteArrayOutputStream();
+            final ObjectOutputStream oos = new ObjectOutputStream(out);
+            oos.writeObject(body);
+            oos.close();
+            serialized = out.toByteArray();
+            new ObjectInputStream(new ByteArrayInputStream(serialized))
+                .readObject();
+            final long serialMillis = (System.nanoTime() - start) / 1000000;
+
+            start = System.nanoTime();
+            encoded = SegmentCodec.encodeBody(body, false);
+            SegmentCodec.decodeBody(ByteBuffer.wrap(encoded));
+            final long codecMillis = (System.nanoTime() - start) / 1000000;
+
+            start = System.nanoTime();
+            compressed = SegmentCodec.encodeBody(body, true);
+            SegmentCodec.decodeBody(ByteBuffer.wrap(compressed));
+            final long compressedMillis =
+                (System.nanoTime() - start) / 1000000;
+            PerformanceTest.LOGGER.debug(
+                "SegmentCodecTest.testThroughput: " + cells.length + " cells;"
+                + " serialization " + serialized.length + " bytes, "
+                + serialMillis + " ms;"
+                + " codec " + encoded.length + " bytes, "
+                + codecMillis + " ms;"
+                + " compressed " + compressed.length + " bytes, "
+                + compressedMillis + " ms");
+        }
+        assertTrue(encoded.length < serialized.length);
+        assertTrue(compressed.length < encoded.length);
+        assertBodyEquals(
+            body, SegmentCodec.decodeBody(ByteBuffer.wrap(compressed)));
+    }
+
+    private static SegmentHeader makeHeader() {
+        final BitKey bitKey = BitKey.Factory.makeBitKey(80);
+        bitKey.set(1);
+        bitKey.set(5);
+        bitKey.set(70);
+        return new SegmentHeader(
+            "FoodMart",
+            new ByteString(new byte[] {1, -2, 3}),
+            "Sales",
+            "Unit Sales",
+            Arrays.asList(
+                new SegmentColumn(
+                    "time_by_day.the_year", 2,
+                    new ArraySortedSet(new Comparable[] {1997, 1998})),
+                new SegmentColumn(
+                    "store.store_state", -1,
+                    new ArraySortedSet(
+                        new Comparable[] {
+                            (Comparable) RolapUtil.sqlNullValue, "CA", "WA"
+                        })),
+                new SegmentColumn("customer.gender", 2, null)),
+            Arrays.asList("`store`.`store_country` = 'USA'"),
+            "sales_fact_1997",
+            bitKey,
+            Arrays.asList(
+                new SegmentColumn(
+                    "store.store_state", -1,
+                    new ArraySortedSet(new Comparable[] {"OR"}))));
+    }
+
+    private static List<Pair<SortedSet<Comparable>, Boolean>> axes(
+        boolean hasNull)
+    {
+        final List<Pair<SortedSet<Comparable>, Boolean>> axes =
+            new ArrayList<Pair<SortedSet<Comparable>, Boolean>>();
+        axes.add(
+            Pair.<SortedSet<Comparable>, Boolean>of(
+                new ArraySortedSet(new Comparable[] {"F", "M"}), hasNull));
+        axes.add(
+            Pair.<SortedSet<Comparable>, Boolean>of(
+                new ArraySortedSet(new Comparable[] {1, 2, 3}), false));
+        return axes;
+    }
+
+    private static SegmentBody checkRoundTrip(SegmentBody body) {
+        SegmentBody body2 = null;
+        for (boolean compress : new boolean[] {false, true}) {
+            body2 =
+                SegmentCodec.decodeBody(
+                    ByteBuffer.wrap(SegmentCodec.encodeBody(body, compress)));
+            assertBodyEquals(body, body2);
+        }
+        return body2;
+    }
+
+    private static void assertBodyEquals(SegmentBody body, SegmentBody body2) {
+        assertEquals(
+            Arrays.asList(body.getAxisValueSets()),
+            Arrays.asList(body2.getAxisValueSets()));
+        assertTrue(
+            Arrays.equals(body.getNullAxisFlags(), body2.getNullAxisFlags()));
+        assertEquals(body.getValueMap(), body2.getValueMap());
+    }
+}
+
+// End SegmentCodecTest.java
@@ -157,6 +157,59 @@ public class SegmentLoaderTest extends BatchTestCase {
                 groupingSets.get(1).getSegments().get(0)));
     }
 
+    /**
+     * As {@link #testLoadWithMockResultsForLoadingSummaryAndDetailedSegments},
+     * but loads segments in a single pass over the result set.
+     */
+    public void testStreamingLoadWithMockResultsForLoadingSummaryAndDetailed()
+        throws ExecutionException, InterruptedException
+    {
+        propSaver.set(propSaver.properties.SegmentLoadStreaming, true);
+        GroupingSet groupableSetsInfo = getGroupingSetRollupOnGender();
+
+        GroupingSet groupingSetsInfo = getDefaultGroupingSet();
+        ArrayList<GroupingSet> groupingSets =
+            new ArrayList<GroupingSet>();
+        groupingSets.add(groupingSetsInfo);
+        groupingSets.add(groupableSetsInfo);
+        SegmentLoader loader = new SegmentLoader(cacheMgr) {
+            SqlStatement createExecuteSql(
+                int cellRequestCount,
+                final GroupingSetsList groupingSetsList,
+                List<StarPredicate> compoundPredicateList)
+            {
+                return new MockSqlStatement(
+                    cellRequestCount,
+                    groupingSetsList,
+                    getData(true));
+            }
+        };
+        final List<Future<Map<Segment, SegmentWithData>>> segmentFutures =
+            new ArrayList<Future<Map<Segment, SegmentWithData>>>();
+        loader.load(0, groupingSets, null, segmentFutures);
+        for (Future<?> future : segmentFutures) {
+            Util.safeGet(future, "");
+        }
+        SegmentAxis[] axes = groupingSetsInfo.getAxes();
+        verifyYearAxis(axes[0]);
+        verifyProductFamilyAxis(axes[1]);
+        verifyProductDepartmentAxis(axes[2]);
+        verifyGenderAxis(axes[3]);
+        verifyUnitSalesDetailed(
+            getFor(
+                segmentFutures,
+                groupingSets.get(0).getSegments().get(0)));
+
+        axes = groupingSets.get(0).getAxes();
+        verifyYearAxis(axes[0]);
+        verifyProductFamilyAxis(axes[1]);
+        verifyProductDepartmentAxis(axes[2]);
+        verifyUnitSalesAggregate(
+            getFor(
+                segmentFutures,
+                groupingSets.get(1).getSegments().get(0)));
+    }
+
     private ResultSet toResultSet(final List<Object[]> list) {
         final MyDelegatingInvocationHandler handler =
             new MyDelegatingInvocationHandler(list);
@@ -0,0 +1,135 @@
+/*
+// This software is subject to the terms of the Eclipse Public License v1.0
+// Agreement, available at the following URL:
+// http://www.eclipse.org/legal/epl-v10.html.
+// You must accept the terms of that agreement to use this software.
+//
+// Copyright (C) 2026 agent
+// All Rights Reserved.
+*/
+package mondrian.rolap.aggmatcher;
+
+import mondrian.rolap.*;
+import mondrian.test.FoodMartTestCase;
+
+import java.util.*;
+
+/**
+ * Unit test for {@link AggRecommender}.
+ *
+ * @author agent
+ */
+public class AggRecommenderTest extends FoodMartTestCase {
+
+    public AggRecommenderTest(String name) {
+        super(name);
+    }
+
+    /**
+     * Tests the greedy choice of aggregate tables over a synthetic lattice.
+     */
+    public void testSelect() {
+        final long[] cardinalities = {2, 4, 10, 1000};
+        final Map<BitKey, Long> workload = new LinkedHashMap<BitKey, Long>();
+        workload.put(bitKey(0), 100L);
+        workload.put(bitKey(0, 1), 100L);
+        workload.put(bitKey(2), 50L);
+        workload.put(bitKey(3), 1L);
+
+        assertEquals(
+            80, AggRecommender.estimateRowCount(
+                bitKey(0, 1, 2), cardinalities, 50000));
+        assertEquals(
+            50000, AggRecommender.estimateRowCount(
+                bitKey(0, 1, 2, 3), cardinalities, 50000));
+
+        // {0} saves the most per row. After that, {0, 1} is only of use to
+        // the queries on {0, 1}, but that still beats {2}. {3} is too big for
+        // the budget, and once {0}, {0, 1} and {2} have been chosen, their
+        // union {0, 1, 2} would help nobody.
+        final List<AggRecommender.View> views =
+            AggRecommender.select(workload, cardinalities, 100000, 100);
+        assertEquals(3, views.size());
+        assertEquals(bitKey(0), views.get(0).bitKey);
+        assertEquals(2, views.get(0).rowCount);
+        assertEquals(bitKey(0, 1), views.get(1).bitKey);
+        assertEquals(8, views.get(1).rowCount);
+        assertEquals(bitKey(2), views.get(2).bitKey);
+        assertEquals(10, views.get(2).rowCount);
+
+        // With a bigger budget, {3} is chosen too.
+        assertEquals(
+            4,
+            AggRecommender.select(workload, cardinalities, 100000, 2000)
+                .size());
+
+        // Nothing fits in a budget of 1 row.
+        assertEquals(
+            0,
+            AggRecommender.select(workload, cardinalities, 100000, 1).size());
+    }
+
+    /**
+     * Tests that loads are recorded, and that the recommendation includes
+     * the SQL and schema element of an aggregate table.
+     */
+    public void testRecommend() {
+        propSaver.set(propSaver.properties.RecordAggregateWorkload, true);
+        final RolapCube cube =
+            (RolapCube) getConnection().getSchema().lookupCube("Sales", true);
+        CacheControlTest.flushCache(getTestContext());
+        AggRecommender.instance().clear();
+        assertTrue(
+            AggRecommender.instance().getWorkload(cube.getStar()).isEmpty());
+
+        executeQuery(
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + " [Time].[1997].Children on 1\n"
+            + "from [Sales]");
+        assertFalse(
+            AggRecommender.instance().getWorkload(cube.getStar()).isEmpty());
+
+        final List<AggRecommender.Recommendation> recommendations =
+            AggRecommender.instance().recommend(cube, 1000000);
+        assertEquals(1, recommendations.size());
+        final AggRecommender.Recommendation recommendation =
+            recommendations.get(0);
+        assertEquals(
+            "agg_r1_sales_fact_1997", recommendation.getTableName());
+        assertEquals(8, recommendation.getRowCount());
+        assertTrue(
+            recommendation.getCreateSql(),
+            recommendation.getCreateSql().startsWith(
+                "CREATE TABLE agg_r1_sales_fact_1997 ("));
+        assertTrue(
+            recommendation.getInsertSql(),
+            recommendation.getInsertSql().startsWith(
+                "INSERT INTO agg_r1_sales_fact_1997 ("));
+        final String xml = recommendation.getSchemaXml();
+        assertTrue(
+            xml, xml.startsWith("<AggName name=\"agg_r1_sales_fact_1997\">"));
+        assertTrue(
+            xml, xml.contains("<AggFactCount column=\"fact_count\"/>"));
+        assertTrue(
+            xml,
+            xml.contains(
+                "<AggMeasure name=\"[Measures].[Unit Sales]\" "
+                + "column=\"unit_sales\"/>"));
+        assertTrue(
+            xml,
+            xml.contains(
+                "<AggLevel name=\"[Time].[Quarter]\" column=\"quarter\"/>"));
+
+        AggRecommender.instance().clear();
+    }
+
+    private static BitKey bitKey(int... bits) {
+        final BitKey bitKey = BitKey.Factory.makeBitKey(4);
+        for (int bit : bits) {
+            bitKey.set(bit);
+        }
+        return bitKey;
+    }
+}
+
+// End AggRecommenderTest.java
@@ -11,7 +11,11 @@
 package mondrian.rolap.sql;
 
 import mondrian.olap.MondrianProperties;
-import mondrian.rolap.BatchTestCase;
+import mondrian.olap.Position;
+import mondrian.olap.Result;
+import mondrian.rolap.*;
+import mondrian.rolap.agg.ListColumnPredicate;
+import mondrian.rolap.agg.ValueColumnPredicate;
 import mondrian.spi.Dialect;
 import mondrian.spi.impl.*;
 import mondrian.test.SqlPattern;
@@ -798,6 +802,154 @@ public class SqlQueryTest extends BatchTestCase {
             new SqlPattern(Dialect.DatabaseProduct.MYSQL, sql, sql.length());
         assertQuerySql(context, mdx, new SqlPattern[]{mySqlPattern});
     }
+
+    /**
+     * Tests that {@link SqlQuery#quote} generates parameter markers when
+     * {@link MondrianProperties#GenerateBindParameters} is set, and that
+     * {@link SqlParameter} turns them into '?' and a list of values.
+     */
+    public void testBindParameters() {
+        final Dialect dialect = getTestContext().getDialect();
+        propSaver.set(prop.GenerateBindParameters, true);
+        final SqlQuery sqlQuery = new SqlQuery(dialect);
+        final StringBuilder buf = new StringBuilder("x = ");
+        sqlQuery.quote(buf, "O'Brien", Dialect.Datatype.String);
+        buf.append(" and y in (");
+        sqlQuery.quote(buf, 1997, Dialect.Datatype.Integer);
+        buf.append(", ");
+        sqlQuery.quote(buf, "2.5", Dialect.Datatype.Numeric);
+        buf.append(") and z = ");
+        // Not numeric, so written as a literal.
+        sqlQuery.quote(buf, "abc", Dialect.Datatype.Numeric);
+        final String sql = buf.toString();
+
+        final List<SqlParameter> parameters = new ArrayList<SqlParameter>();
+        assertEquals(
+            "x = ? and y in (?, ?) and z = abc",
+            SqlParameter.extract(sql, parameters));
+        assertEquals("['O''Brien', 1997, 2.5]", parameters.toString());
+        assertEquals(
+            "x = 'O''Brien' and y in (1997, 2.5) and z = abc",
+            SqlParameter.expand(sql));
+
+        // Without bind parameters, the dialect generates literals.
+        sqlQuery.setBindParameters(false);
+        buf.setLength(0);
+        sqlQuery.quote(buf, 1997, Dialect.Datatype.Integer);
+        assertEquals("1997", buf.toString());
+    }
+
+    /**
+     * Tests that a query returns the same result with bind parameters as
+     * with literals.
+     */
+    public void testBindParametersQuery() {
+        final String mdx =
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + " [Store].[USA].[CA].Children on 1\n"
+            + "from [Sales]\n"
+            + "where [Time].[1997].[Q2]";
+        final TestContext testContext = getTestContext();
+        testContext.flushSchemaCache();
+        final String expected =
+            TestContext.toString(testContext.executeQuery(mdx));
+        propSaver.set(prop.GenerateBindParameters, true);
+        testContext.flushSchemaCache();
+        testContext.assertQueryReturns(mdx, expected);
+    }
+
+    /**
+     * Tests that an IN list longer than the dialect allows is split into
+     * several lists.
+     */
+    public void testMaxInListSize() {
+        final Dialect dialect = spy(getTestContext().getDialect());
+        when(dialect.getMaxInListSize()).thenReturn(2);
+        final RolapStar.Column column =
+            new RolapStar.Column(Dialect.Datatype.Integer) {
+                public String generateExprString(SqlQuery query) {
+                    return "x";
+                }
+            };
+        final List<StarColumnPredicate> values =
+            new ArrayList<StarColumnPredicate>();
+        for (int i = 1; i <= 5; i++) {
+            values.add(new ValueColumnPredicate(column, i));
+        }
+        final SqlQuery sqlQuery = new SqlQuery(dialect);
+        sqlQuery.setBindParameters(false);
+        final StringBuilder buf = new StringBuilder();
+        new ListColumnPredicate(column, values).toSql(sqlQuery, buf);
+        assertEquals(
+            "(x in (1, 2) or x in (3, 4) or x in (5))", buf.toString());
+    }
+
+    /**
+     * Tests that the IN lists of a native member constraint, both single- and
+     * multi-column, are split if they are longer than the dialect allows.
+     */
+    public void testMaxInListSizeNative() {
+        final Dialect dialect = spy(getTestContext().getDialect());
+        when(dialect.getMaxInListSize()).thenReturn(2);
+        when(dialect.supportsMultiValueInExpr()).thenReturn(true);
+        final String country =
+            dialect.quoteIdentifier("store", "store_country");
+        final String state = dialect.quoteIdentifier("store", "store_state");
+        final String city = dialect.quoteIdentifier("store", "store_city");
+
+        // Single-column: the countries, one value per member.
+        final Result countryResult =
+            executeQuery(
+                "select [Store].[Store Country].Members on 0 from [Sales]");
+        SqlQuery sqlQuery = new SqlQuery(dialect);
+        sqlQuery.setBindParameters(false);
+        SqlConstraintUtils.addMemberConstraint(
+            sqlQuery,
+            (RolapCube) countryResult.getQuery().getCube(),
+            null,
+            members(countryResult),
+            true,
+            false,
+            false);
+        assertTrue(
+            sqlQuery.toString(),
+            sqlQuery.toString().contains(
+                "(" + country + " in ('Canada', 'Mexico') or "
+                + country + " in ('USA'))"));
+
+        // Multi-column: cities in different states, within a cross join.
+        final Result cityResult =
+            executeQuery(
+                "select {[Store].[USA].[CA].[San Francisco],\n"
+                + " [Store].[USA].[OR].[Portland],\n"
+                + " [Store].[USA].[WA].[Seattle]} on 0\n"
+                + "from [Sales]");
+        sqlQuery = new SqlQuery(dialect);
+        sqlQuery.setBindParameters(false);
+        SqlConstraintUtils.addMemberConstraint(
+            sqlQuery,
+            (RolapCube) cityResult.getQuery().getCube(),
+            null,
+            members(cityResult),
+            true,
+            true,
+            false);
+        final String columns = "(" + city + ", " + state + ")";
+        assertTrue(
+            sqlQuery.toString(),
+            sqlQuery.toString().contains(
+                "(" + columns + " in (('San Francisco', 'CA'), "
+                + "('Portland', 'OR')) or "
+                + columns + " in (('Seattle', 'WA')))"));
+    }
+
+    private static List<RolapMember> members(Result result) {
+        final List<RolapMember> members = new ArrayList<RolapMember>();
+        for (Position position : result.getAxes()[0].getPositions()) {
+            members.add((RolapMember) position.get(0));
+        }
+        return members;
+    }
 }
 
 // End SqlQueryTest.java
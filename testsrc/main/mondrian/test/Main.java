@@ -205,6 +205,8 @@ public class Main extends TestSuite {
                 return suite;
             }
             addTest(suite, SegmentBuilderTest.class);
+            addTest(suite, AggStarIndexTest.class);
+            addTest(suite, SegmentCodecTest.class);
             addTest(suite, NativeFilterMatchingTest.class);
             addTest(suite, RolapConnectionTest.class);
             addTest(suite, FilteredIterableTest.class);
@@ -310,6 +312,8 @@ public class Main extends TestSuite {
             addTest(suite, RolapCubeTest.class);
             addTest(suite, RolapStarTest.class);
             addTest(suite, RolapSchemaPoolTest.class);
+            addTest(suite, SqlAdmissionControllerTest.class);
+            addTest(suite, SqlSingleFlightTest.class);
             addTest(suite, NullMemberRepresentationTest.class);
             addTest(suite, IgnoreUnrelatedDimensionsTest.class);
             addTest(
@@ -321,6 +325,7 @@ public class Main extends TestSuite {
             addTest(suite, NonCollapsedAggTest.class);
             addTest(suite, SpeciesNonCollapsedAggTest.class);
             addTest(suite, UsagePrefixTest.class);
+            addTest(suite, AggRecommenderTest.class);
             addTest(suite, BitKeyTest.class);
             addTest(suite, TypeTest.class);
             addTest(suite, SteelWheelsSchemaTest.class);
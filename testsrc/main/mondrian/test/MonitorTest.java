@@ -9,7 +9,7 @@
 */
 package mondrian.test;
 
-import mondrian.olap.MondrianServer;
+import mondrian.olap.*;
 import mondrian.server.monitor.*;
 
 import org.olap4j.CellSet;
@@ -153,6 +153,61 @@ public class MonitorTest extends FoodMartTestCase {
         // sort
         // (other expensive operations similar to sort?)
     }
+
+    /**
+     * Tests the segment cache statistics of a measure, as returned by
+     * {@link Monitor#getSegmentCaches()}.
+     */
+    public void testSegmentCaches() {
+        final String query =
+            "select [Gender].Children on 0\n"
+            + "from [Sales]\n"
+            + "where [Measures].[Unit Sales]";
+        final TestContext testContext = getTestContext().withFreshConnection();
+        final Connection connection = testContext.getConnection();
+        final CacheControl cacheControl = connection.getCacheControl(null);
+        cacheControl.flush(
+            cacheControl.createMeasuresRegion(
+                connection.getSchema().lookupCube("Sales", true)));
+        final Monitor monitor =
+            MondrianServer.forConnection(connection).getMonitor();
+
+        final SegmentCacheInfo info0 = unitSales(monitor);
+        testContext.executeQuery(query);
+        final SegmentCacheInfo info1 = unitSales(monitor);
+        assertNotNull(info1);
+        assertTrue(info1.sqlCount > sqlCount(info0));
+        assertTrue(info1.loadCount > 0);
+        assertTrue(info1.byteCount > 0);
+        long loadCount = 0;
+        for (long count : info1.getLoadLatencyHistogram()) {
+            loadCount += count;
+        }
+        assertEquals(info1.loadCount, loadCount);
+
+        // Same query again. Cells come from cache.
+        testContext.executeQuery(query);
+        final SegmentCacheInfo info2 = unitSales(monitor);
+        assertEquals(info1.sqlCount, info2.sqlCount);
+        assertEquals(info1.loadCount, info2.loadCount);
+        assertTrue(info2.hitCount > info1.hitCount);
+        println(info2);
+    }
+
+    private static long sqlCount(SegmentCacheInfo info) {
+        return info == null ? 0 : info.sqlCount;
+    }
+
+    private static SegmentCacheInfo unitSales(Monitor monitor) {
+        for (SegmentCacheInfo info : monitor.getSegmentCaches()) {
+            if (info.cubeName.equals("Sales")
+                && info.measureName.equals("Unit Sales"))
+            {
+                return info;
+            }
+        }
+        return null;
+    }
 }
 
 // End MonitorTest.java
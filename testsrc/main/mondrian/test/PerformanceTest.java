@@ -12,13 +12,17 @@ package mondrian.test;
 import mondrian.olap.*;
 import mondrian.olap.fun.FunUtil;
 import mondrian.olap.type.*;
-import mondrian.spi.UserDefinedFunction;
+import mondrian.rolap.RolapAggregator;
+import mondrian.rolap.agg.SegmentBuilder;
+import mondrian.rolap.agg.SegmentBuilderTest;
+import mondrian.spi.*;
 import mondrian.util.Bug;
 
 import org.apache.commons.collections.ComparatorUtils;
 import org.apache.log4j.Logger;
 
 import java.util.*;
+import java.util.concurrent.*;
 import java.util.concurrent.atomic.AtomicInteger;
 
 /**
@@ -771,6 +775,145 @@ public class PerformanceTest extends FoodMartTestCase {
         }
     }
 
+    /**
+     * Runs statements against several cubes concurrently, with an increasing
+     * number of threads, to measure how throughput scales. Each cube has its
+     * own fact table, so its requests are served by a different partition of
+     * the segment cache index (see
+     * {@link MondrianProperties#SegmentCacheManagerNumberIndexThreads}) and
+     * do not queue behind requests for the other cubes.
+     */
+    public void testConcurrentStatementsAcrossCubes() throws Exception {
+        final String[] queries = {
+            "select [Measures].[Unit Sales] on 0,\n"
+            + " [Product].[Product Family].Members on 1\n"
+            + "from [Sales]",
+            "select [Measures].[Units Shipped] on 0,\n"
+            + " [Warehouse].[Country].Members on 1\n"
+            + "from [Warehouse]",
+            "select [Measures].[Store Sqft] on 0,\n"
+            + " [Store Type].Members on 1\n"
+            + "from [Store]",
+            "select [Measures].[Org Salary] on 0,\n"
+            + " [Position].[Management Role].Members on 1\n"
+            + "from [HR]",
+        };
+        final int iterationCount = LOGGER.isDebugEnabled() ? 20 : 2;
+        for (int threadCount = 1; threadCount <= 8; threadCount *= 2) {
+            final Statistician statistician =
+                new Statistician(
+                    "testConcurrentStatementsAcrossCubes threads="
+                    + threadCount);
+            final ExecutorService executor =
+                Executors.newFixedThreadPool(threadCount);
+            try {
+                for (int i = 0; i < iterationCount; i++) {
+                    getTestContext().flushSchemaCache();
+                    final long start = System.currentTimeMillis();
+                    final List<Future<Result>> futures =
+                        new ArrayList<Future<Result>>();
+                    for (int j = 0; j < threadCount * queries.length; j++) {
+                        final String query = queries[j % queries.length];
+                        futures.add(
+                            executor.submit(
+                                new Callable<Result>() {
+                                    public Result call() {
+                                        return getTestContext()
+                                            .executeQuery(query);
+                                    }
+                                }));
+                    }
+                    for (Future<Result> future : futures) {
+                        assertNotNull(future.get());
+                    }
+                    statistician.record(start);
+                }
+            } finally {
+                executor.shutdown();
+            }
+            statistician.printDurations();
+        }
+    }
+
+    /**
+     * Compares the speed of serial and parallel in-memory rollup of a
+     * synthetic dense segment of 10M cells. Runs only if {@link #LOGGER} is
+     * enabled for debug; correctness is checked by
+     * {@link SegmentBuilderTest#testParallelRollup()}.
+     */
+    public void testParallelRollup() {
+        if (!LOGGER.isDebugEnabled()) {
+            return;
+        }
+        final Map<SegmentHeader, SegmentBody> map =
+            SegmentBuilderTest.makeDenseDoubleSegmentMap(
+                new String[] {"col1", "col2", "col3"}, 216);
+        final Set<String> keepColumns =
+            new HashSet<String>(Arrays.asList("col1", "col2"));
+        for (int threadCount = 1; threadCount <= 4; threadCount *= 2) {
+            propSaver.set(
+                propSaver.properties.InMemoryRollupThreads, threadCount);
+            final Statistician statistician =
+                new Statistician("testParallelRollup threads=" + threadCount);
+            for (int i = 0; i < 10; i++) {
+                final long start = System.currentTimeMillis();
+                SegmentBuilder.rollup(
+                    map, keepColumns, null, RolapAggregator.Sum,
+                    Dialect.Datatype.Numeric);
+                statistician.record(start);
+            }
+            statistician.printDurations();
+        }
+    }
+
+    /**
+     * Compares the time to parse a query that names 1,000 members with and
+     * without the query plan cache, and the time to execute it. Runs only if
+     * {@link #LOGGER} is enabled for debug.
+     */
+    public void testQueryPlanCache() {
+        if (!LOGGER.isDebugEnabled()) {
+            return;
+        }
+        final Result productResult =
+            executeQuery(
+                "select [Product].[Product Name].Members on 0 from [Sales]");
+        final List<Position> positions =
+            productResult.getAxes()[0].getPositions();
+        final StringBuilder buf = new StringBuilder();
+        for (int i = 0; i < 1000 && i < positions.size(); i++) {
+            if (i > 0) {
+                buf.append(",\n");
+            }
+            buf.append(positions.get(i).get(0).getUniqueName());
+        }
+        final String mdx =
+            "select {[Measures].[Unit Sales]} on 0,\n"
+            + "{" + buf + "} on 1\n"
+            + "from [Sales]";
+        final Connection connection = getConnection();
+        for (int cacheSize : new int[] {0, 10}) {
+            propSaver.set(propSaver.properties.QueryPlanCacheSize, cacheSize);
+            final Statistician statistician =
+                new Statistician("testQueryPlanCache parse size=" + cacheSize);
+            for (int i = 0; i < 10; i++) {
+                final long start = System.currentTimeMillis();
+                connection.parseQuery(mdx);
+                statistician.record(start);
+            }
+            statistician.printDurations();
+        }
+        final Statistician statistician =
+            new Statistician("testQueryPlanCache execute");
+        for (int i = 0; i < 10; i++) {
+            final Query query = connection.parseQuery(mdx);
+            final long start = System.currentTimeMillis();
+            connection.execute(query);
+            statistician.record(start);
+        }
+        statistician.printDurations();
+    }
+
     /**
      * Collects statistics for a test that is run multiple times.
      */
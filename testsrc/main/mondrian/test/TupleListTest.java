@@ -10,9 +10,11 @@
 package mondrian.test;
 
 import mondrian.calc.TupleCollections;
+import mondrian.calc.TupleCursor;
 import mondrian.calc.TupleList;
 import mondrian.calc.impl.*;
 import mondrian.olap.*;
+import mondrian.olap.fun.CrossJoinFunDef;
 import mondrian.rolap.RolapConnection;
 import mondrian.server.Locus;
 
@@ -154,6 +156,91 @@ public class TupleListTest extends FoodMartTestCase {
         checkProject(fm);
     }
 
+    public void testOrdinalTupleList() {
+        final Member genderFMember = xxx("[Gender].[F]");
+        final Member genderMMember = xxx("[Gender].[M]");
+        final Member storeUsaMember = xxx("[Store].[USA]");
+        final Member storeMexicoMember = xxx("[Store].[Mexico]");
+
+        final TupleList list0 = new OrdinalTupleList(2);
+        assertTrue(list0.isEmpty());
+        assertEquals(list0, TupleCollections.emptyList(2));
+
+        TupleList fm = new OrdinalTupleList(2);
+        fm.addTuple(genderFMember, storeUsaMember);
+        fm.add(Arrays.asList(genderMMember, storeUsaMember));
+        assertEquals(2, fm.size());
+        assertEquals(
+            "[[[Gender].[F], [Store].[USA]], [[Gender].[M], [Store].[USA]]]",
+            fm.toString());
+        assertSame(genderMMember, fm.get(0, 1));
+        assertEquals(
+            Arrays.asList(storeUsaMember, storeUsaMember), fm.slice(1));
+        try {
+            fm.addTuple(genderFMember);
+            fail("expected error");
+        } catch (IllegalArgumentException e) {
+            assertEquals("Tuple length does not match arity", e.getMessage());
+        }
+        checkProject(fm);
+
+        // Insert, replace and remove.
+        final TupleList list = fm.cloneList(-1);
+        list.add(0, Arrays.asList(genderMMember, storeMexicoMember));
+        list.set(2, Arrays.asList(genderFMember, storeMexicoMember));
+        assertEquals(
+            "[[[Gender].[M], [Store].[Mexico]],"
+            + " [[Gender].[F], [Store].[USA]],"
+            + " [[Gender].[F], [Store].[Mexico]]]",
+            list.toString());
+        list.remove(1);
+        assertEquals(
+            "[[[Gender].[M], [Store].[Mexico]],"
+            + " [[Gender].[F], [Store].[Mexico]]]",
+            list.toString());
+
+        // The clone shares dictionaries with the original until it adds a
+        // member; the original is not affected.
+        assertEquals(2, fm.size());
+        assertEquals(storeUsaMember, fm.get(1, 0));
+
+        // Copy tuples using a cursor, as Filter does.
+        final TupleList filtered = TupleCollections.createCompactList(list, 0);
+        assertTrue(filtered instanceof OrdinalTupleList);
+        final TupleCursor cursor = list.tupleCursor();
+        while (cursor.forward()) {
+            assertSame(storeMexicoMember, cursor.member(1));
+            filtered.addCurrent(cursor);
+        }
+        filtered.addTuple(genderFMember, storeUsaMember);
+        assertEquals(
+            "[[[Gender].[M], [Store].[Mexico]],"
+            + " [[Gender].[F], [Store].[Mexico]],"
+            + " [[Gender].[F], [Store].[USA]]]",
+            filtered.toString());
+        assertEquals(2, list.size());
+    }
+
+    public void testOrdinalTupleListProduct() {
+        final TupleList genders = new UnaryTupleList();
+        genders.addTuple(xxx("[Gender].[F]"));
+        genders.addTuple(xxx("[Gender].[M]"));
+        final TupleList pairs = new ArrayTupleList(2);
+        pairs.addTuple(xxx("[Store].[USA]"), xxx("[Marital Status].[M]"));
+        pairs.addTuple(xxx("[Store].[Mexico]"), xxx("[Marital Status].[S]"));
+
+        final OrdinalTupleList product = new OrdinalTupleList(3);
+        product.addProduct(Arrays.asList(genders, pairs));
+        assertEquals(
+            "[[[Gender].[F], [Store].[USA], [Marital Status].[M]],"
+            + " [[Gender].[F], [Store].[Mexico], [Marital Status].[S]],"
+            + " [[Gender].[M], [Store].[USA], [Marital Status].[M]],"
+            + " [[Gender].[M], [Store].[Mexico], [Marital Status].[S]]]",
+            product.toString());
+        assertEquals(
+            product, CrossJoinFunDef.mutableCrossJoin(genders, pairs));
+    }
+
     public void testDelegatingTupleList() {
         final Member genderFMember = xxx("[Gender].[F]");
         final Member genderMMember = xxx("[Gender].[M]");